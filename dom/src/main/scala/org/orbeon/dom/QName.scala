@@ -34,6 +34,8 @@ object QName {
   def apply(name: String, prefix: String, uri: String): QName =
     applyNormalize(name, Namespace(prefix, uri), null)
 
+  private class NameCode(val namePool: AnyRef, val code: Int)
+
   private def getOrCreateNamespaceCache(namespaceOrNull: Namespace): ju.Map[String, QName] = {
     if (namespaceOrNull eq Namespace.EmptyNamespace) { // only one instance of the empty namespace due to cache
       noNamespaceCache
@@ -106,4 +108,18 @@ class QName private (val name: String, val namespace: Namespace, val qualifiedNa
 
   override def toString =
     if (namespace.uri == "") name else s"Q{$namespace.uri}$qualifiedName"
+
+  // Code allocated for this name by a name pool external to this package, such as Saxon's `NamePool`
+  //
+  // The code is cached for the last pool used, which in practice is always the same global pool. The pool and code
+  // are kept together so that they are updated atomically.
+  @volatile private var _nameCode: QName.NameCode = null
+
+  def cachedNameCode(namePool: AnyRef): Int = {
+    val nameCode = _nameCode
+    if ((nameCode ne null) && (nameCode.namePool eq namePool)) nameCode.code else -1
+  }
+
+  def cacheNameCode(namePool: AnyRef, code: Int): Unit =
+    _nameCode = new QName.NameCode(namePool, code)
 }
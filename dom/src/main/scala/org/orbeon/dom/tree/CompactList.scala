@@ -0,0 +1,116 @@
+/**
+  * Copyright (C) 2017 Orbeon, Inc.
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the
+  * GNU Lesser General Public License as published by the Free Software Foundation; either version
+  * 2.1 of the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  * See the GNU Lesser General Public License for more details.
+  *
+  * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+  */
+package org.orbeon.dom.tree
+
+import java.{util ⇒ ju}
+
+// Mutable list optimized for the small number of children of most elements
+//
+// A single item is stored inline, which is the case of leaf elements holding a text node. Two or more items are
+// stored in an array. Compared with an `ArrayList`, this saves the array for a single item and the array headroom.
+private[dom] class CompactList[T] extends ju.AbstractList[T] with ju.RandomAccess {
+
+  private var _size  = 0
+  private var _items : AnyRef = null // `null`, the item if `_size == 1`, an `Array[AnyRef]` otherwise
+
+  def size: Int = _size
+
+  def get(index: Int): T = {
+    checkIndex(index, _size)
+    if (_size == 1)
+      _items.asInstanceOf[T]
+    else
+      _items.asInstanceOf[Array[AnyRef]](index).asInstanceOf[T]
+  }
+
+  override def set(index: Int, item: T): T = {
+    checkIndex(index, _size)
+    if (_size == 1) {
+      val previous = _items
+      _items = item.asInstanceOf[AnyRef]
+      previous.asInstanceOf[T]
+    } else {
+      val array = _items.asInstanceOf[Array[AnyRef]]
+      val previous = array(index)
+      array(index) = item.asInstanceOf[AnyRef]
+      previous.asInstanceOf[T]
+    }
+  }
+
+  override def add(index: Int, item: T): Unit = {
+    checkIndex(index, _size + 1)
+    modCount += 1
+
+    _size match {
+      case 0 ⇒
+        _items = item.asInstanceOf[AnyRef]
+      case 1 ⇒
+        val array = new Array[AnyRef](CompactList.FirstArraySize)
+        array(index) = item.asInstanceOf[AnyRef]
+        array(1 - index) = _items
+        _items = array
+      case _ ⇒
+        var array = _items.asInstanceOf[Array[AnyRef]]
+        if (_size == array.length) {
+          val newArray = new Array[AnyRef](_size * 2)
+          System.arraycopy(array, 0, newArray, 0, _size)
+          array = newArray
+          _items = array
+        }
+        System.arraycopy(array, index, array, index + 1, _size - index)
+        array(index) = item.asInstanceOf[AnyRef]
+    }
+    _size += 1
+  }
+
+  override def remove(index: Int): T = {
+    checkIndex(index, _size)
+    modCount += 1
+
+    _size match {
+      case 1 ⇒
+        val previous = _items
+        _items = null
+        _size = 0
+        previous.asInstanceOf[T]
+      case 2 ⇒
+        val array = _items.asInstanceOf[Array[AnyRef]]
+        val previous = array(index)
+        _items = array(1 - index)
+        _size = 1
+        previous.asInstanceOf[T]
+      case _ ⇒
+        val array = _items.asInstanceOf[Array[AnyRef]]
+        val previous = array(index)
+        System.arraycopy(array, index + 1, array, index, _size - index - 1)
+        _size -= 1
+        array(_size) = null
+        previous.asInstanceOf[T]
+    }
+  }
+
+  override def clear(): Unit = {
+    modCount += 1
+    _items = null
+    _size = 0
+  }
+
+  private def checkIndex(index: Int, bound: Int): Unit =
+    if (index < 0 || index >= bound)
+      throw new IndexOutOfBoundsException(s"Index: $index, Size: ${_size}")
+}
+
+private[dom] object CompactList {
+  val FirstArraySize = 2
+}
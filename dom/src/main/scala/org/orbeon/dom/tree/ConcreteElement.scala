@@ -7,7 +7,9 @@ import org.xml.sax.Attributes
 
 private object ConcreteElement {
 
-  val DefaultContentListSize = 2 // ORBEON: default was 5
+  // Most elements have no attributes, and many have no content, so they share these until something is added
+  val EmptyAttributes = ju.Collections.emptyList[Attribute]
+  val EmptyContent    = ju.Collections.emptyList[Node]
 
   def appendAttributes(src: Element, dst: Element): Unit = {
 
@@ -34,11 +36,23 @@ class ConcreteElement(var qname: QName)
   def getQName: QName = qname
   def setQName(name: QName) = this.qname = name
 
-  protected var _attributes     = new ju.ArrayList[Attribute](DefaultContentListSize)
-  private var _internalContent  = new ju.ArrayList[Node](DefaultContentListSize)
+  private var _attributes       : ju.List[Attribute] = EmptyAttributes
+  private var _internalContent  : ju.List[Node]      = EmptyContent
   protected def internalContent = _internalContent
 
-  def content = new ContentListFacade[Node](this, internalContent)
+  private def mutableAttributes: ju.List[Attribute] = {
+    if (_attributes eq EmptyAttributes)
+      _attributes = new CompactList[Attribute]
+    _attributes
+  }
+
+  private def mutableContent: ju.List[Node] = {
+    if (_internalContent eq EmptyContent)
+      _internalContent = new CompactList[Node]
+    _internalContent
+  }
+
+  def content = new ContentListFacade[Node](this, internalContent, mutableContent)
 
   /**
    * Stores the parent branch of this node which is either a Document if this
@@ -269,7 +283,7 @@ class ConcreteElement(var qname: QName)
   def elementIterator(qName: QName): ju.Iterator[Element] = elements(qName).iterator()
 
   def attributes: ju.List[Attribute] = {
-    new ContentListFacade[Attribute](this, _attributes)
+    new ContentListFacade[Attribute](this, _attributes, mutableAttributes)
   }
 
   def attributeIterator: ju.Iterator[Attribute] = _attributes.iterator()
@@ -328,7 +342,7 @@ class ConcreteElement(var qname: QName)
           add(DocumentFactory.createAttribute(this, attributeQName, attributeValue))
         }
       } else {
-        val list = _attributes
+        val list = mutableAttributes
         list.clear()
         // `for (i ← 0 until size)` is inefficient and shows in the profiler
         var i = 0
@@ -388,7 +402,7 @@ class ConcreteElement(var qname: QName)
         remove(oldAttribute)
       }
     } else {
-      _attributes.add(att)
+      mutableAttributes.add(att)
       childAdded(att)
     }
   }
@@ -608,8 +622,8 @@ class ConcreteElement(var qname: QName)
   private def cloneInternal: ConcreteElement = {
     val clone = super.deepCopy.asInstanceOf[ConcreteElement]
     if (clone ne this) {
-      clone._internalContent = new ju.ArrayList[Node](DefaultContentListSize)
-      clone._attributes      = new ju.ArrayList[Attribute](DefaultContentListSize)
+      clone._internalContent = EmptyContent
+      clone._attributes      = EmptyAttributes
       appendAttributes(this, clone)
       clone.appendContent(this)
       clone.setData(getData)
@@ -833,12 +847,12 @@ class ConcreteElement(var qname: QName)
    * Like addNode() but does not require a parent check
    */
   private def addNewNode(node: Node): Unit = {
-    internalContent.add(node)
+    mutableContent.add(node)
     childAdded(node)
   }
 
   private def addNewNode(index: Int, node: Node): Unit = {
-    internalContent.add(index, node)
+    mutableContent.add(index, node)
     childAdded(node)
   }
 
@@ -858,11 +872,12 @@ class ConcreteElement(var qname: QName)
     val it = internalContent.iterator.asScala filter (_.isInstanceOf[Namespace])
 
     if (it.hasNext) {
-      _internalContent = new ju.ArrayList[Node](DefaultContentListSize)
+      val namespaces = new CompactList[Node]
       while (it.hasNext)
-        _internalContent.add(it.next())
+        namespaces.add(it.next())
+      _internalContent = namespaces
     } else {
-      internalContent.clear()
+      _internalContent = EmptyContent
     }
   }
 
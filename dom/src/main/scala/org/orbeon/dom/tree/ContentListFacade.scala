@@ -11,30 +11,37 @@ import org.orbeon.dom.{IllegalAddException, Node}
  * is backed by the branch such that changes to the list will be reflected in
  * the branch and changes to the branch will be reflected in this list.
  */
-class ContentListFacade[T <: Node](val branch: AbstractBranch, val branchContent: ju.List[T]) extends ju.AbstractList[T] {
+class ContentListFacade[T <: Node](
+  val branch             : AbstractBranch,
+  _branchContent         : ⇒ ju.List[T], // can be a shared immutable empty list
+  _mutableBranchContent  : ⇒ ju.List[T]  // allocated by the branch when needed
+) extends ju.AbstractList[T] {
+
+  def branchContent: ju.List[T] = _branchContent
+  private def mutableBranchContent: ju.List[T] = _mutableBranchContent
 
   override def add(node: T): Boolean = {
     branch.childAdded(node)
-    branchContent.add(node)
+    mutableBranchContent.add(node)
   }
 
   override def add(index: Int, node: T): Unit = {
     branch.childAdded(node)
-    branchContent.add(index, node)
+    mutableBranchContent.add(index, node)
   }
 
   override def set(index: Int, node: T): T = {
     branch.childAdded(node)
-    branchContent.set(index, node)
+    mutableBranchContent.set(index, node)
   }
 
   def remove(node: T): Boolean = {
     branch.childRemoved(node)
-    branchContent.remove(node)
+    mutableBranchContent.remove(node)
   }
 
   override def remove(index: Int): T = {
-    val node = branchContent.remove(index)
+    val node = mutableBranchContent.remove(index)
     if (node ne null) {
       branch.childRemoved(node)
     }
@@ -70,7 +77,7 @@ class ContentListFacade[T <: Node](val branch: AbstractBranch, val branchContent
       val node = iter.next()
       branch.childRemoved(node)
     }
-    branchContent.clear()
+    mutableBranchContent.clear()
   }
 
   override def removeAll(c: ju.Collection[_]): Boolean = {
@@ -79,7 +86,7 @@ class ContentListFacade[T <: Node](val branch: AbstractBranch, val branchContent
     while (iter.hasNext)
       branch.childRemoved(asNode(iter.next()))
 
-    branchContent.removeAll(c)
+    mutableBranchContent.removeAll(c)
   }
 
   def size: Int = branchContent.size
@@ -0,0 +1,139 @@
+/**
+  * Copyright (C) 2017 Orbeon, Inc.
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the
+  * GNU Lesser General Public License as published by the Free Software Foundation; either version
+  * 2.1 of the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  * See the GNU Lesser General Public License for more details.
+  *
+  * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+  */
+package org.orbeon.dom
+
+import java.{util ⇒ ju}
+
+import org.orbeon.dom.tree.CompactList
+import org.scalatest.FunSpec
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+
+class CompactStorageTest extends FunSpec {
+
+  describe("The `CompactList` class") {
+
+    it("must behave like an `ArrayList`") {
+
+      val random   = new Random(42)
+      val compact  = new CompactList[Integer]
+      val expected = new ju.ArrayList[Integer]
+
+      for (i ← 1 to 10000) {
+        val size = expected.size
+        random.nextInt(5) match {
+          case 0 | 1 ⇒
+            val index = random.nextInt(size + 1)
+            compact.add(index, i)
+            expected.add(index, i)
+          case 2 if size > 0 ⇒
+            val index = random.nextInt(size)
+            assert(expected.remove(index) === compact.remove(index))
+          case 3 if size > 0 ⇒
+            val index = random.nextInt(size)
+            assert(expected.set(index, i) === compact.set(index, i))
+          case 4 if size > 5 ⇒
+            val it = compact.iterator()
+            it.next()
+            it.remove()
+            expected.remove(0)
+          case _ ⇒
+            compact.clear()
+            expected.clear()
+        }
+        assert(expected === compact)
+      }
+    }
+
+    it("must reject out of bounds indexes") {
+      val compact = new CompactList[Integer]
+      intercept[IndexOutOfBoundsException](compact.get(0))
+      intercept[IndexOutOfBoundsException](compact.add(1, 1))
+      compact.add(1)
+      intercept[IndexOutOfBoundsException](compact.remove(1))
+    }
+  }
+
+  describe("Elements without attributes or content") {
+
+    it("must support adding and removing attributes and content through facades") {
+
+      val elem = DocumentFactory.createElement("elem")
+
+      assert(elem.attributes.isEmpty)
+      assert(elem.content.isEmpty)
+
+      val attributes = elem.attributes
+      val content    = elem.content
+
+      attributes.add(DocumentFactory.createAttribute(elem, QName("foo"), "bar"))
+      content.add(DocumentFactory.createText("baz"))
+
+      assert("bar" === elem.attributeValue("foo"))
+      assert("baz" === elem.getText)
+      assert(elem eq elem.content.get(0).getParent)
+
+      content.clear()
+      elem.removeAttribute(QName("foo"))
+
+      assert(0 === elem.attributeCount)
+      assert(0 === elem.nodeCount)
+    }
+  }
+
+  // The footprint and traversal time are measured by `FormRunnerDataBenchmark` in `xformsBench`
+  describe("Form Runner data") {
+
+    // One section with a repeated grid, and mostly text-only or empty leaves, like the data of typical forms
+    def newData(iterations: Int) = {
+      val form    = DocumentFactory.createDocument("form").getRootElement
+      val section = form.addElement("section-1")
+      section.addElement("first-name").addText("John")
+      section.addElement("last-name").addText("Smith")
+      section.addElement("email")
+      val grid = section.addElement("grid-1")
+      for (i ← 1 to iterations) {
+        val iteration = grid.addElement("grid-1-iteration")
+        iteration.addElement("item").addText(s"Item $i")
+        iteration.addElement("quantity").addText(i.toString)
+        iteration.addElement("price").addText("10.00")
+        iteration.addElement("comment")
+        iteration.addElement("attachment").addAttribute("filename", "").addAttribute("mediatype", "")
+      }
+      form.getDocument
+    }
+
+    def countNodes(elem: Element): Int =
+      1 + elem.attributeCount + (elem.content.asScala map {
+        case e: Element ⇒ countNodes(e)
+        case _          ⇒ 1
+      }).sum
+
+    it("must be built and traversed") {
+
+      val Iterations = 1000
+      val data       = newData(Iterations)
+
+      assert(8 + Iterations * 11 === countNodes(data.getRootElement))
+
+      // Traversing doesn't add nodes to empty elements
+      val iteration = data.getRootElement.element("section-1").element("grid-1").element("grid-1-iteration")
+      assert(0 === iteration.element("comment").nodeCount)
+      assert(0 === iteration.element("comment").attributeCount)
+      assert(2 === iteration.element("attachment").attributeCount)
+      assert("Item 1" === iteration.element("item").getText)
+    }
+  }
+}
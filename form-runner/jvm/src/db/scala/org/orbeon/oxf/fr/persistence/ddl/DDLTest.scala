@@ -99,9 +99,13 @@ class DDLTest extends ResourceManagerTestBase with AssertionsForJUnit with Loggi
         assertSameTable(provider, "4_5"   ,  "4_6")
         assertSameTable(provider, "4_6"   ,  "2016_2")
         assertSameTable(provider, "2016_2",  "2016_3")
+        assertSameTable(provider, "2016_3",  "2017_2")
+        assertSameTable(provider, "2017_2",  "2018_1")
       case provider @ PostgreSQL ⇒
         assertSameTable(provider, "4_8"   ,  "2016_2")
         assertSameTable(provider, "2016_2" , "2016_3")
+        assertSameTable(provider, "2016_3" , "2017_2")
+        assertSameTable(provider, "2017_2" , "2018_1")
     }
   }
 }
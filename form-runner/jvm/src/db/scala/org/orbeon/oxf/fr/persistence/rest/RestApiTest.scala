@@ -14,6 +14,7 @@
 package org.orbeon.oxf.fr.persistence.rest
 
 import java.io.ByteArrayInputStream
+import java.security.MessageDigest
 
 import org.junit.Test
 import org.orbeon.dom.{Document, DocumentFactory}
@@ -22,10 +23,12 @@ import org.orbeon.oxf.fr.permission._
 import org.orbeon.oxf.fr.persistence.db._
 import org.orbeon.oxf.fr.persistence.relational.rest.LockInfo
 import org.orbeon.oxf.fr.persistence.relational.{Provider, _}
+import org.orbeon.oxf.properties.Properties
 import org.orbeon.oxf.test.{ResourceManagerTestBase, XMLSupport}
 import org.orbeon.oxf.util.CoreUtils._
-import org.orbeon.oxf.util.{IndentedLogger, LoggerFactory, Logging}
-import org.orbeon.oxf.xml.Dom4j
+import org.orbeon.oxf.util.IOUtils._
+import org.orbeon.oxf.util.{IndentedLogger, LoggerFactory, Logging, SecureUtils}
+import org.orbeon.oxf.xml.{Dom4j, XMLConstants}
 import org.orbeon.oxf.xml.Dom4j.elemToDocument
 import org.orbeon.oxf.xml.dom4j.Dom4jUtils
 import org.scalatest.junit.AssertionsForJUnit
@@ -300,6 +303,83 @@ class RestApiTest extends ResourceManagerTestBase with AssertionsForJUnit with X
     }
   }
 
+  private def withDeduplicatedAttachments[T](provider: Provider)(body: ⇒ T): T = {
+
+    val propertySet = Properties.instance.getPropertySet
+    val element     = DocumentFactory.createElement("property")
+
+    def setDeduplicate(value: Boolean) =
+      propertySet.setProperty(
+        element,
+        s"oxf.fr.persistence.${provider.pathToken}.deduplicate-attachments",
+        XMLConstants.XS_BOOLEAN_QNAME,
+        value.toString
+      )
+
+    setDeduplicate(true)
+    try
+      body
+    finally
+      setDeduplicate(false)
+  }
+
+  // Saving the same attachment again stores a new row, which shares the content of the previous row
+  @Test def deduplicatedAttachmentsTest(): Unit = {
+    Connect.withOrbeonTables("deduplicated attachments") { (connection, provider) ⇒
+      withDeduplicatedAttachments(provider) {
+
+        val bytes  = new Array[Byte](1024) |!> Random.nextBytes
+        val digest = SecureUtils.byteArrayToHex(MessageDigest.getInstance("SHA-256").digest(bytes))
+        val url    = HttpRequest.crudURLPrefix(provider) + "data/123/file"
+
+        HttpAssert.put(url, Specific(1), HttpRequest.Binary(bytes), 201)
+        HttpAssert.put(url, Specific(1), HttpRequest.Binary(bytes), 201)
+        HttpAssert.get(url, Unspecified, HttpAssert.ExpectedBody(HttpRequest.Binary(bytes), AllOperations, Some(1)))
+
+        case class AttachmentRow(
+          created          : java.sql.Timestamp,
+          lastModifiedTime : java.sql.Timestamp,
+          deleted          : String,
+          content          : Seq[Byte],
+          digest           : String
+        )
+
+        val Sql =
+          """|SELECT   created, last_modified_time, deleted, file_content, file_digest
+             |FROM     orbeon_form_data_attach
+             |WHERE    document_id = '123' AND file_name = 'file'
+             |ORDER BY last_modified_time
+             |""".stripMargin
+
+        val rows =
+          useAndClose(connection.prepareStatement(Sql)) { statement ⇒
+            useAndClose(statement.executeQuery()) { resultSet ⇒
+              Iterator.continually(resultSet.next()).takeWhile(identity).map { _ ⇒
+                AttachmentRow(
+                  created          = resultSet.getTimestamp("created"),
+                  lastModifiedTime = resultSet.getTimestamp("last_modified_time"),
+                  deleted          = resultSet.getString("deleted"),
+                  content          = resultSet.getBytes("file_content").toSeq,
+                  digest           = resultSet.getString("file_digest")
+                )
+              }.toList
+            }
+          }
+
+        // Both saves are recorded, with the same content and creation time
+        assert(rows.size === 2)
+        val List(first, second) = rows
+        assert(first.created === second.created)
+        assert(first.lastModifiedTime.before(second.lastModifiedTime))
+        rows foreach { row ⇒
+          assert(row.deleted === "N")
+          assert(row.content === bytes.toSeq)
+          assert(row.digest  === digest)
+        }
+      }
+    }
+  }
+
   // Try uploading files of 1 KB, 1 MB
   @Test def largeXMLDocumentsTest(): Unit = {
     Connect.withOrbeonTables("large XML documents") { (connection, provider) ⇒
@@ -0,0 +1,5 @@
+ALTER TABLE orbeon_form_definition_attach
+ADD file_digest         VARCHAR(64);
+
+ALTER TABLE orbeon_form_data_attach
+ADD file_digest         VARCHAR(64);
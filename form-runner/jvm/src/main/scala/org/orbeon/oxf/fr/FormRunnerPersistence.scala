@@ -77,7 +77,7 @@ object FormRunnerPersistence {
   val PersistencePropertyPrefix                  = "oxf.fr.persistence"
   val PersistenceProviderPropertyPrefix          = PersistencePropertyPrefix + ".provider"
 
-  val StandardProviderProperties                 = Set("uri", "autosave", "active", "permissions")
+  val StandardProviderProperties                 = Set("uri", "autosave", "active", "permissions", "form-metadata-timeout")
   val AttachmentAttributeNames                   = List("filename", "mediatype", "size")
 
   def findProvider(app: String, form: String, formOrData: FormOrData): Option[String] = {
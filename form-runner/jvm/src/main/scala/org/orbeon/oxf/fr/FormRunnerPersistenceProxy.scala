@@ -16,17 +16,21 @@ package org.orbeon.oxf.fr
 
 import java.io.{InputStream, OutputStream}
 import java.net.URI
+import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
 import javax.xml.transform.stream.StreamResult
 
 import org.orbeon.dom.QName
 import org.orbeon.oxf.common.OXFException
 import org.orbeon.oxf.externalcontext.ExternalContext.{Request, Response}
+import org.orbeon.oxf.externalcontext.{AsyncRequest, LocalExternalContext, LocalResponse}
 import org.orbeon.oxf.externalcontext.URLRewriter._
 import org.orbeon.oxf.fr.FormRunnerPersistence._
 import org.orbeon.oxf.fr.persistence.relational.index.Index
 import org.orbeon.oxf.fr.persistence.relational.index.status.Backend
 import org.orbeon.oxf.http.Headers._
 import org.orbeon.oxf.http.{HttpMethod, _}
+import org.orbeon.oxf.pipeline.InitUtils._
 import org.orbeon.oxf.pipeline.api.PipelineContext
 import org.orbeon.oxf.processor.ProcessorImpl
 import org.orbeon.oxf.processor.generator.RequestGenerator
@@ -35,11 +39,13 @@ import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.IOUtils._
 import org.orbeon.oxf.util.PathUtils._
 import org.orbeon.oxf.util._
+import org.orbeon.oxf.webapp.ProcessorService
 import org.orbeon.oxf.xforms.NodeInfoFactory.elementInfo
 import org.orbeon.oxf.xforms.action.XFormsAPI
 import org.orbeon.oxf.xforms.submission.RelevanceHandling
 import org.orbeon.oxf.xforms.submission.RelevanceHandling._
 import org.orbeon.oxf.xml.{ElementFilterXMLReceiver, TransformerUtils, XMLParsing}
+import org.orbeon.saxon.om.NodeInfo
 import org.orbeon.scaxon.Implicits._
 import org.orbeon.scaxon.SimplePath._
 
@@ -80,6 +86,45 @@ private object FormRunnerPersistenceProxy {
   val SupportedMethods               = Set[HttpMethod](HttpMethod.GET, HttpMethod.DELETE, HttpMethod.PUT, HttpMethod.POST, HttpMethod.LOCK, HttpMethod.UNLOCK)
   val GetOrPutMethods                = Set[HttpMethod](HttpMethod.GET, HttpMethod.PUT)
 
+  val FormMetadataTimeoutProperty    = "form-metadata-timeout"
+  val DefaultFormMetadataTimeoutMs   = 30000
+  val FormMetadataCacheTTLProperty   = "oxf.fr.persistence.form-metadata.cache.ttl"
+  val DefaultFormMetadataCacheTTLMs  = 60000
+
+  // Aggregated forms metadata from all the providers, before filtering based on the user's permissions
+  case class CachedFormsMetadata(formElements: List[NodeInfo], generation: Long, expiration: Long)
+
+  private val formsMetadataCache      = new ConcurrentHashMap[(List[String], String), CachedFormsMetadata]
+  private val formsMetadataGeneration = new AtomicLong
+
+  // Threads querying the providers, which are bounded as each Home page request queries all the providers
+  // When all the threads are busy, the providers are queried in the thread of the request.
+  private lazy val providersThreadPool = {
+
+    val maxThreads = 4 * Runtime.getRuntime.availableProcessors
+
+    val pool =
+      new ThreadPoolExecutor(
+        maxThreads,
+        maxThreads,
+        60L,
+        TimeUnit.SECONDS,
+        new SynchronousQueue[Runnable],
+        new ThreadFactory {
+          private val threadCount = new AtomicInteger
+          def newThread(r: Runnable): Thread = {
+            val thread = new Thread(r, "orbeon-forms-metadata-" + threadCount.incrementAndGet())
+            thread.setDaemon(true)
+            thread
+          }
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy
+      )
+
+    pool.allowCoreThreadTimeOut(true)
+    pool
+  }
+
   // Proxy the request to the appropriate persistence implementation
   def proxyRequest(request: Request, response: Response): Unit = {
     val incomingPath = request.getRequestPath
@@ -124,8 +169,15 @@ private object FormRunnerPersistenceProxy {
       }
 
     proxyRequest(request, serviceURI, headers, response, transform)
+
+    if (changesPublishedForms(formOrData, request.getMethod))
+      invalidateFormsMetadataCache()
   }
 
+  // Publishing or deleting a form definition or attachment changes the list of published forms
+  def changesPublishedForms(formOrData: FormOrData, method: HttpMethod): Boolean =
+    formOrData == FormOrData.Form && method != HttpMethod.GET
+
   def checkDataFormatVersions(
     request    : Request,
     app        : String,
@@ -284,29 +336,150 @@ private object FormRunnerPersistenceProxy {
 
     val parameters = NetUtils.encodeQueryString(request.getParameterMap)
 
+    // The aggregated metadata doesn't depend on the user, as permissions are checked below
     val allFormElements =
+      cachedFormsMetadata(providers, Option(path).getOrElse("") + "?" + parameters) {
+        readFormsMetadataFromProviders(request, providers, path, parameters)
+      }
+
+    val filteredFormElements = FormRunner.filterFormsAndAnnotateWithOperations(allFormElements)
+
+    // Aggregate and serialize
+    val documentElement = elementInfo("forms")
+    XFormsAPI.insert(into = documentElement, origin = filteredFormElements)
+
+    response.setContentType("application/xml")
+    LocalResponse.sendXML(response, documentElement)
+  }
+
+  // Query all the providers concurrently, and return the forms together with whether all the providers responded
+  //
+  // A provider which doesn't respond in time is skipped, so that the other providers' forms can still be returned,
+  // but the result is then incomplete and must not be cached. Other errors are propagated.
+  def readFormsMetadataFromProviders(
+    request    : Request,
+    providers  : List[String],
+    path       : String,
+    parameters : String
+  ): (List[NodeInfo], Boolean) = {
+
+    // Worker threads don't have the current processor service and external context, so pass them explicitly. Workers
+    // get a copy of the incoming request, as they can still run after a timeout, when the request has completed.
+    val processorService = ProcessorService.currentProcessorService.value
+    val externalContext  = NetUtils.getExternalContext
+    val requestCopy      = new AsyncRequest(request)
+
+    def withRequestContext[T](body: ⇒ T): T =
+      withPipelineContext { pipelineContext ⇒
+        pipelineContext.setAttribute(
+          PipelineContext.EXTERNAL_CONTEXT,
+          new LocalExternalContext(externalContext.getWebAppContext, requestCopy, externalContext.getResponse)
+        )
+        processorService match {
+          case Some(service) ⇒ ProcessorService.withProcessorService(service)(body)
+          case None          ⇒ body
+        }
+      }
+
+    val futures =
       for {
         provider           ← providers
         (baseURI, headers) = getPersistenceURLHeadersFromProvider(provider)
       } yield {
         // Read all the forms for the current service
         val serviceURI = NetUtils.appendQueryString(baseURI + "/form" + Option(path).getOrElse(""), parameters)
-        val cxr        = proxyEstablishConnection(request, serviceURI, headers)
 
-        ConnectionResult.withSuccessConnection(cxr, closeOnSuccess = true) { is ⇒
-          val forms = TransformerUtils.readTinyTree(XPath.GlobalConfiguration, is, serviceURI, false, false)
-          forms descendant "forms" descendant "form"
+        val future =
+          providersThreadPool.submit(new Callable[List[NodeInfo]] {
+            def call() = withRequestContext {
+              val cxr = proxyEstablishConnection(requestCopy, serviceURI, headers)
+              ConnectionResult.withSuccessConnection(cxr, closeOnSuccess = true) { is ⇒
+                val forms = TransformerUtils.readTinyTree(XPath.GlobalConfiguration, is, serviceURI, false, false)
+                (forms descendant "forms" descendant "form").toList
+              }
+            }
+          })
+
+        (provider, future)
+      }
+
+    collectProviderResults(futures)
+  }
+
+  // Wait for the result of each provider in turn, and return the results in the order of the providers, together with
+  // whether all the providers responded in time
+  def collectProviderResults[T](futures: List[(String, Future[List[T]])]): (List[T], Boolean) = {
+
+    val results =
+      try {
+        futures map { case (provider, future) ⇒
+
+          val timeoutMs = providerFormMetadataTimeoutMs(provider)
+
+          try
+            Some(if (timeoutMs > 0) future.get(timeoutMs, TimeUnit.MILLISECONDS) else future.get)
+          catch {
+            case _: TimeoutException ⇒
+              future.cancel(true)
+              ProcessorImpl.logger.warn(s"persistence provider `$provider` didn't return forms metadata within $timeoutMs ms")
+              None
+            case e: ExecutionException ⇒
+              throw e.getCause
+          }
         }
+      } catch {
+        case t: Throwable ⇒
+          // The request fails, so don't wait for the other providers
+          futures foreach (_._2.cancel(true))
+          throw t
       }
 
-    val filteredFormElements = FormRunner.filterFormsAndAnnotateWithOperations(allFormElements.flatten)
+    (results.flatten.flatten, results forall (_.isDefined))
+  }
 
-    // Aggregate and serialize
-    val documentElement = elementInfo("forms")
-    XFormsAPI.insert(into = documentElement, origin = filteredFormElements)
+  // Timeout for getting the forms metadata from a given provider, 0 meaning no timeout
+  def providerFormMetadataTimeoutMs(provider: String): Int =
+    Properties.instance.getPropertySet.getInteger(
+      PersistencePropertyPrefix :: provider :: FormMetadataTimeoutProperty :: Nil mkString ".",
+      DefaultFormMetadataTimeoutMs
+    )
 
-    response.setContentType("application/xml")
-    TransformerUtils.getXMLIdentityTransformer.transform(documentElement, new StreamResult(response.getOutputStream))
+  // Return the cached metadata for the given providers and query if it hasn't expired, or read and cache it
+  def cachedFormsMetadata(
+    providers : List[String],
+    query     : String)(
+    read      : ⇒ (List[NodeInfo], Boolean)
+  ): List[NodeInfo] = {
+
+    val ttlMs = Properties.instance.getPropertySet.getInteger(FormMetadataCacheTTLProperty, DefaultFormMetadataCacheTTLMs).toLong
+    val key   = (providers, query)
+
+    def readAndCache() = {
+      // Remember the generation before reading, so that a result read while forms are being published is not cached
+      val generation                 = formsMetadataGeneration.get
+      val (formElements, isComplete) = read
+
+      if (ttlMs > 0 && isComplete && formsMetadataGeneration.get == generation)
+        formsMetadataCache.put(key, CachedFormsMetadata(formElements, generation, System.currentTimeMillis + ttlMs))
+
+      formElements
+    }
+
+    Option(formsMetadataCache.get(key)) match {
+      case Some(cached) if ttlMs > 0 && cached.generation == formsMetadataGeneration.get && cached.expiration > System.currentTimeMillis ⇒
+        cached.formElements
+      case _ ⇒
+        readAndCache()
+    }
+  }
+
+  // Called when a form definition or form attachment is published or deleted
+  //
+  // This only invalidates the cache of this server. With several servers sharing the same database, the other servers
+  // only see a newly published form once their cached metadata expires, so the TTL must be set with this in mind.
+  def invalidateFormsMetadataCache(): Unit = {
+    formsMetadataGeneration.incrementAndGet()
+    formsMetadataCache.clear()
   }
 
   def proxyReindex(
@@ -13,6 +13,7 @@
  */
 package org.orbeon.oxf.fr.persistence.relational.rest
 
+import java.io.InputStream
 import java.sql.{PreparedStatement, Timestamp}
 import org.orbeon.oxf.externalcontext.Organization
 import org.orbeon.oxf.fr.persistence.relational.Provider.PostgreSQL
@@ -44,6 +45,13 @@ trait CreateCols extends RequestResponse with Common {
     paramSetter            : ParamSetterFunc
   ) extends ColValue
 
+  // Content of the attachment to insert
+  sealed trait AttachmentContent
+  // Content sent with the request, and its digest if attachments are deduplicated
+  case class StreamedContent(stream: InputStream, digest: Option[String]) extends AttachmentContent
+  // Content already stored for the same attachment, copied after the insert, see `CreateUpdateDelete.copyAttachmentContent`
+  case class CopiedContent(digest: String) extends AttachmentContent
+
   case class Col(
     included               : Boolean,
     name                   : String,
@@ -55,7 +63,8 @@ trait CreateCols extends RequestResponse with Common {
     existingRow            : Option[Row],
     delete                 : Boolean,
     versionToSet           : Int,
-    currentUserOrganization: ⇒ Option[OrganizationId]
+    currentUserOrganization: ⇒ Option[OrganizationId],
+    attachmentContent      : Option[AttachmentContent]
   ): List[Col]  = {
 
     val xmlCol = "xml"
@@ -162,9 +171,29 @@ trait CreateCols extends RequestResponse with Common {
       Col(
         included      = req.forAttachment,
         name          = "file_content",
+        value         = attachmentContent match {
+          case Some(StreamedContent(stream, _)) ⇒ DynamicColValue(
+            placeholder = "?",
+            paramSetter = param[InputStream](_.setBinaryStream, stream)
+          )
+          // Copied content is set after the insert, and the column isn't included if there is no attachment
+          case Some(CopiedContent(_)) | None ⇒ StaticColValue("NULL")
+        }
+      ),
+      // Only set if attachments are deduplicated, so that databases created before the column was added still work
+      // if they don't deduplicate attachments
+      Col(
+        included      = attachmentContent exists {
+          case StreamedContent(_, digest) ⇒ digest.isDefined
+          case CopiedContent(_)           ⇒ true
+        },
+        name          = "file_digest",
         value         = DynamicColValue(
           placeholder = "?",
-          paramSetter = param(_.setBytes, RequestReader.bytes())
+          paramSetter = param(_.setString, (attachmentContent collect {
+            case StreamedContent(_, Some(digest)) ⇒ digest
+            case CopiedContent(digest)            ⇒ digest
+          }).orNull)
         )
       ),
       Col(
@@ -13,7 +13,8 @@
  */
 package org.orbeon.oxf.fr.persistence.relational.rest
 
-import java.io.{ByteArrayOutputStream, InputStream, Writer}
+import java.io.Writer
+import java.security.{DigestInputStream, MessageDigest}
 import java.sql.{Array ⇒ _, _}
 import javax.xml.transform.OutputKeys
 import javax.xml.transform.sax.{SAXResult, SAXSource}
@@ -23,6 +24,7 @@ import org.orbeon.oxf.fr.Names
 import org.orbeon.oxf.fr.XMLNames.{XF, XH}
 import org.orbeon.oxf.fr.permission.PermissionsAuthorization.{CheckWithDataUser, CheckWithoutDataUser}
 import org.orbeon.oxf.fr.permission._
+import org.orbeon.oxf.fr.persistence.relational.Provider.{MySQL, PostgreSQL}
 import org.orbeon.oxf.fr.persistence.relational.Version._
 import org.orbeon.oxf.fr.persistence.relational.index.Index
 import org.orbeon.oxf.fr.persistence.relational.{ForDocument, Specific, _}
@@ -31,7 +33,7 @@ import org.orbeon.oxf.pipeline.api.PipelineContext
 import org.orbeon.oxf.processor.generator.RequestGenerator
 import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.IOUtils._
-import org.orbeon.oxf.util.{NetUtils, StringBuilderWriter, Whitespace, XPath}
+import org.orbeon.oxf.util.{NetUtils, SecureUtils, StringBuilderWriter, Whitespace, XPath}
 import org.orbeon.oxf.xml.{JXQName, _}
 import org.orbeon.saxon.event.SaxonOutputKeys
 import org.orbeon.saxon.om.DocumentInfo
@@ -73,12 +75,30 @@ object RequestReader {
       case _               ⇒ NetUtils.getExternalContext.getRequest.getInputStream
     }
 
-  def bytes(): Array[Byte] = {
-    val os = new ByteArrayOutputStream
-    NetUtils.copyStream(requestInputStream(), os)
-    os.toByteArray
+  private val AttachmentDigestAlgorithm = "SHA-256"
+
+  // Read the stream to the end and return the hex digest of its content
+  def digest(inputStream: InputStream): String = {
+    val digestInputStream = new DigestInputStream(inputStream, MessageDigest.getInstance(AttachmentDigestAlgorithm))
+    useAndClose(digestInputStream) { is ⇒
+      val buffer = new Array[Byte](8192)
+      while (is.read(buffer) != -1) {}
+    }
+    SecureUtils.byteArrayToHex(digestInputStream.getMessageDigest.digest)
   }
 
+  // Make the request body available as a file URI, along with its digest, so that it can be read more than once
+  // without holding it in memory. If the body was already stored by the request generator, we reuse that file.
+  def bodyURIAndDigest(): (String, String) =
+    RequestGenerator.getRequestBody(PipelineContext.get) match {
+      case bodyURL: String ⇒
+        (bodyURL, digest(NetUtils.uriToInputStream(bodyURL)))
+      case _ ⇒
+        val digestInputStream = new DigestInputStream(requestInputStream(), MessageDigest.getInstance(AttachmentDigestAlgorithm))
+        val bodyURL           = NetUtils.inputStreamToAnyURI(digestInputStream, NetUtils.REQUEST_SCOPE, null)
+        (bodyURL, SecureUtils.byteArrayToHex(digestInputStream.getMessageDigest.digest))
+    }
+
   def dataAndMetadataAsString(metadata: Boolean): (String, Option[String]) =
     dataAndMetadataAsString(requestInputStream(), metadata)
 
@@ -143,6 +163,9 @@ trait CreateUpdateDelete
     with Common
   with CreateCols {
 
+  // Providers for which the content of attachments can be shared between rows, see `copyAttachmentContent()`
+  private val DeduplicateAttachmentsProviders: Set[Provider] = Set(MySQL, PostgreSQL)
+
   private def existingRow(connection: Connection, req: Request): Option[Row] = {
 
     val idCols = idColumns(req).filter(_ != "file_name")
@@ -194,6 +217,109 @@ trait CreateUpdateDelete
     }
   }
 
+  // Columns identifying rows of the same attachment which can share their content, whatever their form version for
+  // form definitions, and whatever their draft flag for data
+  private def sharedContentColumns(req: Request): List[String] =
+    List("app", "form") ::: (req.forData list "document_id") ::: List("file_name", "file_digest")
+
+  private def setSharedContentParams(ps: PreparedStatement, position: Iterator[Int], req: Request, digest: String): Unit = {
+    ps.setString(position.next(), req.app)
+    ps.setString(position.next(), req.form)
+    req.dataPart foreach (dataPart ⇒ ps.setString(position.next(), dataPart.documentId))
+    ps.setString(position.next(), req.filename.get)
+    ps.setString(position.next(), digest)
+  }
+
+  // Whether a row of the same attachment, for instance a draft, already stores this content
+  private def attachmentContentExists(connection: Connection, req: Request, digest: String): Boolean = {
+
+    val sql =
+      s"""|SELECT count(*)
+          |FROM   ${tableName(req)}
+          |WHERE  ${sharedContentColumns(req) map (_ + " = ?") mkString " AND "}
+          |       AND file_content IS NOT NULL
+          |""".stripMargin
+
+    useAndClose(connection.prepareStatement(sql)) { ps ⇒
+      setSharedContentParams(ps, Iterator.from(1), req, digest)
+      useAndClose(ps.executeQuery()) { resultSet ⇒
+        resultSet.next()
+        resultSet.getInt(1) > 0
+      }
+    }
+  }
+
+  // Set the content of the row just inserted without content from another row of the attachment with the same digest,
+  // so the content isn't sent to the database again. Return whether the content was found.
+  private def copyAttachmentContent(connection: Connection, req: Request, digest: String): Boolean = {
+
+    val table        = tableName(req)
+    val sharedCols   = sharedContentColumns(req)
+    val sourceJoin   = joinColumns(sharedCols, "s", "d")
+    val targetFilter = (sharedCols map ("d." + _ + " = ?")) :+ "d.file_content IS NULL" mkString " AND "
+
+    // The source table can't be referenced in a subquery in MySQL, hence the provider-specific joins
+    val sql =
+      req.provider match {
+        case MySQL ⇒
+          s"""|UPDATE $table d
+              |       JOIN $table s ON $sourceJoin AND s.file_content IS NOT NULL
+              |SET    d.file_content = s.file_content
+              |WHERE  $targetFilter
+              |""".stripMargin
+        case PostgreSQL ⇒
+          s"""|UPDATE $table d
+              |SET    file_content = s.file_content
+              |FROM   $table s
+              |WHERE  $sourceJoin AND s.file_content IS NOT NULL
+              |       AND $targetFilter
+              |""".stripMargin
+      }
+
+    useAndClose(connection.prepareStatement(sql)) { ps ⇒
+      setSharedContentParams(ps, Iterator.from(1), req, digest)
+      ps.executeUpdate() > 0
+    }
+  }
+
+  // Set the content of the row just inserted without content from the request, if copying it failed
+  private def setAttachmentContent(connection: Connection, req: Request, digest: String, bodyURI: String): Unit = {
+
+    val sql =
+      s"""|UPDATE ${tableName(req)}
+          |SET    file_content = ?
+          |WHERE  ${sharedContentColumns(req) map (_ + " = ?") mkString " AND "}
+          |       AND file_content IS NULL
+          |""".stripMargin
+
+    useAndClose(connection.prepareStatement(sql)) { ps ⇒
+      useAndClose(NetUtils.uriToInputStream(bodyURI)) { is ⇒
+        val position = Iterator.from(1)
+        ps.setBinaryStream(position.next(), is)
+        setSharedContentParams(ps, position, req, digest)
+        ps.executeUpdate()
+      }
+    }
+  }
+
+  // Provide the content of the attachment, if any, and close its stream after use
+  private def withAttachmentContent[T](
+    req                : Request,
+    bodyURIAndDigestOpt: Option[(String, String)],
+    copy               : Boolean)(
+    body               : Option[AttachmentContent] ⇒ T
+  ): T =
+    (req.forAttachment, bodyURIAndDigestOpt) match {
+      case (false, _) ⇒
+        body(None)
+      case (true, Some((_, digest))) if copy ⇒
+        body(Some(CopiedContent(digest)))
+      case (true, Some((bodyURI, digest))) ⇒
+        useAndClose(NetUtils.uriToInputStream(bodyURI))(is ⇒ body(Some(StreamedContent(is, Some(digest)))))
+      case (true, None) ⇒
+        useAndClose(RequestReader.requestInputStream())(is ⇒ body(Some(StreamedContent(is, None))))
+    }
+
   // NOTE: Gets the first organization if there are multiple organization roots
   private def currentUserOrganization(connection: Connection, req: Request): Option[OrganizationId] =
     httpRequest.credentials.flatMap(_.defaultOrganization).map(OrganizationSupport.createIfNecessary(connection, req.provider, _))
@@ -252,10 +378,22 @@ trait CreateUpdateDelete
 
     }
 
+    // When deduplicating attachments, the body is spooled so we can compare its digest with the stored digests
+    val deduplicate =
+      req.forAttachment && ! delete && requestDeduplicateAttachments && DeduplicateAttachmentsProviders(req.provider)
+
+    val bodyURIAndDigestOpt = deduplicate option RequestReader.bodyURIAndDigest()
+    val digestOpt           = bodyURIAndDigestOpt map (_._2)
+
+    // If another row of the attachment has the same content, e.g. a previous version of the attachment or a draft, the
+    // new row still gets inserted, but its content is copied from that row instead of being sent to the database again
+    val copyAttachment = digestOpt exists (attachmentContentExists(connection, req, _))
+
     // Do insert, unless we're deleting draft data
     val deletingDataDraft = delete && req.dataPart.exists(_.isDraft)
-    if (! deletingDataDraft) {
-      val possibleCols = insertCols(req, existingRow, delete, versionToSet, currentUserOrganization(connection, req))
+
+    if (! deletingDataDraft) withAttachmentContent(req, bodyURIAndDigestOpt, copyAttachment) { attachmentContent ⇒
+      val possibleCols = insertCols(req, existingRow, delete, versionToSet, currentUserOrganization(connection, req), attachmentContent)
       val includedCols = possibleCols.filter(_.included)
       val colNames     = includedCols.map(_.name).mkString(", ")
       val colValues    =
@@ -281,6 +419,12 @@ trait CreateUpdateDelete
 
         ps.executeUpdate()
       }
+
+      // The row with the content might have been removed in the meantime, in which case we store the content we got
+      attachmentContent collect { case CopiedContent(digest) ⇒
+        if (! copyAttachmentContent(connection, req, digest))
+          setAttachmentContent(connection, req, digest, bodyURIAndDigestOpt.get._1)
+      }
     }
 
     versionToSet
@@ -13,7 +13,7 @@
  */
 package org.orbeon.oxf.fr.persistence.relational.rest
 
-import java.io.{ByteArrayInputStream, OutputStreamWriter, StringReader}
+import java.io.{OutputStreamWriter, StringReader}
 
 import org.joda.time.DateTime
 import org.orbeon.oxf.fr.permission.PermissionsAuthorization.CheckWithDataUser
@@ -123,11 +123,10 @@ trait Read extends RequestResponse with Common with FormRunnerPersistence {
 
             // Write content (XML / file)
             if (req.forAttachment) {
-              val stream = req.provider match {
-                case PostgreSQL ⇒ new ByteArrayInputStream(resultSet.getBytes("file_content"))
-                case _          ⇒ resultSet.getBlob("file_content").getBinaryStream
+              // Stream the content on all providers, without first reading it into a byte array
+              useAndClose(resultSet.getBinaryStream("file_content")) { stream ⇒
+                NetUtils.copyStream(stream, httpResponse.getOutputStream)
               }
-              NetUtils.copyStream(stream, httpResponse.getOutputStream)
             } else {
               val stream = req.provider match {
                 case PostgreSQL ⇒ new StringReader(resultSet.getString("xml"))
@@ -49,6 +49,7 @@ trait RequestResponse {
   def requestUsername : Option[String] = headerValue(Headers.OrbeonUsernameLower)
   def requestGroup: Option[String]     = headerValue(Headers.OrbeonGroupLower)
   def requestFlatView                  = headerValue("orbeon-create-flat-view").contains("true")
+  def requestDeduplicateAttachments    = headerValue("orbeon-deduplicate-attachments").contains("true")
 
   val CrudFormPath = "/fr/service/([^/]+)/crud/([^/]+)/([^/]+)/form/([^/]+)".r
   val CrudDataPath = "/fr/service/([^/]+)/crud/([^/]+)/([^/]+)/(data|draft)/([^/]+)/([^/]+)".r
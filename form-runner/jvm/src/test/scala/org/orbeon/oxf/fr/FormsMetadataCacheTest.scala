@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.fr
+
+import java.util.concurrent.{Callable, FutureTask}
+
+import org.junit.{Before, Test}
+import org.orbeon.dom.{DocumentFactory, QName}
+import org.orbeon.oxf.fr.FormRunnerPersistence._
+import org.orbeon.oxf.fr.FormRunnerPersistenceProxy._
+import org.orbeon.oxf.http.HttpMethod
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.test.ResourceManagerTestBase
+import org.orbeon.oxf.xforms.NodeInfoFactory.elementInfo
+import org.orbeon.oxf.xml.XMLConstants
+import org.orbeon.saxon.om.NodeInfo
+import org.scalatest.junit.AssertionsForJUnit
+
+class FormsMetadataCacheTest extends ResourceManagerTestBase with AssertionsForJUnit {
+
+  val Providers = List("provider1", "provider2")
+  val Query     = "?all-versions=false"
+
+  @Before def clearCache(): Unit = invalidateFormsMetadataCache()
+
+  private def setIntegerProperty(name: String, value: Int): Unit =
+    Properties.instance.getPropertySet.setProperty(
+      DocumentFactory.createElement("property"),
+      name,
+      XMLConstants.XS_INTEGER_QNAME,
+      value.toString
+    )
+
+  // Read through the cache, returning the given forms and counting the reads
+  private class Reader(formElements: List[NodeInfo], isComplete: Boolean = true) {
+    var reads = 0
+    def read(providers: List[String] = Providers, query: String = Query): List[NodeInfo] =
+      cachedFormsMetadata(providers, query) {
+        reads += 1
+        (formElements, isComplete)
+      }
+  }
+
+  private def completed[T](value: T) = {
+    val future = new FutureTask(new Callable[T] { def call(): T = value })
+    future.run()
+    future
+  }
+
+  private def failed[T](t: Throwable) = {
+    val future = new FutureTask(new Callable[T] { def call(): T = throw t })
+    future.run()
+    future
+  }
+
+  // Never completes, as it is never run
+  private def pending[T] = new FutureTask(new Callable[T] { def call(): T = throw new IllegalStateException })
+
+  @Test def returnCachedMetadata(): Unit = {
+
+    val forms  = List(elementInfo(QName("form")))
+    val reader = new Reader(forms)
+
+    assert(forms === reader.read())
+    assert(forms === reader.read())
+    assert(1 === reader.reads)
+
+    // Another query or set of providers is read separately
+    reader.read(query = "?all-versions=true")
+    reader.read(providers = Providers.take(1))
+    assert(3 === reader.reads)
+  }
+
+  @Test def readAgainAfterPublish(): Unit = {
+
+    val reader = new Reader(List(elementInfo(QName("form"))))
+
+    reader.read()
+    invalidateFormsMetadataCache()
+    reader.read()
+    reader.read()
+    assert(2 === reader.reads)
+
+    // Publishing or deleting a form definition invalidates the cache, but not reading it or saving data
+    assert(  changesPublishedForms(FormOrData.Form, HttpMethod.PUT))
+    assert(  changesPublishedForms(FormOrData.Form, HttpMethod.DELETE))
+    assert(! changesPublishedForms(FormOrData.Form, HttpMethod.GET))
+    assert(! changesPublishedForms(FormOrData.Data, HttpMethod.PUT))
+  }
+
+  @Test def dontCacheIncompleteMetadata(): Unit = {
+
+    val reader = new Reader(List(elementInfo(QName("form"))), isComplete = false)
+
+    reader.read()
+    reader.read()
+    assert(2 === reader.reads)
+  }
+
+  @Test def dontCacheWhenDisabled(): Unit = {
+
+    val reader = new Reader(List(elementInfo(QName("form"))))
+
+    setIntegerProperty(FormMetadataCacheTTLProperty, 0)
+    try {
+      reader.read()
+      reader.read()
+      assert(2 === reader.reads)
+    } finally
+      setIntegerProperty(FormMetadataCacheTTLProperty, DefaultFormMetadataCacheTTLMs)
+  }
+
+  @Test def mergeProvidersInOrder(): Unit = {
+
+    val futures =
+      List(
+        "provider1" → completed(List("a", "b")),
+        "provider2" → completed[List[String]](Nil),
+        "provider3" → completed(List("c"))
+      )
+
+    assert((List("a", "b", "c"), true) === collectProviderResults(futures))
+  }
+
+  @Test def skipProviderNotRespondingInTime(): Unit = {
+
+    val slowTimeoutProperty = PersistencePropertyPrefix :: "slow" :: FormMetadataTimeoutProperty :: Nil mkString "."
+    val slow                = pending[List[String]]
+
+    setIntegerProperty(slowTimeoutProperty, 10)
+    try {
+      val futures =
+        List(
+          "provider1" → completed(List("a")),
+          "slow"      → slow,
+          "provider2" → completed(List("b"))
+        )
+
+      // The forms of the other providers are returned, but the result is incomplete
+      assert((List("a", "b"), false) === collectProviderResults(futures))
+      assert(slow.isCancelled)
+    } finally
+      setIntegerProperty(slowTimeoutProperty, DefaultFormMetadataTimeoutMs)
+  }
+
+  @Test def failWhenProviderFails(): Unit = {
+
+    val other = pending[List[String]]
+
+    val futures =
+      List(
+        "provider1" → failed[List[String]](new IllegalStateException("provider failed")),
+        "provider2" → other
+      )
+
+    intercept[IllegalStateException] {
+      collectProviderResults(futures)
+    }
+
+    // The request fails without waiting for the other providers
+    assert(other.isCancelled)
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.dom.saxon;
+
+import org.orbeon.dom.*;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Index of the document order and of the sibling position of the nodes of a document.
+ *
+ * The index is a snapshot of the document when it is built. Nodes inserted afterwards are not found in the index.
+ * Nodes removed afterwards keep their relative order, but not their sibling position, so sibling positions are
+ * checked against the content of the parent before being returned. A node which moved, as opposed to a copy of it
+ * being inserted, keeps its old order in the index, so callers check with isInPlace() that the order still holds.
+ *
+ * Namespace nodes are not indexed.
+ */
+final class DocumentOrderIndex {
+
+    private final Document document;
+    private final IdentityHashMap<Node, Integer> orders = new IdentityHashMap<Node, Integer>();
+    private int[] siblingPositions = new int[16]; // by document order
+    private int[] parentOrders     = new int[16]; // by document order
+
+    DocumentOrderIndex(Document document) {
+        this.document = document;
+
+        add(document, 0, -1);
+
+        // Same workaround as in NodeWrapper.getSiblingPosition()
+        final Element rootElement = document.getRootElement();
+        if (document.nodeCount() == 0 && rootElement != null)
+            addSubtree(rootElement, 0, 0);
+        else
+            addContent(document, 0);
+    }
+
+    // Document order of the node, or -1 if the node is not in the index
+    int order(Node node) {
+        final Integer order = orders.get(node);
+        return order != null ? order : -1;
+    }
+
+    // Sibling position of the node, or -1 if the node is not in the index or if its position has changed
+    int siblingPosition(Node node) {
+        final int order = order(node);
+        if (order == -1)
+            return -1;
+
+        final int position = siblingPositions[order];
+        final Element parent = node.getParent();
+
+        if (parent == null) {
+            // Children of the document are not checked
+            return -1;
+        } else if (node instanceof Attribute) {
+            return position < parent.attributeCount() && parent.attribute(position) == node ? position : -1;
+        } else {
+            return parent.node(position) == node ? position : -1;
+        }
+    }
+
+    // Whether the node and its ancestors have the same parents and sibling positions as when the index was built
+    //
+    // The order of such nodes relative to each other is the same as when the index was built. Removing or inserting
+    // other nodes doesn't change this, except for the sibling positions of the following siblings. Moving the node or
+    // one of its ancestors does.
+    boolean isInPlace(Node node) {
+        Node current = node;
+        while (current != document) {
+            final int order = order(current);
+            if (order == -1)
+                return false;
+
+            final Element parent = current.getParent();
+            if (parent == null) {
+                // The root element or another child of the document, unless the node is detached
+                return current.getDocument() == document && parentOrders[order] == 0;
+            } else if (order(parent) != parentOrders[order] || siblingPosition(current) == -1) {
+                return false;
+            }
+            current = parent;
+        }
+        return true;
+    }
+
+    int size() {
+        return orders.size();
+    }
+
+    // Return the order of the node
+    private int add(Node node, int siblingPosition, int parentOrder) {
+        final int order = orders.size();
+        if (order == siblingPositions.length) {
+            siblingPositions = grow(siblingPositions);
+            parentOrders     = grow(parentOrders);
+        }
+        siblingPositions[order] = siblingPosition;
+        parentOrders[order]     = parentOrder;
+        orders.put(node, order);
+        return order;
+    }
+
+    private static int[] grow(int[] values) {
+        final int[] newValues = new int[values.length * 2];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        return newValues;
+    }
+
+    // Like in NodeWrapper, sibling positions are positions in the content of the parent, including namespace nodes
+    private void addContent(Branch branch, int branchOrder) {
+        final int count = branch.nodeCount();
+        for (int i = 0; i < count; i++)
+            addSubtree(branch.node(i), i, branchOrder);
+    }
+
+    private void addSubtree(Node node, int siblingPosition, int parentOrder) {
+        if (node instanceof Namespace)
+            return;
+
+        final int order = add(node, siblingPosition, parentOrder);
+
+        if (node instanceof Element) {
+            final Element element = (Element) node;
+
+            // Attributes follow their element and precede its children
+            final int attributeCount = element.attributeCount();
+            for (int i = 0; i < attributeCount; i++)
+                add(element.attribute(i), i, order);
+
+            addContent(element, order);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.orbeon.dom.saxon;
 
 import org.orbeon.dom.Document;
 import org.orbeon.dom.Element;
+import org.orbeon.dom.Namespace;
 import org.orbeon.dom.Node;
 import org.orbeon.saxon.Configuration;
 import org.orbeon.saxon.om.DocumentInfo;
@@ -32,6 +33,9 @@ public class DocumentWrapper extends org.orbeon.dom.saxon.NodeWrapper implements
 
     private IdGetter idGetter;
 
+    private boolean documentOrderIndexEnabled;
+    private DocumentOrderIndex documentOrderIndex; // null means not built yet
+
     public DocumentWrapper(Document doc, String baseURI, Configuration config) {
         super(doc, null, 0);
 
@@ -73,6 +77,59 @@ public class DocumentWrapper extends org.orbeon.dom.saxon.NodeWrapper implements
         }
     }
 
+    /**
+     * Enable the index of document order and sibling positions. This makes sorting, positional predicates and
+     * sibling axes fast on large documents. The index is built lazily, and rebuilt when a node is not found in it.
+     */
+    public void enableDocumentOrderIndex() {
+        this.documentOrderIndexEnabled = true;
+    }
+
+    /**
+     * Discard the index of document order and sibling positions after a structural change to the document.
+     */
+    public void invalidateDocumentOrderIndex() {
+        this.documentOrderIndex = null;
+    }
+
+    // Index containing both nodes, or null if the document order of the nodes must be found by navigating the tree
+    DocumentOrderIndex documentOrderIndex(Node node1, Node node2) {
+        if (! documentOrderIndexEnabled || node1 instanceof Namespace || node2 instanceof Namespace)
+            return null;
+
+        DocumentOrderIndex index = getDocumentOrderIndex();
+        if (! index.isInPlace(node1) || ! index.isInPlace(node2)) {
+            if (node1.getDocument() != this.node || node2.getDocument() != this.node)
+                return null;
+
+            // A node was inserted or moved after the index was built
+            documentOrderIndex = null;
+            index = getDocumentOrderIndex();
+        }
+        return index.order(node1) != -1 && index.order(node2) != -1 ? index : null;
+    }
+
+    // Sibling position of the node, or -1 if unknown
+    int siblingPosition(Node node) {
+        // Children of the document are not handled by the index
+        if (! documentOrderIndexEnabled || node instanceof Namespace || node.getParent() == null)
+            return -1;
+
+        final DocumentOrderIndex index = getDocumentOrderIndex();
+        final int position = index.siblingPosition(node);
+        if (position == -1 && index.order(node) != -1) {
+            // The node moved since the index was built, which also means that positions are obsolete for other nodes
+            documentOrderIndex = null;
+        }
+        return position;
+    }
+
+    private DocumentOrderIndex getDocumentOrderIndex() {
+        if (documentOrderIndex == null)
+            documentOrderIndex = new DocumentOrderIndex((Document) node);
+        return documentOrderIndex;
+    }
+
     public Iterator getUnparsedEntityNames() {
         return Collections.EMPTY_LIST.iterator();
     }
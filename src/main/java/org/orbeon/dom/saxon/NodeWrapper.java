@@ -171,6 +171,16 @@ public class NodeWrapper implements NodeInfo, VirtualNode, SiblingCountingNode {
     }
 
     public int compareOrder(NodeInfo other) {
+        // Use the index of the document if possible
+        if (docWrapper != null && other instanceof NodeWrapper && ((NodeWrapper) other).docWrapper == docWrapper) {
+            final Node otherNode = ((NodeWrapper) other).node;
+            final DocumentOrderIndex orderIndex = docWrapper.documentOrderIndex(node, otherNode);
+            if (orderIndex != null) {
+                final int order      = orderIndex.order(node);
+                final int otherOrder = orderIndex.order(otherNode);
+                return order < otherOrder ? -1 : (order == otherOrder ? 0 : +1);
+            }
+        }
         return Navigator.compareOrder(this, (SiblingCountingNode) other);
     }
 
@@ -189,7 +199,9 @@ public class NodeWrapper implements NodeInfo, VirtualNode, SiblingCountingNode {
     public int getNameCode() {
         switch (getNodeKind()) {
             case Type.ELEMENT:
+                return getNameCode(((Element) node).getQName());
             case Type.ATTRIBUTE:
+                return getNameCode(((Attribute) node).getQName());
             case Type.PROCESSING_INSTRUCTION:
             case Type.NAMESPACE:
                 return docWrapper.getNamePool().allocate(getPrefix(), getURI(), getLocalPart());
@@ -198,6 +210,20 @@ public class NodeWrapper implements NodeInfo, VirtualNode, SiblingCountingNode {
         }
     }
 
+    // QNames are immutable and name codes are never released by the pool, so the name code can be kept on the QName.
+    // This avoids going through the synchronized NamePool for each name test.
+    private int getNameCode(QName qName) {
+        final NamePool namePool = docWrapper.getNamePool();
+        final int cachedNameCode = qName.cachedNameCode(namePool);
+        if (cachedNameCode != -1) {
+            return cachedNameCode;
+        } else {
+            final int nameCode = namePool.allocate(qName.namespace().prefix(), qName.namespace().uri(), qName.name());
+            qName.cacheNameCode(namePool, nameCode);
+            return nameCode;
+        }
+    }
+
     public int getFingerprint() {
         return getNameCode() & 0xfffff;
     }
@@ -285,6 +311,8 @@ public class NodeWrapper implements NodeInfo, VirtualNode, SiblingCountingNode {
 
     // Get the index position of this node among its siblings (starting from 0)
     public int getSiblingPosition() {
+        if (index == -1 && docWrapper != null)
+            index = docWrapper.siblingPosition(node);
         if (index == -1) {
             int ix = 0;
             getParent();
@@ -460,7 +488,7 @@ public class NodeWrapper implements NodeInfo, VirtualNode, SiblingCountingNode {
 
     public String getAttributeValue(int fingerprint) {
         if (node instanceof Element) {
-            Iterator list = ((Element) node).attributes().iterator();
+            Iterator list = ((Element) node).attributeIterator();
             NamePool pool = docWrapper.getNamePool();
             while (list.hasNext()) {
                 Attribute att = (Attribute) list.next();
@@ -486,10 +514,11 @@ public class NodeWrapper implements NodeInfo, VirtualNode, SiblingCountingNode {
         if (node instanceof Document) {
             return true;
         } else if (node instanceof Element) {
-            // Beware: content() contains Namespace nodes (which is broken)!
-            List<Node> content = ((Element) node).content();
-            for (int i = 0; i < content.size(); i++) {
-                if (!(content.get(i) instanceof Namespace)) {
+            // Beware: content contains Namespace nodes (which is broken)!
+            final Element element = (Element) node;
+            final int count = element.nodeCount();
+            for (int i = 0; i < count; i++) {
+                if (!(element.node(i) instanceof Namespace)) {
                     return true;
                 }
             }
@@ -540,7 +569,7 @@ public class NodeWrapper implements NodeInfo, VirtualNode, SiblingCountingNode {
 
         AttributeEnumeration(NodeWrapper start) {
             this.start = start;
-            atts = ((Element) start.node).attributes().iterator();
+            atts = ((Element) start.node).attributeIterator();
         }
 
         public void advance() {
@@ -56,7 +56,13 @@ public class CacheProcessor extends ProcessorImpl {
                         if (dataSaxStore == null) {
                             // Can't find data in cache, read it and store it in cache
                             dataSaxStore = new SAXStore();
-                            readInputAsSAX(pipelineContext, INPUT_DATA, dataSaxStore);
+                            dataSaxStore.setConfiguredSpill();
+                            try {
+                                readInputAsSAX(pipelineContext, INPUT_DATA, dataSaxStore);
+                            } catch (RuntimeException e) {
+                                dataSaxStore.dispose();
+                                throw e;
+                            }
                             ObjectCache.instance().add(internalKey, state.validity, dataSaxStore);
                         }
                         dataSaxStore.replay(receiver);
@@ -15,6 +15,8 @@ package org.orbeon.oxf.processor;
 
 import org.apache.log4j.Logger;
 import org.orbeon.oxf.common.OXFException;
+import org.orbeon.oxf.externalcontext.ExternalContext;
+import org.orbeon.oxf.externalcontext.WebAppListener;
 import org.orbeon.oxf.pipeline.api.PipelineContext;
 import org.orbeon.oxf.util.LoggerFactory;
 
@@ -22,18 +24,36 @@ import javax.naming.InitialContext;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.Statement;
+import java.util.*;
 
 /**
  * Represent a database context for processors using SQL connections.
+ *
+ * Connections of internal datasources are not closed at the end of the pipeline execution. Up to 10 idle connections
+ * per datasource are cached for later executions, and they are closed when the web app is destroyed. This is only a
+ * cache: the number of open connections is not bounded, as each concurrent pipeline execution takes an idle
+ * connection or opens a new one. Connections of JNDI datasources are closed, as the container pools them.
  */
 public class DatabaseContext {
 
     private static Logger logger = LoggerFactory.createLogger(DatabaseContext.class);
     public static final String DATASOURCE_CONTEXT = "datasource-context"; // used by DatabaseContext
 
+    // Maximum number of idle connections cached per internal datasource, which doesn't limit connections in use
+    private static final int IDLE_CONNECTION_CACHE_SIZE = 10;
+    // Maximum number of idle prepared statements kept per connection
+    private static final int MAX_CACHED_STATEMENTS = 50;
+    // Timeout in seconds when checking that an idle connection is still valid
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    // Cached idle connections of internal datasources, by cache key
+    private static final Map<String, LinkedList<Connection>> idleConnectionCache = new HashMap<String, LinkedList<Connection>>();
+    // Whether a listener closes the idle connections when the web app is destroyed
+    private static boolean hasWebAppListener = false;
+
     /**
      * Get a connection valid for this pipeline execution, given a JDBC JNDI name.
      *
@@ -59,7 +79,7 @@ public class DatabaseContext {
                 }
                 Connection newConnection = ds.getConnection();
                 // Set connection properties
-                setConnectionProperties(newConnection, pipelineContext, jndiName);
+                setConnectionProperties(newConnection, pipelineContext, jndiName, null);
                 // Save connection into context
                 getContext(pipelineContext).connections.put(jndiName, newConnection);
 
@@ -89,22 +109,26 @@ public class DatabaseContext {
             synchronized (DatabaseContext.class) {
                 connection = (Connection) getContext(pipelineContext).connections.get(datasource.toString());
                 if (connection == null) {
-                    // Create connection
-                    try {
-                        Class.forName(datasource.getDriverClassName());
-                    } catch (ClassNotFoundException e) {
-                        throw new OXFException("Cannot load JDBC driver for class: " + datasource.getDriverClassName());
-                    }
-                    Connection newConnection;
-                    try {
-                        newConnection = DriverManager.getConnection(datasource.getUri(), datasource.getUsername(), datasource.getPassword());
-                    } catch (SQLException e) {
-                        throw new OXFException("Cannot get connection from JDBC DriverManager for datasource: " + datasource, e);
+                    // Reuse an idle connection, or create a new connection
+                    final String cacheKey = cacheKey(datasource);
+                    addWebAppListener(pipelineContext);
+                    Connection newConnection = takeIdleConnection(cacheKey);
+                    if (newConnection == null) {
+                        try {
+                            Class.forName(datasource.getDriverClassName());
+                        } catch (ClassNotFoundException e) {
+                            throw new OXFException("Cannot load JDBC driver for class: " + datasource.getDriverClassName());
+                        }
+                        try {
+                            newConnection = DriverManager.getConnection(datasource.getUri(), datasource.getUsername(), datasource.getPassword());
+                        } catch (SQLException e) {
+                            throw new OXFException("Cannot get connection from JDBC DriverManager for datasource: " + datasource, e);
+                        }
                     }
 
                     // Set connection properties
                     try {
-                        setConnectionProperties(newConnection, pipelineContext, datasource.toString());
+                        setConnectionProperties(newConnection, pipelineContext, datasource.toString(), cacheKey);
                     } catch (Exception e) {
                          throw new OXFException(e);
                     }
@@ -119,29 +143,154 @@ public class DatabaseContext {
         return connection;
     }
 
-    private static void setConnectionProperties(final Connection connection, PipelineContext pipelineContext, final String datasourceName) throws SQLException {
+    /**
+     * Get a prepared statement for the given SQL text, reusing a statement previously prepared on the same connection
+     * during this pipeline execution if possible.
+     *
+     * The returned statement must be released with releaseStatement() instead of being closed. The same statement is
+     * never returned twice before being released, so nested executions of the same query are safe.
+     *
+     * @param pipelineContext  current pipeline context
+     * @param connection       connection obtained from this class
+     * @param sql              SQL text
+     * @return                 PreparedStatement object
+     */
+    public static PreparedStatement prepareStatement(PipelineContext pipelineContext, Connection connection, String sql) throws SQLException {
+        final StatementCache statementCache = getContext(pipelineContext).statementCaches.get(connection);
+        if (statementCache != null)
+            return statementCache.checkout(sql);
+        else
+            return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Release a statement obtained from prepareStatement(), or close any other statement.
+     *
+     * Releasing a statement which was already released or closed has no effect.
+     *
+     * @param pipelineContext  current pipeline context
+     * @param statement        statement to release
+     */
+    public static void releaseStatement(PipelineContext pipelineContext, Statement statement) throws SQLException {
+        for (final StatementCache statementCache : getContext(pipelineContext).statementCaches.values())
+            if (statementCache.release(statement))
+                return;
+        statement.close();
+    }
+
+    private static void setConnectionProperties(final Connection connection, PipelineContext pipelineContext, final String datasourceName, final String cacheKey) throws SQLException {
         // Set connection properties
         connection.setAutoCommit(false);
+        // Cache prepared statements for the duration of the pipeline execution
+        final StatementCache statementCache = new StatementCache(connection);
+        getContext(pipelineContext).statementCaches.put(connection, statementCache);
         // Commit or rollback when context is destroyed
         pipelineContext.addContextListener(new PipelineContext.ContextListenerAdapter() {
             public void contextDestroyed(boolean success) {
                 try {
+                    statementCache.close();
                     if (success) {
                         logger.info("Committing JDBC connection for datasource: " + datasourceName + ".");
                         connection.commit();
-                        connection.close();
                     } else {
                         logger.info("Rolling back JDBC connection for datasource: " + datasourceName + ".");
                         connection.rollback();
-                        connection.close();
                     }
                 } catch (SQLException e) {
+                    closeQuietly(connection);
                     throw new OXFException(e);
                 }
+                // Connections of internal datasources go back to the idle connection cache
+                if (cacheKey != null)
+                    releaseIdleConnection(cacheKey, connection);
+                else
+                    closeQuietly(connection);
             }
         });
     }
 
+    // Include the password so that datasources only differing by their password don't share connections
+    private static String cacheKey(Datasource datasource) {
+        return datasource.toString() + "|" + datasource.getPassword();
+    }
+
+    private static Connection takeIdleConnection(String cacheKey) {
+        while (true) {
+            final Connection connection;
+            synchronized (idleConnectionCache) {
+                final LinkedList<Connection> connections = idleConnectionCache.get(cacheKey);
+                if (connections == null || connections.isEmpty())
+                    return null;
+                // Most recently used first, as it is the most likely to still be valid
+                connection = connections.removeLast();
+            }
+            try {
+                if (connection.isValid(VALIDATION_TIMEOUT))
+                    return connection;
+            } catch (SQLException e) {
+                // Discard connection below
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    private static void releaseIdleConnection(String cacheKey, Connection connection) {
+        synchronized (idleConnectionCache) {
+            LinkedList<Connection> connections = idleConnectionCache.get(cacheKey);
+            if (connections == null) {
+                connections = new LinkedList<Connection>();
+                idleConnectionCache.put(cacheKey, connections);
+            }
+            if (connections.size() < IDLE_CONNECTION_CACHE_SIZE) {
+                connections.addLast(connection);
+                return;
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    /**
+     * Close the idle connections of internal datasources.
+     *
+     * Connections in use by running pipelines are not affected. They go back to the cache when released.
+     */
+    public static void closeIdleConnections() {
+        final List<Connection> connections = new ArrayList<Connection>();
+        synchronized (idleConnectionCache) {
+            for (final LinkedList<Connection> cachedConnections : idleConnectionCache.values())
+                connections.addAll(cachedConnections);
+            idleConnectionCache.clear();
+            hasWebAppListener = false;
+        }
+        for (final Connection connection : connections)
+            closeQuietly(connection);
+    }
+
+    // Without a web app, for example from the command line, idle connections stay open until the JVM exits
+    private static void addWebAppListener(PipelineContext pipelineContext) {
+        final ExternalContext externalContext = (ExternalContext) pipelineContext.getAttribute(PipelineContext.EXTERNAL_CONTEXT);
+        if (externalContext == null || externalContext.getWebAppContext() == null)
+            return;
+        synchronized (idleConnectionCache) {
+            if (hasWebAppListener)
+                return;
+            hasWebAppListener = true;
+        }
+        externalContext.getWebAppContext().addListener(new WebAppListener() {
+            public void webAppDestroyed() {
+                closeIdleConnections();
+            }
+        });
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Exception while closing JDBC connection.", e);
+        }
+    }
+
     private static Context getContext(PipelineContext pipelineContext) {
         Context context = (Context) pipelineContext.getAttribute(DATASOURCE_CONTEXT);
         if (context == null) {
@@ -154,5 +303,65 @@ public class DatabaseContext {
     private static class Context {
         // Map datasource to connections
         public Map connections = new HashMap();
+        // Map connections to their statement cache
+        public Map<Connection, StatementCache> statementCaches = new IdentityHashMap<Connection, StatementCache>();
+    }
+
+    /**
+     * Prepared statements of a connection, by SQL text.
+     *
+     * Only idle statements are kept by SQL text, least recently used first. When there are too many idle statements,
+     * the least recently used one is closed.
+     */
+    private static class StatementCache {
+
+        private final Connection connection;
+        private final LinkedHashMap<String, PreparedStatement> idleStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+        private final Map<Statement, String> checkedOutStatements = new IdentityHashMap<Statement, String>();
+
+        public StatementCache(Connection connection) {
+            this.connection = connection;
+        }
+
+        public PreparedStatement checkout(String sql) throws SQLException {
+            PreparedStatement statement = idleStatements.remove(sql);
+            if (statement != null) {
+                statement.clearParameters();
+            } else {
+                statement = connection.prepareStatement(sql);
+            }
+            checkedOutStatements.put(statement, sql);
+            return statement;
+        }
+
+        // Return false if the statement doesn't belong to this cache
+        public boolean release(Statement statement) throws SQLException {
+            final String sql = checkedOutStatements.remove(statement);
+            if (sql == null)
+                return idleStatements.containsValue(statement);
+
+            if (idleStatements.containsKey(sql)) {
+                // Nested execution of the same query: keep the statement already released
+                statement.close();
+            } else {
+                idleStatements.put(sql, (PreparedStatement) statement);
+                if (idleStatements.size() > MAX_CACHED_STATEMENTS) {
+                    final Iterator<PreparedStatement> i = idleStatements.values().iterator();
+                    final PreparedStatement eldestStatement = i.next();
+                    i.remove();
+                    eldestStatement.close();
+                }
+            }
+            return true;
+        }
+
+        public void close() throws SQLException {
+            for (final PreparedStatement statement : idleStatements.values())
+                statement.close();
+            for (final Statement statement : checkedOutStatements.keySet())
+                statement.close();
+            idleStatements.clear();
+            checkedOutStatements.clear();
+        }
     }
 }
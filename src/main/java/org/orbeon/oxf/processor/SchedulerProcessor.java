@@ -101,8 +101,27 @@ public class SchedulerProcessor extends ProcessorImpl {
                             throw new OXFException("Unsupported long value", e);
                         }
 
+                        // "synchronized" is the legacy way of saying that a run is skipped if the previous one is still running
                         String sync = XPathUtils.selectStringValueNormalize(startTaskElement, "synchronized");
-                        config.setSynchro(Boolean.valueOf(sync).booleanValue());
+                        String overlap = XPathUtils.selectStringValueNormalize(startTaskElement, "overlap");
+                        if (overlap != null && ! overlap.equals("")) {
+                            try {
+                                config.setOverlapPolicy(Task.OverlapPolicy.valueOf(overlap.toUpperCase()));
+                            } catch (IllegalArgumentException e) {
+                                throw new OXFException("Unsupported overlap value (must be one of `skip`, `queue` or `concurrent`): " + overlap);
+                            }
+                        } else {
+                            config.setOverlapPolicy(Boolean.valueOf(sync).booleanValue() ? Task.OverlapPolicy.SKIP : Task.OverlapPolicy.CONCURRENT);
+                        }
+
+                        String jitter = XPathUtils.selectStringValueNormalize(startTaskElement, "jitter");
+                        if (jitter != null && ! jitter.equals("")) {
+                            try {
+                                config.setJitter(Long.parseLong(jitter));
+                            } catch (NumberFormatException e) {
+                                throw new OXFException("Unsupported long value", e);
+                            }
+                        }
 
                         configs.add(config);
                     }
@@ -134,9 +153,11 @@ public class SchedulerProcessor extends ProcessorImpl {
                         // NOTE: The ExternalContext passed:
                         // - has visibility on the application context only
                         // - doesn't keep references to the current context
-                        ProcessorTask task = new ProcessorTask(config.getName(), processor, config.isSynchro(),
+                        ProcessorTask task = new ProcessorTask(config.getName(), processor,
                                 new WebAppExternalContext(externalContext.getWebAppContext(), scala.Option.apply((HttpSession) null)));
                         task.setSchedule(config.getStartTime(), config.getInterval());
+                        task.setOverlapPolicy(config.getOverlapPolicy());
+                        task.setJitter(config.getJitter());
                         scheduler.schedule(task);
                         break;
                     case Config.STOP:
@@ -163,13 +184,10 @@ public class SchedulerProcessor extends ProcessorImpl {
         private Processor processor;
         private ExternalContext externalContext;
         private String name;
-        private String status = WAITING;
-        private boolean sync;
 
-        public ProcessorTask(String name, Processor processor, boolean sync, ExternalContext externalContext) {
+        public ProcessorTask(String name, Processor processor, ExternalContext externalContext) {
             this.name = name;
             this.processor = processor;
-            this.sync = sync;
             this.externalContext = externalContext;
         }
 
@@ -177,29 +195,14 @@ public class SchedulerProcessor extends ProcessorImpl {
             return name;
         }
 
-        synchronized public String getStatus() {
-            return status;
-        }
-
-        synchronized public void setStatus(boolean running) {
-            if (running)
-                status = RUNNING;
-            else
-                status = WAITING;
+        public String getStatus() {
+            return isExecuting() ? RUNNING : WAITING;
         }
 
         public void run() {
             try {
-                if (sync && getStatus().equals(RUNNING)) {
-                    if (logger.isInfoEnabled())
-                        logger.info("Task: " + getName() + " won't run since it is already running");
-                } else {
-                    setStatus(true);
-                    InitUtils.runProcessor(processor, externalContext, new PipelineContext(), logger);
-                    setStatus(false);
-                }
+                InitUtils.runProcessor(processor, externalContext, new PipelineContext(), logger);
             } catch (Exception e) {
-                setStatus(false);
                 throw new OXFException(e);
             }
         }
@@ -214,7 +217,8 @@ public class SchedulerProcessor extends ProcessorImpl {
         private ProcessorDefinition processorDefinition;
         private long startTime;
         private long interval;
-        private boolean synchro = true;
+        private Task.OverlapPolicy overlapPolicy = Task.OverlapPolicy.SKIP;
+        private long jitter;
 
         public Config(int action) {
             this.action = action;
@@ -248,12 +252,20 @@ public class SchedulerProcessor extends ProcessorImpl {
             this.startTime = startTime;
         }
 
-        public boolean isSynchro() {
-            return synchro;
+        public Task.OverlapPolicy getOverlapPolicy() {
+            return overlapPolicy;
+        }
+
+        public void setOverlapPolicy(Task.OverlapPolicy overlapPolicy) {
+            this.overlapPolicy = overlapPolicy;
+        }
+
+        public long getJitter() {
+            return jitter;
         }
 
-        public void setSynchro(boolean synchro) {
-            this.synchro = synchro;
+        public void setJitter(long jitter) {
+            this.jitter = jitter;
         }
 
         public ProcessorDefinition getProcessorDefinition() {
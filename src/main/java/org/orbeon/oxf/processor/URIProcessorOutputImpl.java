@@ -403,13 +403,19 @@ public abstract class URIProcessorOutputImpl extends ProcessorOutputImpl {
 
                 // Read connection into SAXStore
                 documentSAXStore = new SAXStore();
+                documentSAXStore.setConfiguredSpill();
 
-                ConnectionResult.withSuccessConnection(connectionResult, true, new Function1Adapter<InputStream, Object>() {
-                    public Object apply(InputStream is) {
-                        XMLParsing.inputStreamToSAX(is, connectionResult.url(), documentSAXStore, XMLParsing.ParserConfiguration.PLAIN, true);
-                        return null;
-                    }
-                });
+                try {
+                    ConnectionResult.withSuccessConnection(connectionResult, true, new Function1Adapter<InputStream, Object>() {
+                        public Object apply(InputStream is) {
+                            XMLParsing.inputStreamToSAX(is, connectionResult.url(), documentSAXStore, XMLParsing.ParserConfiguration.PLAIN, true);
+                            return null;
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    documentSAXStore.dispose();
+                    throw e;
+                }
 
                 // Obtain last modified
                 lastModifiedLong = connectionResult.lastModifiedJava();
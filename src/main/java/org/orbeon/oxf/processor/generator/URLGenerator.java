@@ -503,6 +503,7 @@ public class URLGenerator extends ProcessorImpl {
                             ((SAXStore) cachedResource).replay(xmlReceiver);
                         } else {
                             final ResourceHandler handler = state.ensureMainResourceHandler(pipelineContext, configURIReferences.config);
+                            SAXStore uncachedStore = null;
                             try {
                                 // We need to read the resource
 
@@ -529,7 +530,15 @@ public class URLGenerator extends ProcessorImpl {
                                 final Long validity = (Long) getHandlerValidity(pipelineContext, configURIReferences.config, configURIReferences.config.getURL(), handler);
 
                                 // Create store for caching if necessary
-                                final XMLReceiver output = isUseLocalCache ? new SAXStore(xmlReceiver) : xmlReceiver;
+                                final XMLReceiver output;
+                                if (isUseLocalCache) {
+                                    final SAXStore store = new SAXStore(xmlReceiver);
+                                    store.setConfiguredSpill();
+                                    output = store;
+                                    uncachedStore = store;
+                                } else {
+                                    output = xmlReceiver;
+                                }
 
                                 // Handle mode
                                 String mode = configURIReferences.config.getMode();
@@ -578,9 +587,13 @@ public class URLGenerator extends ProcessorImpl {
                                     ((SAXStore) output).setXMLReceiver(null);
                                     // Add to cache
                                     ObjectCache.instance().add(localCacheKey, localCacheValidity, output);
+                                    uncachedStore = null;
                                 }
                             } finally {
                                 handler.destroy();
+                                // Release the spill storage of a store which is not cached, including after a failure
+                                if (uncachedStore != null)
+                                    uncachedStore.dispose();
                             }
                         }
                     }
@@ -819,10 +832,9 @@ public class URLGenerator extends ProcessorImpl {
 
         public void readJSON(InputStream is, XMLReceiver output) throws IOException {
 
-            final Reader reader     = new InputStreamReader(is, "utf-8");
-            final String jsonString = NetUtils.readStreamAsString(reader);
+            final Reader reader = new InputStreamReader(is, "utf-8");
 
-            Converter.jsonStringToXmlStream(jsonString, output, Symbols.JSON());
+            Converter.jsonReaderToXmlStream(reader, output, Symbols.JSON());
         }
     }
 
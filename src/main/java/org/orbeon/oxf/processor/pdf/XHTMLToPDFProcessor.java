@@ -13,7 +13,6 @@
  */
 package org.orbeon.oxf.processor.pdf;
 
-import com.lowagie.text.pdf.BaseFont;
 import org.apache.log4j.Logger;
 import org.orbeon.oxf.common.OXFException;
 import org.orbeon.oxf.http.Headers;
@@ -24,7 +23,6 @@ import org.orbeon.oxf.processor.ProcessorInput;
 import org.orbeon.oxf.processor.ProcessorInputOutputInfo;
 import org.orbeon.oxf.processor.serializer.legacy.HttpBinarySerializer;
 import org.orbeon.oxf.properties.Properties;
-import org.orbeon.oxf.properties.PropertySet;
 import org.orbeon.oxf.util.*;
 import org.w3c.dom.Document;
 import org.xhtmlrenderer.pdf.ITextRenderer;
@@ -57,23 +55,25 @@ public class XHTMLToPDFProcessor extends HttpBinarySerializer {// TODO: HttpBina
         return DEFAULT_CONTENT_TYPE;
     }
 
-    protected void readInput(final PipelineContext pipelineContext, final ProcessorInput input, Config config, OutputStream outputStream) {
+    protected void readInput(final PipelineContext pipelineContext, final ProcessorInput input, Config config, final OutputStream outputStream) {
 
         final ExternalContext externalContext = NetUtils.getExternalContext();
 
         // Read the input as a DOM
         final Document domDocument = readInputAsDOM(pipelineContext, input);
 
-        // Create renderer and add our own callback
-
-        final float DEFAULT_DOTS_PER_POINT = 20f * 4f / 3f;
-        final int DEFAULT_DOTS_PER_PIXEL = 14;
-
-        final ITextRenderer renderer = new ITextRenderer(DEFAULT_DOTS_PER_POINT, DEFAULT_DOTS_PER_PIXEL);
+        // Get a new renderer with the fonts configured with properties
+        RendererLimiter.withRenderer(new Function1Adapter<ITextRenderer, Object>() {
+            public Object apply(ITextRenderer renderer) {
+                render(pipelineContext, externalContext, domDocument, renderer, outputStream);
+                return null;
+            }
+        });
+    }
 
-        // Embed fonts if needed, based on configuration properties
-        embedFonts(renderer);
+    private void render(final PipelineContext pipelineContext, final ExternalContext externalContext, Document domDocument, ITextRenderer renderer, OutputStream outputStream) {
 
+        // Add our own callback
         try {
             final ITextUserAgent callback = new ITextUserAgent(renderer.getOutputDevice()) {
 
@@ -229,28 +229,6 @@ public class XHTMLToPDFProcessor extends HttpBinarySerializer {// TODO: HttpBina
     }
 
     public static void embedFonts(ITextRenderer renderer) {
-        final PropertySet propertySet = Properties.instance().getPropertySet();
-        for (final String propertyName : propertySet.getPropertiesStartsWith("oxf.fr.pdf.font.path")) {
-            final String path = StringUtils.trimAllToNull(propertySet.getString(propertyName));
-            if (path != null) {
-                try {
-                    // Overriding the font family is optional
-                    final String family; {
-                        final String[] tokens = org.apache.commons.lang3.StringUtils.split(propertyName, '.');
-                        if (tokens.length >= 6) {
-                            final String id = tokens[5];
-                            family = StringUtils.trimAllToNull(propertySet.getString("oxf.fr.pdf.font.family" + '.' + id));
-                        } else {
-                            family = null;
-                        }
-                    }
-
-                    // Add the font
-                    renderer.getFontResolver().addFont(path, family, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, null);
-                } catch (Exception e) {
-                    logger.warn("Failed to load font by path: '" + path + "' specified with property '"  + propertyName + "'");
-                }
-            }
-        }
+        RendererLimiter.embedFonts(renderer, RendererLimiter.fontDefinitions(Properties.instance().getPropertySet()));
     }
 }
@@ -85,7 +85,15 @@ public class TeeProcessor extends ProcessorImpl {
                     // Create SAXStore and read input through it
                     final ProcessorInput input = getInputByName(INPUT_DATA);
                     state.store = new SAXStore(xmlReceiver);
-                    readInputAsSAX(context, input, state.store);
+                    state.store.setConfiguredSpill();
+                    try {
+                        readInputAsSAX(context, input, state.store);
+                    } catch (RuntimeException e) {
+                        // Release the spill storage of the incomplete store
+                        state.store.dispose();
+                        state.store = null;
+                        throw e;
+                    }
                 } else {
                     state.store.replay(xmlReceiver);
                 }
@@ -125,6 +133,7 @@ public class TeeProcessor extends ProcessorImpl {
                     final long saxStoreSize = freedStore.getApproximateSize();
                     logger.debug("Freed SAXStore for output id: " + output.getName() + "; approximate size: " + saxStoreSize + " bytes");
                 }
+                freedStore.dispose();
             }
         }
 
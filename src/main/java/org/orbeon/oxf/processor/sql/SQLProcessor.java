@@ -41,7 +41,6 @@ import java.util.*;
  *
  * TODO:
  *
- * - batch for mass updates when supported
  * - esql:use-limit-clause, esql:skip-rows, esql:max-rows
  *
  * - The position() and last() functions are not implemented within
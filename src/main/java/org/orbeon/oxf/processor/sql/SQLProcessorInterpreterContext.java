@@ -33,6 +33,8 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
 
 /**
@@ -308,6 +310,18 @@ public class SQLProcessorInterpreterContext extends DatabaseContext {
         }
     }
 
+    /**
+     * Get a prepared statement for the given SQL text on the current connection. The statement must be released with
+     * releaseStatement().
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareStatement(pipelineContext, getConnection(), sql);
+    }
+
+    public void releaseStatement(Statement stmt) throws SQLException {
+        releaseStatement(pipelineContext, stmt);
+    }
+
     public Node getInput() {
         return input;
     }
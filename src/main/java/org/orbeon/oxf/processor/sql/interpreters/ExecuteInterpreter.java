@@ -43,12 +43,12 @@ public class ExecuteInterpreter extends SQLProcessor.InterpreterContentHandler {
     }
 
     public void end(String uri, String localname, String qName) throws SAXException {
-        // This is the end of an execute block, we can close the statement associated with it
+        // This is the end of an execute block, we can release the statement associated with it
         final SQLProcessorInterpreterContext interpreterContext = getInterpreterContext();
         final PreparedStatement stmt = interpreterContext.getStatement(0);
         if (stmt != null) { // the statement may not exist or already have been closed
             try {
-                stmt.close();
+                interpreterContext.releaseStatement(stmt);
             } catch (SQLException e) {
                 throw new ValidationException(e, new LocationData(getDocumentLocator()));
             }
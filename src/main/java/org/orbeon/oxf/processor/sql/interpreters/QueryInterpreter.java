@@ -44,6 +44,9 @@ public class QueryInterpreter extends SQLProcessor.InterpreterContentHandler {
     private static final String SQL_TYPE_BLOB = "blob";
     private static final String SQL_TYPE_XMLTYPE = "xmltype";
 
+    private static final String FETCH_SIZE_PROPERTY = "fetch-size";
+    private static final String BATCH_SIZE_PROPERTY = "batch-size";
+
     public static final int QUERY = 0;
     public static final int UPDATE = 1;
     public static final int CALL = 2;
@@ -55,6 +58,8 @@ public class QueryInterpreter extends SQLProcessor.InterpreterContentHandler {
     private boolean hasReplaceOrSeparator;
     private Iterator nodeIterator;
     private String debugString;
+    private int fetchSize;
+    private int batchSize;
 
     public QueryInterpreter(SQLProcessorInterpreterContext interpreterContext, int type) {
         super(interpreterContext, false);
@@ -158,6 +163,66 @@ public class QueryInterpreter extends SQLProcessor.InterpreterContentHandler {
         }
         // Get debug attribute
         debugString = attributes.getValue("debug");
+        // Get fetch size and batch size, defaulting to the processor properties
+        if (type == QUERY || type == CALL)
+            fetchSize = getSizeAttribute(attributes, FETCH_SIZE_PROPERTY, 0);
+        else
+            batchSize = getSizeAttribute(attributes, BATCH_SIZE_PROPERTY, 1);
+    }
+
+    private int getSizeAttribute(Attributes attributes, String name, int defaultValue) {
+        final String sizeString = attributes.getValue(name);
+        final int size;
+        try {
+            size = (sizeString != null) ? Integer.parseInt(sizeString) : getInterpreterContext().getPropertySet().getInteger(name, defaultValue);
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid " + name + " attribute: " + sizeString, new LocationData(getDocumentLocator()));
+        }
+        if (size < 0)
+            throw new ValidationException("Attribute " + name + " must be 0 or greater", new LocationData(getDocumentLocator()));
+        return size;
+    }
+
+    // Whether updates can be grouped in JDBC batches
+    //
+    // Replaced parameters change the query at each iteration, and LOB and XML types may be set through streams or
+    // temporary objects which don't survive until the batch is executed.
+    //
+    // Batched updates don't get generated keys, as drivers don't reliably return them for a batch. Updates whose
+    // generated keys are needed must not use a batch size greater than 1.
+    private boolean isBatchable() {
+        if (type != UPDATE || nodeIterator == null || hasReplaceOrSeparator || batchSize <= 1)
+            return false;
+        if (queryParameters != null) {
+            for (Iterator i = queryParameters.iterator(); i.hasNext();) {
+                final QueryParameter parameter = (QueryParameter) i.next();
+                final String sqlType = parameter.getSqlType();
+                if (SQL_TYPE_CLOB.equals(sqlType) || SQL_TYPE_BLOB.equals(sqlType) || SQL_TYPE_XMLTYPE.equals(sqlType))
+                    return false;
+                final String xmlType = GetterInterpreter.getXMLTypeFromAttributeString(getDocumentLocator(), getInterpreterContext().getPropertySet(), parameter.getType(), getInterpreterContext().getPrefixesMap());
+                if (Dom4jUtils.qNameToExplodedQName(XMLConstants.XS_BASE64BINARY_QNAME).equals(xmlType)
+                        || Dom4jUtils.qNameToExplodedQName(XMLConstants.OPS_XMLFRAGMENT_QNAME).equals(xmlType))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static int executeBatch(PreparedStatement stmt) throws SQLException {
+        return batchUpdateCount(stmt.executeBatch());
+    }
+
+    // Sum of the update counts of a batch
+    //
+    // Drivers may report that an update succeeded without giving its count, in which case we count it as one row.
+    static int batchUpdateCount(int[] updateCounts) {
+        int updateCount = 0;
+        for (int i = 0; i < updateCounts.length; i++)
+            if (updateCounts[i] == Statement.SUCCESS_NO_INFO)
+                updateCount += 1;
+            else if (updateCounts[i] > 0)
+                updateCount += updateCounts[i];
+        return updateCount;
     }
 
     public void end(String uri, String localname, String qName) throws SAXException {
@@ -172,12 +237,17 @@ public class QueryInterpreter extends SQLProcessor.InterpreterContentHandler {
                 final String queryString = query.toString();
                 if (type != CALL) {
                     // TODO: see how we can support this: Statement.RETURN_GENERATED_KEYS
-                    stmt = getInterpreterContext().getConnection().prepareStatement(queryString);
+                    // The statement is reused if the same query was executed before on this connection
+                    stmt = getInterpreterContext().prepareStatement(queryString);
                 } else
                     stmt = getInterpreterContext().getConnection().prepareCall(queryString);
                 getInterpreterContext().setStatementString(queryString);
             }
             getInterpreterContext().setStatement(stmt);
+            // Group updates in batches if possible
+            final boolean isBatch = isBatchable();
+            int batchCount = 0;
+            int batchUpdateCount = 0;
             int nodeCount = 1;
             // Iterate through all source nodes (only one if "select" attribute is missing)
             for (Iterator j = (nodeIterator != null) ? nodeIterator : Collections.singletonList(getInterpreterContext().getCurrentNode()).iterator(); j.hasNext(); nodeCount++) {
@@ -297,7 +367,7 @@ public class QueryInterpreter extends SQLProcessor.InterpreterContentHandler {
                         // We create a new PreparedStatement for each iteration
                         String replacedQueryString = replacedQuery.toString();
                         if (stmt != null) {
-                            stmt.close();
+                            getInterpreterContext().releaseStatement(stmt);
                         }
                         stmt = getInterpreterContext().getConnection().prepareStatement(replacedQueryString);
                         getInterpreterContext().setStatement(stmt);
@@ -579,8 +649,17 @@ public class QueryInterpreter extends SQLProcessor.InterpreterContentHandler {
                     if (SQLProcessor.logger.isDebugEnabled())
                         SQLProcessor.logger.debug("Executing query/call, " +
                                 "statement = " + getInterpreterContext().getStatementSHA());
+                    // Set fetch size unconditionally, as the statement may have been used with another fetch size
+                    stmt.setFetchSize(fetchSize);
                     final boolean hasResultSet = stmt.execute();
                     ResultSetInterpreter.setResultSetInfo(getInterpreterContext(), stmt, hasResultSet);
+                } else if (isBatch) {
+                    // No generated keys, see isBatchable()
+                    stmt.addBatch();
+                    if (++batchCount == batchSize) {
+                        batchUpdateCount += executeBatch(stmt);
+                        batchCount = 0;
+                    }
                 } else if (type == UPDATE) {
                     // We know there is only a possible update count
                     final int updateCount = stmt.executeUpdate();
@@ -589,6 +668,12 @@ public class QueryInterpreter extends SQLProcessor.InterpreterContentHandler {
                     	ResultSetInterpreter.setGeneratedKeysResultSetInfo(getInterpreterContext(), stmt);
                 }
             }
+            if (isBatch && nodeCount > 1) {
+                // Execute the last batch, and report the total update count of all the batches
+                if (batchCount > 0)
+                    batchUpdateCount += executeBatch(stmt);
+                getInterpreterContext().setUpdateCount(batchUpdateCount);
+            }
         } catch (Exception e) {
             // FIXME: should store exception so that it can be retrieved
             // Actually, we'll need a global exception mechanism for pipelines, so this may end up being done
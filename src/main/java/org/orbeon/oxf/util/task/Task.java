@@ -17,6 +17,9 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * A task which can be scheduled to run at specified times by the TaskScheduler <br>
@@ -31,6 +34,21 @@ import java.io.ObjectOutput;
 
 public abstract class Task implements Runnable, Externalizable {
 
+    /**
+     * What the scheduler does when a run of the task is due while a previous run is still executing.
+     */
+    public enum OverlapPolicy {
+        /** Don't start the new run. */
+        SKIP,
+        /** Start the new run as soon as the current run completes. */
+        QUEUE,
+        /** Start the new run right away, concurrently with the current run. */
+        CONCURRENT
+    }
+
+    /** Upper bounds (exclusive, in millis) of the run time histogram buckets. The last bucket is unbounded. */
+    public static final long[] RUN_TIME_BUCKETS = { 10, 100, 1000, 10 * 1000, 60 * 1000 };
+
     // instance variables
     /** has the cancel() method been called? */
     protected boolean isCancelled = false;
@@ -43,6 +61,24 @@ public abstract class Task implements Runnable, Externalizable {
     private long scheduledInterval = 0;   // if <=0 -- means one-time execution
     private long lastRunTime = 0;
 
+    private OverlapPolicy overlapPolicy = OverlapPolicy.CONCURRENT;
+    private long jitter = 0;
+
+    // states of exclusive runs, with OverlapPolicy.SKIP and OverlapPolicy.QUEUE
+    private static final int IDLE = 0;
+    private static final int RUNNING = 1;
+    private static final int RUNNING_WITH_QUEUED_RUN = 2;
+
+    // runtime state, maintained by the scheduler
+    transient final AtomicInteger executing = new AtomicInteger();
+    private transient final AtomicInteger exclusiveState = new AtomicInteger(IDLE);
+    private transient volatile long runningSince = 0;
+    private transient final AtomicLong runCount = new AtomicLong();
+    private transient final AtomicLong skippedCount = new AtomicLong();
+    private transient final AtomicLong totalRunTime = new AtomicLong();
+    private transient final AtomicLong maxRunTime = new AtomicLong();
+    private transient final AtomicLongArray runTimeHistogram = new AtomicLongArray(RUN_TIME_BUCKETS.length + 1);
+
     // package view -- the task scheduler sets this when the task is scheduled with it
     TaskScheduler scheduler = null;
 
@@ -103,6 +139,150 @@ public abstract class Task implements Runnable, Externalizable {
     }
 
 
+    /**
+     * Set what happens when a run is due while the task is still executing. The default is
+     * OverlapPolicy.CONCURRENT. This must be called before the task is scheduled.
+     */
+    public void setOverlapPolicy(OverlapPolicy overlapPolicy) {
+        this.overlapPolicy = overlapPolicy;
+    }
+
+
+    public OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+
+
+    /**
+     * Set a maximum random delay added to each run, so that tasks scheduled at the same time don't all
+     * start at once.
+     * @param jitter maximum delay in millis, <=0 for no jitter.
+     */
+    public void setJitter(long jitter) {
+        this.jitter = jitter;
+    }
+
+
+    public long getJitter() {
+        return jitter;
+    }
+
+
+    /**
+     * Is the task currently executing?
+     */
+    public boolean isExecuting() {
+        return executing.get() > 0;
+    }
+
+
+    /**
+     * Get the time at which the most recent run currently executing started.
+     * @return the time (as long, millis), or 0 if the task is not executing.
+     */
+    public long getRunningSince() {
+        return isExecuting() ? runningSince : 0;
+    }
+
+
+    /** Number of completed runs. */
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+
+    /** Number of runs which were not started because of OverlapPolicy.SKIP. */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+
+    /** Total time spent in completed runs (millis). */
+    public long getTotalRunTime() {
+        return totalRunTime.get();
+    }
+
+
+    /** Longest completed run (millis). */
+    public long getMaxRunTime() {
+        return maxRunTime.get();
+    }
+
+
+    /**
+     * Get the number of completed runs per run time bucket. Bucket i counts runs shorter than
+     * RUN_TIME_BUCKETS[i] and not counted in a previous bucket; the last bucket counts the longer runs.
+     */
+    public long[] getRunTimeHistogram() {
+        final long[] result = new long[runTimeHistogram.length()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = runTimeHistogram.get(i);
+        return result;
+    }
+
+
+    /**
+     * Claim an exclusive run which is due. With OverlapPolicy.QUEUE, if a run is executing, a single run is queued
+     * instead. The run is claimed until the scheduler calls exclusiveRunCompleted().
+     * @return true if the run can start
+     */
+    boolean startExclusiveRun(boolean queue) {
+        while (true) {
+            final int state = exclusiveState.get();
+            if (state == IDLE) {
+                if (exclusiveState.compareAndSet(IDLE, RUNNING))
+                    return true;
+            } else if (state == RUNNING && queue) {
+                if (exclusiveState.compareAndSet(RUNNING, RUNNING_WITH_QUEUED_RUN))
+                    return false;
+            } else {
+                return false;
+            }
+        }
+    }
+
+
+    /**
+     * Release the claim of an exclusive run, unless a run was queued in the meantime, in which case the claim goes to
+     * the queued run.
+     * @return true if the queued run must start
+     */
+    boolean exclusiveRunCompleted() {
+        while (true) {
+            if (exclusiveState.compareAndSet(RUNNING_WITH_QUEUED_RUN, RUNNING))
+                return true;
+            if (exclusiveState.compareAndSet(RUNNING, IDLE))
+                return false;
+        }
+    }
+
+
+    void runStarted(long time) {
+        runningSince = time;
+    }
+
+
+    void runSkipped() {
+        skippedCount.incrementAndGet();
+    }
+
+
+    void runCompleted(long duration) {
+        runCount.incrementAndGet();
+        totalRunTime.addAndGet(duration);
+
+        long max;
+        do {
+            max = maxRunTime.get();
+        } while (duration > max && ! maxRunTime.compareAndSet(max, duration));
+
+        int bucket = 0;
+        while (bucket < RUN_TIME_BUCKETS.length && duration >= RUN_TIME_BUCKETS[bucket])
+            bucket++;
+        runTimeHistogram.incrementAndGet(bucket);
+    }
+
+
     /**
      * Get the task ID.
      * @return unique Task ID.
@@ -235,6 +415,8 @@ public abstract class Task implements Runnable, Externalizable {
         out.writeLong(this.scheduledInterval);
         out.writeLong(this.lastRunTime);
         out.writeObject(this.name);
+        out.writeObject(this.overlapPolicy.name());
+        out.writeLong(this.jitter);
     }
 
 
@@ -266,6 +448,14 @@ public abstract class Task implements Runnable, Externalizable {
         this.scheduledInterval = in.readLong();
         this.lastRunTime = in.readLong();
         this.name = (String) in.readObject();
+        try {
+            this.overlapPolicy = OverlapPolicy.valueOf((String) in.readObject());
+            this.jitter = in.readLong();
+        } catch (java.io.EOFException e) {
+            // task persisted before the overlap policy and jitter were introduced: keep the defaults
+        } catch (java.io.OptionalDataException e) {
+            // same as above
+        }
 
         // set scheduledInitialTime to make it in the future
         if (scheduledInitialTime < System.currentTimeMillis()) {
@@ -16,14 +16,21 @@ package org.orbeon.oxf.util.task;
 // imports
 
 import org.apache.log4j.Logger;
+import org.orbeon.oxf.properties.Properties;
 import org.orbeon.oxf.util.LoggerFactory;
 import org.orbeon.oxf.externalcontext.WebAppContext;
 import org.orbeon.oxf.externalcontext.WebAppListener;
 
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -34,6 +41,11 @@ import java.util.TimerTask;
  * the abstract methods ( e.g. its run() method ).
  * </p>
  * <p>
+ * Tasks run on a pool of threads, so a long-running task doesn't delay other tasks. What happens
+ * when a run is due while the previous run of the same task is still executing is determined by
+ * the task's overlap policy.
+ * </p>
+ * <p>
  * Persistence of the Task objects allows the TaskScheduler to be shutdown and
  * restarted with all the scheduled tasks read from storage.
  * </p>
@@ -47,21 +59,39 @@ public class TaskScheduler {
 
     private static Logger logger = LoggerFactory.createLogger(TaskScheduler.class);
 
+    public static final String THREAD_POOL_SIZE_PROPERTY = "oxf.scheduler.thread-pool-size";
+    public static final int DEFAULT_THREAD_POOL_SIZE = 4;
+
     // instance variables
-    private Timer schedulerThread;
-    private ArrayList taskList;
+    private final int poolSize;
+    private volatile ScheduledThreadPoolExecutor executor;
+    private final ConcurrentMap<Task, ScheduledFuture<?>> tasks = new ConcurrentHashMap<Task, ScheduledFuture<?>>();
+    private final Random random = new Random();
     private long initTime;
 
-    private TaskPersistStrategy persistStrategy = null;
+    private volatile TaskPersistStrategy persistStrategy = null;
 
 
     /**
-     * Create a task scheduler with a default thread pool size.
+     * Create a task scheduler with the given thread pool size.
      */
-    private TaskScheduler() {
-        schedulerThread = new Timer(false);
+    TaskScheduler(int poolSize) {
+        this.poolSize = poolSize;
+        executor = createExecutor(poolSize);
         initTime = System.currentTimeMillis();
-        taskList = new ArrayList();
+    }
+
+
+    private static ScheduledThreadPoolExecutor createExecutor(int poolSize) {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "orbeon-scheduler-" + counter.incrementAndGet());
+            }
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        return executor;
     }
 
 
@@ -70,9 +100,7 @@ public class TaskScheduler {
      * @param strategy The TaskPersistStrategy to use
      */
     public void setPersistStrategy(TaskPersistStrategy strategy) {
-        synchronized (this) {
-            persistStrategy = strategy;
-        }
+        persistStrategy = strategy;
     }
 
 
@@ -85,38 +113,46 @@ public class TaskScheduler {
     }
 
 
+    /**
+     * Get the number of threads used to run tasks.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+
     /**
      * Schedules the specified task for execution according to the task's
      * scheduling properties.
      * @param task The task to schedule for execution.
      *
-     * @exception IllegalStateException if task was already scheduled or cancelled, timer
-     *    was cancelled, or timer thread terminated.
+     * @exception IllegalStateException if task was already scheduled or cancelled, or
+     *    the scheduler was cancelled.
      * @exception Exception if cannot persist task
      */
     public void schedule(Task task)
             throws IllegalStateException
             , Exception {
+        cleanupAll();
         synchronized (this) {
-            cleanupAll();
-            if (taskList.contains(task))
+            if (tasks.containsKey(task))
                 throw new IllegalStateException("Task was already scheduled");
 
-            Date time = new Date(task.getScheduledFirstTime());
-
-            RunTask runTask = new RunTask(task);
+            final long delay = Math.max(0, task.getScheduledFirstTime() - System.currentTimeMillis());
+            final Trigger trigger = new Trigger(task);
 
+            final ScheduledFuture<?> future;
             if (task.getScheduledInterval() <= 0) {
-                schedulerThread.schedule(runTask, time);
+                future = executor.schedule(trigger, delay, TimeUnit.MILLISECONDS);
             } else {
-                schedulerThread.scheduleAtFixedRate(runTask, time, task.getScheduledInterval());
+                future = executor.scheduleAtFixedRate(trigger, delay, task.getScheduledInterval(), TimeUnit.MILLISECONDS);
             }
 
             task.scheduler = this;
-            taskList.add(task);
-
-            this.persist(task);
+            tasks.put(task, future);
         }
+
+        this.persist(task);
     }
 
 
@@ -128,11 +164,11 @@ public class TaskScheduler {
      */
     public void cancelAll(boolean withRestart) {
         synchronized (this) {
-            taskList.clear();
-            schedulerThread.cancel();
+            tasks.clear();
+            executor.shutdownNow();
 
             if (withRestart)
-                schedulerThread = new Timer(false);
+                executor = createExecutor(poolSize);
         }
     }
 
@@ -144,22 +180,37 @@ public class TaskScheduler {
      * @return array of Tasks which are not cancelled
      */
     public Task[] getRunningTasks() {
-        ArrayList list = new ArrayList();
         cleanupAll();
 
-        synchronized (this) {
-            for (int i = 0; i < taskList.size(); i++) {
-                Task task = (Task) taskList.get(i);
-                if (!task.isCancelled()) {
-                    list.add(task);
-                }
-            }
+        final List<Task> list = new ArrayList<Task>();
+        for (final Task task : tasks.keySet()) {
+            if (!task.isCancelled())
+                list.add(task);
+        }
+        return list.toArray(new Task[list.size()]);
+    }
+
+
+    /**
+     * Fetch the tasks which are executing at the time the method is called.
+     *
+     * @return array of Tasks which are currently executing
+     */
+    public Task[] getExecutingTasks() {
+        final List<Task> list = new ArrayList<Task>();
+        for (final Task task : tasks.keySet()) {
+            if (task.isExecuting())
+                list.add(task);
         }
-        Task[] out = new Task[list.size()];
-        for (int i = 0; i < out.length; i++)
-            out[i] = (Task) list.get(i);
+        return list.toArray(new Task[list.size()]);
+    }
+
 
-        return out;
+    /**
+     * Get the number of runs waiting for a thread, including runs delayed by jitter.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
     }
 
 
@@ -169,13 +220,9 @@ public class TaskScheduler {
      * @return Task for this ID or null if not found
      */
     public Task findTaskByID(long taskID) {
-        synchronized (this) {
-            for (int i = 0; i < taskList.size(); i++) {
-                Task task = (Task) taskList.get(i);
-                if (task.getID() == taskID) {
-                    return task;
-                }
-            }
+        for (final Task task : tasks.keySet()) {
+            if (task.getID() == taskID)
+                return task;
         }
         return null;
     }
@@ -186,13 +233,13 @@ public class TaskScheduler {
      * @param task the potentially cancelled task to remove
      */
     void cleanup(Task task) {
-        synchronized (this) {
-            if (taskList.contains(task)) {
-                if (task.isCancelled()) {
-                    taskList.remove(task);
-                    if (persistStrategy != null)
-                        persistStrategy.delete(task);
-                }
+        if (task.isCancelled()) {
+            final ScheduledFuture<?> future = tasks.remove(task);
+            if (future != null) {
+                future.cancel(false);
+                final TaskPersistStrategy strategy = persistStrategy;
+                if (strategy != null)
+                    strategy.delete(task);
             }
         }
     }
@@ -204,28 +251,21 @@ public class TaskScheduler {
      */
     void persist(Task task)
             throws Exception {
-        synchronized (this) {
-            if (persistStrategy != null)
-                persistStrategy.write(task);
+        final TaskPersistStrategy strategy = persistStrategy;
+        if (strategy != null) {
+            synchronized (strategy) {
+                strategy.write(task);
+            }
         }
     }
 
 
     /**
-     * Go through the taskList and eliminate cancelled tasks
+     * Go through the tasks and eliminate cancelled tasks
      */
     private void cleanupAll() {
-        synchronized (this) {
-            for (int i = 0; i < taskList.size(); i++) {
-                Task task = (Task) taskList.get(i);
-                if (task.isCancelled()) {
-                    taskList.remove(i);
-                    if (persistStrategy != null)
-                        persistStrategy.delete(task);
-                    i--;
-                }
-            }
-        }
+        for (final Task task : tasks.keySet())
+            cleanup(task);
     }
 
 
@@ -239,7 +279,8 @@ public class TaskScheduler {
             if (existingTaskScheduler != null) {
                 return existingTaskScheduler;
             } else {
-                final TaskScheduler newTaskScheduler = new TaskScheduler();
+                final int poolSize = Properties.instance().getPropertySet().getInteger(THREAD_POOL_SIZE_PROPERTY, DEFAULT_THREAD_POOL_SIZE);
+                final TaskScheduler newTaskScheduler = new TaskScheduler(Math.max(1, poolSize));
                 webAppContext.getAttributesMap().put("task-scheduler", newTaskScheduler);
                 webAppContext.addListener(new WebAppListener() {
                     public void webAppDestroyed() {
@@ -253,43 +294,106 @@ public class TaskScheduler {
 
 
     /**
-     * RunTask class is scheduler to on the Timer
-     * and is associated with a Task which it runs.
+     * Trigger is scheduled on the executor and is associated with a Task. When the Task is due,
+     * it applies the Task's jitter and overlap policy, and submits a run.
      */
-    private class RunTask extends TimerTask {
+    private class Trigger implements Runnable {
         // instance variables
-        private Task task;
+        private final Task task;
 
 
         /**
-         * Create a new RunTask
+         * Create a new Trigger
          * @param task The Task to run
          */
-        public RunTask(Task task) {
+        public Trigger(Task task) {
             this.task = task;
         }
 
 
-        /**
-         * Run the Task
-         */
         public void run() {
             if (task.isCancelled()) {
-                this.cancel();
+                cleanup(task);
                 return;
             }
 
-            // NOTE: TBD
-            //    For now we just launch a thread to do the task.
-            //    This is potentially not scaleable. In the future,
-            //    we will pick threads from a pool.
-
-            Thread runner = new Thread(task);
-            runner.start();
-            task.setLastRunTime(System.currentTimeMillis());
+            final long jitter = task.getJitter();
+            if (jitter > 0) {
+                final long delay;
+                synchronized (random) {
+                    delay = (long) (random.nextDouble() * jitter);
+                }
+                executor.schedule(new Runnable() {
+                    public void run() {
+                        due();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } else {
+                due();
+            }
         }
 
+
+        private void due() {
+            switch (task.getOverlapPolicy()) {
+                case SKIP:
+                    if (! task.startExclusiveRun(false)) {
+                        task.runSkipped();
+                        if (logger.isInfoEnabled())
+                            logger.info("Task: " + task.getName() + " won't run since it is already running");
+                        return;
+                    }
+                    break;
+                case QUEUE:
+                    // At most one run is queued, and it starts when the current run completes
+                    if (! task.startExclusiveRun(true))
+                        return;
+                    break;
+                case CONCURRENT:
+                    break;
+            }
+            executor.execute(new Runner(task));
+        }
     }
 
 
-}
\ No newline at end of file
+    /**
+     * Runner executes one run of a Task. With SKIP and QUEUE, the run has been claimed before the Runner is created.
+     */
+    private class Runner implements Runnable {
+        private final Task task;
+
+
+        public Runner(Task task) {
+            this.task = task;
+        }
+
+
+        public void run() {
+            task.executing.incrementAndGet();
+
+            final long startTime = System.currentTimeMillis();
+            task.setLastRunTime(startTime);
+            task.runStarted(startTime);
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.error("Task: " + task.getName() + " failed", t);
+            } finally {
+                task.runCompleted(System.currentTimeMillis() - startTime);
+                task.executing.decrementAndGet();
+            }
+
+            // Start the run queued while this one was executing, if any, unless the task was cancelled
+            if (task.getOverlapPolicy() != Task.OverlapPolicy.CONCURRENT) {
+                while (task.exclusiveRunCompleted()) {
+                    if (! task.isCancelled()) {
+                        executor.execute(new Runner(task));
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -14,6 +14,7 @@
 package org.orbeon.oxf.xml;
 
 import org.orbeon.dom.Element;
+import org.orbeon.oxf.common.OXFException;
 import org.orbeon.oxf.common.OrbeonLocationException;
 import org.orbeon.oxf.xml.dom4j.Dom4jUtils;
 import org.orbeon.oxf.xml.dom4j.LocationData;
@@ -23,6 +24,7 @@ import org.xml.sax.SAXException;
 
 import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is the controller for the handlers system.
@@ -41,10 +43,13 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
     private Object elementHandlerContext;
     private DeferredXMLReceiver output;
 
-    private final Map<String, List<HandlerMatcher>> handlerMatchers = new HashMap<String, List<HandlerMatcher>>();
-    private final Map<String, String> uriHandlers = new HashMap<String, String>();
+    // Matchers by URI, then by local name
+    private final Map<String, Map<String, List<HandlerMatcher>>> handlerMatchers = new HashMap<String, Map<String, List<HandlerMatcher>>>();
+    private final Map<String, ElementHandlerFactory> uriHandlers = new HashMap<String, ElementHandlerFactory>();
     private final List<HandlerMatcher> customMatchers = new ArrayList<HandlerMatcher>();
 
+    private ElementHandlerPlan handlerPlan;
+
     private final Stack<HandlerInfo> handlerInfos = new Stack<HandlerInfo>();
     private HandlerInfo currentHandlerInfo;
     private boolean isFillingUpSAXStore;
@@ -55,12 +60,13 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
 
     private int level = 0;
 
-    // Class.forName is expensive, so we cache mappings
-    private static Map<String, Constructor<ElementHandler>> classNameToHandlerClass = new HashMap<String, Constructor<ElementHandler>>();
+    // Factories for handlers registered by class name, which are created by reflection
+    private static final Map<String, ElementHandlerFactory> classNameToHandlerFactory = new ConcurrentHashMap<String, ElementHandlerFactory>();
 
     /**
-     * Register a handler. The handler can match on a URI + localname + custom matcher, URI + localname, or on URI only
-     * in that order.
+     * Register a handler by class name. The handler is created by reflection with its (uri, localname, qName,
+     * attributes, matched, handlerContext) constructor, so this is meant for handler classes which are only known by
+     * name, for example from configuration. Other handlers should be registered with a factory.
      *
      * @param handlerClassName      class name for the handler
      * @param uri                   URI of the element that triggers the handler
@@ -68,23 +74,52 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
      * @param matcher               matcher on attributes, or null
      */
     public void registerHandler(String handlerClassName, String uri, String localname, Matcher matcher) {
+        registerHandler(getHandlerFactory(handlerClassName), uri, localname, matcher);
+    }
+
+    /**
+     * Register a handler. The handler can match on a URI + localname + custom matcher, URI + localname, or on URI only
+     * in that order.
+     *
+     * @param handlerFactory        factory creating the handler
+     * @param uri                   URI of the element that triggers the handler
+     * @param localname             local name of the element that triggers the handler, or null if match on URI only
+     * @param matcher               matcher on attributes, or null
+     */
+    public void registerHandler(ElementHandlerFactory handlerFactory, String uri, String localname, Matcher matcher) {
         if (localname != null) {
             // Match on URI + localname and optionally custom matcher
-            final String key = XMLUtils.buildExplodedQName(uri, localname);
-            List<HandlerMatcher> handlerMatchers = this.handlerMatchers.get(key);
+            Map<String, List<HandlerMatcher>> localnameMatchers = this.handlerMatchers.get(uri);
+            if (localnameMatchers == null) {
+                localnameMatchers = new HashMap<String, List<HandlerMatcher>>();
+                this.handlerMatchers.put(uri, localnameMatchers);
+            }
+            List<HandlerMatcher> handlerMatchers = localnameMatchers.get(localname);
             if (handlerMatchers == null) {
                 handlerMatchers = new ArrayList<HandlerMatcher>();
-                this.handlerMatchers.put(key, handlerMatchers);
+                localnameMatchers.put(localname, handlerMatchers);
             }
-            handlerMatchers.add(new HandlerMatcher(handlerClassName, matcher != null ? matcher : ALL_MATCHER));
+            handlerMatchers.add(new HandlerMatcher(handlerFactory, matcher != null ? matcher : ALL_MATCHER));
         } else {
             // Match on URI only
-            uriHandlers.put(uri, handlerClassName);
+            uriHandlers.put(uri, handlerFactory);
         }
     }
 
     public void registerHandler(String handlerClassName, Matcher matcher) {
-        customMatchers.add(new HandlerMatcher(handlerClassName, matcher));
+        registerHandler(getHandlerFactory(handlerClassName), matcher);
+    }
+
+    public void registerHandler(ElementHandlerFactory handlerFactory, Matcher matcher) {
+        customMatchers.add(new HandlerMatcher(handlerFactory, matcher));
+    }
+
+    /**
+     * Set a plan which remembers which handlers apply to which elements. The plan must have been used only with
+     * controllers with the same handlers registered.
+     */
+    public void setHandlerPlan(ElementHandlerPlan handlerPlan) {
+        this.handlerPlan = handlerPlan;
     }
 
     public void setElementHandlerContext(Object elementHandlerContext) {
@@ -95,6 +130,13 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
         return output;
     }
 
+    /**
+     * Whether an element without a handler found at this point, and its content, would be sent to the output as is.
+     */
+    public boolean isOutputtingContent() {
+        return ! isFillingUpSAXStore && (currentHandlerInfo == null || currentHandlerInfo.elementHandler.isForwarding());
+    }
+
     public void setOutput(DeferredXMLReceiver output) {
         this.output = output;
     }
@@ -134,7 +176,7 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
                 // Just ignore content
             } else {
                 // Look for a new handler
-                final HandlerInfo handlerInfo = getHandler(uri, localname, qName, attributes, elementHandlerContext);
+                final HandlerInfo handlerInfo = getPlannedHandler(uri, localname, qName, attributes);
 
                 if (handlerInfo != null) {
                     // New handler found
@@ -504,6 +546,35 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
         return (handlerInfo != null) ? handlerInfo.elementHandler : null;
     }
 
+    // Use the handler plan, if any, to avoid running matchers for elements already seen
+    private HandlerInfo getPlannedHandler(String uri, String localname, String qName, Attributes attributes) {
+
+        final String elementKey =
+            (handlerPlan != null) ? handlerPlan.elementKey(uri, localname, attributes, elementHandlerContext) : null;
+
+        if (elementKey != null) {
+            final ElementHandlerPlan.Resolution resolution = handlerPlan.get(elementKey);
+            if (resolution != null && resolution.isFor(uri, localname)
+                    && (resolution.factory == null || handlerPlan.isMatchedValid(elementKey, resolution.matched, elementHandlerContext))) {
+                return (resolution.factory != null)
+                    ? createHandler(resolution.factory, uri, localname, qName, attributes, resolution.matched, elementHandlerContext)
+                    : null;
+            }
+        }
+
+        final HandlerInfo handlerInfo = getHandler(uri, localname, qName, attributes, elementHandlerContext);
+
+        if (elementKey != null)
+            handlerPlan.put(
+                elementKey,
+                (handlerInfo != null)
+                    ? new ElementHandlerPlan.Resolution(uri, localname, handlerInfo.factory, handlerInfo.matched)
+                    : new ElementHandlerPlan.Resolution(uri, localname, null, null)
+            );
+
+        return handlerInfo;
+    }
+
     private HandlerInfo getHandler(String uri, String localname, String qName, Attributes attributes, Object handlerContext) {
 
         // 1: Try custom matchers
@@ -514,7 +585,8 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
         }
 
         // 2: Try full matchers
-        final List<HandlerMatcher> handlerMatchers = this.handlerMatchers.get(XMLUtils.buildExplodedQName(uri, localname));
+        final Map<String, List<HandlerMatcher>> localnameMatchers = this.handlerMatchers.get(uri);
+        final List<HandlerMatcher> handlerMatchers = (localnameMatchers != null) ? localnameMatchers.get(localname) : null;
         if (handlerMatchers != null) {
             final HandlerInfo handlerInfo = runMatchers(handlerMatchers, uri, localname, qName, attributes, handlerContext);
             if (handlerInfo != null)
@@ -522,11 +594,9 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
         }
 
         // 3: Try URI-based handler
-        final String uriHandlerClassName = uriHandlers.get(uri);
-        if (uriHandlerClassName != null) {
-            final ElementHandler elementHandler = getHandlerByClassName(uriHandlerClassName, uri, localname, qName, attributes, null, handlerContext);
-            return new HandlerInfo(level, elementHandler, this.locator);
-        }
+        final ElementHandlerFactory uriHandlerFactory = uriHandlers.get(uri);
+        if (uriHandlerFactory != null)
+            return createHandler(uriHandlerFactory, uri, localname, qName, attributes, null, handlerContext);
 
         return null;
     }
@@ -534,48 +604,70 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
     private HandlerInfo runMatchers(List<HandlerMatcher> matchers, String uri, String localname, String qName, Attributes attributes, Object handlerContext) {
         for (HandlerMatcher handlerMatcher: matchers) {
             final Object matched = handlerMatcher.matcher.match(attributes, elementHandlerContext);
-            if (matched != null) {
-                final ElementHandler elementHandler = getHandlerByClassName(handlerMatcher.handlerClassName, uri, localname, qName, attributes, matched, handlerContext);
-                return new HandlerInfo(level, elementHandler, this.locator);
-            }
+            if (matched != null)
+                return createHandler(handlerMatcher.factory, uri, localname, qName, attributes, matched, handlerContext);
         }
         return null;
     }
 
-    @SuppressWarnings("unchecked")
-    private ElementHandler getHandlerByClassName(String handlerClassName, String uri, String localname, String qName, Attributes attributes, Object matched, Object handlerContext) {
-        Constructor<ElementHandler> constructor = classNameToHandlerClass.get(handlerClassName);
-        if (constructor == null) {
-            try {
-                final Class<ElementHandler> handlerClass = (Class<ElementHandler>) Class.forName(handlerClassName);
+    private HandlerInfo createHandler(ElementHandlerFactory factory, String uri, String localname, String qName, Attributes attributes, Object matched, Object handlerContext) {
+        final ElementHandler elementHandler;
+        try {
+            elementHandler = factory.create(uri, localname, qName, attributes, matched, handlerContext);
+        } catch (Exception e) {
+            throw OrbeonLocationException.wrapException(e, LocationData.createIfPresent(locator));
+        }
+        return new HandlerInfo(level, elementHandler, factory, matched, this.locator);
+    }
 
-                // uri: String, localname: String, qName: String, attributes: Attributes, matched: AnyRef
-                constructor =
-                    handlerClass.getConstructor(String.class, String.class, String.class, Attributes.class, Object.class, Object.class);
+    private static ElementHandlerFactory getHandlerFactory(String handlerClassName) {
+        ElementHandlerFactory factory = classNameToHandlerFactory.get(handlerClassName);
+        if (factory == null) {
+            factory = new ConstructorHandlerFactory(handlerClassName);
+            classNameToHandlerFactory.put(handlerClassName, factory);
+        }
+        return factory;
+    }
 
-                classNameToHandlerClass.put(handlerClassName, constructor);
+    // Create handlers registered by class name with their (uri, localname, qName, attributes, matched, handlerContext)
+    // constructor
+    private static class ConstructorHandlerFactory implements ElementHandlerFactory {
+
+        private final Constructor<? extends ElementHandler> constructor;
+
+        ConstructorHandlerFactory(String handlerClassName) {
+            try {
+                final Class<? extends ElementHandler> handlerClass = Class.forName(handlerClassName).asSubclass(ElementHandler.class);
+                this.constructor =
+                    handlerClass.getConstructor(String.class, String.class, String.class, Attributes.class, Object.class, Object.class);
             } catch (ClassNotFoundException e) {
-                throw OrbeonLocationException.wrapException(e, LocationData.createIfPresent(locator));
+                throw new OXFException(e);
             } catch (NoSuchMethodException e) {
-                throw OrbeonLocationException.wrapException(e, LocationData.createIfPresent(locator));
+                throw new OXFException(e);
             }
         }
 
-        try {
-            return constructor.newInstance(uri, localname, qName, attributes, matched, handlerContext);
-        } catch (Exception e) {
-            throw OrbeonLocationException.wrapException(e, LocationData.createIfPresent(locator));
+        public ElementHandler create(String uri, String localname, String qName, Attributes attributes, Object matched, Object handlerContext) {
+            try {
+                return constructor.newInstance(uri, localname, qName, attributes, matched, handlerContext);
+            } catch (Exception e) {
+                throw new OXFException(e);
+            }
         }
     }
 
     private static class HandlerInfo {
         public final int level;
         public final ElementHandler elementHandler;
+        public final ElementHandlerFactory factory;
+        public final Object matched;
         public final SAXStore saxStore;
 
-        public HandlerInfo(int level, ElementHandler elementHandler, Locator locator) {
+        public HandlerInfo(int level, ElementHandler elementHandler, ElementHandlerFactory factory, Object matched, Locator locator) {
             this.level = level;
             this.elementHandler = elementHandler;
+            this.factory = factory;
+            this.matched = matched;
 
             this.saxStore = elementHandler.isRepeating() ? new SAXStore() : null;
 
@@ -596,11 +688,11 @@ public class ElementHandlerController implements ElementHandlerContext, XMLRecei
     };
 
     private static class HandlerMatcher {
-        public String handlerClassName;
-        public Matcher matcher;
+        public final ElementHandlerFactory factory;
+        public final Matcher matcher;
 
-        private HandlerMatcher(String handlerClassName, Matcher matcher) {
-            this.handlerClassName = handlerClassName;
+        private HandlerMatcher(ElementHandlerFactory factory, Matcher matcher) {
+            this.factory = factory;
             this.matcher = matcher;
         }
     }
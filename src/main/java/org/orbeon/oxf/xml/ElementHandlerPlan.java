@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xml;
+
+import org.xml.sax.Attributes;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Handlers resolved by ElementHandlerController for the elements of a given document.
+ *
+ * A plan can be shared by controllers processing the same document with the same handlers registered, including
+ * concurrently. The first time an element is seen, the controller runs the matchers and records which handler
+ * applies to the element. Subsequently, the controller creates the handler directly.
+ */
+public abstract class ElementHandlerPlan {
+
+    private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<String, Resolution>();
+
+    /**
+     * Return a key which uniquely identifies the element within the document, or null if the handler for the
+     * element must be resolved each time.
+     */
+    public abstract String elementKey(String uri, String localname, Attributes attributes, Object handlerContext);
+
+    /**
+     * Whether the object previously returned by the matcher for the element can be reused. By default, matched
+     * objects are reused.
+     */
+    public boolean isMatchedValid(String elementKey, Object matched, Object handlerContext) {
+        return true;
+    }
+
+    Resolution get(String elementKey) {
+        return resolutions.get(elementKey);
+    }
+
+    void put(String elementKey, Resolution resolution) {
+        resolutions.put(elementKey, resolution);
+    }
+
+    public int size() {
+        return resolutions.size();
+    }
+
+    // Handler for an element, or no handler if factory is null
+    static class Resolution {
+        public final String uri;
+        public final String localname;
+        public final ElementHandlerFactory factory;
+        public final Object matched;
+
+        Resolution(String uri, String localname, ElementHandlerFactory factory, Object matched) {
+            this.uri = uri;
+            this.localname = localname;
+            this.factory = factory;
+            this.matched = matched;
+        }
+
+        boolean isFor(String uri, String localname) {
+            return this.localname.equals(localname) && this.uri.equals(uri);
+        }
+    }
+}
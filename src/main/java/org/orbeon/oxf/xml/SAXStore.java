@@ -14,9 +14,12 @@
 package org.orbeon.oxf.xml;
 
 import org.orbeon.dom.Document;
+import org.orbeon.oxf.cache.Cacheable;
 import org.orbeon.oxf.common.OXFException;
 import org.orbeon.oxf.pipeline.api.TransformerXMLReceiver;
 import org.orbeon.oxf.processor.SAXLoggerProcessor;
+import org.orbeon.oxf.properties.Properties;
+import org.orbeon.oxf.properties.PropertySet;
 import org.orbeon.oxf.xml.dom4j.LocationSAXContentHandler;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
@@ -29,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 /**
  * SAXStore keeps a compact representation of SAX events sent to the ContentHandler interface.
@@ -36,9 +40,14 @@ import java.util.List;
  * As of June 2009, we increase the size of buffers by 50% instead of 100%. Still not the greatest way. Possibly,
  * passed a threshold, say 10 MB or 20 MB, we could use a linked list of such big blocks.
  *
+ * Stores which can hold very large documents can spill: past a threshold, further events are stored outside of the
+ * heap, in direct buffers or in a memory-mapped temporary file, see SAXStoreSpill. A spilled store is brought back
+ * to the heap only when serialized. The spill storage is released with dispose(), which is called when the store is
+ * evicted from or removed from the cache.
+ *
  * TODO: Handling of system IDs is not optimal in memory as system IDs are unlikely to change much within a document.
  */
-public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
+public class SAXStore extends ForwardingXMLReceiver implements Externalizable, Cacheable {
 
     public static final byte START_DOCUMENT = 0x00;
     public static final byte END_DOCUMENT = 0x01;
@@ -54,6 +63,11 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
 
     private static final int INITIAL_SIZE = 10;
 
+    public enum SpillMode { HEAP, DIRECT, MAPPED }
+
+    public static final String SPILL_MODE_PROPERTY = "oxf.sax.store.spill-mode";
+    public static final String SPILL_THRESHOLD_PROPERTY = "oxf.sax.store.spill-threshold";
+
     private byte[] eventBuffer;
     private int eventBufferPosition;
 
@@ -80,6 +94,10 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
 
     private transient Locator locator; // used only for recording events, MUST be cleared afterwards
 
+    private transient SpillMode spillMode = SpillMode.HEAP;
+    private transient long spillThreshold;
+    private transient SAXStoreSpill spill; // events past the spill threshold, if any
+
     private final Mark START_MARK = new Mark();
 
     private List<Mark> marks = null;
@@ -93,6 +111,7 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
         public final int systemIdBufferPosition;
         public final int attributeCountBufferPosition;
         public final int StringBuilderPosition;
+        public final long spillPosition; // position in the spill storage, or -1 if the mark is before the spill
 
         private Mark() {
             id = null;
@@ -103,6 +122,7 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
             this.systemIdBufferPosition = 0;
             this.attributeCountBufferPosition = 0;
             this.StringBuilderPosition = 0;
+            this.spillPosition = -1;
         }
 
         private Mark(final SAXStore store, final String id) {
@@ -114,6 +134,7 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
             this.systemIdBufferPosition = store.systemIdBufferPosition;
             this.attributeCountBufferPosition = store.attributeCountBufferPosition;
             this.StringBuilderPosition = store.StringBuilder.size();
+            this.spillPosition = store.isSpilling() ? store.spill.position() : -1;
 
             rememberMark();
         }
@@ -128,6 +149,7 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
             this.systemIdBufferPosition = values[i++];
             this.attributeCountBufferPosition = values[i++];
             this.StringBuilderPosition = values[i++];
+            this.spillPosition = -1;
 
             rememberMark();
         }
@@ -168,6 +190,9 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
 
         size += attributeCountBufferPosition * 4;
 
+        if (spill != null)
+            size += spill.size();
+
         {
             String previousString = null;
             for (Iterator<String> i = StringBuilder.iterator(); i.hasNext();) {
@@ -207,7 +232,73 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
         return new Long(eventBuffer.hashCode() * charBuffer.hashCode() * intBuffer.hashCode());
     }
 
+    /**
+     * Spill events past the given approximate size of the primitive buffers, in bytes.
+     *
+     * This must be called before recording events.
+     */
+    public void setSpill(SpillMode spillMode, long spillThreshold) {
+        this.spillMode = spillMode;
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Spill events as configured with properties. This is meant for stores which can hold very large documents.
+     */
+    public void setConfiguredSpill() {
+        final PropertySet propertySet = Properties.instance().getPropertySet();
+        final String mode = propertySet.getString(SPILL_MODE_PROPERTY, "heap");
+        final SpillMode spillMode;
+        if ("direct".equals(mode))
+            spillMode = SpillMode.DIRECT;
+        else if ("mapped".equals(mode))
+            spillMode = SpillMode.MAPPED;
+        else
+            spillMode = SpillMode.HEAP;
+        setSpill(spillMode, propertySet.getInteger(SPILL_THRESHOLD_PROPERTY, 10 * 1024 * 1024).longValue());
+    }
+
+    // Whether events go to the spill storage, starting to spill if the threshold is reached
+    private boolean isSpilling() {
+        if (spill == null && spillMode != SpillMode.HEAP && primitiveBuffersSize() >= spillThreshold)
+            spill = new SAXStoreSpill(spillMode);
+        return spill != null;
+    }
+
+    private long primitiveBuffersSize() {
+        return eventBufferPosition + charBufferPosition * 2L + (intBufferPosition + lineBufferPosition + attributeCountBufferPosition) * 4L;
+    }
+
+    /**
+     * Release the spill storage, if any. The store can't be replayed afterwards if it has spilled, but replays already
+     * in progress complete.
+     */
+    public void dispose() {
+        if (spill != null)
+            spill.dispose();
+    }
+
+    public void added() {
+    }
+
+    public void removed() {
+        dispose();
+    }
+
+    public Lock getEvictionLock() {
+        return null;
+    }
+
+    public void evicted() {
+        dispose();
+    }
+
     protected void init() {
+        if (spill != null) {
+            spill.dispose();
+            spill = null;
+        }
+
         eventBufferPosition = 0;
         eventBuffer = new byte[INITIAL_SIZE];
 
@@ -236,6 +327,11 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     }
 
     public void replay(XMLReceiver xmlReceiver, Mark mark) throws SAXException {
+        replay(xmlReceiver, mark, null);
+    }
+
+    // Replay from the given mark, re-creating the marks of this store on the copy, if any, as events are replayed
+    private void replay(XMLReceiver xmlReceiver, Mark mark, SAXStore copy) throws SAXException {
         int intBufferPos = mark.intBufferPosition;
         int charBufferPos = mark.charBufferPosition;
         int StringBuilderPos = mark.StringBuilderPosition;
@@ -245,12 +341,15 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
         final AttributesImpl attributes = new AttributesImpl();
         int currentEventPosition = mark.eventBufferPosition;
 
+        final SpillLocator spillLocator = new SpillLocator(publicId);
         final Locator outputLocator = !hasDocumentLocator ? null : new Locator() {
             public String getPublicId() {
                 return publicId;
             }
 
             public String getSystemId() {
+                if (spillLocator.active)
+                    return spillLocator.getSystemId();
                 try {
                     return systemIdBuffer[systemIdBufferPos[0]];
                 } catch (ArrayIndexOutOfBoundsException e) {
@@ -259,6 +358,8 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
             }
 
             public int getLineNumber() {
+                if (spillLocator.active)
+                    return spillLocator.getLineNumber();
                 try {
                     return lineBuffer[lineBufferPos[0]];
                 } catch (ArrayIndexOutOfBoundsException e) {// FIXME: sometimes this fails
@@ -269,6 +370,8 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
             }
 
             public int getColumnNumber() {
+                if (spillLocator.active)
+                    return spillLocator.getColumnNumber();
                 try {
                     return lineBuffer[lineBufferPos[0] + 1];
                 } catch (ArrayIndexOutOfBoundsException e) {// FIXME: sometimes this fails
@@ -283,11 +386,27 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
             xmlReceiver.setDocumentLocator(outputLocator);
         }
 
+        final Iterator<Mark> copiedMarks = copy != null && marks != null ? marks.iterator() : Collections.<Mark>emptyList().iterator();
+        Mark nextMark = copiedMarks.hasNext() ? copiedMarks.next() : null;
+
+        // The mark is past the spill threshold, so all its events are in the spill storage
+        if (mark.spillPosition != -1) {
+            final SAXStoreSpill.Reader reader = spill.reader(mark.spillPosition);
+            final boolean handleElementMark = (mark != START_MARK) && reader.hasMore() && reader.getByte() == START_ELEMENT;
+            replaySpill(xmlReceiver, mark.spillPosition, handleElementMark, 0, spillLocator, nextMark, copiedMarks, copy);
+            return;
+        }
+
         // Handle element marks
         final boolean handleElementMark = (mark != START_MARK) && (eventBuffer[currentEventPosition] == START_ELEMENT);
 
         int elementLevel = 0;
-        eventLoop: while (currentEventPosition < eventBufferPosition) {
+        while (currentEventPosition < eventBufferPosition) {
+            while (nextMark != null && nextMark.spillPosition == -1 && nextMark.eventBufferPosition <= currentEventPosition) {
+                copy.getMark(nextMark.id);
+                nextMark = copiedMarks.hasNext() ? copiedMarks.next() : null;
+            }
+
             final byte eventType = eventBuffer[currentEventPosition];
             final boolean eventHasLocation = hasDocumentLocator && eventType != END_PREFIX_MAPPING && eventType != START_PREFIX_MAPPING;
             switch (eventType) {
@@ -324,7 +443,7 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
 
                     if (handleElementMark && elementLevel == 0) {
                         // Back to ground level, we are done!
-                        break eventLoop;
+                        return;
                     }
 
                     break;
@@ -372,6 +491,156 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
                 systemIdBufferPos[0]++;
             }
         }
+
+        // Continue with the events past the spill threshold
+        if (spill != null)
+            replaySpill(xmlReceiver, 0, handleElementMark, elementLevel, spillLocator, nextMark, copiedMarks, copy);
+        else if (copy != null)
+            copyRemainingMarks(nextMark, copiedMarks, copy);
+    }
+
+    private void replaySpill(XMLReceiver xmlReceiver, long from, boolean handleElementMark, int elementLevel,
+                             SpillLocator spillLocator, Mark nextMark, Iterator<Mark> copiedMarks, SAXStore copy) throws SAXException {
+
+        final SAXStoreSpill.Reader reader = spill.reader(from);
+        final AttributesImpl attributes = new AttributesImpl();
+
+        while (reader.hasMore()) {
+            while (nextMark != null && nextMark.spillPosition != -1 && nextMark.spillPosition <= reader.position()) {
+                copy.getMark(nextMark.id);
+                nextMark = copiedMarks.hasNext() ? copiedMarks.next() : null;
+            }
+
+            final byte eventType = reader.getByte();
+            if (reader.getByte() != 0) {
+                spillLocator.lineNumber = reader.getInt();
+                spillLocator.columnNumber = reader.getInt();
+                spillLocator.systemId = spill.systemId(reader.getInt());
+            }
+            spillLocator.active = true;
+
+            switch (eventType) {
+                case START_DOCUMENT: {
+                    xmlReceiver.startDocument();
+                    break;
+                }
+                case START_ELEMENT: {
+                    final String namespaceURI = reader.getString();
+                    final String localName = reader.getString();
+                    final String qName = reader.getString();
+                    attributes.clear();
+                    final int attributeCount = reader.getInt();
+                    for (int i = 0; i < attributeCount; i++) {
+                        attributes.addAttribute(reader.getString(), reader.getString(), reader.getString(),
+                                reader.getString(), reader.getString());
+                    }
+                    xmlReceiver.startElement(namespaceURI, localName, qName, attributes);
+                    elementLevel++;
+                    break;
+                }
+                case CHARACTERS: {
+                    final int length = reader.getInt();
+                    xmlReceiver.characters(reader.getChars(length), 0, length);
+                    break;
+                }
+                case END_ELEMENT: {
+                    elementLevel--;
+                    xmlReceiver.endElement(reader.getString(), reader.getString(), reader.getString());
+
+                    if (handleElementMark && elementLevel == 0) {
+                        // Back to ground level, we are done!
+                        return;
+                    }
+
+                    break;
+                }
+                case END_DOCUMENT: {
+                    xmlReceiver.endDocument();
+                    break;
+                }
+                case END_PREFIX_MAPPING: {
+                    xmlReceiver.endPrefixMapping(reader.getString());
+                    break;
+                }
+                case IGN_WHITESPACE: {
+                    final int length = reader.getInt();
+                    xmlReceiver.ignorableWhitespace(reader.getChars(length), 0, length);
+                    break;
+                }
+                case PI: {
+                    xmlReceiver.processingInstruction(reader.getString(), reader.getString());
+                    break;
+                }
+                case SKIPPED_ENTITY: {
+                    xmlReceiver.skippedEntity(reader.getString());
+                    break;
+                }
+                case START_PREFIX_MAPPING: {
+                    xmlReceiver.startPrefixMapping(reader.getString(), reader.getString());
+                    break;
+                }
+                case COMMENT: {
+                    final int length = reader.getInt();
+                    xmlReceiver.comment(reader.getChars(length), 0, length);
+                    break;
+                }
+            }
+        }
+
+        if (copy != null)
+            copyRemainingMarks(nextMark, copiedMarks, copy);
+    }
+
+    // Marks created after the last event
+    private static void copyRemainingMarks(Mark nextMark, Iterator<Mark> copiedMarks, SAXStore copy) {
+        while (nextMark != null) {
+            copy.getMark(nextMark.id);
+            nextMark = copiedMarks.hasNext() ? copiedMarks.next() : null;
+        }
+    }
+
+    // Location of the event being replayed from the spill storage
+    private static class SpillLocator implements Locator {
+
+        private final String publicId;
+
+        boolean active;
+        String systemId;
+        int lineNumber = -1;
+        int columnNumber = -1;
+
+        SpillLocator(String publicId) {
+            this.publicId = publicId;
+        }
+
+        public String getPublicId() {
+            return publicId;
+        }
+
+        public String getSystemId() {
+            return systemId;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public int getColumnNumber() {
+            return columnNumber;
+        }
+    }
+
+    // Copy of this store with all the events and marks on the heap, for serialization
+    private SAXStore materialize() {
+        final SAXStore copy = new SAXStore();
+        try {
+            replay(copy, START_MARK, copy);
+        } catch (SAXException e) {
+            throw new OXFException(e);
+        }
+        // The copy must not keep a reference to the locator of this store, whether or not the document was complete
+        copy.locator = null;
+        return copy;
     }
 
     // Create a new mark
@@ -428,11 +697,16 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void characters(char[] chars, int start, int length) throws SAXException {
 
-        addToEventBuffer(CHARACTERS);
-        addToCharBuffer(chars, start, length);
-        addToIntBuffer(length);
+        if (isSpilling()) {
+            spillEvent(CHARACTERS, true);
+            spill.putChars(chars, start, length);
+        } else {
+            addToEventBuffer(CHARACTERS);
+            addToCharBuffer(chars, start, length);
+            addToIntBuffer(length);
 
-        addLocation();
+            addLocation();
+        }
 
         super.characters(chars, start, length);
     }
@@ -440,8 +714,13 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void endDocument() throws SAXException {
 
-        addToEventBuffer(END_DOCUMENT);
-        addLocation();
+        if (isSpilling()) {
+            spillEvent(END_DOCUMENT, true);
+            spill.close();
+        } else {
+            addToEventBuffer(END_DOCUMENT);
+            addLocation();
+        }
         super.endDocument();
 
         // The resulting SAXStore should never keep references to whoever filled it
@@ -451,11 +730,18 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void endElement(String uri, String localname, String qName) throws SAXException {
 
-        addToEventBuffer(END_ELEMENT);
-        addLocation();
-        StringBuilder.add(uri);
-        StringBuilder.add(localname);
-        StringBuilder.add(qName);
+        if (isSpilling()) {
+            spillEvent(END_ELEMENT, true);
+            spill.putString(uri);
+            spill.putString(localname);
+            spill.putString(qName);
+        } else {
+            addToEventBuffer(END_ELEMENT);
+            addLocation();
+            StringBuilder.add(uri);
+            StringBuilder.add(localname);
+            StringBuilder.add(qName);
+        }
 
         super.endElement(uri, localname, qName);
     }
@@ -463,9 +749,14 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void endPrefixMapping(String s) throws SAXException {
 
-        addToEventBuffer(END_PREFIX_MAPPING);
         // NOTE: We don't keep location data for this event as it is very unlikely to be used
-        StringBuilder.add(s);
+        if (isSpilling()) {
+            spillEvent(END_PREFIX_MAPPING, false);
+            spill.putString(s);
+        } else {
+            addToEventBuffer(END_PREFIX_MAPPING);
+            StringBuilder.add(s);
+        }
 
         super.endPrefixMapping(s);
     }
@@ -473,11 +764,16 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void ignorableWhitespace(char[] chars, int start, int length) throws SAXException {
 
-        addToEventBuffer(IGN_WHITESPACE);
-        addToCharBuffer(chars, start, length);
-        addToIntBuffer(length);
+        if (isSpilling()) {
+            spillEvent(IGN_WHITESPACE, true);
+            spill.putChars(chars, start, length);
+        } else {
+            addToEventBuffer(IGN_WHITESPACE);
+            addToCharBuffer(chars, start, length);
+            addToIntBuffer(length);
 
-        addLocation();
+            addLocation();
+        }
 
         super.ignorableWhitespace(chars, start, length);
     }
@@ -485,10 +781,16 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void processingInstruction(String s, String s1) throws SAXException {
 
-        addToEventBuffer(PI);
-        addLocation();
-        StringBuilder.add(s);
-        StringBuilder.add(s1);
+        if (isSpilling()) {
+            spillEvent(PI, true);
+            spill.putString(s);
+            spill.putString(s1);
+        } else {
+            addToEventBuffer(PI);
+            addLocation();
+            StringBuilder.add(s);
+            StringBuilder.add(s1);
+        }
 
         super.processingInstruction(s, s1);
     }
@@ -503,9 +805,14 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void skippedEntity(String s) throws SAXException {
 
-        addToEventBuffer(SKIPPED_ENTITY);
-        addLocation();
-        StringBuilder.add(s);
+        if (isSpilling()) {
+            spillEvent(SKIPPED_ENTITY, true);
+            spill.putString(s);
+        } else {
+            addToEventBuffer(SKIPPED_ENTITY);
+            addLocation();
+            StringBuilder.add(s);
+        }
 
         super.skippedEntity(s);
     }
@@ -513,27 +820,46 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void startDocument() throws SAXException {
 
-        addToEventBuffer(START_DOCUMENT);
-        addLocation();
+        if (isSpilling()) {
+            spillEvent(START_DOCUMENT, true);
+        } else {
+            addToEventBuffer(START_DOCUMENT);
+            addLocation();
+        }
         super.startDocument();
     }
 
     @Override
     public void startElement(String uri, String localname, String qName, Attributes attributes) throws SAXException {
 
-        addToEventBuffer(START_ELEMENT);
-        if (locator != null) {
-            addToLineBuffer(locator.getLineNumber());
-            addToLineBuffer(locator.getColumnNumber());
-            addToSystemIdBuffer(locator.getSystemId());
-            if (publicId == null && locator.getPublicId() != null)
-                publicId = locator.getPublicId();
-        }
-        StringBuilder.add(uri);
-        StringBuilder.add(localname);
-        StringBuilder.add(qName);
+        if (locator != null && publicId == null && locator.getPublicId() != null)
+            publicId = locator.getPublicId();
+
+        if (isSpilling()) {
+            spillEvent(START_ELEMENT, true);
+            spill.putString(uri);
+            spill.putString(localname);
+            spill.putString(qName);
+
+            final int count = attributes.getLength();
+            spill.putInt(count);
+            attributeCount += count;
+            for (int i = 0; i < count; i++) {
+                spill.putString(attributes.getURI(i));
+                spill.putString(attributes.getLocalName(i));
+                spill.putString(attributes.getQName(i));
+                spill.putString(attributes.getType(i));
+                spill.putString(attributes.getValue(i));
+            }
+        } else {
+            addToEventBuffer(START_ELEMENT);
+            addLocation();
+            StringBuilder.add(uri);
+            StringBuilder.add(localname);
+            StringBuilder.add(qName);
 
-        addToAttributeBuffer(attributes);
+            addToAttributeBuffer(attributes);
+        }
 
         super.startElement(uri, localname, qName, attributes);
     }
@@ -541,10 +867,16 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void startPrefixMapping(String s, String s1) throws SAXException {
 
-        addToEventBuffer(START_PREFIX_MAPPING);
         // NOTE: We don't keep location data for this event as it is very unlikely to be used
-        StringBuilder.add(s);
-        StringBuilder.add(s1);
+        if (isSpilling()) {
+            spillEvent(START_PREFIX_MAPPING, false);
+            spill.putString(s);
+            spill.putString(s1);
+        } else {
+            addToEventBuffer(START_PREFIX_MAPPING);
+            StringBuilder.add(s);
+            StringBuilder.add(s1);
+        }
 
         super.startPrefixMapping(s, s1);
     }
@@ -552,11 +884,16 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
     @Override
     public void comment(char[] ch, int start, int length) throws SAXException {
 
-        addToEventBuffer(COMMENT);
-        addToCharBuffer(ch, start, length);
-        addToIntBuffer(length);
+        if (isSpilling()) {
+            spillEvent(COMMENT, true);
+            spill.putChars(ch, start, length);
+        } else {
+            addToEventBuffer(COMMENT);
+            addToCharBuffer(ch, start, length);
+            addToIntBuffer(length);
 
-        addLocation();
+            addLocation();
+        }
 
         super.comment(ch, start, length);
     }
@@ -569,6 +906,13 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
         }
     }
 
+    private void spillEvent(byte eventType, boolean withLocation) {
+        if (withLocation && locator != null)
+            spill.putEvent(eventType, locator.getSystemId(), locator.getLineNumber(), locator.getColumnNumber(), true);
+        else
+            spill.putEvent(eventType, null, -1, -1, false);
+    }
+
     protected void addToCharBuffer(char[] chars, int start, int length) {
         if (charBuffer.length - charBufferPosition <= length) {
             // double the array
@@ -693,6 +1037,11 @@ public class SAXStore extends ForwardingXMLReceiver implements Externalizable {
 
     public void writeExternal(ObjectOutput out) throws IOException {
 
+        if (spill != null) {
+            materialize().writeExternal(out);
+            return;
+        }
+
         out.writeInt(eventBufferPosition);
         out.write(eventBuffer, 0, eventBufferPosition);
 
@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xml;
+
+import org.orbeon.oxf.common.OXFException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage for the events of a SAXStore past its spill threshold, outside of the Java heap.
+ *
+ * Events are encoded sequentially into fixed-size chunks, which are either direct buffers or regions of a memory-mapped
+ * temporary file. A primitive value never straddles two chunks: if it doesn't fit at the end of a chunk, it starts at
+ * the beginning of the next chunk. Readers apply the same rule, so any position returned by position() can be used as a
+ * starting point for reading.
+ *
+ * Chunks are not modified once written, so several readers can read them concurrently. Readers keep their own
+ * references to the chunks, so disposing of the spill while a reader is in use doesn't affect that reader: the memory
+ * is reclaimed once the last reader is done with it.
+ */
+final class SAXStoreSpill {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final SAXStore.SpillMode mode;
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private ByteBuffer current;
+
+    private FileChannel channel; // only for the MAPPED mode, until closed
+    private boolean disposed;
+
+    // System ids are repeated for most events, so keep them once, with an index in the events
+    private final List<String> systemIds = new ArrayList<String>();
+
+    SAXStoreSpill(SAXStore.SpillMode mode) {
+        this.mode = mode;
+    }
+
+    // Position of the next event
+    long position() {
+        return current == null ? 0 : (long) (chunks.size() - 1) * CHUNK_SIZE + current.position();
+    }
+
+    // Approximate size, including the unused end of the last chunk
+    long size() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    }
+
+    // Release the file channel, if any. Chunks already mapped remain readable, and further chunks are direct buffers.
+    void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // NOP
+            }
+            channel = null;
+        }
+    }
+
+    // Release the chunks and the file channel, if any. The spill can't be read or written afterwards.
+    void dispose() {
+        close();
+        chunks.clear();
+        current = null;
+        disposed = true;
+    }
+
+    void putEvent(byte eventType, String systemId, int line, int column, boolean hasLocation) {
+        putByte(eventType);
+        if (hasLocation) {
+            putByte((byte) 1);
+            putInt(line);
+            putInt(column);
+            putInt(systemIdIndex(systemId));
+        } else {
+            putByte((byte) 0);
+        }
+    }
+
+    void putByte(byte b) {
+        ensureRemaining(1);
+        current.put(b);
+    }
+
+    void putInt(int i) {
+        ensureRemaining(4);
+        current.putInt(i);
+    }
+
+    void putChars(char[] chars, int start, int length) {
+        putInt(length);
+        int done = 0;
+        while (done < length) {
+            ensureRemaining(2);
+            final int count = Math.min(current.remaining() / 2, length - done);
+            current.asCharBuffer().put(chars, start + done, count);
+            current.position(current.position() + count * 2);
+            done += count;
+        }
+    }
+
+    void putString(String s) {
+        if (s == null) {
+            putInt(-1);
+        } else {
+            final int length = s.length();
+            putInt(length);
+            int done = 0;
+            while (done < length) {
+                ensureRemaining(2);
+                final int count = Math.min(current.remaining() / 2, length - done);
+                current.asCharBuffer().put(s, done, done + count);
+                current.position(current.position() + count * 2);
+                done += count;
+            }
+        }
+    }
+
+    String systemId(int index) {
+        return index >= 0 && index < systemIds.size() ? systemIds.get(index) : null;
+    }
+
+    private int systemIdIndex(String systemId) {
+        final int last = systemIds.size() - 1;
+        if (last >= 0) {
+            final String lastSystemId = systemIds.get(last);
+            if (systemId == null ? lastSystemId == null : systemId.equals(lastSystemId))
+                return last;
+        }
+        systemIds.add(systemId);
+        return last + 1;
+    }
+
+    private void ensureRemaining(int count) {
+        if (disposed)
+            throw new OXFException("SAXStore spill was disposed");
+        if (current == null || current.remaining() < count) {
+            current = newChunk();
+            chunks.add(current);
+        }
+    }
+
+    private ByteBuffer newChunk() {
+        if (mode == SAXStore.SpillMode.MAPPED && (channel != null || chunks.isEmpty())) {
+            try {
+                if (channel == null)
+                    channel = openTemporaryFile();
+                return channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * CHUNK_SIZE, CHUNK_SIZE);
+            } catch (IOException e) {
+                // The store is unusable past this point, so don't keep the file open until the store is collected
+                dispose();
+                throw new OXFException(e);
+            }
+        } else {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+    }
+
+    // The file is deleted right away where possible, so that its space is reclaimed once unmapped
+    private static FileChannel openTemporaryFile() throws IOException {
+        final File file = File.createTempFile("orbeon-saxstore-", ".tmp");
+        try {
+            return new RandomAccessFile(file, "rw").getChannel();
+        } finally {
+            if (! file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    Reader reader(long from) {
+        if (disposed)
+            throw new OXFException("SAXStore spill was disposed");
+        return new Reader(chunks.toArray(new ByteBuffer[chunks.size()]), from, position());
+    }
+
+    /**
+     * Sequential reader of events, from a given position up to the position of the writer when the reader is created.
+     */
+    final class Reader {
+
+        private final ByteBuffer[] chunks;
+        private final long end;
+        private int chunkIndex;
+        private ByteBuffer buffer;
+
+        private char[] chars = new char[256];
+
+        private Reader(ByteBuffer[] chunks, long from, long end) {
+            this.chunks = chunks;
+            this.end = end;
+            this.chunkIndex = (int) (from / CHUNK_SIZE);
+            if (chunkIndex < chunks.length) {
+                this.buffer = chunks[chunkIndex].duplicate();
+                this.buffer.position((int) (from % CHUNK_SIZE));
+            }
+        }
+
+        boolean hasMore() {
+            return buffer != null && position() < end;
+        }
+
+        // Position of the next value to read
+        long position() {
+            return (long) chunkIndex * CHUNK_SIZE + buffer.position();
+        }
+
+        byte getByte() {
+            ensureRemaining(1);
+            return buffer.get();
+        }
+
+        int getInt() {
+            ensureRemaining(4);
+            return buffer.getInt();
+        }
+
+        // Read characters into a buffer owned by the reader, which is valid until the next call
+        char[] getChars(int length) {
+            if (chars.length < length)
+                chars = new char[Math.max(length, chars.length * 2)];
+            int done = 0;
+            while (done < length) {
+                ensureRemaining(2);
+                final int count = Math.min(buffer.remaining() / 2, length - done);
+                buffer.asCharBuffer().get(chars, done, count);
+                buffer.position(buffer.position() + count * 2);
+                done += count;
+            }
+            return chars;
+        }
+
+        String getString() {
+            final int length = getInt();
+            return length == -1 ? null : new String(getChars(length), 0, length);
+        }
+
+        private void ensureRemaining(int count) {
+            if (buffer.remaining() < count) {
+                chunkIndex++;
+                buffer = chunks[chunkIndex].duplicate();
+            }
+        }
+    }
+}
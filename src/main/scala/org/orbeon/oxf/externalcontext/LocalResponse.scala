@@ -14,10 +14,13 @@
 package org.orbeon.oxf.externalcontext
 
 import java.io._
+import javax.xml.transform.stream.StreamResult
 
 import org.orbeon.oxf.externalcontext.ExternalContext.Response
 import org.orbeon.oxf.http.{EmptyInputStream, Headers, StreamedContent}
 import org.orbeon.oxf.util.{NetUtils, StringBuilderWriter}
+import org.orbeon.oxf.xml.{SAXStore, TransformerUtils}
+import org.orbeon.saxon.om.NodeInfo
 
 import scala.collection.mutable
 
@@ -50,6 +53,10 @@ class LocalResponse(rewriter: URLRewriter) extends Response with CachingResponse
     _lowerCaseHeaders.toList map
     { case (k, v) ⇒ Headers.capitalizeCommonOrSplitHeader(k) → v } toMap
 
+  // Provide the content as XML, which an in-process caller can use without parsing
+  def setXMLContent(xml: SAXStore Either NodeInfo): Unit =
+    _inputStream = new XMLContentInputStream(xml)
+
   def getInputStream: InputStream = {
     if (_inputStream eq null) {
       _inputStream =
@@ -137,6 +144,18 @@ class LocalResponse(rewriter: URLRewriter) extends Response with CachingResponse
     throw new UnsupportedOperationException
 }
 
+object LocalResponse {
+
+  // Send XML to the response, without serializing it if the response is local
+  def sendXML(response: Response, nodeInfo: NodeInfo): Unit =
+    response match {
+      case localResponse: LocalResponse ⇒
+        localResponse.setXMLContent(Right(nodeInfo))
+      case _ ⇒
+        TransformerUtils.getXMLIdentityTransformer.transform(nodeInfo, new StreamResult(response.getOutputStream))
+    }
+}
+
 private class LocalByteArrayOutputStream extends ByteArrayOutputStream {
   def getByteArray = buf
 }
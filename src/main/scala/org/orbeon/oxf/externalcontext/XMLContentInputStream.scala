@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.externalcontext
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, InputStream}
+import javax.xml.transform.stream.StreamResult
+
+import org.orbeon.dom.Document
+import org.orbeon.oxf.xml.{SAXStore, TransformerUtils}
+import org.orbeon.saxon.Configuration
+import org.orbeon.saxon.om.{DocumentInfo, NodeInfo}
+
+// Content of an internal response provided as XML by the service
+//
+// A caller running in the same JVM can obtain the XML directly, without serializing and parsing it. Any other caller
+// reads the content as bytes, which are serialized upon first read.
+class XMLContentInputStream(val xml: SAXStore Either NodeInfo) extends InputStream {
+
+  private lazy val bytes = {
+    val os = new ByteArrayOutputStream
+    xml match {
+      case Left(saxStore) ⇒
+        val identity = TransformerUtils.getIdentityTransformerHandler
+        identity.setResult(new StreamResult(os))
+        saxStore.replay(identity)
+      case Right(nodeInfo) ⇒
+        TransformerUtils.getXMLIdentityTransformer.transform(nodeInfo, new StreamResult(os))
+    }
+    new ByteArrayInputStream(os.toByteArray)
+  }
+
+  def toDocument: Document =
+    xml.fold(TransformerUtils.saxStoreToDom4jDocument, TransformerUtils.tinyTreeToDom4j)
+
+  // Always return a new tree, as the caller might keep it
+  def toTinyTree(configuration: Configuration): DocumentInfo =
+    xml.fold(TransformerUtils.saxStoreToTinyTree(configuration, _), TransformerUtils.readTinyTree(configuration, _, false))
+
+  def read(): Int = bytes.read()
+  override def read(b: Array[Byte], off: Int, len: Int): Int = bytes.read(b, off, len)
+  override def skip(n: Long): Long = bytes.skip(n)
+  override def available(): Int = bytes.available()
+  override def markSupported(): Boolean = true
+  override def mark(readLimit: Int): Unit = bytes.mark(readLimit)
+  override def reset(): Unit = bytes.reset()
+}
@@ -22,7 +22,9 @@
  */
 package org.orbeon.oxf.json
 
-import org.orbeon.oxf.util.XPath
+import java.io.{Reader, StringReader, Writer}
+
+import org.orbeon.oxf.util.{StringBuilderWriter, XPath}
 import org.orbeon.oxf.xml._
 import org.orbeon.saxon.om.{DocumentInfo, NodeInfo}
 import org.orbeon.scaxon.SimplePath._
@@ -64,11 +66,8 @@ object Converter extends XmlToJsonAlgorithm with JsonToXmlAlgorithm {
   def makeNCName(name: String): String                          = SaxonUtils.makeNCName(name, keepFirstIfPossible = true)
 
   // Convert a JSON String to a readonly DocumentInfo
-  def jsonStringToXmlDoc(source: String, rootElementName: String = Symbols.JSON): DocumentInfo = {
-    val (builder, receiver) = TransformerUtils.createTinyBuilder(XPath.GlobalConfiguration)
-    jsonStringToXmlStream(source, receiver, rootElementName)
-    builder.getCurrentRoot.asInstanceOf[DocumentInfo]
-  }
+  def jsonStringToXmlDoc(source: String, rootElementName: String = Symbols.JSON): DocumentInfo =
+    jsonReaderToXmlDoc(new StringReader(source), rootElementName)
 
   // Convert a JSON String to a readonly DocumentInfo
   def jsonToXmlDoc(ast: JsValue): DocumentInfo = {
@@ -79,7 +78,21 @@ object Converter extends XmlToJsonAlgorithm with JsonToXmlAlgorithm {
 
   // Convert a JSON String to a stream of XML events
   def jsonStringToXmlStream(source: String, receiver: XMLReceiver, rootElementName: String = Symbols.JSON): Unit =
-    jsonToXmlStream(source.parseJson, receiver, rootElementName)
+    jsonReaderToXmlStream(new StringReader(source), receiver, rootElementName)
+
+  // Convert JSON text to a stream of XML events as it is read, without building a JSON AST
+  def jsonReaderToXmlStream(reader: Reader, receiver: XMLReceiver, rootElementName: String = Symbols.JSON): Unit = {
+    receiver.startDocument()
+    jsonReaderToXmlImpl(reader, new DeferredXMLReceiverImpl(receiver), rootElementName)
+    receiver.endDocument()
+  }
+
+  // Convert JSON text to a readonly DocumentInfo
+  def jsonReaderToXmlDoc(reader: Reader, rootElementName: String = Symbols.JSON): DocumentInfo = {
+    val (builder, receiver) = TransformerUtils.createTinyBuilder(XPath.GlobalConfiguration)
+    jsonReaderToXmlStream(reader, receiver, rootElementName)
+    builder.getCurrentRoot.asInstanceOf[DocumentInfo]
+  }
 
   // Convert a JSON AST to a stream of XML events
   def jsonToXmlStream(ast: JsValue, receiver: XMLReceiver, rootElementName: String = Symbols.JSON): Unit = {
@@ -89,18 +102,25 @@ object Converter extends XmlToJsonAlgorithm with JsonToXmlAlgorithm {
   }
 
   // Convert an XML tree to a JSON String
-  def xmlToJsonString(root: XmlElem, strict: Boolean): String =
-    xmlToJson(root, strict).toString
+  def xmlToJsonString(root: XmlElem, strict: Boolean): String = {
+    val writer = new StringBuilderWriter
+    xmlToJsonWriter(root, strict, writer)
+    writer.toString
+  }
+
+  // Convert an XML tree to JSON text written to a `Writer`, without building a JSON AST
+  def xmlToJsonWriter(root: XmlElem, strict: Boolean, writer: Writer): Unit =
+    xmlToJsonWriterImpl(rootElem(root), strict, writer)
 
   // Convert an XML tree to a JSON AST
   def xmlToJson(root: XmlElem, strict: Boolean): JsValue =
-    xmlToJsonImpl(
-      if (root.isDocument)
-        root.rootElement
-      else if (root.isElement)
-        root
-      else
-        throw new IllegalArgumentException("node must be an element or document"),
-      strict
-    )
+    xmlToJsonImpl(rootElem(root), strict)
+
+  private def rootElem(root: XmlElem) =
+    if (root.isDocument)
+      root.rootElement
+    else if (root.isElement)
+      root
+    else
+      throw new IllegalArgumentException("node must be an element or document")
 }
\ No newline at end of file
@@ -22,6 +22,8 @@
  */
 package org.orbeon.oxf.json
 
+import java.io.Reader
+
 import org.orbeon.oxf.util.CollectionUtils._
 import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.StringUtils._
@@ -47,21 +49,6 @@ protected trait JsonToXmlAlgorithm {
   // Convert a JSON AST to a stream of XML events
   def jsonToXmlImpl(ast: JsValue, rcv: XmlStream, rootElementName: String = Symbols.JSON): Unit = {
 
-    def escapeString(s: String) =
-      s.iterateCodePoints map {
-        case cp @ (0x09 | 0x0a | 0x0d)      ⇒ cp
-        case cp if cp <= 0x1F || cp == 0x7F ⇒ cp + 0xE000
-        case cp                             ⇒ cp
-      } codePointsToString
-
-    def withElement[T](localName: String, atts: Seq[(String, String)] = Nil)(body: ⇒ T): T = {
-      startElem(rcv, localName)
-      atts foreach { case (name, value) ⇒ addAttribute(rcv, name, value) }
-      val result = body
-      endElem(rcv, localName)
-      result
-    }
-
     def processValue(jsValue: JsValue): Unit =
       jsValue match {
         case JsString(v) ⇒
@@ -78,25 +65,124 @@ protected trait JsonToXmlAlgorithm {
         case JsObject(fields) ⇒
           addAttribute(rcv, Symbols.Type, Symbols.Object)
           fields foreach { case (name, value) ⇒
-
-            val ncName  = makeNCName(name)
-            val nameAtt = ncName != name list (Symbols.Name → escapeString(name))
-
-            withElement(ncName, nameAtt) {
+            withPropertyElement(rcv, name) {
               processValue(value)
             }
           }
         case JsArray(arrayValues) ⇒
           addAttribute(rcv, Symbols.Type, Symbols.Array)
           arrayValues foreach { arrayValue ⇒
-            withElement(Symbols.Anonymous) {
+            withElement(rcv, Symbols.Anonymous) {
               processValue(arrayValue)
             }
           }
       }
 
-    withElement(rootElementName) {
+    withElement(rcv, rootElementName) {
       processValue(ast)
     }
   }
-}
\ No newline at end of file
+
+  // Convert JSON text to a stream of XML events as the text is read, without building an AST
+  def jsonReaderToXmlImpl(reader: Reader, rcv: XmlStream, rootElementName: String = Symbols.JSON): Unit = {
+
+    val tokenizer = new JsonTokenizer(reader)
+
+    def significantChar(messageIfEnd: String): Char = {
+      val c = tokenizer.peekSignificant
+      if (c == -1)
+        tokenizer.error(messageIfEnd)
+      c.toChar
+    }
+
+    // Same output as `jsonToXmlImpl` for each type of value
+    def processValue(): Unit =
+      significantChar("unexpected end of input") match {
+        case '"' ⇒
+          text(rcv, escapeString(tokenizer.readString()))
+        case c if c == '-' || c >= '0' && c <= '9' ⇒
+          addAttribute(rcv, Symbols.Type, Symbols.Number)
+          text(rcv, BigDecimal(tokenizer.readNumber()).toString)
+        case 't' ⇒
+          tokenizer.readLiteral("true")
+          addAttribute(rcv, Symbols.Type, Symbols.Boolean)
+          text(rcv, "true")
+        case 'f' ⇒
+          tokenizer.readLiteral("false")
+          addAttribute(rcv, Symbols.Type, Symbols.Boolean)
+          text(rcv, "false")
+        case 'n' ⇒
+          tokenizer.readLiteral("null")
+          addAttribute(rcv, Symbols.Type, Symbols.Null)
+        case '{' ⇒
+          tokenizer.next()
+          addAttribute(rcv, Symbols.Type, Symbols.Object)
+          if (tokenizer.peekSignificant == '}')
+            tokenizer.next()
+          else
+            processMembers('}') {
+              val name = tokenizer.readString()
+              tokenizer.expect(':')
+              withPropertyElement(rcv, name) {
+                processValue()
+              }
+            }
+        case '[' ⇒
+          tokenizer.next()
+          addAttribute(rcv, Symbols.Type, Symbols.Array)
+          if (tokenizer.peekSignificant == ']')
+            tokenizer.next()
+          else
+            processMembers(']') {
+              withElement(rcv, Symbols.Anonymous) {
+                processValue()
+              }
+            }
+        case _ ⇒
+          tokenizer.error("unexpected character")
+      }
+
+    // Process comma-separated members until the closing character
+    def processMembers(close: Char)(member: ⇒ Unit): Unit = {
+      var done = false
+      while (! done) {
+        member
+        significantChar(s"expected `,` or `$close`") match {
+          case ','             ⇒ tokenizer.next()
+          case c if c == close ⇒ tokenizer.next(); done = true
+          case _               ⇒ tokenizer.error(s"expected `,` or `$close`")
+        }
+      }
+    }
+
+    withElement(rcv, rootElementName) {
+      processValue()
+    }
+
+    tokenizer.expectEnd()
+  }
+
+  private def escapeString(s: String) =
+    s.iterateCodePoints map {
+      case cp @ (0x09 | 0x0a | 0x0d)      ⇒ cp
+      case cp if cp <= 0x1F || cp == 0x7F ⇒ cp + 0xE000
+      case cp                             ⇒ cp
+    } codePointsToString
+
+  private def withElement[T](rcv: XmlStream, localName: String, atts: Seq[(String, String)] = Nil)(body: ⇒ T): T = {
+    startElem(rcv, localName)
+    atts foreach { case (name, value) ⇒ addAttribute(rcv, name, value) }
+    val result = body
+    endElem(rcv, localName)
+    result
+  }
+
+  // Element for an object property, with a `name` attribute if the property name is not an NCName
+  private def withPropertyElement[T](rcv: XmlStream, name: String)(body: ⇒ T): T = {
+
+    val ncName  = makeNCName(name)
+    val nameAtt = ncName != name list (Symbols.Name → escapeString(name))
+
+    withElement(rcv, ncName, nameAtt)(body)
+  }
+}
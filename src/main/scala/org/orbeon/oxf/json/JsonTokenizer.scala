@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2017 Orbeon, Inc. http://orbeon.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.orbeon.oxf.json
+
+import java.io.Reader
+
+//
+// Pull tokenizer reading JSON text (RFC 7159) from a `Reader`, one character at a time, without building an AST.
+//
+// The caller drives the parsing: it peeks at the next significant character to find out what type of value comes
+// next, then reads that value with the corresponding method.
+//
+private[json] class JsonTokenizer(reader: Reader) {
+
+  private val buffer = new Array[Char](8192)
+  private var pos    = 0
+  private var limit  = 0
+  private var offset = 0L // offset of `buffer(0)` in the input, for error messages
+
+  private val sb     = new java.lang.StringBuilder
+
+  // Next character, or -1 at the end of the input
+  def peek: Int = {
+    if (pos == limit)
+      fill()
+    if (pos == limit) -1 else buffer(pos)
+  }
+
+  def next(): Int = {
+    val c = peek
+    if (c != -1)
+      pos += 1
+    c
+  }
+
+  // Next character which is not JSON whitespace, without consuming it
+  def peekSignificant: Int = {
+    var c = peek
+    while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+      pos += 1
+      c = peek
+    }
+    c
+  }
+
+  def expect(expected: Char): Unit =
+    if (peekSignificant != expected)
+      error(s"expected `$expected`")
+    else
+      pos += 1
+
+  def expectEnd(): Unit =
+    if (peekSignificant != -1)
+      error("unexpected content after JSON value")
+
+  def readLiteral(literal: String): Unit = {
+    var i = 0
+    while (i < literal.length) {
+      if (next() != literal.charAt(i))
+        error(s"expected `$literal`")
+      i += 1
+    }
+  }
+
+  def readString(): String = {
+    expect('"')
+    sb.setLength(0)
+    var done = false
+    while (! done) {
+      nextChar("unterminated string") match {
+        case '"'  ⇒ done = true
+        case '\\' ⇒
+          nextChar("unterminated string") match {
+            case '"'  ⇒ sb.append('"')
+            case '\\' ⇒ sb.append('\\')
+            case '/'  ⇒ sb.append('/')
+            case 'b'  ⇒ sb.append('\b')
+            case 'f'  ⇒ sb.append('\f')
+            case 'n'  ⇒ sb.append('\n')
+            case 'r'  ⇒ sb.append('\r')
+            case 't'  ⇒ sb.append('\t')
+            case 'u'  ⇒ sb.append(readHexChar())
+            case _    ⇒ error("invalid escape sequence")
+          }
+        case c if c < 0x20 ⇒
+          error("unescaped control character in string")
+        case c ⇒
+          sb.append(c)
+      }
+    }
+    sb.toString
+  }
+
+  // Return the text of the number, after checking it follows the JSON grammar
+  def readNumber(): String = {
+    sb.setLength(0)
+
+    def digits(): Int = {
+      var count = 0
+      while (peek >= '0' && peek <= '9') {
+        sb.append(next().toChar)
+        count += 1
+      }
+      count
+    }
+
+    if (peek == '-')
+      sb.append(next().toChar)
+
+    if (peek == '0')
+      sb.append(next().toChar)
+    else if (digits() == 0)
+      error("invalid number")
+
+    if (peek == '.') {
+      sb.append(next().toChar)
+      if (digits() == 0)
+        error("invalid number")
+    }
+
+    if (peek == 'e' || peek == 'E') {
+      sb.append(next().toChar)
+      if (peek == '+' || peek == '-')
+        sb.append(next().toChar)
+      if (digits() == 0)
+        error("invalid number")
+    }
+
+    sb.toString
+  }
+
+  def error(message: String): Nothing =
+    throw new IllegalArgumentException(s"JSON parsing error at offset ${offset + pos}: $message")
+
+  private def nextChar(messageIfEnd: String): Char = {
+    val c = next()
+    if (c == -1)
+      error(messageIfEnd)
+    c.toChar
+  }
+
+  private def readHexChar(): Char = {
+    var value = 0
+    for (_ ← 1 to 4) {
+      val digit = Character.digit(next(), 16)
+      if (digit == -1)
+        error("invalid unicode escape")
+      value = value * 16 + digit
+    }
+    value.toChar
+  }
+
+  private def fill(): Unit = {
+    offset += limit
+    pos = 0
+    limit = 0
+    var read = 0
+    while (read == 0)
+      read = reader.read(buffer)
+    if (read > 0)
+      limit = read
+  }
+}
@@ -22,6 +22,8 @@
  */
 package org.orbeon.oxf.json
 
+import java.io.Writer
+
 import org.orbeon.oxf.util.CollectionUtils._
 import org.orbeon.oxf.util.StringUtils._
 import spray.json._
@@ -50,34 +52,11 @@ protected trait XmlToJsonAlgorithm {
   // Convert an XML tree to a JSON AST
   def xmlToJsonImpl(root: XmlElem, strict: Boolean): JsValue = {
 
-    def unescapeString(s: String) =
-      s.iterateCodePoints map {
-        case cp if cp >= 0xE000 && cp <= 0xE01F || cp == 0xE07F ⇒ cp - 0xE000
-        case cp                                                 ⇒ cp
-      } codePointsToString
-
-    def typeOpt (elem: XmlElem) = attValueOpt(elem, Symbols.Type)
-    def elemName(elem: XmlElem) = attValueOpt(elem, Symbols.Name) map unescapeString getOrElse localname(elem)
-
-    def jsNullIfBlank(s: String, typ: String, convert: String ⇒ JsValue) =
-      s.trimAllToOpt map { trimmed ⇒
-        Try(convert(trimmed)) getOrElse {
-          if (strict)
-            throwError(s"""unable to parse $typ "$trimmed"""")
-          else
-            JsNull
-        }
-      } getOrElse
-        JsNull
-
-    def throwError(s: String) =
-      throw new IllegalArgumentException(s)
-
     def processElement(elem: XmlElem): JsValue =
       typeOpt(elem) match {
         case Some(Symbols.String) | None ⇒ JsString(unescapeString(stringValue(elem)))
-        case Some(Symbols.Number)        ⇒ jsNullIfBlank(stringValue(elem), "number",  v ⇒ JsNumber(v))
-        case Some(Symbols.Boolean)       ⇒ jsNullIfBlank(stringValue(elem), "boolean", v ⇒ JsBoolean(v.toBoolean))
+        case Some(Symbols.Number)        ⇒ jsNullIfBlank(stringValue(elem), "number",  v ⇒ JsNumber(v), strict)
+        case Some(Symbols.Boolean)       ⇒ jsNullIfBlank(stringValue(elem), "boolean", v ⇒ JsBoolean(v.toBoolean), strict)
         case Some(Symbols.Null)          ⇒ JsNull
         case Some(Symbols.Object)        ⇒ JsObject(childrenElem(elem) map (elem ⇒ elemName(elem) → processElement(elem)) toMap)
         case Some(Symbols.Array)         ⇒ JsArray(childrenElem(elem)  map processElement toVector)
@@ -89,4 +68,85 @@ protected trait XmlToJsonAlgorithm {
 
     processElement(root)
   }
-}
\ No newline at end of file
+
+  // Convert an XML tree to JSON text written to `writer`, without building a JSON AST
+  //
+  // The output is the same as the compact rendering of `xmlToJsonImpl`, except that object properties are written in
+  // document order. As with `xmlToJsonImpl`, when an object has several properties with the same name, the last one
+  // wins. With `strict = true`, an error can be thrown after part of the output has been written.
+  def xmlToJsonWriterImpl(root: XmlElem, strict: Boolean, writer: Writer): Unit = {
+
+    def writeValue(value: JsValue): Unit =
+      writer.write(value.compactPrint)
+
+    def writeString(s: String): Unit =
+      writeValue(JsString(s))
+
+    def processElement(elem: XmlElem): Unit =
+      typeOpt(elem) match {
+        case Some(Symbols.String) | None ⇒ writeString(unescapeString(stringValue(elem)))
+        case Some(Symbols.Number)        ⇒ writeValue(jsNullIfBlank(stringValue(elem), "number",  v ⇒ JsNumber(v), strict))
+        case Some(Symbols.Boolean)       ⇒ writeValue(jsNullIfBlank(stringValue(elem), "boolean", v ⇒ JsBoolean(v.toBoolean), strict))
+        case Some(Symbols.Null)          ⇒ writer.write("null")
+        case Some(Symbols.Object)        ⇒
+
+          // Only names are computed ahead, so we can skip properties overridden by a later one with the same name
+          val lastIndexForName = childrenElem(elem).map(elemName).zipWithIndex.toMap
+
+          writer.write('{')
+          var first = true
+          for ((child, index) ← childrenElem(elem).zipWithIndex) {
+            val name = elemName(child)
+            if (lastIndexForName(name) == index) {
+              if (! first)
+                writer.write(',')
+              first = false
+              writeString(name)
+              writer.write(':')
+              processElement(child)
+            }
+          }
+          writer.write('}')
+
+        case Some(Symbols.Array)         ⇒
+          writer.write('[')
+          var first = true
+          for (child ← childrenElem(elem)) {
+            if (! first)
+              writer.write(',')
+            first = false
+            processElement(child)
+          }
+          writer.write(']')
+        case Some(other)                 ⇒
+          if (strict)
+            throwError(s"""unknown datatype `${Symbols.Type}="$other"`""")
+          writer.write("null")
+      }
+
+    processElement(root)
+  }
+
+  private def unescapeString(s: String) =
+    s.iterateCodePoints map {
+      case cp if cp >= 0xE000 && cp <= 0xE01F || cp == 0xE07F ⇒ cp - 0xE000
+      case cp                                                 ⇒ cp
+    } codePointsToString
+
+  private def typeOpt (elem: XmlElem) = attValueOpt(elem, Symbols.Type)
+  private def elemName(elem: XmlElem) = attValueOpt(elem, Symbols.Name) map unescapeString getOrElse localname(elem)
+
+  private def jsNullIfBlank(s: String, typ: String, convert: String ⇒ JsValue, strict: Boolean) =
+    s.trimAllToOpt map { trimmed ⇒
+      Try(convert(trimmed)) getOrElse {
+        if (strict)
+          throwError(s"""unable to parse $typ "$trimmed"""")
+        else
+          JsNull
+      }
+    } getOrElse
+      JsNull
+
+  private def throwError(s: String) =
+    throw new IllegalArgumentException(s)
+}
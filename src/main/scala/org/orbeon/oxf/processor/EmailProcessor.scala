@@ -73,8 +73,8 @@ class EmailProcessor extends ProcessorImpl {
 
     properties.setProperty("mail.smtp.host", host)
 
-    // Create session
-    val session = {
+    // SMTP server settings
+    val server = {
 
       // Get credentials if any
       val (usernameOption, passwordOption) = {
@@ -130,25 +130,11 @@ class EmailProcessor extends ProcessorImpl {
       // Set or override port depending on the encryption settings
       valueFromElementOrProperty(messageElement, SMTPPort) orElse defaultPort foreach updatePort
 
-      usernameOption match {
-        case Some(username) ⇒
-          if (Logger.isInfoEnabled) Logger.info("Authentication")
-
-          properties.setProperty("mail.smtp.auth", "true")
-
-          if (Logger.isInfoEnabled) Logger.info("Username: " + usernameOption)
-
-          Session.getInstance(properties, new Authenticator {
-            override def getPasswordAuthentication: PasswordAuthentication = {
-              new PasswordAuthentication(username, passwordOption getOrElse "")
-            }
-          })
-        case None ⇒
-          if (Logger.isInfoEnabled) Logger.info("No Authentication")
-          Session.getInstance(properties)
-      }
+      EmailQueue.SMTPServer(properties.asScala.toMap, usernameOption, passwordOption)
     }
 
+    val session = createSession(server)
+
     // Create message
     val message = new MimeMessage(session)
 
@@ -208,10 +194,13 @@ class EmailProcessor extends ProcessorImpl {
     else
       throw new OXFException("Main text or body element not found")
 
-    // Send message
-    useAndClose(session.getTransport("smtp")) { _ ⇒
-      Transport.send(message)
-    }
+    // Send message, or queue it so the caller doesn't wait for the SMTP server
+    if (propertySet.getBoolean(Queue, default = false))
+      EmailQueue.enqueue(queueConfig, server, message)
+    else
+      useAndClose(session.getTransport("smtp")) { _ ⇒
+        Transport.send(message)
+      }
   }
 
   private object Private {
@@ -356,6 +345,14 @@ private object EmailProcessor {
   val TestTo       = "test-to"
   val TestSMTPHost = "test-smtp-host"
 
+  val Queue              = "queue"
+  val QueueDirectory     = "queue-directory"
+  val QueueThreads       = "queue-threads"
+  val QueueBatchSize     = "queue-batch-size"
+  val QueueMaxAttempts   = "queue-max-attempts"
+  val QueueRetryDelay    = "queue-retry-delay"
+  val QueueMaxRetryDelay = "queue-max-retry-delay"
+
   val ConfigNamespaceURI = "http://www.orbeon.com/oxf/email"
 
   // Use utf-8 as most email clients support it. This allows us not to have to pick an inferior encoding.
@@ -368,6 +365,41 @@ private object EmailProcessor {
   def valueFromElementOrProperty(e: Element, name: String)(implicit propertySet: PropertySet) =
     optionalValueTrim(e.element(name)) orElse propertySet.getNonBlankString(name)
 
+  def queueConfig(implicit propertySet: PropertySet) =
+    EmailQueue.Config(
+      directory       = propertySet.getNonBlankString(QueueDirectory) map (new File(_)) getOrElse
+                          new File(SystemUtils.getTemporaryDirectory, "orbeon-email-queue"),
+      threads         = propertySet.getInteger(QueueThreads,       2),
+      batchSize       = propertySet.getInteger(QueueBatchSize,     20),
+      maxAttempts     = propertySet.getInteger(QueueMaxAttempts,   5),
+      retryDelayMs    = propertySet.getInteger(QueueRetryDelay,    30000).toLong,
+      maxRetryDelayMs = propertySet.getInteger(QueueMaxRetryDelay, 3600000).toLong
+    )
+
+  def createSession(server: EmailQueue.SMTPServer): Session = {
+
+    val properties = new JProperties
+    server.properties foreach { case (name, value) ⇒ properties.setProperty(name, value) }
+
+    server.username match {
+      case Some(username) ⇒
+        if (Logger.isInfoEnabled) Logger.info("Authentication")
+
+        properties.setProperty("mail.smtp.auth", "true")
+
+        if (Logger.isInfoEnabled) Logger.info("Username: " + username)
+
+        Session.getInstance(properties, new Authenticator {
+          override def getPasswordAuthentication: PasswordAuthentication = {
+            new PasswordAuthentication(username, server.password getOrElse "")
+          }
+        })
+      case None ⇒
+        if (Logger.isInfoEnabled) Logger.info("No Authentication")
+        Session.getInstance(properties)
+    }
+  }
+
   trait ReadonlyDataSource extends DataSource {
     def getOutputStream = throw new IOException("Write operation not supported")
   }
@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor
+
+import java.io._
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.{Properties ⇒ JProperties}
+import javax.mail.internet.MimeMessage
+import javax.mail.Transport
+
+import org.orbeon.oxf.util.IOUtils._
+import org.orbeon.oxf.externalcontext.WebAppListener
+import org.orbeon.oxf.util.{LoggerFactory, Metrics, NetUtils, SecureUtils}
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+/**
+ * Outbound email queue used by the email processor when the `queue` property is enabled.
+ *
+ * - Messages are first written to a spool directory, so that the caller can return as soon as the message is
+ *   durably queued, and so that pending messages are sent after a restart.
+ * - A pool of worker threads sends messages, grouping pending messages for the same SMTP server into batches and
+ *   keeping the SMTP connection open between batches for a short time.
+ * - Failed messages are retried with an exponential backoff, and moved to a `failed` subdirectory after the
+ *   maximum number of attempts.
+ * - The configuration is checked each time a message is enqueued, and the threads are restarted if it changed. The
+ *   threads are stopped when the web app is destroyed, and spooled messages are sent after the next start.
+ */
+private[processor] object EmailQueue {
+
+  private val Logger = LoggerFactory.createLogger(EmailQueue.getClass)
+
+  private val MessageExtension = ".eml"
+  private val ServerExtension  = ".smtp"
+  private val TempExtension    = ".tmp"
+  private val FailedDirectory  = "failed"
+
+  private val UsernameKey      = "orbeon.username"
+  private val PasswordKey      = "orbeon.password"
+
+  // Keep a connection open this long after a batch in case more messages for the same server come in
+  private val ConnectionIdleTimeoutMs = 5000L
+
+  case class Config(
+    directory      : File,
+    threads        : Int,
+    batchSize      : Int,
+    maxAttempts    : Int,
+    retryDelayMs   : Long,
+    maxRetryDelayMs: Long
+  )
+
+  // SMTP server settings, which determine which messages can share a connection
+  // NOTE: Don't log instances, as they contain the password.
+  case class SMTPServer(properties: Map[String, String], username: Option[String], password: Option[String]) {
+    def host = properties.getOrElse("mail.smtp.host", "")
+  }
+
+  // The spool directory is kept with each message, so messages queued before a configuration change are still found
+  private case class Entry(directory: File, id: String, server: SMTPServer, attempts: Int)
+
+  private case class Running(config: Config, workers: ExecutorService, retryScheduler: ScheduledExecutorService)
+
+  private val pending   = new LinkedBlockingDeque[Entry]
+  private val retrying  = new AtomicInteger
+
+  private var runningOpt: Option[Running] = None
+  private var listeningToWebApp = false
+
+  // Number of messages waiting to be sent, including messages waiting for a retry
+  def queueDepth: Int = pending.size + retrying.get
+
+  Metrics.gauge("orbeon_email_queue_depth", "Email messages waiting to be sent, including messages waiting for a retry.")(queueDepth.toDouble)
+
+  private val SentCounter    = Metrics.counter("orbeon_email_queue_sent_total",    "Queued email messages sent.")
+  private val RetriedCounter = Metrics.counter("orbeon_email_queue_retried_total", "Queued email messages scheduled for another attempt.")
+  private val FailedCounter  = Metrics.counter("orbeon_email_queue_failed_total",  "Queued email messages moved to the failed directory.")
+
+  def sentCount  : Long = SentCounter.get
+  def failedCount: Long = FailedCounter.get
+
+  // Write the message to the spool directory and schedule it for sending
+  def enqueue(config: Config, server: SMTPServer, message: MimeMessage): Unit = {
+
+    val directory = ensureStarted(config).directory
+    val id        = System.currentTimeMillis.toString + "-" + SecureUtils.randomHexId
+
+    // Save changes so that headers such as `Message-ID` are set once and for all
+    message.saveChanges()
+
+    writeAtomically(new File(directory, id + MessageExtension))(os ⇒ message.writeTo(os))
+    writeAtomically(new File(directory, id + ServerExtension))(os ⇒ serverProperties(server).store(os, null))
+
+    pending.put(Entry(directory, id, server, 0))
+
+    if (Logger.isDebugEnabled)
+      Logger.debug(s"queued email message `$id` for SMTP host `${server.host}`, queue depth: $queueDepth")
+  }
+
+  // Start the threads, or restart them if the configuration changed
+  private def ensureStarted(config: Config): Config = synchronized {
+    runningOpt match {
+      case Some(running) if running.config == config ⇒
+        config
+      case previousOpt ⇒
+
+        previousOpt foreach { previous ⇒
+          Logger.info("email queue configuration changed, restarting the email queue")
+          stop(previous)
+        }
+
+        config.directory.mkdirs()
+        new File(config.directory, FailedDirectory).mkdirs()
+
+        val running =
+          Running(
+            config         = config,
+            workers        = Executors.newFixedThreadPool(config.threads, daemonThreadFactory("orbeon-email-worker")),
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("orbeon-email-retry"))
+          )
+
+        // Messages of the previous directory, if any, are already pending
+        if (! previousOpt.exists(_.config.directory == config.directory))
+          recoverSpooledMessages(config.directory)
+
+        for (_ ← 1 to config.threads)
+          running.workers.execute(new Runnable { def run(): Unit = workerLoop(running) })
+
+        runningOpt = Some(running)
+        listenToWebApp()
+        config
+    }
+  }
+
+  // Stop the threads, leaving the messages in the spool directory
+  def shutdown(): Unit = synchronized {
+    runningOpt foreach { running ⇒
+      Logger.info("stopping the email queue")
+      stop(running)
+      running.retryScheduler.shutdownNow()
+      pending.clear()
+      retrying.set(0)
+      runningOpt = None
+    }
+  }
+
+  // Interrupt the workers, which close their connection, and let retries already scheduled put their message back
+  private def stop(running: Running): Unit = {
+    running.workers.shutdownNow()
+    running.retryScheduler.shutdown()
+  }
+
+  private def listenToWebApp(): Unit =
+    if (! listeningToWebApp)
+      Option(NetUtils.getExternalContext) foreach { externalContext ⇒
+        externalContext.getWebAppContext.addListener(new WebAppListener {
+          def webAppDestroyed(): Unit = shutdown()
+        })
+        listeningToWebApp = true
+      }
+
+  // Messages left in the spool directory by a previous run are sent again
+  private def recoverSpooledMessages(directory: File): Unit = {
+
+    val files = Option(directory.listFiles).toList.flatten
+
+    files filter (_.getName.endsWith(TempExtension)) foreach (_.delete())
+
+    val recovered =
+      for {
+        serverFile  ← files.sortBy(_.getName)
+        serverName  = serverFile.getName
+        if serverName.endsWith(ServerExtension)
+        id          = serverName.substring(0, serverName.length - ServerExtension.length)
+        if new File(directory, id + MessageExtension).exists
+      } yield
+        Entry(directory, id, readServerProperties(serverFile), 0)
+
+    recovered foreach pending.put
+
+    if (recovered.nonEmpty)
+      Logger.info(s"recovered ${recovered.size} spooled email message(s)")
+  }
+
+  private def workerLoop(running: Running): Unit = {
+
+    val config = running.config
+
+    // Connection kept open between batches for the same server
+    var connectionOpt: Option[(SMTPServer, Transport)] = None
+
+    def closeConnection(): Unit = {
+      connectionOpt foreach { case (_, transport) ⇒ runQuietly(transport.close()) }
+      connectionOpt = None
+    }
+
+    while (true) {
+      try {
+        val first =
+          Option(pending.poll(ConnectionIdleTimeoutMs, TimeUnit.MILLISECONDS)) getOrElse {
+            closeConnection()
+            pending.take()
+          }
+
+        val batch = first :: claimPendingForServer(first.server, config.batchSize - 1)
+
+        val transport =
+          connectionOpt match {
+            case Some((server, transport)) if server == first.server && transport.isConnected ⇒
+              transport
+            case _ ⇒
+              closeConnection()
+              val transport = EmailProcessor.createSession(first.server).getTransport("smtp")
+              connectionOpt = Some(first.server → transport)
+              transport
+          }
+
+        if (! sendBatch(running, transport, batch))
+          closeConnection()
+      } catch {
+        case _: InterruptedException ⇒
+          closeConnection()
+          return
+        case NonFatal(t) ⇒
+          Logger.error("unexpected error in email queue worker", t)
+          closeConnection()
+      }
+    }
+  }
+
+  // Atomically remove up to `max` pending entries for the given server, so that no other worker sends them
+  private def claimPendingForServer(server: SMTPServer, max: Int): List[Entry] =
+    pending.iterator.asScala.filter(_.server == server).take(max).toList filter (e ⇒ pending.remove(e))
+
+  // Return false if the connection must not be reused
+  private def sendBatch(running: Running, transport: Transport, batch: List[Entry]): Boolean = {
+
+    val connected =
+      try {
+        if (! transport.isConnected)
+          transport.connect()
+        true
+      } catch {
+        case NonFatal(t) ⇒
+          Logger.warn(s"cannot connect to SMTP host `${batch.head.server.host}`: ${t.getMessage}")
+          batch foreach (scheduleRetry(running, _, t))
+          false
+      }
+
+    connected && {
+      var connectionOk = true
+      for (entry ← batch) {
+        if (connectionOk) {
+          try {
+            val messageFile = new File(entry.directory, entry.id + MessageExtension)
+            val message     = useAndClose(new BufferedInputStream(new FileInputStream(messageFile)))(new MimeMessage(null, _))
+
+            transport.sendMessage(message, message.getAllRecipients)
+
+            messageFile.delete()
+            new File(entry.directory, entry.id + ServerExtension).delete()
+            SentCounter.inc()
+          } catch {
+            case NonFatal(t) ⇒
+              connectionOk = transport.isConnected
+              scheduleRetry(running, entry, t)
+          }
+        } else {
+          scheduleRetry(running, entry, new IllegalStateException("SMTP connection lost"))
+        }
+      }
+      connectionOk
+    }
+  }
+
+  private def scheduleRetry(running: Running, entry: Entry, t: Throwable): Unit = {
+
+    val config   = running.config
+    val attempts = entry.attempts + 1
+
+    if (attempts >= config.maxAttempts) {
+      Logger.error(s"giving up sending email message `${entry.id}` after $attempts attempts", t)
+      val failedDirectory = new File(entry.directory, FailedDirectory)
+      failedDirectory.mkdirs()
+      List(MessageExtension, ServerExtension) foreach { extension ⇒
+        new File(entry.directory, entry.id + extension).renameTo(new File(failedDirectory, entry.id + extension))
+      }
+      FailedCounter.inc()
+    } else {
+      val delayMs = math.min(config.retryDelayMs << (attempts - 1).min(20), config.maxRetryDelayMs)
+      Logger.warn(s"error sending email message `${entry.id}`, retrying in $delayMs ms: ${t.getMessage}")
+      retrying.incrementAndGet()
+      RetriedCounter.inc()
+      try
+        running.retryScheduler.schedule(new Runnable {
+          def run(): Unit = {
+            pending.put(entry.copy(attempts = attempts))
+            retrying.decrementAndGet()
+          }
+        }, delayMs, TimeUnit.MILLISECONDS)
+      catch {
+        // The queue is restarting, so retry with the new threads
+        case _: RejectedExecutionException ⇒
+          retrying.decrementAndGet()
+          pending.put(entry.copy(attempts = attempts))
+      }
+    }
+  }
+
+  private def serverProperties(server: SMTPServer): JProperties = {
+    val properties = new JProperties
+    server.properties foreach { case (name, value) ⇒ properties.setProperty(name, value) }
+    server.username foreach (properties.setProperty(UsernameKey, _))
+    // Don't store the password in clear on disk
+    server.password foreach (password ⇒ properties.setProperty(PasswordKey, SecureUtils.encrypt(password.getBytes("utf-8"))))
+    properties
+  }
+
+  private def readServerProperties(file: File): SMTPServer = {
+    val properties = new JProperties
+    useAndClose(new FileInputStream(file))(is ⇒ properties.load(is))
+
+    val all = properties.asScala.toMap
+    SMTPServer(
+      properties = all - UsernameKey - PasswordKey,
+      username   = all.get(UsernameKey),
+      password   = all.get(PasswordKey) map (encrypted ⇒ new String(SecureUtils.decrypt(encrypted), "utf-8"))
+    )
+  }
+
+  // Write to a temporary file first, so that a partially written file is never picked up
+  private def writeAtomically(file: File)(write: OutputStream ⇒ Unit): Unit = {
+    val tempFile = new File(file.getParentFile, file.getName + TempExtension)
+    useAndClose(new BufferedOutputStream(new FileOutputStream(tempFile)))(write)
+    if (! tempFile.renameTo(file))
+      throw new IOException(s"cannot rename `$tempFile` to `$file`")
+  }
+
+  private def daemonThreadFactory(prefix: String): ThreadFactory = new ThreadFactory {
+    private val counter = new AtomicInteger
+    def newThread(r: Runnable) = {
+      val thread = new Thread(r, prefix + "-" + counter.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
@@ -16,6 +16,7 @@ package org.orbeon.oxf.processor.pdf
 import java.io.{ByteArrayOutputStream, OutputStream}
 import java.net.URI
 import java.net.URLDecoder.{decode ⇒ decodeURL}
+import java.util.concurrent.ConcurrentHashMap
 import java.util.{List ⇒ JList}
 
 import com.lowagie.text.pdf._
@@ -23,6 +24,7 @@ import com.lowagie.text.{Image, Rectangle}
 import org.orbeon.dom.Element
 import org.orbeon.dom.saxon.DocumentWrapper
 import org.orbeon.exception.OrbeonFormatter
+import org.orbeon.oxf.cache.{CacheKey, ObjectCache}
 import org.orbeon.oxf.http.HttpMethod.GET
 import org.orbeon.oxf.pipeline.api.{FunctionLibrary, PipelineContext}
 import org.orbeon.oxf.processor.generator.URLGeneratorBase
@@ -66,19 +68,22 @@ class PDFTemplateProcessor extends HttpBinarySerializer with Logging {// TODO: H
     val instanceDocument = readInputAsOrbeonDom(pipelineContext, input)
     val instanceDocumentInfo = new DocumentWrapper(instanceDocument, null, XPath.GlobalConfiguration)
 
-    // Create PDF reader
-    val templateReader = {
+    // Get the parsed template
+    val template = {
       val templateHref = templateRoot.attributeValue("href")
       Option(ProcessorImpl.getProcessorInputSchemeInputName(templateHref)) match {
         case Some(inputName) ⇒
           val os = new ByteArrayOutputStream
           readInputAsSAX(pipelineContext, inputName, new BinaryTextXMLReceiver(os))
-          new PdfReader(os.toByteArray)
+          new PDFTemplate(new PdfReader(os.toByteArray))
         case None ⇒
-          new PdfReader(URLFactory.createURL(templateHref))
+          findOrLoadTemplate(templateHref)
       }
     }
 
+    // Stamp a copy of the template, as the template may be shared with other requests
+    val templateReader = template.newReader
+
     useAndClose(new PdfStamper(templateReader, outputStream)) { stamper ⇒
 
       stamper.setFormFlattening(true)
@@ -90,6 +95,7 @@ class PDFTemplateProcessor extends HttpBinarySerializer with Logging {// TODO: H
           logger          = new IndentedLogger(Logger),
           contentByte     = null,
           acroFields      = stamper.getAcroFields,
+          fieldPages      = template.fieldPages,
           pageWidth       = 0,
           pageHeight      = 0,
           pageNumber      = -1,
@@ -234,7 +240,7 @@ class PDFTemplateProcessor extends HttpBinarySerializer with Logging {// TODO: H
         // Acrobat field
         val fieldName = context.evaluateAsString(fieldNameExpr)
 
-        if (findFieldPage(context.acroFields, fieldName) contains context.pageNumber) {
+        if (context.fieldPage(fieldName) contains context.pageNumber) {
           Option(context.acroFields.getFieldItem(fieldName)) foreach { item ⇒
             // Field exists
             val exportValue = Option(context.att("export-value"))
@@ -361,7 +367,7 @@ class PDFTemplateProcessor extends HttpBinarySerializer with Logging {// TODO: H
         // Acrobat field
         val fieldName = context.evaluateAsString(fieldNameStr)
 
-        if (findFieldPage(context.acroFields, fieldName) contains context.pageNumber) {
+        if (context.fieldPage(fieldName) contains context.pageNumber) {
           Option(context.acroFields.getFieldPositions(fieldName)) foreach { positions ⇒
 
             val rectangle = new Rectangle(positions(1), positions(2), positions(3), positions(4))
@@ -446,6 +452,51 @@ object PDFTemplateProcessor {
   val Logger = LoggerFactory.createLogger(classOf[PDFTemplateProcessor])
   val PDFTemplateModelNamespaceURI = "http://www.orbeon.com/oxf/pdf-template/model"
 
+  private val TemplateCacheName        = "cache.pdf-template"
+  private val TemplateCacheDefaultSize = 20
+
+  case class TemplateKey(urlString: String) extends CacheKey
+
+  // Parsed PDF template
+  //
+  // The reader is never modified, so that the template can be shared between requests. Each request stamps a copy
+  // of the reader, which shares the content streams of the template instead of parsing the template again.
+  class PDFTemplate(reader: PdfReader) {
+
+    // Page of each Acrobat field
+    val fieldPages: Map[String, Int] = {
+      val acroFields = newReader.getAcroFields
+      for {
+        fieldName ← acroFields.getFields.keySet.asScala.toList collect { case name: String ⇒ name }
+        page      ← findFieldPage(acroFields, fieldName)
+      } yield
+        fieldName → page
+    }.toMap
+
+    def newReader = new PdfReader(reader)
+  }
+
+  // Templates are cached by URL and last modification date. Templates with an unknown last modification date, which
+  // can be the case with HTTP URLs, are not cached.
+  def findOrLoadTemplate(urlString: String): PDFTemplate = {
+
+    val url          = URLFactory.createURL(urlString)
+    val lastModified = NetUtils.getLastModified(url)
+
+    if (lastModified <= 0)
+      new PDFTemplate(new PdfReader(url))
+    else {
+      val cache = ObjectCache.instance(TemplateCacheName, TemplateCacheDefaultSize)
+      val key   = TemplateKey(urlString)
+
+      Option(cache.findValid(key, lastModified).asInstanceOf[PDFTemplate]) getOrElse {
+        val template = new PDFTemplate(new PdfReader(url))
+        cache.add(key, lastModified, template)
+        template
+      }
+    }
+  }
+
   def createBarCode(barcodeType: String) = barcodeType match {
     case "CODE39"  ⇒ new Barcode39
     case "CODE128" ⇒ new Barcode128
@@ -460,6 +511,7 @@ object PDFTemplateProcessor {
     logger          : IndentedLogger,
     contentByte     : PdfContentByte,
     acroFields      : AcroFields,
+    fieldPages      : Map[String, Int],
     pageWidth       : Float,
     pageHeight      : Float,
     pageNumber      : Int,
@@ -480,6 +532,10 @@ object PDFTemplateProcessor {
 
     def att(name: String) = element.attributeValue(name)
 
+    // The template lists fields by their full names, while AcroFields also finds XFA fields by their short names
+    def fieldPage(fieldName: String) =
+      fieldPages.get(fieldName) orElse findFieldPage(acroFields, fieldName)
+
     def resolveFloat(name: String, offset: Float, default: Float) =
       Option(resolveAVT(name)) map
         (offset + _.toFloat) getOrElse default
@@ -555,9 +611,27 @@ object PDFTemplateProcessor {
     }
   }
 
-  // Create a font
-  def createFont(fontFamilyOrPath: String, embed: Boolean) =
-    BaseFont.createFont(fontFamilyOrPath, findFontEncoding(fontFamilyOrPath), embed)
+  // The font family can be computed from the data with an AVT, so the number of memoized fonts is bounded. Fonts
+  // beyond the bound are still found in iText's own cache.
+  private val MaxMemoizedFonts = 100
+  private val fonts            = new ConcurrentHashMap[(String, Boolean), BaseFont]
+
+  // Create a font, or reuse a font previously created
+  //
+  // Fonts don't hold state specific to a document, as iText keeps the characters used for subsetting with each writer.
+  def createFont(fontFamilyOrPath: String, embed: Boolean): BaseFont = {
+    val key = (fontFamilyOrPath, embed)
+    fonts.get(key) match {
+      case null ⇒
+        val font = BaseFont.createFont(fontFamilyOrPath, findFontEncoding(fontFamilyOrPath), embed)
+        if (fonts.size < MaxMemoizedFonts)
+          Option(fonts.putIfAbsent(key, font)) getOrElse font
+        else
+          font
+      case font ⇒
+        font
+    }
+  }
 
   // PDF built-in fonts
   val BuiltinFonts = Set(
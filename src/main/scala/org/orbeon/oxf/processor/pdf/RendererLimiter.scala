@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.pdf
+
+import java.util.concurrent.Semaphore
+
+import com.lowagie.text.pdf.BaseFont
+import org.orbeon.oxf.properties.{Properties, PropertySet}
+import org.orbeon.oxf.util.StringUtils._
+import org.orbeon.oxf.util.{LoggerFactory, Metrics}
+import org.xhtmlrenderer.pdf.ITextRenderer
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+// Process-wide font setup of `ITextRenderer`s, and bound on the number of renderers in use
+//
+// Embedding a font parses the font file, which used to take most of the time of small PDFs, as this was done for each
+// renderer. The configured fonts are now loaded once per generation, which also reports missing or invalid fonts once.
+// iText keeps the fonts it has parsed by path, so the renderer created for each request embeds them without parsing
+// the font files again. When the properties change, the limiter switches to a new generation.
+//
+// Renderers are not reused, as they keep state of the documents they render, such as metadata and bookmarks.
+//
+// The number of renderers in use is bounded, and requests wait when all of them are in use.
+object RendererLimiter {
+
+  private val Logger = LoggerFactory.createLogger(RendererLimiter.getClass)
+
+  val DotsPerPoint = 20f * 4f / 3f
+  val DotsPerPixel = 14
+
+  val FontPathPropertyPrefix   = "oxf.fr.pdf.font.path"
+  val FontFamilyPropertyPrefix = "oxf.fr.pdf.font.family"
+  val MaxConcurrentProperty    = "oxf.xhtml-to-pdf.renderer.max-concurrent"
+
+  // A font to embed
+  //
+  // NOTE: iText doesn't parse a font file again once it has parsed it, so changing a font file requires a restart.
+  case class FontDefinition(propertyName: String, path: String, family: Option[String])
+
+  private val WaitTimer         = Metrics.timer("orbeon_pdf_renderer_wait_seconds", "Time spent waiting for a PDF renderer.")
+  private val RenderTimer       = Metrics.timer("orbeon_pdf_render_seconds", "Time spent producing PDF files from XHTML.")
+  private val FontSetupCounter  = Metrics.counter("orbeon_pdf_font_setups_total", "Loads of the configured PDF fonts.")
+
+  private class Generation(val propertySet: PropertySet, val fonts: List[FontDefinition], val maxConcurrent: Int) {
+
+    val permits = new Semaphore(maxConcurrent, true)
+
+    // Fonts which loaded successfully, the others are not attempted again by this generation
+    val loadedFonts: List[FontDefinition] = {
+      val renderer = newRenderer()
+      FontSetupCounter.inc()
+      fonts filter (embedFont(renderer, _))
+    }
+
+    def isCurrentFor(propertySet: PropertySet, fonts: ⇒ List[FontDefinition]) =
+      (this.propertySet eq propertySet) && this.fonts == fonts
+  }
+
+  @volatile private var currentGeneration: Generation = null
+
+  // Run the body with a new renderer configured with the current fonts
+  def withRenderer[T](body: ITextRenderer ⇒ T): T = {
+
+    val generation = findGeneration(Properties.instance.getPropertySet)
+
+    WaitTimer.time(generation.permits.acquire())
+    try {
+      val renderer = newRenderer()
+      generation.loadedFonts foreach (embedFont(renderer, _))
+      RenderTimer.time(body(renderer))
+    } finally
+      generation.permits.release()
+  }
+
+  // Fonts configured with properties
+  def fontDefinitions(propertySet: PropertySet): List[FontDefinition] =
+    for {
+      propertyName ← propertySet.getPropertiesStartsWith(FontPathPropertyPrefix).asScala.toList
+      path         ← Option(propertySet.getString(propertyName)) flatMap (_.trimAllToOpt)
+    } yield {
+      // Overriding the font family is optional
+      val family =
+        propertyName.splitTo[List](".") match {
+          case tokens if tokens.size >= 6 ⇒ Option(propertySet.getString(FontFamilyPropertyPrefix + '.' + tokens(5))) flatMap (_.trimAllToOpt)
+          case _                          ⇒ None
+        }
+
+      FontDefinition(propertyName, path, family)
+    }
+
+  def embedFonts(renderer: ITextRenderer, fonts: List[FontDefinition]): Unit =
+    fonts foreach (embedFont(renderer, _))
+
+  private def embedFont(renderer: ITextRenderer, font: FontDefinition): Boolean =
+    try {
+      renderer.getFontResolver.addFont(font.path, font.family.orNull, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, null)
+      true
+    } catch {
+      case NonFatal(_) ⇒
+        Logger.warn(s"Failed to load font by path: '${font.path}' specified with property '${font.propertyName}'")
+        false
+    }
+
+  private def findGeneration(propertySet: PropertySet): Generation = {
+
+    lazy val fonts = fontDefinitions(propertySet)
+
+    val generation = currentGeneration
+    if ((generation ne null) && generation.isCurrentFor(propertySet, fonts))
+      generation
+    else
+      synchronized {
+        val generation = currentGeneration
+        if ((generation ne null) && generation.isCurrentFor(propertySet, fonts))
+          generation
+        else {
+          if (generation ne null)
+            Logger.info("Properties changed, loading PDF fonts again.")
+          val newGeneration = new Generation(propertySet, fonts, maxConcurrent(propertySet))
+          currentGeneration = newGeneration
+          newGeneration
+        }
+      }
+  }
+
+  private def maxConcurrent(propertySet: PropertySet) =
+    propertySet.getInteger(MaxConcurrentProperty, 0).intValue match {
+      case max if max > 0 ⇒ max
+      case _              ⇒ Runtime.getRuntime.availableProcessors
+    }
+
+  private def newRenderer() =
+    new ITextRenderer(DotsPerPoint, DotsPerPixel)
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.servlet
+
+import javax.servlet.http.{HttpServlet, HttpServletRequest, HttpServletResponse}
+
+import org.orbeon.oxf.util.Metrics
+
+// Servlet exposing the process-wide metrics in the Prometheus text format
+//
+// The servlet is not mapped by default. As metrics can reveal information about forms in use, access to the mapped
+// path should be restricted to the monitoring system.
+class MetricsServlet extends HttpServlet {
+
+  override def doGet(request: HttpServletRequest, response: HttpServletResponse): Unit = {
+    response.setContentType("text/plain; version=0.0.4; charset=utf-8")
+    response.setHeader("Cache-Control", "no-cache")
+    val writer = response.getWriter
+    Metrics.writePrometheus(writer)
+    writer.flush()
+  }
+}
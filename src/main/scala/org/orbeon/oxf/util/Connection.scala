@@ -396,6 +396,10 @@ object Connection extends Logging {
   private val HttpMethodsWithRequestBody = Set[HttpMethod](POST, PUT, LOCK, UNLOCK)
   def requiresRequestBody(httpMethod: HttpMethod) = HttpMethodsWithRequestBody(httpMethod)
 
+  // Whether request bodies are sent with chunked transfer encoding even when their length is known
+  def isChunkRequests: Boolean =
+    Properties.instance.getPropertySet.getBoolean(HttpClientSettings.ChunkRequestsProperty, HttpClientSettings.ChunkRequestsDefault)
+
   private def schemeRequiresHeaders(scheme: String) = ! Set("file", "oxf")(scheme)
   private def isHTTPOrHTTPS(scheme: String)         = Set("http", "https")(scheme)
 
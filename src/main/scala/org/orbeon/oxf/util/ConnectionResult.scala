@@ -18,6 +18,7 @@ import java.lang.{Long ⇒ JLong}
 
 import org.apache.log4j.Level
 import org.orbeon.oxf.common.Defaults
+import org.orbeon.oxf.externalcontext.XMLContentInputStream
 import org.orbeon.oxf.http.{HttpStatusCodeException, StatusCode, StreamedContent, Headers ⇒ HttpHeaders}
 import org.orbeon.oxf.util.IOUtils._
 import org.orbeon.oxf.xml.XMLParsing
@@ -126,22 +127,26 @@ object ConnectionResult {
     dontHandleResponse: Boolean = false // TODO: Should be outside of ConnectionResult.
   ): ConnectionResult = {
 
-    val (hasContent, resetInputStream) = {
-
-      val bis =
-        if (content.inputStream.markSupported)
-          content.inputStream
-        else
-          new BufferedInputStream(content.inputStream)
-
-      def hasContent(bis: InputStream) = {
-        bis.mark(1)
-        val result = bis.read != -1
-        bis.reset()
-        result
-      }
+    val (hasContent, resetInputStream) = content.inputStream match {
+      case xmlContent: XMLContentInputStream ⇒
+        // Don't force serialization of the XML just to find out whether there is content
+        (true, xmlContent)
+      case _ ⇒
+
+        val bis =
+          if (content.inputStream.markSupported)
+            content.inputStream
+          else
+            new BufferedInputStream(content.inputStream)
+
+        def hasContent(bis: InputStream) = {
+          bis.mark(1)
+          val result = bis.read != -1
+          bis.reset()
+          result
+        }
 
-      (hasContent(bis), bis)
+        (hasContent(bis), bis)
     }
 
     ConnectionResult(
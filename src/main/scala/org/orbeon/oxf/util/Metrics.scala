@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.io.Writer
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong, AtomicLongArray}
+import javax.management._
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+// Process-wide metrics
+//
+// Metrics are identified by a name and a list of labels, following the Prometheus data model. Updating a metric only
+// involves atomic operations, so metrics can be updated from any thread. Metrics are exported with JMX, and in the
+// Prometheus text format with `writePrometheus()`.
+object Metrics {
+
+  type Labels = List[(String, String)]
+
+  // Upper bounds of the buckets, in seconds
+  val TimeBuckets  = List(0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0)
+  val CountBuckets = List(1.0, 10.0, 100.0, 1000.0, 10000.0, 100000.0, 1000000.0)
+
+  // Beyond this number of label combinations for a given name, label values are replaced with `other`
+  val MaxSeriesPerName = 500
+  val OtherLabelValue  = "other"
+
+  val JMXObjectName = "org.orbeon:type=Metrics"
+
+  sealed abstract class Metric(val name: String, val help: String, val labels: Labels) {
+    def kind: String
+    def samples: List[(String, Labels, Double)]
+  }
+
+  class Counter private[Metrics] (name: String, help: String, labels: Labels) extends Metric(name, help, labels) {
+
+    private val value = new AtomicLong
+
+    def inc(): Unit         = value.incrementAndGet()
+    def add(n: Long): Unit  = if (n != 0) value.addAndGet(n)
+    def get: Long           = value.get
+
+    def kind    = "counter"
+    def samples = List((name, labels, value.get.toDouble))
+  }
+
+  // Value sampled when metrics are exported, for example the size of a queue
+  class Gauge private[Metrics] (name: String, help: String, labels: Labels, value: () ⇒ Double) extends Metric(name, help, labels) {
+
+    def get: Double = value()
+
+    def kind    = "gauge"
+    def samples = List((name, labels, value()))
+  }
+
+  class Histogram private[Metrics] (name: String, help: String, labels: Labels, buckets: Array[Double]) extends Metric(name, help, labels) {
+
+    private val bucketCounts = new AtomicLongArray(buckets.length) // not cumulative
+    private val count        = new AtomicLong
+    private val sumBits      = new AtomicLong(java.lang.Double.doubleToLongBits(0.0))
+
+    def observe(value: Double): Unit = {
+
+      var i = 0
+      while (i < buckets.length && value > buckets(i))
+        i += 1
+
+      if (i < buckets.length)
+        bucketCounts.incrementAndGet(i)
+
+      count.incrementAndGet()
+
+      var done = false
+      while (! done) {
+        val current = sumBits.get
+        done = sumBits.compareAndSet(current, java.lang.Double.doubleToLongBits(java.lang.Double.longBitsToDouble(current) + value))
+      }
+    }
+
+    def observeNanos(nanos: Long): Unit =
+      observe(nanos / 1e9)
+
+    def time[T](body: ⇒ T): T = {
+      val startTime = System.nanoTime
+      try
+        body
+      finally
+        observeNanos(System.nanoTime - startTime)
+    }
+
+    def getCount: Long  = count.get
+    def getSum: Double  = java.lang.Double.longBitsToDouble(sumBits.get)
+
+    def kind = "histogram"
+
+    def samples = {
+
+      val cumulativeCounts = buckets.indices.scanLeft(0L)(_ + bucketCounts.get(_)).tail
+
+      val bucketSamples =
+        for ((upperBound, cumulativeCount) ← buckets.toList zip cumulativeCounts)
+          yield (name + "_bucket", labels :+ ("le" → formatValue(upperBound)), cumulativeCount.toDouble)
+
+      val totalCount = count.get.toDouble
+
+      bucketSamples ++ List(
+        (name + "_bucket", labels :+ ("le" → "+Inf"), totalCount),
+        (name + "_sum",    labels,                    getSum),
+        (name + "_count",  labels,                    totalCount)
+      )
+    }
+  }
+
+  def counter(name: String, help: String, labels: (String, String)*): Counter =
+    findOrCreate(name, labels.toList)(new Counter(name, help, _))
+
+  // If a gauge with the same name and labels exists, it is returned and keeps sampling its original value
+  def gauge(name: String, help: String, labels: (String, String)*)(value: ⇒ Double): Gauge =
+    findOrCreate(name, labels.toList)(new Gauge(name, help, _, () ⇒ value))
+
+  // Histogram of durations in seconds
+  def timer(name: String, help: String, labels: (String, String)*): Histogram =
+    histogram(name, help, TimeBuckets, labels: _*)
+
+  def histogram(name: String, help: String, buckets: Seq[Double], labels: (String, String)*): Histogram =
+    findOrCreate(name, labels.toList)(new Histogram(name, help, _, buckets.toArray))
+
+  def allMetrics: List[Metric] =
+    metrics.values.asScala.toList
+
+  def writePrometheus(writer: Writer): Unit =
+    for ((name, family) ← (allMetrics groupBy (_.name)).toList sortBy (_._1)) {
+
+      val first = family.head
+
+      writer.write("# HELP " + name + " " + escape(first.help, escapeQuote = false) + "\n")
+      writer.write("# TYPE " + name + " " + first.kind + "\n")
+
+      for {
+        metric                      ← family sortBy (m ⇒ formatLabels(m.labels))
+        (sampleName, labels, value) ← metric.samples
+      } locally {
+        writer.write(sampleName + formatLabels(labels) + " " + formatValue(value) + "\n")
+      }
+    }
+
+  private val metrics     = new ConcurrentHashMap[String, Metric]
+  private val seriesCount = new ConcurrentHashMap[String, AtomicInteger]
+
+  private def findOrCreate[M <: Metric](name: String, labels: Labels)(create: Labels ⇒ M): M =
+    metrics.get(seriesKey(name, labels)) match {
+      case null ⇒
+
+        registerJMX
+
+        val countForName = {
+          val newCount = new AtomicInteger
+          Option(seriesCount.putIfAbsent(name, newCount)) getOrElse newCount
+        }
+
+        val effectiveLabels =
+          if (countForName.get >= MaxSeriesPerName)
+            labels map { case (k, _) ⇒ k → OtherLabelValue }
+          else
+            labels
+
+        val key = seriesKey(name, effectiveLabels)
+
+        metrics.get(key) match {
+          case null ⇒
+            val newMetric = create(effectiveLabels)
+            Option(metrics.putIfAbsent(key, newMetric)) match {
+              case Some(existing) ⇒
+                existing.asInstanceOf[M]
+              case None ⇒
+                countForName.incrementAndGet()
+                newMetric
+            }
+          case existing ⇒
+            existing.asInstanceOf[M]
+        }
+      case existing ⇒
+        existing.asInstanceOf[M]
+    }
+
+  private def seriesKey(name: String, labels: Labels) =
+    name + formatLabels(labels)
+
+  private def formatLabels(labels: Labels) =
+    if (labels.isEmpty)
+      ""
+    else
+      labels map { case (k, v) ⇒ k + "=\"" + escape(v, escapeQuote = true) + '"' } mkString ("{", ",", "}")
+
+  private def formatValue(value: Double) =
+    if (value == math.rint(value) && math.abs(value) < 1e15)
+      value.toLong.toString
+    else
+      value.toString
+
+  private def escape(s: String, escapeQuote: Boolean) = {
+    val escaped = s.replace("\\", "\\\\").replace("\n", "\\n")
+    if (escapeQuote) escaped.replace("\"", "\\\"") else escaped
+  }
+
+  // Register the MBean once, upon creation of the first metric
+  private lazy val registerJMX: Unit =
+    try
+      ManagementFactory.getPlatformMBeanServer.registerMBean(MetricsMBean, new ObjectName(JMXObjectName))
+    catch {
+      // For example if another web app in the same JVM already registered its own metrics
+      case NonFatal(t) ⇒
+        LoggerFactory.createLogger(Metrics.getClass).info(s"not registering metrics with JMX: ${t.getMessage}")
+    }
+
+  // Expose each sample as a read-only attribute
+  private object MetricsMBean extends DynamicMBean {
+
+    private def currentSamples: Map[String, Double] =
+      (
+        for {
+          metric                      ← allMetrics
+          (sampleName, labels, value) ← metric.samples
+        } yield
+          (sampleName + formatLabels(labels)) → value
+      ).toMap
+
+    def getAttribute(attribute: String): AnyRef =
+      currentSamples.get(attribute) map (java.lang.Double.valueOf(_)) getOrElse
+        (throw new AttributeNotFoundException(attribute))
+
+    def getAttributes(attributes: Array[String]): AttributeList = {
+      val samples = currentSamples
+      val result  = new AttributeList
+      for (attribute ← attributes; value ← samples.get(attribute))
+        result.add(new Attribute(attribute, java.lang.Double.valueOf(value)))
+      result
+    }
+
+    def setAttribute(attribute: Attribute): Unit =
+      throw new AttributeNotFoundException(s"read-only attribute: ${attribute.getName}")
+
+    def setAttributes(attributes: AttributeList): AttributeList =
+      new AttributeList
+
+    def invoke(actionName: String, params: Array[AnyRef], signature: Array[String]): AnyRef =
+      throw new ReflectionException(new NoSuchMethodException(actionName))
+
+    def getMBeanInfo: MBeanInfo =
+      new MBeanInfo(
+        getClass.getName,
+        "Orbeon Forms metrics",
+        currentSamples.keys.toArray.sorted map
+          (name ⇒ new MBeanAttributeInfo(name, "java.lang.Double", name, true, false, false)),
+        null,
+        null,
+        null
+      )
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.io.{BufferedOutputStream, ByteArrayOutputStream, IOException, InputStream, OutputStream}
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicInteger
+import java.{util ⇒ ju}
+
+// Input stream whose content is produced by a function writing to an output stream
+//
+// This allows passing content produced by a serializer to an API which reads an input stream, without first storing
+// the entire content in memory. Upon the first read, the function starts running in a separate thread. It writes to a
+// small bounded buffer which the reader consumes. If the function fails, reading throws an `IOException`.
+//
+// The threads are shared by all the streams, and their number is bounded. When they are all busy, the function runs
+// in the thread of the reader upon the first read, and writes the entire content to memory.
+//
+// The reader must close the stream if it doesn't read it until the end, so that the function can terminate.
+class WritingInputStream(
+  writeContent : OutputStream ⇒ Unit,
+  chunkSize    : Int      = 8192,
+  maxChunks    : Int      = 16,
+  executor     : Executor = WritingInputStream.SharedExecutor
+) extends InputStream {
+
+  import WritingInputStream._
+
+  private val chunks = new ArrayBlockingQueue[Array[Byte]](maxChunks)
+
+  @volatile private var closed = false
+  @volatile private var error: Throwable = null
+
+  private var started  = false
+  private var done     = false
+  private var current  : Array[Byte] = null
+  private var position = 0
+
+  private def put(chunk: Array[Byte]): Unit =
+    do {
+      if (closed)
+        throw new IOException("stream closed by reader")
+    } while (! chunks.offer(chunk, 100, TimeUnit.MILLISECONDS))
+
+  private def start(): Unit =
+    if (! started) {
+      started = true
+      try
+        executor.execute(new Runnable {
+          def run(): Unit =
+            try {
+              val os =
+                new BufferedOutputStream(
+                  new OutputStream {
+                    def write(b: Int): Unit = put(Array(b.toByte))
+                    override def write(b: Array[Byte], off: Int, len: Int): Unit =
+                      if (len > 0)
+                        put(ju.Arrays.copyOfRange(b, off, off + len))
+                  },
+                  chunkSize
+                )
+              writeContent(os)
+              os.flush()
+            } catch {
+              case t: Throwable ⇒ error = t
+            } finally {
+              try put(EndOfContent) catch { case _: IOException ⇒ }
+            }
+        })
+      catch {
+        case _: RejectedExecutionException ⇒ writeInCurrentThread()
+      }
+    }
+
+  // The queue is empty at this point, so it can take the end marker
+  private def writeInCurrentThread(): Unit = {
+    val os = new ByteArrayOutputStream
+    try
+      writeContent(os)
+    catch {
+      case t: Throwable ⇒ error = t
+    }
+    current  = os.toByteArray
+    position = 0
+    chunks.put(EndOfContent)
+  }
+
+  // Whether there are bytes left in the current chunk, waiting for the next chunk if needed
+  private def fill(): Boolean = {
+
+    if (closed)
+      throw new IOException("stream closed")
+
+    start()
+
+    while (! done && ((current eq null) || position == current.length)) {
+      val chunk = chunks.take()
+      if (chunk eq EndOfContent) {
+        done = true
+      } else {
+        current  = chunk
+        position = 0
+      }
+    }
+
+    if (done && (error ne null))
+      throw new IOException(error)
+
+    ! done
+  }
+
+  def read(): Int =
+    if (fill()) {
+      val b = current(position) & 0xff
+      position += 1
+      b
+    } else
+      -1
+
+  override def read(b: Array[Byte], off: Int, len: Int): Int =
+    if (len == 0)
+      0
+    else if (fill()) {
+      val count = math.min(len, current.length - position)
+      System.arraycopy(current, position, b, off, count)
+      position += count
+      count
+    } else
+      -1
+
+  override def available(): Int =
+    if (current eq null) 0 else current.length - position
+
+  override def close(): Unit = {
+    closed = true
+    chunks.clear()
+  }
+}
+
+object WritingInputStream {
+
+  private val EndOfContent = new Array[Byte](0)
+
+  private val MaxThreads = 4 * Runtime.getRuntime.availableProcessors
+
+  // Threads are created as needed up to the maximum, and don't remain when idle
+  lazy val SharedExecutor: Executor = {
+    val pool =
+      new ThreadPoolExecutor(
+        MaxThreads,
+        MaxThreads,
+        60L,
+        TimeUnit.SECONDS,
+        new SynchronousQueue[Runnable],
+        new ThreadFactory {
+          private val counter = new AtomicInteger
+          def newThread(r: Runnable) = {
+            val thread = new Thread(r, "orbeon-writing-input-stream-" + counter.incrementAndGet())
+            thread.setDaemon(true)
+            thread
+          }
+        }
+      )
+    pool.allowCoreThreadTimeOut(true)
+    pool
+  }
+}
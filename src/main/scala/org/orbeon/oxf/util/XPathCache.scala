@@ -701,9 +701,8 @@ object XPathCache {
       if (reporter ne null) {
         val startTime = System.nanoTime
         val result = body
-        val totalTimeMicroSeconds = (System.nanoTime - startTime) / 1000 // never smaller than 1000 ns on OS X
-        if (totalTimeMicroSeconds > 0)
-          reporter(xpathString, totalTimeMicroSeconds)
+        // Report all evaluations, including those taking less than 1 µs, so that they can be counted
+        reporter(xpathString, (System.nanoTime - startTime) / 1000)
 
         result
       } else
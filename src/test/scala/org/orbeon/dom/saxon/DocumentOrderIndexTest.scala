@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.dom.saxon
+
+import org.junit.Test
+import org.orbeon.dom.{Document, DocumentFactory, Element}
+import org.orbeon.oxf.util.XPath
+import org.orbeon.saxon.om.NodeInfo
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.JavaConverters._
+
+class DocumentOrderIndexTest extends AssertionsForJUnit {
+
+  private def newDocument(rowCount: Int): Document = {
+    val document = DocumentFactory.createDocument("rows")
+    val rows     = document.getRootElement
+    for (i ← 1 to rowCount) {
+      val row = rows.addElement("row")
+      row.addAttribute("id", i.toString)
+      row.addElement("value").addText(i.toString)
+    }
+    document
+  }
+
+  private def wrap(document: Document, indexed: Boolean) = {
+    val wrapper = new DocumentWrapper(document, null, XPath.GlobalConfiguration)
+    if (indexed)
+      wrapper.enableDocumentOrderIndex()
+    wrapper
+  }
+
+  private def rowElements(document: Document) =
+    document.getRootElement.elements.asScala.toList
+
+  // Wrap nodes independently, so that sibling positions are not known to the wrappers
+  private def wrapAll(wrapper: DocumentWrapper, nodes: List[AnyRef]) =
+    nodes collect {
+      case e: Element                  ⇒ wrapper.wrap(e)
+      case a: org.orbeon.dom.Attribute ⇒ wrapper.wrap(a)
+    }
+
+  private def sorted(nodes: List[NodeInfo]) =
+    nodes sortWith (_.compareOrder(_) < 0)
+
+  @Test def sameResultsWithAndWithoutIndex(): Unit = {
+
+    val document = newDocument(100)
+    val nodes =
+      rowElements(document) flatMap (row ⇒ List(row, row.attribute("id"), row.element("value")))
+
+    val plain   = wrapAll(wrap(document, indexed = false), nodes)
+    val indexed = wrapAll(wrap(document, indexed = true),  nodes)
+
+    assert((plain map (_.getSiblingPosition)) === (indexed map (_.getSiblingPosition)))
+
+    val expectedOrder = sorted(plain.reverse)    map (_.asInstanceOf[NodeWrapper].getUnderlyingNode)
+    val actualOrder   = sorted(indexed.reverse)  map (_.asInstanceOf[NodeWrapper].getUnderlyingNode)
+
+    assert(nodes === expectedOrder)
+    assert(nodes === actualOrder)
+  }
+
+  @Test def structuralChanges(): Unit = {
+
+    val document = newDocument(10)
+    val wrapper  = wrap(document, indexed = true)
+    val rows     = document.getRootElement
+
+    def positions = rowElements(document) map (e ⇒ wrapper.wrap(e).getSiblingPosition)
+
+    assert((0 until 10).toList === positions)
+
+    // Removal without invalidation
+    rows.remove(rowElements(document).head)
+    assert((0 until 9).toList === positions)
+
+    // Insertion without invalidation
+    val inserted = DocumentFactory.createElement("row")
+    rows.content.add(0, inserted)
+    assert((0 until 10).toList === positions)
+    assert(wrapper.wrap(inserted).compareOrder(wrapper.wrap(rowElements(document)(1))) < 0)
+
+    // Move after invalidation
+    rows.remove(inserted)
+    rows.add(inserted)
+    wrapper.invalidateDocumentOrderIndex()
+    assert(wrapper.wrap(inserted).compareOrder(wrapper.wrap(rowElements(document).head)) > 0)
+  }
+
+  @Test def moveWithoutInvalidation(): Unit = {
+
+    val document = newDocument(10)
+    val wrapper  = wrap(document, indexed = true)
+    val rows     = document.getRootElement
+
+    def compare(left: Element, right: Element) = wrapper.wrap(left).compareOrder(wrapper.wrap(right))
+
+    // Build the index
+    assert(compare(rowElements(document).head, rowElements(document).last) < 0)
+
+    // Move the first row to the end
+    val first = rowElements(document).head
+    rows.remove(first)
+    rows.add(first)
+
+    assert(compare(first, rowElements(document).head) > 0)
+
+    // Descendants of a moved element are in place relative to their parent, but not in the document
+    val second = rowElements(document).head
+    rows.remove(second)
+    rows.add(second)
+
+    assert(compare(second.element("value"), rowElements(document).head.element("value")) > 0)
+    assert(compare(second.element("value"), first.element("value")) > 0)
+
+    // Move a row to a position which it had before, relative to its parent, while its siblings moved
+    val (a, b, c) = (rowElements(document)(0), rowElements(document)(1), rowElements(document)(2))
+    rows.remove(b)
+    rows.remove(a)
+    rows.content.add(1, b)
+    assert(b eq rowElements(document)(1))
+    assert(compare(c, b) < 0)
+
+    // Move a row into the last row, at the same position as in its previous parent
+    val moved = rowElements(document).head
+    val last  = rowElements(document).last
+    rows.remove(moved)
+    last.content.add(0, moved)
+    assert(compare(moved, rowElements(document).head) > 0)
+    assert(compare(moved, last.element("value")) < 0)
+
+    // The order of all the nodes is the same as without index
+    val nodes   = rowElements(document) flatMap (row ⇒ List(row, row.attribute("id")))
+    val plain   = wrapAll(wrap(document, indexed = false), nodes)
+    val indexed = wrapAll(wrapper, nodes)
+
+    assert(
+      (sorted(plain.reverse)   map (_.asInstanceOf[NodeWrapper].getUnderlyingNode)) ===
+      (sorted(indexed.reverse) map (_.asInstanceOf[NodeWrapper].getUnderlyingNode))
+    )
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.dom.saxon
+
+import org.junit.Test
+import org.orbeon.dom.{Document, DocumentFactory, QName}
+import org.orbeon.oxf.util.XPath
+import org.orbeon.saxon.Configuration
+import org.orbeon.saxon.om.{NamePool, NodeInfo}
+import org.scalatest.junit.AssertionsForJUnit
+
+class NameCodeTest extends AssertionsForJUnit {
+
+  val Prefix = "nc"
+  val URI    = "urn:orbeon:name-code-test"
+
+  private def newDocument(): Document = {
+    val document = DocumentFactory.createDocument(DocumentFactory.createElement(QName("name-code-root", Prefix, URI)))
+    document.getRootElement.addAttribute(QName("name-code-attribute", Prefix, URI), "value")
+    document
+  }
+
+  private def wrapRoot(document: Document, configuration: Configuration): NodeInfo =
+    new DocumentWrapper(document, null, configuration).wrap(document.getRootElement)
+
+  private def wrapAttribute(document: Document, configuration: Configuration): NodeInfo =
+    new DocumentWrapper(document, null, configuration).wrap(document.getRootElement.attribute(0))
+
+  private def allocate(namePool: NamePool, qName: QName) =
+    namePool.allocate(qName.namespace.prefix, qName.namespace.uri, qName.name)
+
+  // Configuration with its own name pool, where other names are allocated first, so that the codes of the names of
+  // the document in this pool are unlikely to be the same as in the global pool
+  private def newConfigurationWithOwnPool(document: Document) = {
+
+    val namePool = new NamePool
+    for (qName ← List(document.getRootElement.getQName, document.getRootElement.attribute(0).getQName))
+      namePool.allocate("", "urn:orbeon:other", qName.name)
+
+    val configuration = new Configuration
+    configuration.setNamePool(namePool)
+    configuration
+  }
+
+  @Test def cacheAllocatedNameCode(): Unit = {
+
+    val document = newDocument()
+    val rootName = document.getRootElement.getQName
+    val namePool = XPath.GlobalConfiguration.getNamePool
+
+    assert(-1 === rootName.cachedNameCode(namePool))
+
+    val root = wrapRoot(document, XPath.GlobalConfiguration)
+
+    assert(allocate(namePool, rootName) === root.getNameCode)
+    assert(allocate(namePool, rootName) === rootName.cachedNameCode(namePool))
+
+    // The cached code is returned again
+    assert(root.getNameCode === wrapRoot(document, XPath.GlobalConfiguration).getNameCode)
+    assert((root.getNameCode & 0xfffff) === root.getFingerprint)
+
+    val attribute = wrapAttribute(document, XPath.GlobalConfiguration)
+    assert(allocate(namePool, document.getRootElement.attribute(0).getQName) === attribute.getNameCode)
+  }
+
+  @Test def dontUseCodeOfOtherNamePool(): Unit = {
+
+    val document      = newDocument()
+    val rootName      = document.getRootElement.getQName
+    val globalPool    = XPath.GlobalConfiguration.getNamePool
+    val configuration = newConfigurationWithOwnPool(document)
+    val otherPool     = configuration.getNamePool
+
+    val globalCode = wrapRoot(document, XPath.GlobalConfiguration).getNameCode
+    val otherCode  = wrapRoot(document, configuration).getNameCode
+
+    // The code cached for the global pool isn't used with another pool
+    assert(allocate(otherPool, rootName) === otherCode)
+    assert(URI              === otherPool.getURI(otherCode))
+    assert("name-code-root" === otherPool.getLocalName(otherCode))
+
+    // And the other way around
+    assert(globalCode === wrapRoot(document, XPath.GlobalConfiguration).getNameCode)
+    assert(allocate(globalPool, rootName) === globalCode)
+
+    val otherAttribute = wrapAttribute(document, configuration)
+    assert(allocate(otherPool, document.getRootElement.attribute(0).getQName) === otherAttribute.getNameCode)
+  }
+
+  @Test def sameNameInSeveralDocuments(): Unit = {
+
+    // Equal QNames of different documents may be different objects, each with its own cached code
+    val first  = wrapRoot(newDocument(), XPath.GlobalConfiguration)
+    val second = wrapRoot(newDocument(), XPath.GlobalConfiguration)
+
+    assert(first.getNameCode === second.getNameCode)
+    assert(first.getFingerprint === second.getFingerprint)
+  }
+}
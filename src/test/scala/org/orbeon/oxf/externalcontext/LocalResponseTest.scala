@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.externalcontext
+
+import java.io.InputStream
+
+import org.junit.Test
+import org.orbeon.oxf.test.{ResourceManagerTestBase, XMLSupport}
+import org.orbeon.oxf.util.{ConnectionResult, XPath}
+import org.orbeon.oxf.xml.TransformerUtils
+
+class LocalResponseTest extends ResourceManagerTestBase with XMLSupport {
+
+  val XML = """<forms><form app="acme" form="order"/><form app="acme" form="invoice"/></forms>"""
+
+  private def newNodeInfo = TransformerUtils.stringToTinyTree(XPath.GlobalConfiguration, XML, false, false)
+  private def expected    = TransformerUtils.tinyTreeToDom4j(newNodeInfo)
+
+  // The rewriter is not used by these tests
+  private def newResponse = new LocalResponse(null)
+
+  private def parse(is: InputStream) = TransformerUtils.readDom4j(is, null, false, false)
+
+  @Test def localResponseKeepsTree(): Unit = {
+
+    val response = newResponse
+    LocalResponse.sendXML(response, newNodeInfo)
+
+    response.getInputStream match {
+      case xmlContent: XMLContentInputStream ⇒
+        assertXMLDocumentsIgnoreNamespacesInScope(expected, xmlContent.toDocument)
+        assertXMLDocumentsIgnoreNamespacesInScope(expected, TransformerUtils.tinyTreeToDom4j(xmlContent.toTinyTree(XPath.GlobalConfiguration)))
+      case other ⇒
+        fail(s"unexpected content: $other")
+    }
+  }
+
+  @Test def wrappedResponseIsSerialized(): Unit = {
+
+    val response = newResponse
+    LocalResponse.sendXML(new ResponseWrapper(response), newNodeInfo)
+
+    val is = response.getInputStream
+    assert(! is.isInstanceOf[XMLContentInputStream])
+    assertXMLDocumentsIgnoreNamespacesInScope(expected, parse(is))
+  }
+
+  @Test def bytesForCallersReadingStream(): Unit =
+    for (xml ← List(Left(TransformerUtils.tinyTreeToSAXStore(newNodeInfo)), Right(newNodeInfo))) {
+
+      val response = newResponse
+      response.setXMLContent(xml)
+
+      // The tree is still available after the content is read as bytes
+      val xmlContent = response.getInputStream.asInstanceOf[XMLContentInputStream]
+      assertXMLDocumentsIgnoreNamespacesInScope(expected, parse(xmlContent))
+      assertXMLDocumentsIgnoreNamespacesInScope(expected, xmlContent.toDocument)
+    }
+
+  @Test def connectionResultKeepsXMLContent(): Unit = {
+
+    val response = newResponse
+    LocalResponse.sendXML(response, newNodeInfo)
+
+    val content          = response.streamedContent
+    val connectionResult = ConnectionResult(url = "/fr/service/persistence/form", statusCode = 200, headers = Map(), content = content)
+
+    assert(connectionResult.hasContent)
+    assert(connectionResult.content.inputStream eq content.inputStream)
+  }
+}
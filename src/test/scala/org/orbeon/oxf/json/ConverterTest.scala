@@ -208,6 +208,27 @@ class ConverterTest extends FunSpecLike with XMLSupport {
         assert(expectedJson === actualJson)
       }
     }
+
+    it ("must produce the same result when writing JSON text directly") {
+      for {
+        strict      ← List(true, false)
+        (json, xml) ← ExpectedJsonToXml
+      } locally {
+        val expectedJson = json.parseJson
+        val actualJson   = Converter.xmlToJsonString(xml, strict = strict).parseJson
+
+        assert(expectedJson === actualJson)
+      }
+    }
+  }
+
+  describe("Invalid JSON input") {
+    it ("must be rejected") {
+      for (json ← List("", "{", """{"a" 1}""", "[1,]", "01", "tru", """ "\x" """, "[] []"))
+        intercept[IllegalArgumentException] {
+          Converter.jsonStringToXmlStream(json, new SAXStore)
+        }
+    }
   }
 
   describe("Escaping of special characters") {
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor
+
+import java.io.File
+import java.nio.file.Files
+import java.util.{Properties ⇒ JProperties}
+import javax.mail.{Message, Session}
+import javax.mail.internet.{InternetAddress, MimeMessage}
+
+import org.junit.{After, Test}
+import org.orbeon.oxf.test.ResourceManagerTestBase
+import org.orbeon.oxf.util.Metrics
+import org.scalatest.junit.AssertionsForJUnit
+
+class EmailQueueTest extends ResourceManagerTestBase with AssertionsForJUnit {
+
+  // Nothing listens on port 1, so connections are refused right away
+  val UnreachableServer =
+    EmailQueue.SMTPServer(
+      properties = Map("mail.smtp.host" → "localhost", "mail.smtp.port" → "1", "mail.smtp.connectiontimeout" → "1000"),
+      username   = None,
+      password   = None
+    )
+
+  @After def shutdown(): Unit = EmailQueue.shutdown()
+
+  private def newConfig(directory: File, maxAttempts: Int, retryDelayMs: Long) =
+    EmailQueue.Config(
+      directory       = directory,
+      threads         = 1,
+      batchSize       = 10,
+      maxAttempts     = maxAttempts,
+      retryDelayMs    = retryDelayMs,
+      maxRetryDelayMs = retryDelayMs
+    )
+
+  private def newMessage(subject: String) = {
+    val message = new MimeMessage(Session.getInstance(new JProperties))
+    message.setFrom(new InternetAddress("from@example.org"))
+    message.setRecipient(Message.RecipientType.TO, new InternetAddress("to@example.org"))
+    message.setSubject(subject)
+    message.setText(subject)
+    message
+  }
+
+  private def files(directory: File, extension: String) =
+    Option(directory.listFiles).toList.flatten filter (_.getName.endsWith(extension))
+
+  private def waitFor(condition: ⇒ Boolean): Unit = {
+    val timeout = System.currentTimeMillis + 10000
+    while (! condition && System.currentTimeMillis < timeout)
+      Thread.sleep(10)
+    assert(condition)
+  }
+
+  @Test def failedMessageIsMovedAfterMaxAttempts(): Unit = {
+
+    val directory       = Files.createTempDirectory("orbeon-email-queue-test").toFile
+    val failedDirectory = new File(directory, "failed")
+    val initialFailed   = EmailQueue.failedCount
+
+    EmailQueue.enqueue(newConfig(directory, maxAttempts = 2, retryDelayMs = 10), UnreachableServer, newMessage("first"))
+
+    waitFor(EmailQueue.failedCount == initialFailed + 1)
+
+    assert(0 === EmailQueue.queueDepth)
+    assert(files(directory, ".eml").isEmpty)
+    assert(1 === files(failedDirectory, ".eml").size)
+    assert(1 === files(failedDirectory, ".smtp").size)
+
+    val depthGauge = Metrics.allMetrics find (_.name == "orbeon_email_queue_depth")
+    assert(depthGauge exists (_.samples.head._3 == 0.0))
+  }
+
+  @Test def spooledMessagesAreSentAfterRestart(): Unit = {
+
+    val directory       = Files.createTempDirectory("orbeon-email-queue-test").toFile
+    val failedDirectory = new File(directory, "failed")
+
+    // The first message waits for a retry when the queue is stopped
+    EmailQueue.enqueue(newConfig(directory, maxAttempts = 100, retryDelayMs = 60000), UnreachableServer, newMessage("first"))
+    assert(1 === EmailQueue.queueDepth)
+
+    EmailQueue.shutdown()
+    assert(0 === EmailQueue.queueDepth)
+    assert(1 === files(directory, ".eml").size)
+
+    // Both messages are attempted after the restart
+    EmailQueue.enqueue(newConfig(directory, maxAttempts = 1, retryDelayMs = 10), UnreachableServer, newMessage("second"))
+
+    waitFor(files(failedDirectory, ".eml").size == 2)
+    assert(files(directory, ".eml").isEmpty)
+  }
+
+  @Test def configurationChangeRestartsQueue(): Unit = {
+
+    val directory       = Files.createTempDirectory("orbeon-email-queue-test").toFile
+    val failedDirectory = new File(directory, "failed")
+
+    // The first message is retried shortly after the configuration changes
+    EmailQueue.enqueue(newConfig(directory, maxAttempts = 100, retryDelayMs = 200), UnreachableServer, newMessage("first"))
+
+    // With the new configuration, messages fail after the first attempt, including the first message
+    EmailQueue.enqueue(newConfig(directory, maxAttempts = 1, retryDelayMs = 10), UnreachableServer, newMessage("second"))
+
+    waitFor(files(failedDirectory, ".eml").size == 2)
+    assert(0 === EmailQueue.queueDepth)
+  }
+}
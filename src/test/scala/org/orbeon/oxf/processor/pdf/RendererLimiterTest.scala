@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.pdf
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.nio.charset.StandardCharsets
+import java.{util ⇒ ju}
+import javax.xml.parsers.DocumentBuilderFactory
+
+import com.lowagie.text.pdf.{PdfReader, SimpleBookmark}
+import org.junit.Test
+import org.orbeon.oxf.test.ResourceManagerTestBase
+import org.scalatest.junit.AssertionsForJUnit
+import org.xhtmlrenderer.pdf.ITextRenderer
+
+import scala.collection.JavaConverters._
+
+class RendererLimiterTest extends ResourceManagerTestBase with AssertionsForJUnit {
+
+  private def newDocument(title: String, bookmark: String) = {
+    val xhtml =
+      <html>
+        <head>
+          <title>{title}</title>
+          <bookmarks>
+            <bookmark name={bookmark} href="#content"/>
+          </bookmarks>
+        </head>
+        <body>
+          <p id="content">{title}</p>
+        </body>
+      </html>
+
+    DocumentBuilderFactory.newInstance.newDocumentBuilder.parse(
+      new ByteArrayInputStream(xhtml.toString.getBytes(StandardCharsets.UTF_8))
+    )
+  }
+
+  private def render(title: String, bookmark: String): (ITextRenderer, PdfReader) = {
+    val os = new ByteArrayOutputStream
+    val renderer =
+      RendererLimiter.withRenderer { renderer ⇒
+        renderer.setDocument(newDocument(title, bookmark), "http://localhost/")
+        renderer.layout()
+        renderer.createPDF(os)
+        renderer
+      }
+    (renderer, new PdfReader(os.toByteArray))
+  }
+
+  private def bookmarkTitles(reader: PdfReader) =
+    SimpleBookmark.getBookmark(reader).asScala.toList map (_.asInstanceOf[ju.Map[String, AnyRef]].get("Title"))
+
+  @Test def documentsDontShareMetadataOrBookmarks(): Unit = {
+
+    val (firstRenderer,  firstPDF)  = render("First",  "First bookmark")
+    val (secondRenderer, secondPDF) = render("Second", "Second bookmark")
+
+    assert(firstRenderer ne secondRenderer)
+
+    assert("First"  === firstPDF.getInfo.get("Title"))
+    assert("Second" === secondPDF.getInfo.get("Title"))
+
+    assert(List("First bookmark")  === bookmarkTitles(firstPDF))
+    assert(List("Second bookmark") === bookmarkTitles(secondPDF))
+  }
+}
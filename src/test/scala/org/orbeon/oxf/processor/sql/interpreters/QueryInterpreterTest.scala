@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.sql.interpreters
+
+import java.sql.Statement
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+class QueryInterpreterTest extends AssertionsForJUnit {
+
+  @Test def batchUpdateCount(): Unit = {
+
+    // Counts reported by the driver are added
+    assert(0 === QueryInterpreter.batchUpdateCount(Array()))
+    assert(6 === QueryInterpreter.batchUpdateCount(Array(1, 0, 2, 3)))
+
+    // An update which succeeded without a count updated at least one row
+    assert(3 === QueryInterpreter.batchUpdateCount(Array(Statement.SUCCESS_NO_INFO, 2)))
+    assert(2 === QueryInterpreter.batchUpdateCount(Array(Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO)))
+
+    // Failed updates don't count, for drivers which continue after a failure
+    assert(1 === QueryInterpreter.batchUpdateCount(Array(1, Statement.EXECUTE_FAILED)))
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.io.StringWriter
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+class MetricsTest extends AssertionsForJUnit {
+
+  private def prometheusLines = {
+    val writer = new StringWriter
+    Metrics.writePrometheus(writer)
+    writer.toString.split('\n').toSet
+  }
+
+  @Test def counter(): Unit = {
+
+    val counter = Metrics.counter("test_counter_total", "Test counter.", "kind" → "a")
+    counter.inc()
+    counter.add(2)
+
+    assert(counter eq Metrics.counter("test_counter_total", "Test counter.", "kind" → "a"))
+
+    val lines = prometheusLines
+    assert(lines("# TYPE test_counter_total counter"))
+    assert(lines("""test_counter_total{kind="a"} 3"""))
+  }
+
+  @Test def histogram(): Unit = {
+
+    val histogram = Metrics.histogram("test_histogram", "Test histogram.", List(1.0, 10.0))
+    histogram.observe(0.5)
+    histogram.observe(5)
+    histogram.observe(50)
+
+    val lines = prometheusLines
+    assert(lines("# TYPE test_histogram histogram"))
+    assert(lines("""test_histogram_bucket{le="1"} 1"""))
+    assert(lines("""test_histogram_bucket{le="10"} 2"""))
+    assert(lines("""test_histogram_bucket{le="+Inf"} 3"""))
+    assert(lines("test_histogram_sum 55.5"))
+    assert(lines("test_histogram_count 3"))
+  }
+
+  @Test def gauge(): Unit = {
+
+    var value = 1
+    Metrics.gauge("test_gauge", "Test gauge.")(value)
+    value = 42
+
+    val lines = prometheusLines
+    assert(lines("# TYPE test_gauge gauge"))
+    assert(lines("test_gauge 42"))
+  }
+
+  @Test def boundedSeries(): Unit = {
+
+    for (i ← 1 to Metrics.MaxSeriesPerName + 10)
+      Metrics.counter("test_bounded_total", "Test bounded counter.", "id" → i.toString).inc()
+
+    assert(10 === Metrics.counter("test_bounded_total", "Test bounded counter.", "id" → Metrics.OtherLabelValue).get)
+  }
+}
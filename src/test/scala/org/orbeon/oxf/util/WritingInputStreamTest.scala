@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.io.{IOException, OutputStream}
+import java.util.concurrent.{CountDownLatch, Executor, RejectedExecutionException, TimeUnit}
+
+import org.apache.commons.io.IOUtils
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+class WritingInputStreamTest extends AssertionsForJUnit {
+
+  @Test def readWrittenContent(): Unit = {
+
+    // More than the buffer can hold, so that the writer has to wait for the reader
+    val expected = Array.tabulate[Byte](100 * 1000)(_.toByte)
+
+    val is = new WritingInputStream(os ⇒ expected.grouped(1000) foreach (os.write(_)), chunkSize = 512, maxChunks = 4)
+
+    assert(expected.toList === IOUtils.toByteArray(is).toList)
+    assert(-1 === is.read())
+  }
+
+  @Test def propagateWriterError(): Unit = {
+
+    val is = new WritingInputStream(os ⇒ {
+      os.write(Array[Byte](1, 2, 3))
+      throw new IllegalStateException("failed")
+    })
+
+    val e = intercept[IOException](IOUtils.toByteArray(is))
+    assert(e.getCause.isInstanceOf[IllegalStateException])
+  }
+
+  @Test def propagateErrorBeforeContent(): Unit = {
+
+    val is = new WritingInputStream(_ ⇒ throw new IllegalStateException("failed before writing"))
+
+    // The error is reported upon the first read, which for a request body is when the connection is made
+    val e = intercept[IOException](is.read())
+    assert("failed before writing" === e.getCause.getMessage)
+  }
+
+  // Executor whose threads are all busy
+  val RejectingExecutor =
+    new Executor {
+      def execute(command: Runnable): Unit = throw new RejectedExecutionException
+    }
+
+  @Test def writeInReaderThreadWhenThreadsBusy(): Unit = {
+
+    val expected = Array.tabulate[Byte](100 * 1000)(_.toByte)
+
+    val is = new WritingInputStream(os ⇒ expected.grouped(1000) foreach (os.write(_)), chunkSize = 512, maxChunks = 4, executor = RejectingExecutor)
+
+    assert(expected.toList === IOUtils.toByteArray(is).toList)
+    assert(-1 === is.read())
+  }
+
+  @Test def propagateErrorInReaderThread(): Unit = {
+
+    val is = new WritingInputStream(os ⇒ {
+      os.write(Array[Byte](1, 2, 3))
+      throw new IllegalStateException("failed")
+    }, executor = RejectingExecutor)
+
+    val e = intercept[IOException](IOUtils.toByteArray(is))
+    assert(e.getCause.isInstanceOf[IllegalStateException])
+  }
+
+  @Test def closeStopsWriter(): Unit = {
+
+    val writerDone = new CountDownLatch(1)
+
+    def writeForever(os: OutputStream): Unit =
+      try {
+        while (true)
+          os.write(new Array[Byte](1000))
+      } finally {
+        writerDone.countDown()
+      }
+
+    val is = new WritingInputStream(writeForever, chunkSize = 512, maxChunks = 4)
+
+    is.read()
+    is.close()
+
+    assert(writerDone.await(10, TimeUnit.SECONDS))
+  }
+}
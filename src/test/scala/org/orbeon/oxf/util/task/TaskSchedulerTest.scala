@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util.task
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import org.junit.{After, Test}
+import org.scalatest.junit.AssertionsForJUnit
+
+class TaskSchedulerTest extends AssertionsForJUnit {
+
+  val Interval = 20L
+
+  val scheduler = new TaskScheduler(4)
+
+  @After def cancelAll(): Unit = scheduler.cancelAll(false)
+
+  // Task whose first run blocks until released, keeping track of concurrent runs
+  private class BlockingTask(overlapPolicy: Task.OverlapPolicy) extends Task {
+
+    val release       = new CountDownLatch(1)
+    val started       = new AtomicInteger
+    val running       = new AtomicInteger
+    val maxConcurrent = new AtomicInteger
+
+    var onRun: Int ⇒ Unit = _ ⇒ ()
+
+    setOverlapPolicy(overlapPolicy)
+    setSchedule(System.currentTimeMillis, Interval)
+
+    def getStatus = ""
+
+    def run(): Unit = {
+      val run = started.incrementAndGet()
+      val concurrent = running.incrementAndGet()
+      synchronized {
+        maxConcurrent.set(maxConcurrent.get max concurrent)
+      }
+      try {
+        if (run == 1)
+          release.await(10, TimeUnit.SECONDS)
+        onRun(run)
+      } finally
+        running.decrementAndGet()
+    }
+  }
+
+  private def waitFor(condition: ⇒ Boolean): Unit = {
+    val timeout = System.currentTimeMillis + 10000
+    while (! condition && System.currentTimeMillis < timeout)
+      Thread.sleep(5)
+    assert(condition)
+  }
+
+  @Test def skipDoesNotRunWhileExecuting(): Unit = {
+
+    val task = new BlockingTask(Task.OverlapPolicy.SKIP)
+    scheduler.schedule(task)
+
+    waitFor(task.getSkippedCount >= 3)
+    assert(1 === task.started.get)
+    assert(task.isExecuting)
+    assert(scheduler.getExecutingTasks.toList === List(task))
+
+    task.release.countDown()
+    waitFor(task.started.get >= 2)
+    task.cancel()
+
+    assert(1 === task.maxConcurrent.get)
+  }
+
+  @Test def queueRunsOnceAfterExecuting(): Unit = {
+
+    val task = new BlockingTask(Task.OverlapPolicy.QUEUE)
+
+    // The run queued while the first run blocks is the last run
+    task.onRun = run ⇒ if (run == 2) task.cancel()
+    scheduler.schedule(task)
+
+    // Several runs are due while the first run blocks
+    waitFor(task.started.get == 1)
+    Thread.sleep(Interval * 10)
+    assert(1 === task.started.get)
+    assert(0 === task.getSkippedCount)
+
+    task.release.countDown()
+    waitFor(task.getRunCount == 2)
+
+    // No other run starts, in particular no extra run for the runs due while the first run was blocked
+    Thread.sleep(Interval * 10)
+    assert(2 === task.started.get)
+    assert(1 === task.maxConcurrent.get)
+  }
+
+  @Test def concurrentRunsOverlap(): Unit = {
+
+    val task = new BlockingTask(Task.OverlapPolicy.CONCURRENT)
+
+    // All runs block, up to the size of the pool
+    task.onRun = _ ⇒ task.release.await(10, TimeUnit.SECONDS)
+    scheduler.schedule(task)
+
+    waitFor(task.running.get >= 3)
+    task.release.countDown()
+    task.cancel()
+
+    assert(task.maxConcurrent.get >= 3)
+    assert(0 === task.getSkippedCount)
+  }
+}
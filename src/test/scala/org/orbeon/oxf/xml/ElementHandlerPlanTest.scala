@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xml
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+import org.xml.sax.Attributes
+import org.xml.sax.helpers.AttributesImpl
+
+import scala.collection.mutable.ListBuffer
+
+class ElementHandlerPlanTest extends AssertionsForJUnit {
+
+  val NS = "http://example.org/ns"
+
+  // Record which handler was created for which element, and with which matched object
+  class Recorder {
+
+    val created = ListBuffer[(String, String, AnyRef)]()
+    var matcherRuns = 0
+
+    def factory(name: String): ElementHandlerFactory =
+      new ElementHandlerFactory {
+        def create(uri: String, localname: String, qName: String, attributes: Attributes, matched: AnyRef, handlerContext: AnyRef): ElementHandler = {
+          created += ((name, attributes.getValue("id"), matched))
+          new ElementHandler(uri, localname, qName, attributes, matched, handlerContext) {
+            def isRepeating  = false
+            def isForwarding = true
+          }
+        }
+      }
+
+    // Match elements with the given appearance, returning the appearance
+    def appearanceMatcher(appearance: String): ElementHandlerController.Matcher[String] =
+      new ElementHandlerController.Matcher[String] {
+        def `match`(attributes: Attributes, handlerContext: AnyRef): String = {
+          matcherRuns += 1
+          if (attributes.getValue("appearance") == appearance) appearance else null
+        }
+      }
+  }
+
+  // Identify elements by their id attribute, if any
+  class IdPlan extends ElementHandlerPlan {
+    def elementKey(uri: String, localname: String, attributes: Attributes, handlerContext: AnyRef): String =
+      attributes.getValue("id")
+  }
+
+  private def newController(recorder: Recorder, plan: Option[ElementHandlerPlan]) = {
+    val controller = new ElementHandlerController
+    controller.registerHandler(recorder.factory("minimal"), NS, "trigger", recorder.appearanceMatcher("minimal"))
+    controller.registerHandler(recorder.factory("full"),    NS, "trigger", null)
+    controller.registerHandler(recorder.factory("other"),   NS, null,      null)
+    plan foreach controller.setHandlerPlan
+    controller.setOutput(new DeferredXMLReceiverImpl(new XMLReceiverAdapter))
+    controller
+  }
+
+  private def attributes(atts: (String, String)*) = {
+    val result = new AttributesImpl
+    for ((name, value) ← atts)
+      result.addAttribute("", name, name, "CDATA", value)
+    result
+  }
+
+  private def element(controller: ElementHandlerController, uri: String, localname: String, atts: (String, String)*): Unit = {
+    controller.startElement(uri, localname, localname, attributes(atts: _*))
+    controller.endElement(uri, localname, localname)
+  }
+
+  private def outputDocument(controller: ElementHandlerController): Unit = {
+    controller.startDocument()
+    controller.startElement("", "root", "root", attributes())
+    element(controller, NS, "trigger", "id" → "t1", "appearance" → "minimal")
+    element(controller, NS, "trigger", "id" → "t2")
+    element(controller, NS, "input",   "id" → "i1")
+    element(controller, "", "div",     "id" → "d1")
+    controller.endElement("", "root", "root")
+    controller.endDocument()
+  }
+
+  @Test def matchInRegistrationOrder(): Unit = {
+
+    val recorder = new Recorder
+    outputDocument(newController(recorder, None))
+
+    // Matchers on URI and local name are tried in order, then the handler for the URI applies
+    assert(
+      List(
+        ("minimal", "t1", "minimal"),
+        ("full",    "t2", java.lang.Boolean.TRUE),
+        ("other",   "i1", null)
+      ) === recorder.created.toList
+    )
+  }
+
+  @Test def reuseResolvedHandlers(): Unit = {
+
+    val plan = new IdPlan
+
+    val first = new Recorder
+    outputDocument(newController(first, Some(plan)))
+
+    // All elements are resolved, including the element without a handler
+    assert(4 === plan.size)
+
+    val second = new Recorder
+    outputDocument(newController(second, Some(plan)))
+
+    // The same handlers are created, with the same matched objects, without running the matchers again
+    assert(first.created === second.created)
+    assert(first.matcherRuns > 0)
+    assert(0 === second.matcherRuns)
+  }
+
+  @Test def resolveElementsWithoutKey(): Unit = {
+
+    val plan = new IdPlan
+
+    def outputWithoutIds(recorder: Recorder): Unit = {
+      val controller = newController(recorder, Some(plan))
+      controller.startDocument()
+      element(controller, NS, "trigger", "appearance" → "minimal")
+      controller.endDocument()
+    }
+
+    val first  = new Recorder
+    val second = new Recorder
+    outputWithoutIds(first)
+    outputWithoutIds(second)
+
+    assert(0 === plan.size)
+    assert(1 === second.matcherRuns)
+    assert(List(("minimal", null, "minimal")) === second.created.toList)
+  }
+
+  @Test def resolveAgainWhenElementChanges(): Unit = {
+
+    val plan = new IdPlan
+
+    val first = new Recorder
+    val controller1 = newController(first, Some(plan))
+    controller1.startDocument()
+    element(controller1, NS, "trigger", "id" → "t1", "appearance" → "minimal")
+    controller1.endDocument()
+
+    // Another element with the same key isn't given the handler resolved for the first element
+    val second = new Recorder
+    val controller2 = newController(second, Some(plan))
+    controller2.startDocument()
+    element(controller2, NS, "input", "id" → "t1")
+    controller2.endDocument()
+
+    assert(List(("other", "t1", null)) === second.created.toList)
+  }
+
+  @Test def resolveAgainWhenMatchedInvalid(): Unit = {
+
+    val plan =
+      new IdPlan {
+        override def isMatchedValid(elementKey: String, matched: AnyRef, handlerContext: AnyRef) = false
+      }
+
+    val first = new Recorder
+    outputDocument(newController(first, Some(plan)))
+
+    val second = new Recorder
+    outputDocument(newController(second, Some(plan)))
+
+    // Elements with a handler are resolved again, but not elements without a handler
+    assert(first.created === second.created)
+    assert(first.matcherRuns === second.matcherRuns)
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xml
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, ObjectInputStream, ObjectOutputStream}
+
+import org.junit.Test
+import org.orbeon.oxf.cache.{InternalCacheKey, MemoryCacheImpl}
+import org.orbeon.oxf.common.OXFException
+import org.orbeon.oxf.xml.SAXStore.SpillMode
+import org.scalatest.junit.AssertionsForJUnit
+import org.xml.sax.helpers.{AttributesImpl, LocatorImpl}
+import org.xml.sax.{Attributes, Locator}
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable.ListBuffer
+
+class SAXStoreSpillTest extends AssertionsForJUnit {
+
+  val RowCount         = 20000
+  val Threshold        = 1000L
+  val ConstantValidity = 0L: java.lang.Long
+
+  // Record events along with their location
+  private class EventLog extends XMLReceiverAdapter {
+
+    val events = ListBuffer[String]()
+    private var locator: Locator = null
+
+    private def log(event: String): Unit =
+      events += (if (locator ne null) s"$event@${locator.getSystemId}:${locator.getLineNumber}:${locator.getColumnNumber}" else event)
+
+    override def setDocumentLocator(locator: Locator)                               = this.locator = locator
+    override def startDocument()                                                    = log("startDocument")
+    override def endDocument()                                                      = log("endDocument")
+    // Prefix mappings don't keep their location
+    override def startPrefixMapping(prefix: String, uri: String): Unit              = events += s"startPrefixMapping($prefix, $uri)"
+    override def endPrefixMapping(prefix: String): Unit                             = events += s"endPrefixMapping($prefix)"
+    override def endElement(uri: String, localName: String, qName: String)          = log(s"endElement($uri, $localName, $qName)")
+    override def characters(ch: Array[Char], start: Int, length: Int)               = log(s"characters(${new String(ch, start, length)})")
+    override def comment(ch: Array[Char], start: Int, length: Int)                  = log(s"comment(${new String(ch, start, length)})")
+    override def processingInstruction(target: String, data: String)               = log(s"processingInstruction($target, $data)")
+    override def startElement(uri: String, localName: String, qName: String, atts: Attributes) =
+      log(s"startElement($uri, $localName, $qName, ${(0 until atts.getLength) map (i ⇒ atts.getQName(i) + '=' + atts.getValue(i)) mkString " "})")
+  }
+
+  // Fill the store with rows, creating a mark before every 1000th row
+  private def newStore(spillMode: SpillMode) = {
+
+    val store   = new SAXStore
+    val locator = new LocatorImpl
+
+    store.setSpill(spillMode, Threshold)
+
+    def at(line: Int) = locator.setLineNumber(line)
+
+    locator.setSystemId("oxf:/rows.xml")
+    locator.setColumnNumber(1)
+    store.setDocumentLocator(locator)
+
+    at(1)
+    store.startDocument()
+    store.startPrefixMapping("f", "http://example.org/f")
+    store.startElement("", "rows", "rows", new AttributesImpl)
+    for (i ← 1 to RowCount) {
+      at(i + 1)
+      if (i % 1000 == 0)
+        store.getMark(s"row-$i")
+      val attributes = new AttributesImpl
+      attributes.addAttribute("", "id", "id", "CDATA", i.toString)
+      store.startElement("http://example.org/f", "row", "f:row", attributes)
+      store.characters(s"Value $i".toCharArray, 0, s"Value $i".length)
+      if (i % 100 == 0)
+        store.comment("c".toCharArray, 0, 1)
+      store.endElement("http://example.org/f", "row", "f:row")
+    }
+    at(RowCount + 2)
+    store.processingInstruction("pi", "data")
+    store.endElement("", "rows", "rows")
+    store.endPrefixMapping("f")
+    store.endDocument()
+    store
+  }
+
+  private def events(store: SAXStore) = {
+    val log = new EventLog
+    store.replay(log)
+    log.events.toList
+  }
+
+  private def markEvents(store: SAXStore) =
+    store.getMarks.asScala.toList map { mark ⇒
+      val log = new EventLog
+      mark.replay(log)
+      mark.id → log.events.toList
+    }
+
+  private def roundTrip(store: SAXStore) = {
+    val bytes = new ByteArrayOutputStream
+    val out   = new ObjectOutputStream(bytes)
+    store.writeExternal(out)
+    out.close()
+    new SAXStore(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray)))
+  }
+
+  @Test def sameEventsAsHeapStore(): Unit = {
+
+    val heapStore = newStore(SpillMode.HEAP)
+
+    val expectedEvents     = events(heapStore)
+    val expectedMarkEvents = markEvents(heapStore)
+
+    assert(RowCount / 1000 === expectedMarkEvents.size)
+    assert(expectedMarkEvents forall (_._2.size == 3))
+
+    for (spillMode ← List(SpillMode.DIRECT, SpillMode.MAPPED)) {
+
+      val spilledStore = newStore(spillMode)
+
+      assert(expectedEvents     === events(spilledStore))
+      assert(expectedMarkEvents === markEvents(spilledStore))
+      assert(heapStore.getAttributesCount === spilledStore.getAttributesCount)
+
+      // Serialization brings the events and marks back to the heap
+      val deserializedStore = roundTrip(spilledStore)
+
+      assert(expectedEvents     === events(deserializedStore))
+      assert(expectedMarkEvents === markEvents(deserializedStore))
+    }
+  }
+
+  @Test def disposeOnEviction(): Unit =
+    for (spillMode ← List(SpillMode.DIRECT, SpillMode.MAPPED)) {
+
+      val store = newStore(spillMode)
+      val cache = new MemoryCacheImpl(1)
+
+      cache.add(new InternalCacheKey("store", "first"), ConstantValidity, store)
+
+      // A replay in progress completes even if the store is evicted meanwhile
+      val log = new EventLog {
+        var evicted = false
+        override def endElement(uri: String, localName: String, qName: String): Unit = {
+          if (! evicted && events.size >= 1000) {
+            cache.add(new InternalCacheKey("store", "second"), ConstantValidity, new SAXStore)
+            evicted = true
+          }
+          super.endElement(uri, localName, qName)
+        }
+      }
+      store.replay(log)
+
+      assert(null eq cache.findValid(new InternalCacheKey("store", "first"), ConstantValidity))
+      assert(log.events.last.startsWith("endDocument"))
+      assert(RowCount * 3 < log.events.size)
+
+      // Events past the threshold are gone
+      intercept[OXFException] {
+        store.replay(new XMLReceiverAdapter)
+      }
+    }
+}
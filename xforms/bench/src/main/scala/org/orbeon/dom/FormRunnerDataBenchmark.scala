@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.dom
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+
+import scala.collection.JavaConverters._
+
+// Building and traversing data like that of a typical form with a repeated grid
+//
+// Run with `-prof gc` to see the memory allocated to build the data.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class FormRunnerDataBenchmark {
+
+  @Param(Array("1000", "10000"))
+  var iterations: Int = _
+
+  private var data: Document = _
+
+  @Setup
+  def setup(): Unit =
+    data = build()
+
+  @Benchmark
+  def build(): Document = {
+    val form    = DocumentFactory.createDocument("form").getRootElement
+    val section = form.addElement("section-1")
+    section.addElement("first-name").addText("John")
+    section.addElement("last-name").addText("Smith")
+    section.addElement("email")
+    val grid = section.addElement("grid-1")
+    for (i ← 1 to iterations) {
+      val iteration = grid.addElement("grid-1-iteration")
+      iteration.addElement("item").addText(s"Item $i")
+      iteration.addElement("quantity").addText(i.toString)
+      iteration.addElement("price").addText("10.00")
+      iteration.addElement("comment")
+      iteration.addElement("attachment").addAttribute("filename", "").addAttribute("mediatype", "")
+    }
+    form.getDocument
+  }
+
+  @Benchmark
+  def traverse(): Int = {
+
+    def countNodes(elem: Element): Int =
+      1 + elem.attributeCount + (elem.content.asScala map {
+        case e: Element ⇒ countNodes(e)
+        case _          ⇒ 1
+      }).sum
+
+    countNodes(data.getRootElement)
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.dom.saxon
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+import org.orbeon.dom.DocumentFactory
+import org.orbeon.oxf.util.XPath
+import org.orbeon.saxon.om.NodeInfo
+
+import scala.collection.JavaConverters._
+
+// Sorting the rows of a large instance in document order, with and without the document order index
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class DocumentOrderIndexBenchmark {
+
+  @Param(Array("1000", "10000"))
+  var rowCount: Int = _
+
+  @Param(Array("false", "true"))
+  var indexed: Boolean = _
+
+  private var nodes: List[NodeInfo] = _
+
+  @Setup
+  def setup(): Unit = {
+
+    val document = DocumentFactory.createDocument("rows")
+    val rows     = document.getRootElement
+    for (i ← 1 to rowCount) {
+      val row = rows.addElement("row")
+      row.addAttribute("id", i.toString)
+      row.addElement("value").addText(i.toString)
+    }
+
+    val wrapper = new DocumentWrapper(document, null, XPath.GlobalConfiguration)
+    if (indexed)
+      wrapper.enableDocumentOrderIndex()
+
+    // Wrap nodes independently, so that sibling positions are not known to the wrappers
+    nodes = (rows.elements.asScala map (e ⇒ wrapper.wrap(e): NodeInfo)).toList.reverse
+  }
+
+  @Benchmark
+  def sort(): List[NodeInfo] =
+    nodes sortWith (_.compareOrder(_) < 0)
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.control.controls
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+import org.orbeon.oxf.xml.SaxonUtils
+import org.orbeon.saxon.om.Item
+import org.orbeon.scaxon.NodeConversions._
+import org.orbeon.scaxon.SimplePath._
+
+// Reconciliation of repeat iterations after inserting or deleting an item in the middle of a repeat, with the
+// mutable instance nodes repeats are usually bound to.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class RepeatIterationsBenchmark {
+
+  @Param(Array("10", "1000", "10000"))
+  var iterations: Int = _
+
+  private var oldItems: Seq[Item] = _
+  private var newItems: Seq[Item] = _
+
+  @Setup
+  def setup(): Unit = {
+
+    val doc  = elemToDocumentInfo(<rows>{ (0 to iterations) map (i ⇒ <row>{i}</row>) }</rows>, readonly = false)
+    val rows = (doc / "rows" / "row").toVector
+
+    // Same as an `xf:insert` of a row in the middle of the repeat
+    oldItems = rows.patch(iterations / 2, Nil, 1)
+    newItems = rows
+  }
+
+  @Benchmark
+  def insert(): (Array[Int], Array[Int]) =
+    (XFormsRepeatControl.findItemIndexes(newItems, oldItems), XFormsRepeatControl.findItemIndexes(oldItems, newItems))
+
+  @Benchmark
+  def delete(): (Array[Int], Array[Int]) =
+    (XFormsRepeatControl.findItemIndexes(oldItems, newItems), XFormsRepeatControl.findItemIndexes(newItems, oldItems))
+
+  // Linear search for each item, as done before items were indexed, for comparison
+  @Benchmark
+  def insertWithLinearSearch(): Array[Int] =
+    newItems.map(item ⇒ oldItems indexWhere (SaxonUtils.compareItems(_, item))).toArray
+}
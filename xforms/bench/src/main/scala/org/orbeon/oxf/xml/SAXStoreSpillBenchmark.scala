@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xml
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+import org.orbeon.oxf.xml.SAXStore.SpillMode
+import org.xml.sax.helpers.AttributesImpl
+
+// Recording and replaying a large document with each spill mode
+//
+// Run with `-prof gc` to see the heap allocated by each mode.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class SAXStoreSpillBenchmark {
+
+  val Threshold = 1000L
+
+  @Param(Array("HEAP", "DIRECT", "MAPPED"))
+  var spillMode: String = _
+
+  @Param(Array("20000"))
+  var rows: Int = _
+
+  private var store: SAXStore = _
+
+  @Setup
+  def setup(): Unit =
+    store = newStore()
+
+  @TearDown
+  def tearDown(): Unit =
+    store.dispose()
+
+  private def newStore() = {
+    val store = new SAXStore
+    store.setSpill(SpillMode.valueOf(spillMode), Threshold)
+    store.startDocument()
+    store.startElement("", "rows", "rows", new AttributesImpl)
+    for (i ← 1 to rows) {
+      val attributes = new AttributesImpl
+      attributes.addAttribute("", "id", "id", "CDATA", i.toString)
+      store.startElement("", "row", "row", attributes)
+      val value = s"Value $i"
+      store.characters(value.toCharArray, 0, value.length)
+      store.endElement("", "row", "row")
+    }
+    store.endElement("", "rows", "rows")
+    store.endDocument()
+    store
+  }
+
+  // Release the spill storage right away rather than leaving it to the garbage collector
+  @Benchmark
+  def record(): Long = {
+    val store = newStore()
+    try
+      store.getApproximateSize
+    finally
+      store.dispose()
+  }
+
+  @Benchmark
+  def replay(): Unit =
+    store.replay(new XMLReceiverAdapter)
+}
@@ -335,6 +335,7 @@ public class XFormsConstants {
     public static final QName XXFORMS_DOMAIN_QNAME = QName.apply("domain", XXFORMS_NAMESPACE);
     public static final QName XXFORMS_SHARED_QNAME = QName.apply("shared", XXFORMS_NAMESPACE);
     public static final QName XXFORMS_CACHE_QNAME = QName.apply("cache", XXFORMS_NAMESPACE);
+    public static final QName XXFORMS_CONCURRENT_QNAME = QName.apply("concurrent", XXFORMS_NAMESPACE);
     public static final QName XXFORMS_TIME_TO_LIVE_QNAME = QName.apply("ttl", XXFORMS_NAMESPACE);
     public static final QName XXFORMS_VALIDATION_QNAME = QName.apply("validation", XXFORMS_NAMESPACE);
     public static final QName XXFORMS_EXPOSE_XPATH_TYPES_QNAME = QName.apply(XFormsProperties.EXPOSE_XPATH_TYPES_PROPERTY, XXFORMS_NAMESPACE);
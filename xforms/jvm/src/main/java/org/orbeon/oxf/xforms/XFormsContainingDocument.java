@@ -692,6 +692,9 @@ public class XFormsContainingDocument extends XFormsContainingDocumentSupport {
     }
 
     public void rememberLastAjaxResponse(SAXStore response) {
+        // The previous response can't be requested again, so release its spill storage, if any
+        if (lastAjaxResponse != null && lastAjaxResponse != response)
+            lastAjaxResponse.dispose();
         lastAjaxResponse = response;
     }
 
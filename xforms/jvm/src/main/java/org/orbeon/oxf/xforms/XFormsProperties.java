@@ -75,6 +75,7 @@ public class XFormsProperties {
 
     public static final String EXPOSE_XPATH_TYPES_PROPERTY = "expose-xpath-types";
     public static final String AJAX_UPDATE_FULL_THRESHOLD = "ajax.update.full.threshold";
+    public static final String AJAX_UPDATE_INCREMENTAL = "ajax.update.incremental";
     public static final String NO_UPDATES = "no-updates";
 
     public static final String TYPE_OUTPUT_FORMAT_PROPERTY_PREFIX = "format.output.";
@@ -256,6 +257,7 @@ public class XFormsProperties {
             new PropertyDefinition(ENCRYPT_ITEM_VALUES_PROPERTY                  , true,                           false),
             new PropertyDefinition(ASYNC_SUBMISSION_POLL_DELAY                   , 10 * 1000,                      false),
             new PropertyDefinition(AJAX_UPDATE_FULL_THRESHOLD                    , 20,                             false),
+            new PropertyDefinition(AJAX_UPDATE_INCREMENTAL                       , false,                          false),
             new PropertyDefinition(NO_UPDATES                                    , false,                          false),
             new PropertyDefinition(XFORMS11_SWITCH_PROPERTY                      , false,                          false),
             new PropertyDefinition(UPDATE_REPEATS_PROPERTY                       , false,                          false),
@@ -330,6 +332,8 @@ public class XFormsProperties {
     public static final String RETRY_DELAY_INCREMENT                        = "retry.delay-increment";
     public static final String RETRY_MAX_DELAY                              = "retry.max-delay";
 
+    public static final String DOCUMENT_ORDER_INDEX_MIN_NODES_PROPERTY      = "document-order-index.min-nodes";
+
     // == Global properties ============================================================================================
     /**
      * Return a PropertyDefinition given a property name.
@@ -415,6 +419,11 @@ public class XFormsProperties {
         return Properties.instance().getPropertySet().getInteger(XFORMS_PROPERTY_PREFIX + RETRY_MAX_DELAY, 30000);
     }
 
+    // Minimum number of nodes of an instance for which the document order is indexed, or 0 to never index it
+    public static int getDocumentOrderIndexMinNodes() {
+        return Properties.instance().getPropertySet().getInteger(XFORMS_PROPERTY_PREFIX + DOCUMENT_ORDER_INDEX_MIN_NODES_PROPERTY, 0);
+    }
+
 
 
     public static boolean isKeepLocation() {
@@ -15,9 +15,11 @@ package org.orbeon.oxf.xforms.model;
 
 import org.apache.log4j.Logger;
 import org.orbeon.dom.Attribute;
+import org.orbeon.dom.Document;
 import org.orbeon.dom.Element;
 import org.orbeon.dom.Node;
 import org.orbeon.dom.QName;
+import org.orbeon.dom.io.SAXWriter;
 import org.orbeon.msv.datatype.xsd.DatatypeFactory;
 import org.orbeon.msv.datatype.xsd.XSDatatype;
 import org.orbeon.msv.grammar.Expression;
@@ -40,6 +42,7 @@ import org.orbeon.msv.verifier.regexp.xmlschema.XSAcceptor;
 import org.orbeon.msv.verifier.regexp.xmlschema.XSREDocDecl;
 import org.orbeon.oxf.cache.Cache;
 import org.orbeon.oxf.cache.ObjectCache;
+import org.orbeon.oxf.common.OXFException;
 import org.orbeon.oxf.common.OrbeonLocationException;
 import org.orbeon.oxf.externalcontext.ExternalContext;
 import org.orbeon.oxf.processor.validation.SchemaValidationException;
@@ -47,9 +50,12 @@ import org.orbeon.oxf.resources.URLFactory;
 import org.orbeon.oxf.util.IndentedLogger;
 import org.orbeon.oxf.util.LoggerFactory;
 import org.orbeon.oxf.util.NetUtils;
+import org.orbeon.oxf.util.NumberUtils;
 import org.orbeon.oxf.util.StringUtils;
 import org.orbeon.oxf.xforms.*;
+import org.orbeon.oxf.xforms.analytics.XFormsMetrics;
 import org.orbeon.oxf.xforms.msv.IDConstraintChecker;
+import org.orbeon.oxf.xforms.schema.InlineSchemaKey;
 import org.orbeon.oxf.xforms.schema.MSVGrammarReaderController;
 import org.orbeon.oxf.xforms.schema.SchemaDependencies;
 import org.orbeon.oxf.xforms.schema.SchemaInfo;
@@ -59,14 +65,19 @@ import org.orbeon.oxf.xml.dom4j.Dom4jUtils;
 import org.orbeon.oxf.xml.dom4j.ExtendedLocationData;
 import org.orbeon.oxf.xml.dom4j.LocationData;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 import scala.Option;
 
 import javax.xml.parsers.SAXParserFactory;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
 
 /**
  * Provides XML Schema validation services for the XForms model.
@@ -560,7 +571,7 @@ public class XFormsModelSchemaValidator {
 
         // Check for inline schema
         if (schemaElements != null && schemaElements.size() > 0) {
-            schemaGrammar = loadInlineGrammar(containingDocument, schemaElements.get(0)); // TODO: specify baseURI
+            schemaGrammar = loadInlineGrammar(containingDocument, schemaElements.get(0));
         }
     }
 
@@ -596,6 +607,7 @@ public class XFormsModelSchemaValidator {
             } else {
                 grammar = schemaInfo.grammar();
             }
+            XFormsMetrics.schemaCacheRequest(false, schemaInfo != null && grammar == schemaInfo.grammar());
             return grammar;
         } catch (Exception e) {
             throw OrbeonLocationException.wrapException(e, new ExtendedLocationData(absoluteSchemaURL, -1, -1, "loading schema from URI"));
@@ -603,20 +615,89 @@ public class XFormsModelSchemaValidator {
     }
 
     /**
-     * Load an inline schema.
+     * Load and cache a Grammar for an inline schema.
+     *
+     * Grammars are cached by digest of the schema content, so documents created from the same static state share
+     * the same Grammar, as well as forms embedding identical schemas. Imports of inline schemas are resolved as
+     * service URLs, so the key also includes the base they are resolved against, and a cached Grammar is only reused
+     * if the imported schemas are unchanged, as for external schemas.
      */
     private Grammar loadInlineGrammar(final XFormsContainingDocument containingDocument, final Element schemaElement) {
-        final SchemaDependencies dependencies = new SchemaDependencies();
-        // TODO: Use SchemaDependencies to cache dependencies if any
-        final MSVGrammarReaderController controller = new MSVGrammarReaderController(containingDocument, dependencies, Option.<String>apply(null));
-        final SAXParserFactory saxParserFactory = XMLParsing.getSAXParserFactory(XMLParsing.ParserConfiguration.PLAIN);
-        final XMLSchemaReader reader = new XMLSchemaReader(controller, saxParserFactory);
 
-//        TransformerUtils.writeTinyTree(schemaElementInfo, reader);
-        // TODO: We create an entirely new dom4j document here because otherwise the transformation picks the whole document
-        TransformerUtils.writeDom4j(Dom4jUtils.createDocumentCopyParentNamespaces(schemaElement), reader);
+        final Cache cache = ObjectCache.instance();
+        final String importsBaseURI = org.orbeon.oxf.xforms.XFormsUtils.resolveServiceURL(containingDocument, null, ".",
+                ExternalContext.Response.REWRITE_MODE_ABSOLUTE);
+        final InlineSchemaKey schemaKey = new InlineSchemaKey(inlineSchemaDigest(schemaElement), importsBaseURI);
+
+        final SchemaInfo schemaInfo;
+        {
+            final Object cached = cache.findValid(schemaKey, INLINE_SCHEMA_VALIDITY);
+            schemaInfo = cached == null ? null : (SchemaInfo) cached;
+        }
+
+        final Grammar grammar;
+        if (schemaInfo == null || ! schemaInfo.dependencies().areIncludesUnchanged()) {
+            final SchemaDependencies dependencies = new SchemaDependencies();
+            final MSVGrammarReaderController controller = new MSVGrammarReaderController(containingDocument, dependencies, Option.<String>apply(null));
+            final SAXParserFactory saxParserFactory = XMLParsing.getSAXParserFactory(XMLParsing.ParserConfiguration.PLAIN);
+            final XMLSchemaReader reader = new XMLSchemaReader(controller, saxParserFactory);
+
+            // TODO: We create an entirely new dom4j document here because otherwise the transformation picks the whole document
+            final Document schemaDocument = Dom4jUtils.createDocumentCopyParentNamespaces(schemaElement);
+            TransformerUtils.writeDom4j(schemaDocument, reader);
+
+            grammar = reader.getResult();
+
+            // Don't cache a schema in error, so the error is reported again
+            if (grammar != null)
+                cache.add(schemaKey, INLINE_SCHEMA_VALIDITY, new SchemaInfo(grammar, dependencies));
+
+            XFormsMetrics.schemaCacheRequest(true, false);
+        } else {
+            grammar = schemaInfo.grammar();
+            XFormsMetrics.schemaCacheRequest(true, true);
+        }
+        return grammar;
+    }
+
+    // Inline schemas don't change, unlike the schemas they import
+    private static final Long INLINE_SCHEMA_VALIDITY = 0L;
+
+    // Digests by schema element, which is part of the static state, so documents created from the same static state
+    // don't have to compute the digest again
+    private static final Map<Element, String> inlineSchemaDigests =
+        Collections.synchronizedMap(new WeakHashMap<Element, String>());
 
-        return reader.getResult();
+    private static String inlineSchemaDigest(Element schemaElement) {
+        final String existingDigest = inlineSchemaDigests.get(schemaElement);
+        if (existingDigest != null) {
+            return existingDigest;
+        } else {
+            final String newDigest = NumberUtils.toHexString(computeInlineSchemaDigest(schemaElement));
+            inlineSchemaDigests.put(schemaElement, newDigest);
+            return newDigest;
+        }
+    }
+
+    // Digest of the schema element as it is read on a cache miss, that is with all the namespaces in scope, without
+    // copying the element to a new document first
+    private static byte[] computeInlineSchemaDigest(Element schemaElement) {
+        final DigestContentHandler digester = new DigestContentHandler();
+        try {
+            digester.startDocument();
+            // Sort namespaces so that the digest doesn't depend on the order in which they are declared
+            for (final Map.Entry<String, String> namespace : new TreeMap<String, String>(Dom4jUtils.getNamespaceContext(schemaElement)).entrySet())
+                digester.startPrefixMapping(namespace.getKey(), namespace.getValue());
+
+            final SAXWriter writer = new SAXWriter();
+            writer.setContentHandler(digester);
+            writer.write(schemaElement);
+
+            digester.endDocument();
+        } catch (SAXException e) {
+            throw new OXFException(e);
+        }
+        return digester.getResult();
     }
 
     /**
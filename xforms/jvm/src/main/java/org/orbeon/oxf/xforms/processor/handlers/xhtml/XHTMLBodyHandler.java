@@ -24,8 +24,7 @@ import org.orbeon.oxf.xforms.control.LHHASupport;
 import org.orbeon.oxf.xforms.control.XFormsControl$;
 import org.orbeon.oxf.xforms.control.controls.XFormsRepeatControl;
 import org.orbeon.oxf.xforms.processor.handlers.HandlerContext;
-import org.orbeon.oxf.xforms.processor.handlers.NullElementHandler;
-import org.orbeon.oxf.xforms.processor.handlers.NullHandler;
+import org.orbeon.oxf.xforms.processor.handlers.HandlerFactories;
 import org.orbeon.oxf.xforms.state.XFormsStateManager;
 import org.orbeon.oxf.xforms.xbl.XBLBindings;
 import org.orbeon.oxf.xml.*;
@@ -252,7 +251,7 @@ public class XHTMLBodyHandler extends XFormsBaseHandlerXHTML {
 
         // Add handlers for XBL components
         final StaticStateGlobalOps ops = containingDocument.getStaticOps();
-        controller.registerHandler(XXFormsComponentHandler.class.getName(), new Matcher() {
+        controller.registerHandler(HandlerFactories.XXFormsComponent(), new Matcher() {
             public boolean doesMatch(Attributes attributes, Object handlerContext) {
                 final Option<ElementAnalysis> control = ops.findControlAnalysis(getPrefixedId(attributes, handlerContext));
                 if (control.isDefined()) {
@@ -264,43 +263,43 @@ public class XHTMLBodyHandler extends XFormsBaseHandlerXHTML {
         });
 
         // xf:input
-        controller.registerHandler(XFormsInputHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "input", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsInput(), XFormsConstants.XFORMS_NAMESPACE_URI, "input", ANY_MATCHER);
 
         // xf:output
-        controller.registerHandler(XFormsOutputTextHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "output",
+        controller.registerHandler(HandlerFactories.XFormsOutputText(), XFormsConstants.XFORMS_NAMESPACE_URI, "output",
                 new AppearanceMatcher(XFormsConstants.XXFORMS_TEXT_APPEARANCE_QNAME));
-        controller.registerHandler(XFormsOutputDownloadHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "output",
+        controller.registerHandler(HandlerFactories.XFormsOutputDownload(), XFormsConstants.XFORMS_NAMESPACE_URI, "output",
                 new AppearanceMatcher(XFormsConstants.XXFORMS_DOWNLOAD_APPEARANCE_QNAME));
-        controller.registerHandler(XFormsOutputImageHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "output", new Matcher() {
+        controller.registerHandler(HandlerFactories.XFormsOutputImage(), XFormsConstants.XFORMS_NAMESPACE_URI, "output", new Matcher() {
             public boolean doesMatch(Attributes attributes, Object handlerContext) {
                 // TODO: aks ElementAnalysis for its mediatype
                 final String mediatypeValue = attributes.getValue("mediatype");
                 return mediatypeValue != null && mediatypeValue.startsWith("image/");
             }
         });
-        controller.registerHandler(XFormsOutputHTMLHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "output", new Matcher() {
+        controller.registerHandler(HandlerFactories.XFormsOutputHTML(), XFormsConstants.XFORMS_NAMESPACE_URI, "output", new Matcher() {
             public boolean doesMatch(Attributes attributes, Object handlerContext) {
                 // TODO: aks ElementAnalysis for its mediatype
                 final String mediatypeValue = attributes.getValue("mediatype");
                 return mediatypeValue != null && mediatypeValue.equals("text/html");
             }
         });
-        controller.registerHandler(XFormsOutputDefaultHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "output", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsOutputDefault(), XFormsConstants.XFORMS_NAMESPACE_URI, "output", ANY_MATCHER);
 
         // xf:trigger
         final Matcher triggerSubmitMinimalMatcher = new AppearanceMatcher(XFormsConstants.XFORMS_MINIMAL_APPEARANCE_QNAME);
-        controller.registerHandler(XFormsTriggerMinimalHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "trigger", triggerSubmitMinimalMatcher);
-        controller.registerHandler(XFormsTriggerFullHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "trigger", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsTriggerMinimal(), XFormsConstants.XFORMS_NAMESPACE_URI, "trigger", triggerSubmitMinimalMatcher);
+        controller.registerHandler(HandlerFactories.XFormsTriggerFull(), XFormsConstants.XFORMS_NAMESPACE_URI, "trigger", ANY_MATCHER);
 
         // xf:submit
-        controller.registerHandler(XFormsTriggerMinimalHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "submit", triggerSubmitMinimalMatcher);
-        controller.registerHandler(XFormsTriggerFullHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "submit", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsTriggerMinimal(), XFormsConstants.XFORMS_NAMESPACE_URI, "submit", triggerSubmitMinimalMatcher);
+        controller.registerHandler(HandlerFactories.XFormsTriggerFull(), XFormsConstants.XFORMS_NAMESPACE_URI, "submit", ANY_MATCHER);
 
         // xf:group
-        controller.registerHandler(XFormsGroupInternalHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "group",
+        controller.registerHandler(HandlerFactories.XFormsGroupInternal(), XFormsConstants.XFORMS_NAMESPACE_URI, "group",
                 new AppearanceMatcher(XFormsConstants.XXFORMS_INTERNAL_APPEARANCE_QNAME));
 
-        controller.registerHandler(XFormsGroupSeparatorHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "group", new Matcher() {
+        controller.registerHandler(HandlerFactories.XFormsGroupSeparator(), XFormsConstants.XFORMS_NAMESPACE_URI, "group", new Matcher() {
             public boolean doesMatch(Attributes attributes, Object handlerContext) {
                 // XFormsAnnotator adds this appearance if needed
                 // See: https://github.com/orbeon/orbeon-forms/issues/418
@@ -309,18 +308,18 @@ public class XHTMLBodyHandler extends XFormsBaseHandlerXHTML {
             }
         });
 
-        controller.registerHandler(XFormsGroupFieldsetHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "group",
+        controller.registerHandler(HandlerFactories.XFormsGroupFieldset(), XFormsConstants.XFORMS_NAMESPACE_URI, "group",
                 new AppearanceMatcher(XFormsConstants.XXFORMS_FIELDSET_APPEARANCE_QNAME) {
                     public boolean doesMatch(Attributes attributes, Object handlerContext) {
                         return super.doesMatch(attributes, handlerContext) || LHHASupport.hasLabel(containingDocument, getPrefixedId(attributes, handlerContext));
                     }
                 });
 
-        controller.registerHandler(XFormsGroupDefaultHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "group", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsGroupDefault(), XFormsConstants.XFORMS_NAMESPACE_URI, "group", ANY_MATCHER);
 
         // xf:switch
         // NOTE: We use the same handlers for switch as we do for group
-        controller.registerHandler(XFormsGroupSeparatorHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "switch", new Matcher() {
+        controller.registerHandler(HandlerFactories.XFormsGroupSeparator(), XFormsConstants.XFORMS_NAMESPACE_URI, "switch", new Matcher() {
             public boolean doesMatch(Attributes attributes, Object handlerContext) {
                 // XFormsAnnotator adds this appearance if needed
                 // See: https://github.com/orbeon/orbeon-forms/issues/418
@@ -328,42 +327,42 @@ public class XHTMLBodyHandler extends XFormsBaseHandlerXHTML {
                 return XFormsConstants.XXFORMS_SEPARATOR_APPEARANCE_QNAME.qualifiedName().equals(appearanceAttributeValue);
             }
         });
-        controller.registerHandler(XFormsGroupDefaultHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "switch", ANY_MATCHER);
-        controller.registerHandler(XFormsCaseHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "case", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsGroupDefault(), XFormsConstants.XFORMS_NAMESPACE_URI, "switch", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsCase(), XFormsConstants.XFORMS_NAMESPACE_URI, "case", ANY_MATCHER);
 
         // xf:repeat
-        controller.registerHandler(XFormsRepeatHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "repeat", ANY_MATCHER);
-        controller.registerHandler(NullElementHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "repeat-iteration", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsRepeat(), XFormsConstants.XFORMS_NAMESPACE_URI, "repeat", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.NullElement(), XFormsConstants.XFORMS_NAMESPACE_URI, "repeat-iteration", ANY_MATCHER);
 
         // xf:secret
-        controller.registerHandler(XFormsSecretHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "secret", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsSecret(), XFormsConstants.XFORMS_NAMESPACE_URI, "secret", ANY_MATCHER);
 
         // xf:upload
-        controller.registerHandler(XFormsUploadHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "upload", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsUpload(), XFormsConstants.XFORMS_NAMESPACE_URI, "upload", ANY_MATCHER);
 
         // xf:range
-        controller.registerHandler(XFormsRangeHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "range", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsRange(), XFormsConstants.XFORMS_NAMESPACE_URI, "range", ANY_MATCHER);
 
         // Other controls
-        controller.registerHandler(XFormsTextareaHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "textarea", ANY_MATCHER);
-        controller.registerHandler(XXFormsDialogHandler.class.getName(), XFormsConstants.XXFORMS_NAMESPACE_URI, "dialog", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsTextarea(), XFormsConstants.XFORMS_NAMESPACE_URI, "textarea", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XXFormsDialog(), XFormsConstants.XXFORMS_NAMESPACE_URI, "dialog", ANY_MATCHER);
 
         // xf:select and xf:select1
-        controller.registerHandler(XFormsSelect1InternalHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "select",
+        controller.registerHandler(HandlerFactories.XFormsSelect1Internal(), XFormsConstants.XFORMS_NAMESPACE_URI, "select",
                 new AppearanceMatcher(XFormsConstants.XXFORMS_INTERNAL_APPEARANCE_QNAME));
-        controller.registerHandler(XFormsSelect1InternalHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "select1",
+        controller.registerHandler(HandlerFactories.XFormsSelect1Internal(), XFormsConstants.XFORMS_NAMESPACE_URI, "select1",
                 new AppearanceMatcher(XFormsConstants.XXFORMS_INTERNAL_APPEARANCE_QNAME));
-        controller.registerHandler(XFormsSelectHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "select", ANY_MATCHER);
-        controller.registerHandler(XFormsSelect1Handler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "select1", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsSelect(), XFormsConstants.XFORMS_NAMESPACE_URI, "select", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsSelect1(), XFormsConstants.XFORMS_NAMESPACE_URI, "select1", ANY_MATCHER);
 
         // Add handlers for LHHA elements
-        controller.registerHandler(XFormsLHHAHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "label", ANY_MATCHER);
-        controller.registerHandler(XFormsLHHAHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "help", ANY_MATCHER);
-        controller.registerHandler(XFormsLHHAHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "hint", ANY_MATCHER);
-        controller.registerHandler(XFormsLHHAHandler.class.getName(), XFormsConstants.XFORMS_NAMESPACE_URI, "alert", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsLHHA(), XFormsConstants.XFORMS_NAMESPACE_URI, "label", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsLHHA(), XFormsConstants.XFORMS_NAMESPACE_URI, "help", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsLHHA(), XFormsConstants.XFORMS_NAMESPACE_URI, "hint", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XFormsLHHA(), XFormsConstants.XFORMS_NAMESPACE_URI, "alert", ANY_MATCHER);
 
         // xxf:dynamic
-        controller.registerHandler(XXFormsDynamicHandler.class.getName(), XFormsConstants.XXFORMS_NAMESPACE_URI, "dynamic", ANY_MATCHER);
+        controller.registerHandler(HandlerFactories.XXFormsDynamic(), XFormsConstants.XXFORMS_NAMESPACE_URI, "dynamic", ANY_MATCHER);
     }
 
     @Override
@@ -95,6 +95,14 @@ public class RequestDispatcherSubmission extends BaseSubmission {
             return false;
         }
 
+        // The request can't be dispatched from another thread
+        if (p2.isConcurrent()) {
+            if (isDebugEnabled)
+                indentedLogger.logDebug("", SKIPPING_SUBMISSION_DEBUG_MESSAGE,
+                        "reason", "concurrent mode is not supported");
+            return false;
+        }
+
         if (ReplaceType.isReplaceAll(p.replaceType())) {
             // replace="all"
             if (! containingDocument().isLocalSubmissionForward()) {
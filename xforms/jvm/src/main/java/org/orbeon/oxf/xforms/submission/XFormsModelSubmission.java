@@ -605,8 +605,8 @@ public class XFormsModelSubmission extends XFormsModelSubmissionBase {
 
     private static IndentedLogger getNewLogger(final SubmissionParameters p, final SecondPassParameters p2,
                                         IndentedLogger indentedLogger, boolean newDebugEnabled) {
-        if (p2.isAsynchronous() && ! ReplaceType.isReplaceNone(p.replaceType())) {
-            // Background asynchronous submission creates a new logger with its own independent indentation
+        if ((p2.isAsynchronous() && ! ReplaceType.isReplaceNone(p.replaceType())) || p2.isConcurrent()) {
+            // Background asynchronous or concurrent submission creates a new logger with its own independent indentation
             final IndentedLogger.Indentation newIndentation = new IndentedLogger.Indentation(indentedLogger.getIndentation().indentation);
             return new IndentedLogger(indentedLogger, newIndentation, newDebugEnabled);
         } else if (indentedLogger.isDebugEnabled() != newDebugEnabled) {
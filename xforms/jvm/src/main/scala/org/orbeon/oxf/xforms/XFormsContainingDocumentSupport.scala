@@ -33,7 +33,7 @@ import org.orbeon.oxf.xforms.XFormsConstants._
 import org.orbeon.oxf.xforms.XFormsContainingDocumentSupport._
 import org.orbeon.oxf.xforms.XFormsProperties._
 import org.orbeon.oxf.xforms.analysis.controls.LHHA
-import org.orbeon.oxf.xforms.analytics.{RequestStats, RequestStatsImpl}
+import org.orbeon.oxf.xforms.analytics.{RequestStats, RequestStatsImpl, XFormsMetrics}
 import org.orbeon.oxf.xforms.control.XFormsSingleNodeControl
 import org.orbeon.oxf.xforms.event.ClientEvents._
 import org.orbeon.oxf.xforms.event.XFormsEvent._
@@ -383,6 +383,7 @@ trait ContainingDocumentProperties {
   def getShowMaxRecoverableErrors           = staticIntProperty(SHOW_RECOVERABLE_ERRORS_PROPERTY)
   def getSubmissionPollDelay                = staticIntProperty(ASYNC_SUBMISSION_POLL_DELAY)
   def getAjaxFullUpdateThreshold            = staticIntProperty(AJAX_UPDATE_FULL_THRESHOLD)
+  def isAjaxIncrementalUpdate               = staticBooleanProperty(AJAX_UPDATE_INCREMENTAL)
 
   def isLocalSubmissionForward =
     staticBooleanProperty(LOCAL_SUBMISSION_FORWARD_PROPERTY) &&
@@ -424,11 +425,16 @@ trait ContainingDocumentLogging {
 
 trait ContainingDocumentRequestStats {
 
-  private var _requestStats = RequestStatsImpl()
+  self: ContainingDocumentRequest ⇒
+
+  private var _requestStats = newRequestStats
   def getRequestStats = _requestStats
 
   def clearRequestStats(): Unit =
-    _requestStats = RequestStatsImpl()
+    _requestStats = newRequestStats
+
+  // The request path is not yet known when the document is created
+  private def newRequestStats = RequestStatsImpl(XFormsMetrics.formLabel(getRequestPath))
 }
 
 trait ContainingDocumentRequest {
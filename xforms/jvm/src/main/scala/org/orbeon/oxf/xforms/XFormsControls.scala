@@ -13,16 +13,23 @@
   */
 package org.orbeon.oxf.xforms
 
+import java.{util ⇒ ju}
+
 import org.orbeon.oxf.common.OXFException
 import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.IndentedLogger
 import org.orbeon.oxf.util.Logging._
+import org.orbeon.oxf.xforms.analysis.controls.SelectionControlTrait
+import org.orbeon.oxf.xforms.analytics.XFormsMetrics
 import org.orbeon.oxf.xforms.control.Controls.{BindingUpdater, ControlsIterator}
 import org.orbeon.oxf.xforms.control.controls.{XFormsRepeatControl, XFormsRepeatIterationControl}
 import org.orbeon.oxf.xforms.control.{Controls, Focus, XFormsContainerControl, XFormsControl}
 import org.orbeon.oxf.xforms.itemset.Itemset
 import org.orbeon.oxf.xforms.state.ControlState
 
+import scala.collection.JavaConverters._
+import scala.collection.{mutable ⇒ m}
+
 class XFormsControls(val containingDocument: XFormsContainingDocument) {
 
   import Private._
@@ -50,6 +57,7 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
     Private.requireRefresh = false
     inRefresh = true
     containingDocument.getXPathDependencies.refreshStart()
+    pruneSharedItemsets()
   }
 
   def refreshDone(): Unit = {
@@ -93,7 +101,12 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
       markCleanSinceLastRequest()
 
       // Need to make sure that `current eq initial` within controls
-      ControlsIterator(containingDocument.getControls.getCurrentControlTree) foreach (_.resetLocal())
+      if (isIncrementalUpdate) {
+        // Only controls which changed can have a separate current local
+        changedControls.keySet.asScala foreach (_.resetLocal())
+        stopTracking()
+      } else
+        ControlsIterator(containingDocument.getControls.getCurrentControlTree) foreach (_.resetLocal())
     }
   }
 
@@ -103,7 +116,7 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
     iterationIndex : Int // 1..repeat size + 1
   ): XFormsRepeatIterationControl = {
 
-    if ((initialControlTree eq currentControlTree) && containingDocument.isHandleDifferences)
+    if ((initialControlTree eq currentControlTree) && containingDocument.isHandleDifferences && ! isIncrementalUpdate)
       throw new OXFException("Cannot call `insertRepeatIteration()` when `initialControlTree eq currentControlTree`")
 
     withDebug("controls: adding iteration") {
@@ -125,14 +138,65 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
   // The rationale for #2 is that there is no controls comparison needed during initialization. Only during further
   // client requests do the controls need to be compared.
   //
+  // With incremental updates, the tree is never cloned. Instead, controls record their state with `controlChanging()`
+  // before it changes.
+  //
   def cloneInitialStateIfNeeded(): Unit =
-    if ((initialControlTree eq currentControlTree) && containingDocument.isHandleDifferences)
+    if (isIncrementalUpdate)
+      startTrackingIfNeeded()
+    else if ((initialControlTree eq currentControlTree) && containingDocument.isHandleDifferences)
       withDebug("controls: cloning") {
         // NOTE: We clone "back", that is the new tree is used as the "initial" tree. This is done so that
         // if we started working with controls in the initial tree, we can keep using those references safely.
         initialControlTree = currentControlTree.getBackCopy.asInstanceOf[ControlTree]
       }
 
+  // Whether changes are tracked per control instead of by cloning the whole control tree
+  // See `oxf.xforms.ajax.update.incremental`.
+  lazy val isIncrementalUpdate: Boolean = containingDocument.isAjaxIncrementalUpdate
+
+  // Record the state of the control before it changes, if not already done since the last response
+  def controlChanging(control: XFormsControl): Unit =
+    if (startTrackingIfNeeded()) {
+      if (! changedControls.containsKey(control))
+        changedControls.put(control, control.getSnapshot)
+      tentativeChanges.remove(control)
+    }
+
+  // Same as `controlChanging()` for the control and all its descendants
+  def subtreeChanging(control: XFormsControl): Unit =
+    if (startTrackingIfNeeded())
+      ControlsIterator(control, includeSelf = true) foreach controlChanging
+
+  // Record the state of the control before its binding and values are updated. Return the recorded state if this
+  // call recorded it, so that `controlUpdated()` can forget it again if the control didn't change.
+  def controlUpdating(control: XFormsControl): Option[XFormsControl] =
+    if (startTrackingIfNeeded() && ! changedControls.containsKey(control)) {
+      val snapshot = control.getSnapshot
+      changedControls.put(control, snapshot)
+      tentativeChanges.put(control, snapshot)
+      Some(snapshot)
+    } else
+      None
+
+  def controlUpdated(control: XFormsControl, snapshot: XFormsControl): Unit =
+    if ((tentativeChanges.get(control) eq snapshot) && control.compareExternalMaybeClientValue(None, Some(snapshot))) {
+      changedControls.remove(control)
+      tentativeChanges.remove(control)
+    }
+
+  // Previous state of the controls which changed since the last response, by control
+  // Only used with incremental updates. Controls which are not in this map haven't changed.
+  def changedControlsSnapshots: ju.Map[XFormsControl, XFormsControl] =
+    ju.Collections.unmodifiableMap(changedControls)
+
+  // Repeat indexes as of the last response
+  def initialRepeatIndexes: collection.Map[String, Int] =
+    if (isIncrementalUpdate)
+      trackedInitialRepeatIndexes getOrElse XFormsRepeatControl.initialIndexes(containingDocument)
+    else
+      initialControlTree.initialRepeatIndexes
+
   // For Java callers
   // 2018-01-05: 1 usage
   def getObjectByEffectiveId(effectiveId: String): XFormsControl =
@@ -154,6 +218,14 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
   def setConstantItems(controlPrefixedId: String, itemset: Itemset): Unit =
     constantItems += controlPrefixedId → itemset
 
+  // Get the itemset shared by the concrete controls of the given static control, evaluating it if needed
+  // See `SelectionControlTrait.hasSharedItemset`.
+  def getOrEvaluateSharedItemset(staticControl: SelectionControlTrait)(evaluate: ⇒ Itemset): Itemset =
+    if (inRefresh || ! Private.requireRefresh)
+      sharedItemsets.getOrElseUpdate(staticControl.prefixedId, staticControl → evaluate)._2
+    else
+      evaluate // instance data might have changed since shared itemsets were last checked
+
   def doRefresh(): Unit = {
 
     if (! initialized) {
@@ -185,32 +257,34 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
         val focusedBeforeOpt = focusedControlOpt
 
         val resultOpt =
-          try {
-
-            // Update control bindings
-            // NOTE: During this process, ideally, no events are dispatched. However, at this point, the code
-            // can an dispatch, upon removed repeat iterations, xforms-disabled, DOMFocusOut and possibly events
-            // arising from updating the binding of nested XBL controls.
-            // This unfortunately means that side effects can take place. This should be fixed, maybe by simply
-            // detaching removed iterations first, and then dispatching events after all bindings have been
-            // updated as part of dispatchRefreshEvents() below. This requires that controls are able to kind of
-            // stay alive in detached mode, and then that the index is also available while these events are
-            // dispatched.
-
-            // `None` if bindings are clean
-
-            for {
-              updater ← updateControlBindings()
-            } yield
-              (updater, gatherControlsForRefresh)
-
-          } finally {
-
-            // TODO: Why a `finally` block here? If an exception happened, do we really need to do a `refreshDone()`?
-
-            // "Actions that directly invoke rebuild, recalculate, revalidate, or refresh always have an immediate
-            // effect, and clear the corresponding flag."
-            refreshDone()
+          containingDocument.getRequestStats.withPhase(XFormsMetrics.Refresh) {
+            try {
+
+              // Update control bindings
+              // NOTE: During this process, ideally, no events are dispatched. However, at this point, the code
+              // can an dispatch, upon removed repeat iterations, xforms-disabled, DOMFocusOut and possibly events
+              // arising from updating the binding of nested XBL controls.
+              // This unfortunately means that side effects can take place. This should be fixed, maybe by simply
+              // detaching removed iterations first, and then dispatching events after all bindings have been
+              // updated as part of dispatchRefreshEvents() below. This requires that controls are able to kind of
+              // stay alive in detached mode, and then that the index is also available while these events are
+              // dispatched.
+
+              // `None` if bindings are clean
+
+              for {
+                updater ← updateControlBindings()
+              } yield
+                (updater, gatherControlsForRefresh)
+
+            } finally {
+
+              // TODO: Why a `finally` block here? If an exception happened, do we really need to do a `refreshDone()`?
+
+              // "Actions that directly invoke rebuild, recalculate, revalidate, or refresh always have an immediate
+              // effect, and clear the corresponding flag."
+              refreshDone()
+            }
           }
 
         resultOpt foreach { case (updater, controlsEffectiveIds) ⇒
@@ -261,9 +335,38 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
 
     var constantItems = Map[String, Itemset]()
 
+    // Shared itemsets by static control prefixed id, valid as of the last refresh
+    val sharedItemsets = m.HashMap[String, (SelectionControlTrait, Itemset)]()
+
+    // Keep only the shared itemsets which don't need to be evaluated again
+    def pruneSharedItemsets(): Unit =
+      sharedItemsets retain { case (prefixedId, (staticControl, _)) ⇒
+        // As the itemset doesn't depend on repeat iterations, check it as if the control was outside of repeats
+        ! containingDocument.getXPathDependencies.requireItemsetUpdate(staticControl, prefixedId)
+      }
+
     // Remember which control owns focus if any
     var focusedControlOpt: Option[XFormsControl] = None
 
+    // With incremental updates, the state of controls as of the last response, for the controls which changed since
+    val changedControls  = new ju.IdentityHashMap[XFormsControl, XFormsControl]
+    val tentativeChanges = new ju.IdentityHashMap[XFormsControl, XFormsControl]
+    var trackedInitialRepeatIndexes: Option[collection.Map[String, Int]] = None
+
+    // Return whether changes must be tracked
+    def startTrackingIfNeeded(): Boolean =
+      isIncrementalUpdate && initialized && containingDocument.isHandleDifferences && {
+        if (trackedInitialRepeatIndexes.isEmpty)
+          trackedInitialRepeatIndexes = Some(XFormsRepeatControl.initialIndexes(containingDocument))
+        true
+      }
+
+    def stopTracking(): Unit = {
+      changedControls.clear()
+      tentativeChanges.clear()
+      trackedInitialRepeatIndexes = None
+    }
+
     def markCleanSinceLastRequest(): Unit = {
       dirtySinceLastRequest = false
       currentControlTree.markBindingsClean()
@@ -60,6 +60,7 @@ object XXFormsUpdateValidityAction {
             first = false
           }
 
+          singleNodeControl.containingDocument.getControls.controlChanging(singleNodeControl)
           nodeValidation foreach singleNodeControl.setValidation
         }
 
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analysis
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.orbeon.oxf.xforms.MapSet
+import org.orbeon.saxon.om.NodeInfo
+import org.w3c.dom.Node._
+
+import scala.collection.{mutable ⇒ m}
+
+// Interned fingerprinted paths into instances
+//
+// A path of the form `3142/1425/@1232`, relative to the root element of an instance, is represented by an integer
+// id. The ids are allocated from a trie of fingerprints shared by the static analysis and the runtime changesets, so
+// that checking whether a change impacts an expression only requires comparing integers. Going down the trie also
+// yields the ids of all the ancestors of a node at no additional cost.
+//
+// Ids are never freed. Their number is bounded by the number of distinct paths into instances, which doesn't depend
+// on the number of nodes in repeated structures.
+object InstancePathIds {
+
+  // Id of the empty path, which designates the root element
+  val RootElementId = 0
+
+  // Children are replaced as a whole, so that lookups don't need to lock
+  private class Children(val steps: Array[Int], val nodes: Array[TrieNode])
+  private val NoChildren = new Children(Array.empty, Array.empty)
+
+  private val idCounter = new AtomicInteger(RootElementId)
+  private val Root      = new TrieNode(RootElementId)
+
+  private class TrieNode(val id: Int) {
+
+    @volatile private var children = NoChildren
+
+    private def find(c: Children, step: Int): TrieNode = {
+      val steps = c.steps
+      var i = 0
+      while (i < steps.length) {
+        if (steps(i) == step)
+          return c.nodes(i)
+        i += 1
+      }
+      null
+    }
+
+    // Existing child, or null
+    def findChild(step: Int): TrieNode =
+      find(children, step)
+
+    // Existing or new child
+    def child(step: Int): TrieNode =
+      find(children, step) match {
+        case null ⇒
+          synchronized {
+            find(children, step) match {
+              case null ⇒
+                val newNode = new TrieNode(idCounter.incrementAndGet())
+                children = new Children(children.steps :+ step, children.nodes :+ newNode)
+                newNode
+              case existing ⇒
+                existing
+            }
+          }
+        case existing ⇒
+          existing
+      }
+  }
+
+  // Attributes are represented by negative steps, as fingerprints are positive
+  private def attributeStep(fingerprint: Int) = ~fingerprint
+
+  // Id of a path as produced by the static analysis
+  def idForPath(path: String): Int =
+    if (path.isEmpty)
+      RootElementId
+    else
+      path.split('/').foldLeft(Root) { (node, token) ⇒
+        node.child(
+          if (token.startsWith("@"))
+            attributeStep(token.substring(1).toInt)
+          else
+            token.toInt
+        )
+      }.id
+
+  def idsForMapSet(paths: MapSet[String, String]): Map[String, Array[Int]] =
+    paths.map.map { case (instancePrefixedId, instancePaths) ⇒
+      instancePrefixedId → (instancePaths map idForPath).toArray
+    }.toMap
+
+  // Call `f` with the ids of the paths of the ancestor elements of the given element or attribute, from the root
+  // element of the instance, and then with the id of the path of the node itself
+  //
+  // This only looks up existing ids, and stops at the first path without an id: no analysis depends on that path, or
+  // on the paths below it, as the static analysis interns all its paths. This doesn't allocate, besides what the tree
+  // implementation allocates to return the parent nodes.
+  def foreachAncestorOrSelfId(node: NodeInfo)(f: Int ⇒ Unit): Unit = {
+
+    // Return the trie node of the path of the node, or null
+    def visit(node: NodeInfo): TrieNode = {
+      val parent = node.getParent
+      if ((parent eq null) || parent.getNodeKind == DOCUMENT_NODE) {
+        f(RootElementId)
+        Root
+      } else {
+        val parentTrieNode = visit(parent)
+        if (parentTrieNode eq null)
+          null
+        else {
+          val trieNode =
+            parentTrieNode.findChild(
+              node.getNodeKind match {
+                case ELEMENT_NODE   ⇒ node.getFingerprint
+                case ATTRIBUTE_NODE ⇒ attributeStep(node.getFingerprint)
+              }
+            )
+          if (trieNode ne null)
+            f(trieNode.id)
+          trieNode
+        }
+      }
+    }
+
+    visit(node)
+  }
+
+  def intersects(ids: Array[Int], changedIds: m.Set[Int]): Boolean = {
+    var i = 0
+    while (i < ids.length) {
+      if (changedIds.contains(ids(i)))
+        return true
+      i += 1
+    }
+    false
+  }
+}
@@ -48,6 +48,10 @@ class PathMapXPathAnalysis(
   val dependentInstances     : collection.Set[String]
 )  extends XPathAnalysis {
 
+  // Intern the paths right away, as the runtime only looks up the ids of existing paths
+  valueDependentPathIds
+  returnablePathIds
+
   // If `values` is false, the other analysis just adds to the dependencies of the current analysis, but no new
   // returnable values are added.
   def combine(other: XPathAnalysis): XPathAnalysis =
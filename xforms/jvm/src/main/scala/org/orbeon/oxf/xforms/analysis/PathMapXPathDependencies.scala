@@ -17,6 +17,7 @@ import org.orbeon.oxf.common.OXFException
 import org.orbeon.oxf.util.CollectionUtils._
 import org.orbeon.oxf.util.Logging
 import org.orbeon.oxf.xforms._
+import org.orbeon.oxf.xforms.analytics.XFormsMetrics
 import org.orbeon.oxf.xforms.analysis.controls._
 import org.orbeon.oxf.xforms.analysis.model.Model.MIP
 import org.orbeon.oxf.xforms.analysis.model.ValidationLevel
@@ -25,10 +26,6 @@ import org.orbeon.oxf.xforms.model.{XFormsInstance, XFormsModel}
 import org.orbeon.saxon.om.{NodeInfo, VirtualNode}
 import org.orbeon.xforms.XFormsId
 
-import org.orbeon.scaxon.SimplePath._
-
-import org.w3c.dom.Node._
-
 import scala.collection.JavaConverters._
 import scala.collection.{mutable ⇒ m}
 
@@ -49,54 +46,39 @@ class PathMapXPathDependencies(
     var validateMIPsEvaluatedOnce  = false  // start dirty
 
     // Meaning of a change: "the string value of the node has changed"
-    var recalculateChangeset = new MapSet[ModelOrInstanceKey, String]   // changeset for recalculate MIPs
-    var revalidateChangeset  = recalculateChangeset                     // changeset for revalidate MIPs
+    var recalculateChangeset = new Changeset          // changeset for recalculate MIPs
+    var revalidateChangeset  = recalculateChangeset   // changeset for revalidate MIPs
 
-    def markValueChangedForTests(instance: XFormsInstance, path: String): Unit = {
-      if (! hasStructuralChanges) {
+    def markValueChangedForTests(instance: XFormsInstance, path: String): Unit =
+      markPathIdsChanged(instance, _(InstancePathIds.idForPath(path)))
 
-        val instanceKey  = ModelOrInstanceKey(instance)
-        val instancePath = instanceKey → path
+    def markValueChanged(node: NodeInfo): Unit =
+      // Add parent elements as well. The idea is that if the string value of /a/b/c changed, then the
+      // string value of /a/b did as well, and so did /a's.
+      // This adds more entries to the changeset, but handles cases such as detecting changes impacting
+      // the string() or serialize() functions.
+      markPathIdsChanged(containingDocument.getInstanceForNode(node), InstancePathIds.foreachAncestorOrSelfId(node) _)
 
-        recalculateChangeset += instancePath
-        if (revalidateChangeset ne recalculateChangeset)
-          revalidateChangeset += instancePath // also add to revalidate changeset if it is different
-
-        RefreshState.instancesByKey   += instanceKey → instance
-        RefreshState.refreshChangeset += instancePath
-      }
-    }
-
-    def markValueChanged(node: NodeInfo): Unit = {
+    private def markPathIdsChanged(instance: ⇒ XFormsInstance, foreachPathId: (Int ⇒ Unit) ⇒ Unit): Unit = {
       // Only care about path changes if there is no structural change for this model, since structural changes
       // for now disable any more subtle path-based check.
       if (! hasStructuralChanges) {
 
-        // Create instance/path combo
-        val instance = containingDocument.getInstanceForNode(node)
-
-        def processNode(n: NodeInfo): Unit = {
-          val path = createFingerprintedPath(n)
-
-          val instanceKey  = ModelOrInstanceKey(instance)
-          val instancePath = instanceKey → path
+        val changedInstance = instance
+        val instanceKey     = ModelOrInstanceKey(changedInstance)
 
-          // Update model and view changesets
-          recalculateChangeset += instancePath
-          if (revalidateChangeset ne recalculateChangeset)
-            revalidateChangeset += instancePath // also add to revalidate changeset if it is different
+        // Update model and view changesets
+        val recalculateIds = recalculateChangeset.idsForInstance(instanceKey)
+        val revalidateIds  = revalidateChangeset.idsForInstance(instanceKey) // same as above if the changesets are the same
+        val refreshIds     = RefreshState.refreshChangeset.idsForInstance(instanceKey)
 
-          RefreshState.instancesByKey   += instanceKey → instance
-          RefreshState.refreshChangeset += instancePath
-
-          // Add parent elements as well. The idea is that if the string value of /a/b/c changed, then the
-          // string value of /a/b did as well, and so did /a's.
-          // This adds more entries to the changeset, but handles cases such as detecting changes impacting
-          // the string() or serialize() functions.
-          n parent * foreach processNode
+        foreachPathId { pathId ⇒
+          recalculateIds += pathId
+          revalidateIds  += pathId
+          refreshIds     += pathId
         }
 
-        processNode(node)
+        RefreshState.instancesByKey += instanceKey → changedInstance
       }
     }
 
@@ -138,14 +120,14 @@ class PathMapXPathDependencies(
 
     // Return an empty changeset, trying to point to the empty right changeset if possible
     // This is so that we can try to avoid adding changes to both changesets later
-    private def clearChangeset(left: MapSet[ModelOrInstanceKey, String], right: MapSet[ModelOrInstanceKey, String]) =
+    private def clearChangeset(left: Changeset, right: Changeset) =
       if (right isEmpty)
         right
       else if (left ne right) {
         left.clear()
         left
       } else
-        new MapSet[ModelOrInstanceKey, String]
+        new Changeset
 
     def refreshDone() = ()
 
@@ -171,7 +153,7 @@ class PathMapXPathDependencies(
     val structuralChangeModelKeys = new m.HashSet[ModelOrInstanceKey]
 
     // Modified paths by instance key
-    val refreshChangeset = new MapSet[ModelOrInstanceKey, String]
+    val refreshChangeset = new Changeset
     val instancesByKey   = m.Map[ModelOrInstanceKey, XFormsInstance]()
 
     // Caches to speedup checks on repeated items
@@ -198,23 +180,17 @@ class PathMapXPathDependencies(
         }
       }
 
-    private def setsHaveIntersection(
-      first  : collection.Set[String],
-      second : collection.Set[String]
-    ) =
-      first exists (second contains)
-
     private def searchMatchesForInstances(
       controlEffectiveId     : String,
-      firstWithPrefixedIds   : MapSet[String, String],
-      secondWithInstanceKeys : MapSet[ModelOrInstanceKey, String]
+      firstWithPrefixedIds   : Map[String, Array[Int]],
+      secondWithInstanceKeys : Changeset
     ) = {
 
       val controlIndexes        = XFormsId.getEffectiveIdSuffixParts(controlEffectiveId)
       val controlIsWithinRepeat = controlIndexes.nonEmpty
 
       compareWithPredicate(
-        firstWithPrefixedIds.map.keys,
+        firstWithPrefixedIds.keys,
         secondWithInstanceKeys.map.keys,
         instanceKey ⇒ {
 
@@ -223,8 +199,8 @@ class PathMapXPathDependencies(
             controlIndexes.startsWith(XFormsId.getEffectiveIdSuffixParts(instancesByKey(instanceKey).getEffectiveId))
 
           matchesRepeatIterations &&
-            setsHaveIntersection(
-              firstWithPrefixedIds.map(instanceKey.prefixedId),
+            InstancePathIds.intersects(
+              firstWithPrefixedIds(instanceKey.prefixedId),
               secondWithInstanceKeys.map(instanceKey)
             )
         }
@@ -256,23 +232,23 @@ class PathMapXPathDependencies(
     def intersectsBinding(
       controlEffectiveId : String,
       bindingAnalysis    : XPathAnalysis,
-      changes            : MapSet[ModelOrInstanceKey, String]
+      changes            : Changeset
     ) =
       searchMatchesForInstances(
         controlEffectiveId,
-        bindingAnalysis.valueDependentPaths,
+        bindingAnalysis.valueDependentPathIds,
         changes
       )
 
     def intersectsValue(
       controlEffectiveId : String,
       bindingAnalysis    : XPathAnalysis,
-      changes            : MapSet[ModelOrInstanceKey, String]
+      changes            : Changeset
     ) =
       intersectsBinding(controlEffectiveId, bindingAnalysis, refreshChangeset) ||
         searchMatchesForInstances(
           controlEffectiveId,
-          bindingAnalysis.returnablePaths,
+          bindingAnalysis.returnablePathIds,
           changes
         )
 
@@ -420,6 +396,11 @@ class PathMapXPathDependencies(
           "Itemset disjoints"            → itemsetMissCount.toString
         )
       )
+
+      XFormsMetrics.dependencyCounter("lhha", "evaluated").add(lhhaEvaluationCount)
+      XFormsMetrics.dependencyCounter("lhha", "optimized").add(lhhaOptimizedCount)
+      XFormsMetrics.dependencyCounter("itemset", "evaluated").add(itemsetEvaluationCount)
+      XFormsMetrics.dependencyCounter("itemset", "optimized").add(itemsetOptimizedCount)
   }
 
   // For unit tests only
@@ -753,29 +734,16 @@ private object PathMapXPathDependencies {
       ModelOrInstanceKey(instance.getPrefixedId, instance.model.sequenceNumber)
   }
 
-  // Create a fingerprinted path of the form: `3142/1425/@1232` from a node.
-  def createFingerprintedPath(node: NodeInfo): String = {
+  // Ids of the changed paths, by instance
+  //
+  // Ids are global to all forms, so a bit set would be sized after the largest id rather than the number of changes.
+  class Changeset {
 
-    // Create an immutable list with ancestor-or-self nodes up to but not including the document node
-    var ancestorOrSelf: List[NodeInfo] = Nil
-    var currentNode = node
-    while (currentNode != null && currentNode.getNodeKind != DOCUMENT_NODE) {
-      ancestorOrSelf = currentNode :: ancestorOrSelf
-      currentNode = currentNode.getParent
-    }
+    val map = new m.LinkedHashMap[ModelOrInstanceKey, m.HashSet[Int]]
 
-    // Fingerprint representation of the element and attribute nodes
-    val pathElements =
-      if (ancestorOrSelf.size > 1) // first is the root element, which we skip as that corresponds to instance('...')
-        ancestorOrSelf.tail map { node ⇒
-          node.getNodeKind match {
-            case ELEMENT_NODE   ⇒ node.getFingerprint
-            case ATTRIBUTE_NODE ⇒ "@" + node.getFingerprint
-          }
-        }
-      else
-        Nil
+    def idsForInstance(instanceKey: ModelOrInstanceKey) = map.getOrElseUpdate(instanceKey, new m.HashSet[Int])
 
-    pathElements mkString "/"
+    def isEmpty = map.isEmpty
+    def clear() = map.clear()
   }
-}
\ No newline at end of file
+}
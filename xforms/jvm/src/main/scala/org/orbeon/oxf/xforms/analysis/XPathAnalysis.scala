@@ -33,6 +33,10 @@ abstract class XPathAnalysis extends DebugXML  {
 
   def returnableInstances = returnablePaths.map.keys
 
+  // Same paths as interned ids, to check against changesets
+  lazy val valueDependentPathIds = InstancePathIds.idsForMapSet(valueDependentPaths)
+  lazy val returnablePathIds     = InstancePathIds.idsForMapSet(returnablePaths)
+
   // Combine this analysis with another one and return a new analysis
   def combine(other: XPathAnalysis): XPathAnalysis
 
@@ -28,6 +28,10 @@ import org.orbeon.oxf.xforms.control.LHHAValue
 import org.orbeon.oxf.xforms.itemset.{Item, ItemContainer, Itemset}
 import org.orbeon.oxf.xml.XMLReceiverHelper
 import org.orbeon.oxf.xml.dom4j.Dom4jUtils
+import org.orbeon.saxon.expr.StaticProperty
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
 
 trait SelectionControlTrait
 extends InputValueControl
@@ -196,6 +200,79 @@ extends InputValueControl
   // Return the control's static itemset if any
   lazy val staticItemset = hasStaticItemset option evaluateStaticItemset
 
+  // Whether the itemset is the same for all the concrete controls across repeat iterations, so that it can be
+  // evaluated once and shared
+  //
+  // This is the case when the itemset expressions don't depend on the context of the control, and when the models
+  // they depend on are not themselves within repeats. The dependencies must be known, as they tell when the shared
+  // itemset must be evaluated again.
+  lazy val hasSharedItemset =
+    isWithinRepeat     &&
+    ! hasStaticItemset &&
+    ! isNorefresh      &&
+    itemsetAnalyzed    &&
+    (getItemsetAnalysis exists { analysis ⇒
+      analysis.figuredOutDependencies &&
+        (analysis.dependentModels forall { modelPrefixedId ⇒
+          Option(part.getControlAnalysis(modelPrefixedId)) exists (_.ancestorRepeatsAcrossParts.isEmpty)
+        })
+    }) &&
+    isContextIndependentItemset
+
+  private def isContextIndependentItemset: Boolean = {
+
+    // If `anchored` is true, the expression is evaluated in a context which doesn't depend on the control's context
+    def isIndependentExpression(expression: String, avt: Boolean, anchored: Boolean) =
+      SelectionControlUtil.ContextDependentExpression.findFirstIn(expression).isEmpty && (
+        anchored ||
+        (
+          try {
+            val compiledExpression =
+              XPath.compileExpression(expression, namespaceMapping, locationData, part.staticState.functionLibrary, avt)
+            (compiledExpression.expression.getInternalExpression.getDependencies & StaticProperty.DEPENDS_ON_FOCUS) == 0
+          } catch {
+            case NonFatal(_) ⇒ false // be conservative, e.g. if a namespace is declared on a nested element
+          }
+        )
+      )
+
+    def isIndependent(elem: Element, anchored: Boolean): Boolean = {
+
+      val contextOpt       = elem.attributeValueOpt(CONTEXT_QNAME)
+      val bindingOpt       = elem.attributeValueOpt(REF_QNAME) orElse elem.attributeValueOpt(NODESET_QNAME)
+      val valueOpt         = elem.attributeValueOpt(VALUE_QNAME)
+
+      val contextAnchored  = anchored || contextOpt.isDefined
+      val childrenAnchored = contextAnchored || bindingOpt.isDefined
+
+      def avtsAreIndependent =
+        elem.attributes.asScala forall { att ⇒
+          SelectionControlUtil.ExpressionAttributes(att.getQName)                      ||
+          ! att.getValue.contains('{')                                                 ||
+          isIndependentExpression(att.getValue, avt = true, anchored = childrenAnchored)
+        }
+
+      // Binds can resolve differently in each iteration
+      elem.attributeValueOpt(BIND_QNAME).isEmpty                                                &&
+      (contextOpt forall (isIndependentExpression(_, avt = false, anchored = anchored)))         &&
+      (bindingOpt forall (isIndependentExpression(_, avt = false, anchored = contextAnchored)))  &&
+      (valueOpt   forall (isIndependentExpression(_, avt = false, anchored = childrenAnchored))) &&
+      avtsAreIndependent                                                                         &&
+      (elem.elements.asScala forall (isIndependent(_, childrenAnchored)))
+    }
+
+    // Like the itemset evaluation, consider items anywhere under the control
+    def itemsetElements(elem: Element): Iterator[Element] =
+      elem.elements.asScala.iterator flatMap { child ⇒
+        if (SelectionControlUtil.isTopLevelItemsetElement(child))
+          Iterator(child)
+        else
+          itemsetElements(child)
+      }
+
+    itemsetElements(element) forall (isIndependent(_, anchored = false))
+  }
+
   private def evaluateStaticItemset = {
 
     // TODO: operate on nested ElementAnalysis instead of Element
@@ -311,6 +388,15 @@ object SelectionControlUtil {
 
   def isTopLevelItemsetElement(e: Element) = TopLevelItemsetQNames(e.getQName)
 
+  val ExpressionAttributes = Set(REF_QNAME, NODESET_QNAME, CONTEXT_QNAME, BIND_QNAME, VALUE_QNAME)
+
+  // Expressions which can access the context of the control other than through the focus
+  //
+  // This includes binds, which resolve to the bound nodes of the current iteration, the default instance, which
+  // depends on the context model, and expressions evaluated dynamically.
+  val ContextDependentExpression =
+    """\$|repeat-|binding-context|context\s*\(|current\s*\(|bind\s*\(|evaluate-bind-property|instance\s*\(\s*\)|evaluate\s*\(""".r
+
   def getAttributes(itemChoiceItemset: Element) =
     for {
       attributeName   ← AttributesToPropagate
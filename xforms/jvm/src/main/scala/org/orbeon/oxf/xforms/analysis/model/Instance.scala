@@ -13,14 +13,19 @@
  */
 package org.orbeon.oxf.xforms.analysis.model
 
+import java.util.concurrent.ConcurrentHashMap
+import java.{util ⇒ ju}
+
 import org.orbeon.dom.saxon.{DocumentWrapper, TypedDocumentWrapper}
 import org.orbeon.dom.{Document, Element, QName}
 import org.orbeon.oxf.common.{ValidationException, Version}
 import org.orbeon.oxf.http.Credentials
 import org.orbeon.oxf.processor.ProcessorImpl
+import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.StringUtils._
 import org.orbeon.oxf.util.{Logging, NetUtils, XPath}
 import org.orbeon.oxf.xforms.XFormsConstants._
+import org.orbeon.oxf.xforms.XFormsProperties
 import org.orbeon.oxf.xforms.analysis.controls.ComponentControl
 import org.orbeon.oxf.xforms.analysis.{ElementAnalysis, SimpleElementAnalysis, StaticStateContext}
 import org.orbeon.oxf.xforms.model.InstanceDataOps
@@ -61,15 +66,7 @@ class Instance(
   // Get constant inline content from AbstractBinding if possible, otherwise extract from element.
   // Doing so allows for sharing of constant instances globally, among uses of an AbstractBinding and among multiple
   // instances of a given form. This is useful in particular for component i18n resource instances.
-  def inlineContent = {
-
-    // An instance within xf:implementation has a ComponentControl grandparent
-    def componentForConstantInstances =
-      if (readonly && useInlineContent)
-        parent.get.parent collect { case component: ComponentControl ⇒ component }
-      else
-        None
-
+  def inlineContent =
     componentForConstantInstances map { component ⇒
 
       val modelIndex    = ElementAnalysis.precedingSiblingIterator(parent.get) count (_.localName == "model")
@@ -85,9 +82,33 @@ class Instance(
 
       // Delegate to AbstractBinding
       component.abstractBinding.constantInstances((modelIndex, instanceIndex))
-    } getOrElse
-      extractInlineContent
-  }
+    } getOrElse {
+      if (sharesReadonlyInlineContent)
+        readonlyInlineContent
+      else
+        extractInlineContent
+    }
+
+  // An instance within xf:implementation has a ComponentControl grandparent
+  private def componentForConstantInstances =
+    if (readonly && useInlineContent)
+      parent.get.parent collect { case component: ComponentControl ⇒ component }
+    else
+      None
+
+  // Readonly content is immutable, so share it among multiple instances of a given form as well. This excludes
+  // instances within repeats, as a document must be able to tell which concrete instance a node belongs to.
+  private def sharesReadonlyInlineContent =
+    readonly && useInlineContent && ! isWithinRepeat && componentForConstantInstances.isEmpty
+
+  private lazy val readonlyInlineContent = extractInlineContent
+
+  // Resource tables by language built from the shared readonly content, see `XXFormsResource.resourceTable()`
+  private val readonlyInlineResourceTables = new ConcurrentHashMap[String, Map[String, String]]
+
+  // Return the resource tables if the given document is the readonly content shared by all the instances of the form
+  def sharedResourceTables(document: DocumentInfo): Option[ConcurrentHashMap[String, Map[String, String]]] =
+    (sharesReadonlyInlineContent && (document eq readonlyInlineContent)) option readonlyInlineResourceTables
 }
 
 // Used to gather instance metadata from AbstractBinding
@@ -229,17 +250,49 @@ object Instance {
       )
   }
 
-  def wrapDocument(document: Document, exposeXPathTypes: Boolean): DocumentWrapper =
-    if (exposeXPathTypes)
-      new TypedDocumentWrapper(
-        Dom4jUtils.normalizeTextNodes(document).asInstanceOf[Document],
-        null,
-        XPath.GlobalConfiguration
-      )
-    else
-      new DocumentWrapper(
-        Dom4jUtils.normalizeTextNodes(document).asInstanceOf[Document],
-        null,
-        XPath.GlobalConfiguration
-      )
+  def wrapDocument(document: Document, exposeXPathTypes: Boolean): DocumentWrapper = {
+
+    val normalizedDocument = Dom4jUtils.normalizeTextNodes(document).asInstanceOf[Document]
+
+    val wrapper =
+      if (exposeXPathTypes)
+        new TypedDocumentWrapper(normalizedDocument, null, XPath.GlobalConfiguration)
+      else
+        new DocumentWrapper(normalizedDocument, null, XPath.GlobalConfiguration)
+
+    // XPath expressions on large repeated data often sort nodes or use positions, but the index costs memory and
+    // time to build, so it is only enabled, if configured, for instances with enough nodes
+    val minNodes = XFormsProperties.getDocumentOrderIndexMinNodes
+    if (minNodes > 0 && hasAtLeastNodes(normalizedDocument, minNodes))
+      wrapper.enableDocumentOrderIndex()
+
+    wrapper
+  }
+
+  // Whether the document has at least the given number of element, attribute and other nodes, without counting all
+  // the nodes of large documents
+  def hasAtLeastNodes(document: Document, min: Int): Boolean = {
+
+    var count    = 0
+    val elements = new ju.ArrayDeque[Element]
+
+    Option(document.getRootElement) foreach (elements.push(_))
+
+    while (count < min && ! elements.isEmpty) {
+      val element = elements.pop()
+      count += 1 + element.attributeCount
+
+      val nodeCount = element.nodeCount
+      var i = 0
+      while (i < nodeCount) {
+        element.node(i) match {
+          case child: Element ⇒ elements.push(child)
+          case _              ⇒ count += 1
+        }
+        i += 1
+      }
+    }
+
+    count >= min
+  }
 }
\ No newline at end of file
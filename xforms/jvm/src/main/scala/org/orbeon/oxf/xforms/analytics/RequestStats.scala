@@ -13,22 +13,64 @@
  */
 package org.orbeon.oxf.xforms.analytics
 
-import collection.mutable
+import org.orbeon.oxf.util.LoggerFactory
 import org.orbeon.oxf.xforms.XFormsProperties
 
+import scala.collection.mutable
+
 // Gather request statistics
-// For now, only support XPath statistics
+//
+// Statistics are exported as metrics after each response. In addition, with the request statistics debug property,
+// per-expression XPath statistics are logged.
 trait RequestStats {
   def afterInitialResponse()
   def afterUpdateResponse()
   def addXPathStat(expr: String, time: Long)
   def withXPath[T](expr: ⇒ String)(body: ⇒ T): T
+  def withPhase[T](phase: String)(body: ⇒ T): T
 
   // For Java callers
   def getReporter: (String, Long) ⇒ Unit = addXPathStat
 }
 
-class RequestStatsImpl extends RequestStats {
+class MetricsRequestStats(form: ⇒ String) extends RequestStats {
+
+  private var xpathEvaluations = 0L
+  private val phaseNanos       = mutable.Map[String, Long]()
+
+  def addXPathStat(expr: String, time: Long): Unit =
+    xpathEvaluations += 1
+
+  def afterInitialResponse(): Unit =
+    XFormsMetrics.observeRequest(form, "initial", phaseNanos, xpathEvaluations)
+
+  def afterUpdateResponse(): Unit =
+    XFormsMetrics.observeRequest(form, "update", phaseNanos, xpathEvaluations)
+
+  def withXPath[T](expr: ⇒ String)(body: ⇒ T): T = {
+    val startTime = System.nanoTime
+
+    val result = body
+
+    addXPathStat(expr, (System.nanoTime - startTime) / 1000)
+
+    result
+  }
+
+  // NOTE: Phases can be nested, for example a recalculate can run during a refresh, in which case the time is
+  // counted in both phases.
+  def withPhase[T](phase: String)(body: ⇒ T): T = {
+    val startTime = System.nanoTime
+    try
+      body
+    finally
+      phaseNanos(phase) = phaseNanos.getOrElse(phase, 0L) + (System.nanoTime - startTime)
+  }
+}
+
+class RequestStatsImpl(form: ⇒ String) extends MetricsRequestStats(form) {
+
+  import RequestStatsImpl._
 
   private class XPathStats(val expr: String) {
     private var _count = 0
@@ -49,53 +91,49 @@ class RequestStatsImpl extends RequestStats {
 
   private val xpathStats = mutable.Map[String, XPathStats]()
 
-  def addXPathStat(expr: String, time: Long) =
+  override def addXPathStat(expr: String, time: Long) = {
+    super.addXPathStat(expr, time)
     xpathStats.getOrElseUpdate(expr, new XPathStats(expr)).addStat(time)
+  }
 
   private def topXPath(n: Int, f: XPathStats ⇒ Long) =
     xpathStats.values.toSeq sortBy f takeRight n reverse
 
   private def distinctXPath = xpathStats.size
 
-  def afterInitialResponse(): Unit =
-    afterUpdateResponse()
-
-  def afterUpdateResponse(): Unit = {
-    println("afterResponse:")
-    println(" distinct XPath: " + distinctXPath)
-    println(" total time in XPath: " + (xpathStats.values map (_.totalTime) sum))
-    println(" top XPath by mean time: ")
-    for ((topXPath, i) ← topXPath(10, _.meanTime).zipWithIndex)
-      println("  " + (i + 1) + ": " + topXPath.toString)
-    println(" top XPath by total time: ")
-    for ((topXPath, i) ← topXPath(10, _.totalTime).zipWithIndex)
-      println("  " + (i + 1) + ": " + topXPath.toString)
+  override def afterInitialResponse(): Unit = {
+    super.afterInitialResponse()
+    logXPathStats()
   }
 
-  def withXPath[T](expr: ⇒ String)(body: ⇒ T): T = {
-    val startTime = System.nanoTime
-
-    val result = body
-
-    val totalTimeMicroSeconds = (System.nanoTime - startTime) / 1000 // never smaller on OS X
-    if (totalTimeMicroSeconds > 0)
-      addXPathStat(expr, totalTimeMicroSeconds)
-
-    result
+  override def afterUpdateResponse(): Unit = {
+    super.afterUpdateResponse()
+    logXPathStats()
   }
-}
 
-object NOPRequestStats extends RequestStats {
-  def afterInitialResponse() = ()
-  def afterUpdateResponse() = ()
-  def addXPathStat(expr: String, time: Long) = ()
-  def withXPath[T](expr: ⇒ String)(body: ⇒ T) = body
+  private def logXPathStats(): Unit = {
+    val lines =
+      List(
+        "afterResponse:",
+        " distinct XPath: " + distinctXPath,
+        " total time in XPath: " + (xpathStats.values map (_.totalTime) sum),
+        " top XPath by mean time: "
+      ) ++
+      (for ((topXPath, i) ← topXPath(10, _.meanTime).zipWithIndex) yield "  " + (i + 1) + ": " + topXPath.toString) ++
+      List(" top XPath by total time: ") ++
+      (for ((topXPath, i) ← topXPath(10, _.totalTime).zipWithIndex) yield "  " + (i + 1) + ": " + topXPath.toString)
+
+    Logger.info(lines mkString "\n")
+  }
 }
 
 object RequestStatsImpl {
-  def apply(): RequestStats =
+
+  private val Logger = LoggerFactory.createLogger(classOf[RequestStatsImpl])
+
+  def apply(form: ⇒ String): RequestStats =
     if (XFormsProperties.isRequestStats)
-      new RequestStatsImpl()
+      new RequestStatsImpl(form)
     else
-      NOPRequestStats
-}
\ No newline at end of file
+      new MetricsRequestStats(form)
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analytics
+
+import org.orbeon.oxf.util.Metrics
+
+// Metrics of the XForms engine
+object XFormsMetrics {
+
+  // Processing phases timed for each request
+  val Rebuild      = "rebuild"
+  val Recalculate  = "recalculate"
+  val Revalidate   = "revalidate"
+  val Refresh      = "refresh"
+  val ControlDiff  = "control-diff"
+
+  private val FormRunnerPath = """/fr/([^/]+)/([^/]+)/.*""".r
+
+  // Form label of the metrics for a document
+  //
+  // For Form Runner, this is the app and form name. Otherwise, this is the request path. The number of distinct
+  // labels is bounded by `Metrics.MaxSeriesPerName`.
+  def formLabel(requestPath: String): String =
+    requestPath match {
+      case null                      ⇒ "unknown"
+      case FormRunnerPath(app, form) ⇒ app + '/' + form
+      case path                      ⇒ path
+    }
+
+  def observeRequest(form: String, requestType: String, phaseNanos: collection.Map[String, Long], xpathEvaluations: Long): Unit = {
+
+    for ((phase, nanos) ← phaseNanos)
+      Metrics.timer(
+        "orbeon_xforms_request_phase_seconds",
+        "Time spent in each processing phase during a request.",
+        "form"    → form,
+        "request" → requestType,
+        "phase"   → phase
+      ).observeNanos(nanos)
+
+    Metrics.histogram(
+      "orbeon_xforms_request_xpath_evaluations",
+      "Number of XPath expressions evaluated during a request.",
+      Metrics.CountBuckets,
+      "form"    → form,
+      "request" → requestType
+    ).observe(xpathEvaluations.toDouble)
+  }
+
+  def stateStoreTimer(form: String) =
+    Metrics.timer("orbeon_xforms_state_store_seconds", "Time spent storing document state.", "form" → form)
+
+  def stateRestoreTimer(form: String) =
+    Metrics.timer("orbeon_xforms_state_restore_seconds", "Time spent restoring documents from their state.", "form" → form)
+
+  def documentCacheRequest(hit: Boolean): Unit =
+    Metrics.counter(
+      "orbeon_xforms_document_cache_requests_total",
+      "Lookups of documents in the document cache.",
+      "result" → (if (hit) "hit" else "miss")
+    ).inc()
+
+  lazy val DocumentLockWait =
+    Metrics.timer("orbeon_xforms_document_lock_wait_seconds", "Time spent waiting for document locks.")
+
+  lazy val DocumentLockTimeouts =
+    Metrics.counter("orbeon_xforms_document_lock_timeouts_total", "Document lock requests which timed out.")
+
+  def schemaCacheRequest(inline: Boolean, hit: Boolean): Unit =
+    Metrics.counter(
+      "orbeon_xforms_schema_cache_requests_total",
+      "Lookups of compiled model schemas in the cache.",
+      "schema" → (if (inline) "inline" else "external"),
+      "result" → (if (hit) "hit" else "miss")
+    ).inc()
+
+  // Outcome of checking whether LHHA and itemsets must be evaluated during refresh
+  def dependencyCounter(kind: String, outcome: String) =
+    Metrics.counter(
+      "orbeon_xforms_dependencies_total",
+      "Outcome of dependency checks for LHHA and itemsets.",
+      "kind"    → kind,
+      "outcome" → outcome
+    )
+}
@@ -120,6 +120,11 @@ trait ControlBindingSupport {
     state          : Option[ControlState]
   ): Unit = {
     val oldBinding = this._bindingContext
+
+    // With incremental updates, remember the state of the control in case the update changes it
+    val controls    = containingDocument.getControls
+    val snapshotOpt = if (update && (oldBinding ne null)) controls.controlUpdating(self) else None
+
     this._bindingContext = bindingContext
 
     // Relevance is a property of all controls
@@ -148,6 +153,8 @@ trait ControlBindingSupport {
       // Control is created non-relevant
       evaluateNonRelevant(parentRelevant)
     }
+
+    snapshotOpt foreach (controls.controlUpdated(self, _))
   }
 
   // Control lifecycle
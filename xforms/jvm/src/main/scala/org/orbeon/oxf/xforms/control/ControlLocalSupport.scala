@@ -73,8 +73,10 @@ trait ControlLocalSupport {
       if (controls.getInitialControlTree ne controls.getCurrentControlTree) {
         if (currentLocal ne initialLocal)
           throw new OXFException("currentLocal != initialLocal")
-      } else if (initialLocal eq currentLocal)
+      } else if (initialLocal eq currentLocal) {
+        controls.controlChanging(self)
         currentLocal = initialLocal.clone.asInstanceOf[XFormsControlLocal]
+      }
     } else {
       // Happening during initialization
       // NOP: Don't modify currentLocal
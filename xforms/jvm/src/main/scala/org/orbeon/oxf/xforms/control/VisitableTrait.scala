@@ -37,6 +37,7 @@ trait VisitableTrait extends XFormsControl {
       // such as updating the error summary. What should be implemented is a better diff mechanism, for example lazy
       // copy of control properties upon mutation, rather than the current XFormsControlLocal/full clone alternative.
       containingDocument.getControls.cloneInitialStateIfNeeded()
+      containingDocument.getControls.controlChanging(this)
 
       // There is no dependency handling with the xxf:visited() function. So instead of requiring callers to do this,
       // as was the case at some point, we require an RR.
@@ -45,8 +45,10 @@ trait XFormsContainerControl extends VisitableTrait {
   }
 
   // Remove all children at once
-  def clearChildren() =
+  def clearChildren() = {
+    containingDocument.getControls.controlChanging(this)
     this._children = null
+  }
 
   // Update this control's effective id and its descendants based on the parent's effective id
   override def updateEffectiveId(): Unit = {
@@ -74,6 +76,23 @@ trait XFormsContainerControl extends VisitableTrait {
     cloned
   }
 
+  override def getSnapshot: XFormsControl = {
+
+    // Descendants are not copied, as their changes are recorded separately
+    val savedChildren = _children
+    _children = null
+
+    val snapshot =
+      try super.getSnapshot.asInstanceOf[XFormsContainerControl]
+      finally _children = savedChildren
+
+    // Keep the list of children as it is now
+    if (savedChildren ne null)
+      snapshot._children = savedChildren.clone()
+
+    snapshot
+  }
+
   override def iterationRemoved(): Unit = {
     if (hasChildren)
       for (currentControl ← _children)
@@ -240,6 +240,27 @@ class XFormsControl(
     cloned
   }
 
+  /**
+   * Copy of this control's current state, used by incremental updates instead of a copy of the whole tree of
+   * controls. Unlike `getBackCopy`, this doesn't modify this control, and containers don't copy their descendants.
+   */
+  def getSnapshot: XFormsControl = {
+
+    val savedInitialLocal = initialLocal
+    val savedCurrentLocal = currentLocal
+
+    val snapshot = getBackCopy.asInstanceOf[XFormsControl]
+
+    // `getBackCopy` hands over the current local to this control, but here this control keeps its locals and the
+    // snapshot only needs the initial local, which is not modified until the next response
+    initialLocal = savedInitialLocal
+    currentLocal = savedCurrentLocal
+    snapshot.initialLocal = savedInitialLocal
+    snapshot.currentLocal = savedInitialLocal
+
+    snapshot
+  }
+
   // Whether focus can be set to this control
   def isFocusable = false
 
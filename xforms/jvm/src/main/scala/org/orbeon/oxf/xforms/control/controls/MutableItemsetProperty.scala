@@ -22,5 +22,9 @@ class MutableItemsetProperty(private val control: XFormsSelect1Control) extends
   protected def requireUpdate     = control.containingDocument.getXPathDependencies.requireItemsetUpdate(control.staticControl, control.effectiveId)
   protected def notifyCompute()   = control.containingDocument.getXPathDependencies.notifyComputeItemset()
   protected def notifyOptimized() = control.containingDocument.getXPathDependencies.notifyOptimizeItemset()
-  protected def evaluateValue()   = XFormsItemUtils.evaluateItemset(control)
+  protected def evaluateValue()   =
+    if (control.staticControl.hasSharedItemset)
+      control.containingDocument.getControls.getOrEvaluateSharedItemset(control.staticControl)(XFormsItemUtils.evaluateItemset(control))
+    else
+      XFormsItemUtils.evaluateItemset(control)
 }
@@ -32,6 +32,8 @@ import org.orbeon.oxf.xforms.xbl.XBLContainer
 import org.orbeon.oxf.xforms.{BindingContext, ControlTree, XFormsContainingDocument}
 import org.orbeon.oxf.xml.SaxonUtils
 import org.orbeon.saxon.om.{Item, NodeInfo}
+import org.orbeon.saxon.`type`.Type
+import org.orbeon.saxon.value.StringValue
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable.{ArrayBuffer, ListBuffer}
@@ -325,21 +327,31 @@ class XFormsRepeatControl(
         // This may be set to this repeat or to a nested repeat if focus was within a removed iteration
         var partialFocusRepeatOption: Option[XFormsRepeatControl] = None
 
+        // Index both sequences so that reconciling iterations takes linear time even for large repeats
+        val oldItemIndex = new ItemIndex(oldRepeatItems)
+        val newItemIndex = new ItemIndex(newRepeatItems)
+
         // For each new item, what its old index was, -1 if it was not there
-        val oldIndexes = findItemIndexes(newRepeatItems, oldRepeatItems)
+        val oldIndexes = oldItemIndex.indexesOf(newRepeatItems)
 
         // For each old item, what its new index is, -1 if it is no longer there
-        val newIndexes = findItemIndexes(oldRepeatItems, newRepeatItems)
+        val newIndexes = newItemIndex.indexesOf(oldRepeatItems)
 
         // Remove control information for iterations that move or just disappear
         val oldChildren = children
 
+        // With incremental updates, remember the iterations as they were
+        controls.controlChanging(this)
+
         for (i ← newIndexes.indices) {
           val currentNewIndex = newIndexes(i)
           if (currentNewIndex != i) {
             // Node has moved or is removed
             val isRemoved = currentNewIndex == -1
             val movedOrRemovedIteration = oldChildren(i)
+
+            // Effective ids change or the iteration goes away
+            controls.subtreeChanging(movedOrRemovedIteration)
             if (isRemoved) {
               withDebug("removing iteration", Seq("id" → getEffectiveId, "index" → (i + 1).toString)) {
 
@@ -377,7 +389,7 @@ class XFormsRepeatControl(
               // We want to point to a new node (case of insert)
 
               // First, try to point to the last inserted node if found
-              findItemIndexes(insertedItems, newRepeatItems).reverse find (_ != -1) exists { index ⇒
+              insertedItems.reverseIterator map newItemIndex.indexOf find (_ != -1) exists { index ⇒
                 val newRepeatIndex = index + 1
 
                 debug("setting index to new node", Seq(
@@ -601,14 +613,6 @@ class XFormsRepeatControl(
         Dispatch.dispatchEvent(new XXFormsIndexChangedEvent(this, localRefreshInfo.oldRepeatIndex, getIndex))
     }
 
-  private def findItemIndexes(items1: Seq[Item], items2: Seq[Item]) = {
-
-    def indexOfItem(otherItem: Item) =
-      items2 indexWhere (SaxonUtils.compareItems(_, otherItem))
-
-    items1 map indexOfItem toArray
-  }
-
   // Serialize index
   override def serializeLocal: ju.Map[String, String] =
     ju.Collections.singletonMap("index", Integer.toString(getIndex))
@@ -666,6 +670,42 @@ object XFormsRepeatControl {
     oldRepeatIndex: Int
   )
 
+  // For each item in `items1`, the index of the same item in `items2`, or -1 if it is not there
+  def findItemIndexes(items1: Seq[Item], items2: Seq[Item]): Array[Int] =
+    new ItemIndex(items2).indexesOf(items1)
+
+  // Index of the positions of the items of a sequence, so that finding the position of an item doesn't require a
+  // linear search. Items are compared as with `SaxonUtils.compareItems()` and, as with `indexWhere`, the first
+  // position is returned if an item appears multiple times.
+  class ItemIndex(items: Seq[Item]) {
+
+    // Namespace node wrappers are equal without having the same `hashCode`, so they are searched linearly along
+    // with atomic values other than strings
+    private val nodePositions   = m.HashMap[NodeInfo, Int]()
+    private val stringPositions = m.HashMap[String, Int]()
+    private val otherPositions  = ListBuffer[(Item, Int)]()
+
+    for ((item, position) ← items.iterator.zipWithIndex)
+      item match {
+        case node: NodeInfo if node.getNodeKind != Type.NAMESPACE ⇒ nodePositions.getOrElseUpdate(node, position)
+        case value: StringValue                                   ⇒ stringPositions.getOrElseUpdate(value.getStringValue, position)
+        case other                                                ⇒ otherPositions += other → position
+      }
+
+    def indexOf(item: Item): Int =
+      item match {
+        case node: NodeInfo if node.getNodeKind != Type.NAMESPACE ⇒ nodePositions.getOrElse(node, -1)
+        case value: StringValue                                   ⇒ stringPositions.getOrElse(value.getStringValue, -1)
+        case other                                                ⇒
+          otherPositions collectFirst {
+            case (otherItem, position) if SaxonUtils.compareItems(otherItem, other) ⇒ position
+          } getOrElse -1
+      }
+
+    def indexesOf(items: Seq[Item]): Array[Int] =
+      items.iterator.map(indexOf).toArray
+  }
+
   // Find the initial repeat indexes for the given doc
   def initialIndexes(doc: XFormsContainingDocument) =
     findIndexes(
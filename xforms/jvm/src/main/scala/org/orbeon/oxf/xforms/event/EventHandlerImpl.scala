@@ -23,6 +23,7 @@ import org.orbeon.oxf.xforms.analysis.controls.RepeatIterationControl
 import org.orbeon.oxf.xforms.analysis.{ElementAnalysis, SimpleElementAnalysis, StaticStateContext}
 import org.orbeon.oxf.xforms.control.XFormsComponentControl
 import org.orbeon.oxf.xforms.event.events.XXFormsActionErrorEvent
+import org.orbeon.oxf.xforms.submission.AsynchronousSubmissionManager
 import org.orbeon.oxf.xforms.xbl.Scope
 import org.orbeon.oxf.xml.dom4j.Dom4jUtils
 import org.orbeon.xforms.XFormsId
@@ -255,7 +256,9 @@ class EventHandlerImpl(
     try {
       val actionInterpreter = new XFormsActionInterpreter(container, xpathContext, element, handlerEffectiveId, event, eventObserver)
       XFormsAPI.withScalaAction(actionInterpreter) {
-        actionInterpreter.runAction(self)
+        AsynchronousSubmissionManager.withConcurrentSubmissions(containingDocument) {
+          actionInterpreter.runAction(self)
+        }
       }
     } catch {
       case NonFatal(t) ⇒
@@ -15,6 +15,7 @@ package org.orbeon.oxf.xforms.function.xxforms
 
 import java.text.MessageFormat
 import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
 import java.util.regex.Matcher
 
 import org.orbeon.oxf.util.CollectionUtils._
@@ -32,6 +33,7 @@ import org.orbeon.scaxon.Implicits._
 import org.orbeon.scaxon.SimplePath._
 
 import scala.annotation.tailrec
+import scala.collection.{mutable ⇒ m}
 
 class XXFormsResource extends XFormsFunction {
 
@@ -50,11 +52,22 @@ class XXFormsResource extends XFormsFunction {
       case None               ⇒ resolveOrFindByStaticOrAbsoluteId("orbeon-resources") orElse resolveOrFindByStaticOrAbsoluteId("fr-form-resources")
     }
 
-    def findResourcesElement = findInstance collect { case instance: XFormsInstance ⇒ instance.rootElement }
+    def findResourcesInstance = findInstance collect { case instance: XFormsInstance ⇒ instance }
 
-    def findResourceElementForLang(resourcesElement: NodeInfo, requestedLang: String) = {
-      val availableLangs = resourcesElement / "resource" /@ "lang"
-      availableLangs find (_ === requestedLang) orElse availableLangs.headOption flatMap (_.parentOption)
+    def findResourceValue(instance: XFormsInstance, requestedLang: String): Option[String] = {
+
+      def findByPath =
+        for {
+          resourceRoot ← findResourceElementForLang(instance.rootElement, requestedLang)
+          leaf         ← pathFromTokens(resourceRoot, splitResourceName(resourceKeyArgument)).headOption
+        } yield
+          leaf.stringValue
+
+      // The table only has keys of leaf resources without indexes, so other keys use the regular path search
+      instance.instance.sharedResourceTables(instance.documentInfo) match {
+        case Some(tables) ⇒ resourceTable(tables, instance.rootElement, requestedLang).get(resourceKeyArgument) orElse findByPath
+        case None         ⇒ findByPath
+      }
     }
 
     def processResourceString(resourceOrTemplate: String): String =
@@ -76,12 +89,11 @@ class XXFormsResource extends XFormsFunction {
     val resultOpt =
       for {
         elementAnalysis ← elementAnalysisForSource
-        resources       ← findResourcesElement
+        instance        ← findResourcesInstance
         requestedLang   ← XXFormsLang.resolveXMLangHandleAVTs(getContainingDocument, elementAnalysis)
-        resourceRoot    ← findResourceElementForLang(resources, requestedLang)
-        leaf            ← pathFromTokens(resourceRoot, splitResourceName(resourceKeyArgument)).headOption
+        value           ← findResourceValue(instance, requestedLang)
       } yield
-        stringToStringValue(processResourceString(leaf.stringValue))
+        stringToStringValue(processResourceString(value))
 
     resultOpt.orNull
   }
@@ -154,6 +166,50 @@ object XXFormsResource {
   def flattenResourceName(s: String): List[String] =
     splitResourceName(s) filter Name10Checker.getInstance.isValidNCName
 
+  def findResourceElementForLang(resourcesElement: NodeInfo, requestedLang: String): Option[NodeInfo] = {
+    val availableLangs = resourcesElement / "resource" /@ "lang"
+    availableLangs find (_ === requestedLang) orElse availableLangs.headOption flatMap (_.parentOption)
+  }
+
+  // Table of resources by key for the given language, from the tables of a readonly resources document
+  //
+  // As the readonly inline content of a form is immutable, the tables are kept with the static analysis of the
+  // instance, and shared by all the XForms documents created from the same static state.
+  def resourceTable(
+    tablesByLang     : ConcurrentHashMap[String, Map[String, String]],
+    resourcesElement : NodeInfo,
+    requestedLang    : String
+  ): Map[String, String] =
+    Option(tablesByLang.get(requestedLang)) getOrElse {
+      val table = findResourceElementForLang(resourcesElement, requestedLang) map buildResourceTable getOrElse Map.empty
+      // If the table was built concurrently, keep the first one
+      Option(tablesByLang.putIfAbsent(requestedLang, table)) getOrElse table
+    }
+
+  // Map the dotted path of each leaf resource to its value
+  //
+  // Like with `pathFromTokens`, the first element in document order for a given path wins, and if it is not a leaf,
+  // the path is not in the table.
+  def buildResourceTable(resourceRoot: NodeInfo): Map[String, String] = {
+
+    val seenPaths = m.HashSet[String]()
+    val builder   = Map.newBuilder[String, String]
+
+    def processChildren(parent: NodeInfo, parentPath: String): Unit =
+      for (child ← (parent child *) if child.getURI.isEmpty) {
+
+        val path = if (parentPath.isEmpty) child.localname else parentPath + '.' + child.localname
+
+        if (seenPaths.add(path) && ! child.hasChildElement)
+          builder += path → child.stringValue
+
+        processChildren(child, path)
+      }
+
+    processChildren(resourceRoot, "")
+    builder.result()
+  }
+
   // Hand-made simple path search
   //
   // - path *must* have the form `foo.bar.2.baz` (names with optional index parts)
@@ -43,8 +43,25 @@ class Itemset(multiple: Boolean) extends ItemContainer {
   def selectedItems(value: String): List[Item] =
     allItemsIterator filter (item ⇒ isSelected(multiple, value, item.value)) toList
 
+  // JSON without selected items, which is kept as it doesn't depend on the control value and can be output for a
+  // number of controls sharing this itemset
+  private var jsonWithoutSelectionOpt: Option[(Boolean, String)] = None
+
   // Return the list of items as a JSON tree with hierarchical information
-  def asJSON(controlValue: String, encode: Boolean, locationData: LocationData): String = {
+  def asJSON(controlValue: String, encode: Boolean, locationData: LocationData): String =
+    if (controlValue eq null)
+      jsonWithoutSelectionOpt match {
+        case Some((`encode`, json)) ⇒
+          json
+        case _ ⇒
+          val json = buildJSON(controlValue, encode, locationData)
+          jsonWithoutSelectionOpt = Some(encode → json)
+          json
+      }
+    else
+      buildJSON(controlValue, encode, locationData)
+
+  private def buildJSON(controlValue: String, encode: Boolean, locationData: LocationData): String = {
     val sb = new StringBuilder
     // Array of top-level items
     sb.append("[")
@@ -205,6 +205,8 @@ class XFormsInstance(
         if (! insertEvent.isRootElementReplacement)
           updateIndexForInsert(insertedNodes)
 
+        invalidateDocumentOrderIndex()
+
       case deleteEvent: XFormsDeleteEvent ⇒
         // New nodes were just deleted
         if (deleteEvent.deletedNodes.nonEmpty) {
@@ -212,6 +214,7 @@ class XFormsInstance(
           if (deleteEvent.updateRepeats)
             updateRepeatSequences(container.getContainingDocument.getControls, None)
           updateIndexForDelete(deleteEvent.deletedNodes)
+          invalidateDocumentOrderIndex()
         }
       case replaceEvent: XXFormsReplaceEvent ⇒
         // A node was replaced
@@ -219,11 +222,19 @@ class XFormsInstance(
         // - a root element replacement
         // - an id attribute replacement
         updateIndexForReplace(replaceEvent.formerNode, replaceEvent.currentNode)
+        invalidateDocumentOrderIndex()
       case valueChangeEvent: XXFormsValueChangedEvent ⇒
         updateIndexForValueChange(valueChangeEvent)
       case _ ⇒
     }
 
+  // Nodes which are not in the index are found anyway, but discarding the index right away releases removed nodes
+  private def invalidateDocumentOrderIndex(): Unit =
+    _documentInfo match {
+      case wrapper: DocumentWrapper ⇒ wrapper.invalidateDocumentOrderIndex()
+      case _                        ⇒
+    }
+
   private def updateRepeatSequences(controls: XFormsControls, insertedNodes: Option[Seq[NodeInfo]]): Unit =
     if (containingDocument.isUpdateRepeats) {
 
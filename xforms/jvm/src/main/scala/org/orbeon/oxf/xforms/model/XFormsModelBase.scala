@@ -20,6 +20,7 @@ import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.Logging
 import org.orbeon.oxf.xforms._
 import org.orbeon.oxf.xforms.analysis.model.Model
+import org.orbeon.oxf.xforms.analytics.XFormsMetrics
 import org.orbeon.oxf.xforms.event.events.{XXFormsInvalidEvent, XXFormsValidEvent}
 import org.orbeon.oxf.xforms.event.{Dispatch, ListenersTrait, XFormsEvent}
 import org.orbeon.oxf.xforms.function.XFormsFunction
@@ -71,14 +72,16 @@ abstract class XFormsModelBase(val container: XBLContainer, val effectiveId: Str
   def doRebuild(): Unit = {
     if (deferredActionContext.rebuild) {
       try {
-        resetAndEvaluateVariables()
-        bindsIfInstance foreach { binds ⇒
-          // NOTE: contextStack.resetBindingContext(this) called in evaluateVariables()
-          binds.rebuild()
+        containingDocument.getRequestStats.withPhase(XFormsMetrics.Rebuild) {
+          resetAndEvaluateVariables()
+          bindsIfInstance foreach { binds ⇒
+            // NOTE: contextStack.resetBindingContext(this) called in evaluateVariables()
+            binds.rebuild()
 
-          // Controls may have @bind or bind() references, so we need to mark them as dirty. Will need dependencies for controls to fix this.
-          // TODO: Handle XPathDependencies
-          container.requireRefresh()
+            // Controls may have @bind or bind() references, so we need to mark them as dirty. Will need dependencies for controls to fix this.
+            // TODO: Handle XPathDependencies
+            container.requireRefresh()
+          }
         }
       } finally {
         deferredActionContext.resetRebuild()
@@ -91,7 +94,8 @@ abstract class XFormsModelBase(val container: XBLContainer, val effectiveId: Str
   // See https://github.com/orbeon/orbeon-forms/issues/1650
   def doRecalculateRevalidate(): Unit = {
 
-    val instances = getInstances.asScala
+    val instances    = getInstances.asScala
+    val requestStats = containingDocument.getRequestStats
 
     // We don't want to dispatch events while we are performing the actual recalculate/revalidate operation,
     // so we collect them here and dispatch them altogether once everything is done.
@@ -103,7 +107,9 @@ abstract class XFormsModelBase(val container: XBLContainer, val effectiveId: Str
       if (deferredActionContext.recalculateRevalidate) {
         try {
 
-          doRecalculate(deferredActionContext.defaultsStrategy, collector)
+          requestStats.withPhase(XFormsMetrics.Recalculate) {
+            doRecalculate(deferredActionContext.defaultsStrategy, collector)
+          }
           containingDocument.getXPathDependencies.recalculateDone(selfModel)
 
           // Validate only if needed, including checking the flags, because if validation state is clean, validation
@@ -111,7 +117,10 @@ abstract class XFormsModelBase(val container: XBLContainer, val effectiveId: Str
           val mustRevalidate = bindsIfInstance.isDefined || hasSchema
 
           mustRevalidate option {
-            val invalidInstances = doRevalidate(collector)
+            val invalidInstances =
+              requestStats.withPhase(XFormsMetrics.Revalidate) {
+                doRevalidate(collector)
+              }
             containingDocument.getXPathDependencies.revalidateDone(selfModel)
             invalidInstances
           }
@@ -13,30 +13,62 @@
  */
 package org.orbeon.oxf.xforms.processor
 
-import java.{lang ⇒ jl}
+import java.{lang ⇒ jl, util ⇒ ju}
 
 import org.orbeon.oxf.processor.converter.XHTMLRewrite
 import org.orbeon.oxf.util.{ContentHandlerWriter, NetUtils}
 import org.orbeon.oxf.xforms.XFormsConstants._
 import org.orbeon.oxf.xforms.XFormsUtils.namespaceId
+import org.orbeon.oxf.xforms.control.Controls.AncestorOrSelfIterator
 import org.orbeon.oxf.xforms.control._
 import org.orbeon.oxf.xforms.control.controls.{XFormsCaseControl, XFormsRepeatControl, XFormsSwitchControl, XXFormsDynamicControl}
 import org.orbeon.oxf.xforms.processor.handlers._
-import org.orbeon.oxf.xforms.processor.handlers.xhtml.{XHTMLBodyHandler, XHTMLElementHandler, XHTMLHeadHandler, XXFormsAttributeHandler}
+import org.orbeon.oxf.xforms.processor.handlers.xhtml.{XHTMLBodyHandler, XHTMLHeadHandler}
 import org.orbeon.oxf.xforms.{XFormsContainingDocument, XFormsProperties}
 import org.orbeon.oxf.xml._
 
+import scala.collection.JavaConverters._
 import scala.collection.{immutable ⇒ i}
 import scala.util.control.Breaks
 
+// With incremental updates, `changedControlsOpt` contains the previous state of the controls which changed, and the
+// trees to compare share all the other controls.
 class ControlsComparator(
   document                       : XFormsContainingDocument,
   valueChangeControlIdsAndValues : i.Map[String, String],
-  isTestMode                     : Boolean
+  isTestMode                     : Boolean,
+  changedControlsOpt             : Option[ju.Map[XFormsControl, XFormsControl]] = None
 ) extends XMLReceiverSupport {
 
   private val FullUpdateThreshold = document.getAjaxFullUpdateThreshold
 
+  // Previous state of the control
+  private def previousState(control: XFormsControl) =
+    changedControlsOpt flatMap (changed ⇒ Option(changed.get(control))) getOrElse control
+
+  // Controls which changed, or which have descendants which changed or which received a value from the client
+  private lazy val controlsToVisit: ju.Set[XFormsControl] = {
+
+    val result = ju.Collections.newSetFromMap(new ju.IdentityHashMap[XFormsControl, jl.Boolean])
+
+    val startControls =
+      (changedControlsOpt.iterator flatMap (_.keySet.asScala)) ++
+      (valueChangeControlIdsAndValues.keysIterator flatMap document.getControls.findObjectByEffectiveId)
+
+    for (control ← startControls)
+      new AncestorOrSelfIterator(control) takeWhile result.add foreach (_ ⇒ ())
+
+    result
+  }
+
+  // Whether the control is shared by both trees and there is nothing to compare within it
+  // Structural changes are not tracked per control, so in that case everything is compared.
+  private def isUnchanged(control1OrNull: XFormsControl, control2: XFormsControl) =
+    changedControlsOpt.isDefined                      &&
+    (control1OrNull eq control2)                      &&
+    document.getControlsStructuralChanges.isEmpty     &&
+    ! controlsToVisit.contains(control2)
+
   private val breaks = new Breaks
   import breaks._
 
@@ -53,7 +85,8 @@ class ControlsComparator(
 
       for {
         (control1OrNull, control2) ← left.iterator.zipAll(right.iterator, null, null)
-        control1Opt                = Option(control1OrNull)
+        if ! isUnchanged(control1OrNull, control2)
+        control1Opt                = Option(control1OrNull) map previousState
       } locally {
 
         // 1: Diffs for current control
@@ -239,14 +272,14 @@ class ControlsComparator(
 
       // AVTs on HTML elements
       if (XFormsProperties.isHostLanguageAVTs) {
-        register(classOf[XXFormsAttributeHandler], XXFORMS_NAMESPACE_URI, "attribute", any = true)
-        register(classOf[XHTMLElementHandler], XMLConstants.XHTML_NAMESPACE_URI)
+        register(HandlerFactories.XXFormsAttribute, XXFORMS_NAMESPACE_URI, "attribute", any = true)
+        register(HandlerFactories.XHTMLElement, XMLConstants.XHTML_NAMESPACE_URI)
       }
 
       // Swallow XForms elements that are unknown
-      register(classOf[NullHandler], XFORMS_NAMESPACE_URI)
-      register(classOf[NullHandler], XXFORMS_NAMESPACE_URI)
-      register(classOf[NullHandler], XBL_NAMESPACE_URI)
+      register(HandlerFactories.Null, XFORMS_NAMESPACE_URI)
+      register(HandlerFactories.Null, XXFORMS_NAMESPACE_URI)
+      register(HandlerFactories.Null, XBL_NAMESPACE_URI)
 
       controller
     }
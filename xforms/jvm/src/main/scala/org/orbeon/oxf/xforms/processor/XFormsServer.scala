@@ -35,6 +35,7 @@ import org.orbeon.oxf.xforms.XFormsConstants.XXFORMS_NAMESPACE_URI
 import org.orbeon.oxf.xforms.XFormsContainingDocumentSupport._
 import org.orbeon.oxf.xforms._
 import org.orbeon.oxf.xforms.action.XFormsAPI
+import org.orbeon.oxf.xforms.analytics.XFormsMetrics
 import org.orbeon.oxf.xforms.control.XFormsControl
 import org.orbeon.oxf.xforms.control.controls.{XFormsRepeatControl, XFormsUploadControl}
 import org.orbeon.oxf.xforms.event.{ClientEvents, XFormsEvents}
@@ -181,7 +182,8 @@ object XFormsServer {
                     state1                         = controls.getInitialControlTree.children,
                     state2                         = currentControlTree.children,
                     valueChangeControlIdsAndValues = eventFindings.valueChangeControlIdsAndValues,
-                    isTestMode                     = testOutputAllActions
+                    isTestMode                     = testOutputAllActions,
+                    changedControlsOpt             = controls.isIncrementalUpdate option controls.changedControlsSnapshots
                   )
                 case _ ⇒ // NOP
               }
@@ -214,7 +216,7 @@ object XFormsServer {
               case None if testOutputAllActions || containingDocument.isDirtySinceLastRequest ⇒
                 diffIndexState(
                   ns,
-                  controls.getInitialControlTree.initialRepeatIndexes,
+                  controls.initialRepeatIndexes,
                   XFormsRepeatControl.currentIndexes(containingDocument)
                 )
               case _ ⇒ // NOP
@@ -346,24 +348,28 @@ object XFormsServer {
       state1                         : Seq[XFormsControl],
       state2                         : Seq[XFormsControl],
       valueChangeControlIdsAndValues : Map[String, String],
-      isTestMode                     : Boolean)(implicit
+      isTestMode                     : Boolean,
+      changedControlsOpt             : Option[ju.Map[XFormsControl, XFormsControl]] = None)(implicit
       xmlReceiver                    : XMLReceiver,
       indentedLogger                 : IndentedLogger
     ): Unit =
       withDebug("computing differences") {
-        XFormsAPI.withContainingDocument(containingDocument) { // scope because dynamic properties can cause lazy XPath evaluations
-
-          val comparator = new ControlsComparator(
-            containingDocument,
-            valueChangeControlIdsAndValues,
-            isTestMode
-          )
+        containingDocument.getRequestStats.withPhase(XFormsMetrics.ControlDiff) {
+          XFormsAPI.withContainingDocument(containingDocument) { // scope because dynamic properties can cause lazy XPath evaluations
+
+            val comparator = new ControlsComparator(
+              containingDocument,
+              valueChangeControlIdsAndValues,
+              isTestMode,
+              changedControlsOpt
+            )
 
-          comparator.diffChildren(
-            left             = if (isTestMode) Nil else state1, // in test mode, ignore first tree
-            right            = state2,
-            fullUpdateBuffer = None
-          )
+            comparator.diffChildren(
+              left             = if (isTestMode) Nil else state1, // in test mode, ignore first tree
+              right            = state2,
+              fullUpdateBuffer = None
+            )
+          }
         }
       }
 
@@ -723,6 +729,7 @@ class XFormsServer extends ProcessorImpl {
                               // Hook-up debug content handler if we must log the response document
                               // Buffer for retries
                               val responseStore = new SAXStore
+                              responseStore.setConfiguredSpill()
                               // Two receivers possible
                               val receivers = new ju.ArrayList[XMLReceiver]
                               receivers.add(responseStore)
@@ -738,16 +745,23 @@ class XFormsServer extends ProcessorImpl {
                               val responseReceiver = new TeeXMLReceiver(receivers)
 
                               // Prepare and/or output response
-                              XFormsServer.outputAjaxResponse(
-                                containingDocument        = containingDocument,
-                                eventFindings             = eventsFindingsOpt getOrElse ClientEvents.EmptyEventsFindings,
-                                beforeFocusedControlIdOpt = beforeFocusedControlIdOpt,
-                                repeatHierarchyOpt        = beforeRepeatHierarchyOpt,
-                                requestDocument           = requestDocument,
-                                testOutputAllActions      = false)(
-                                xmlReceiver               = responseReceiver,
-                                indentedLogger            = indentedLogger
-                              )
+                              try {
+                                XFormsServer.outputAjaxResponse(
+                                  containingDocument        = containingDocument,
+                                  eventFindings             = eventsFindingsOpt getOrElse ClientEvents.EmptyEventsFindings,
+                                  beforeFocusedControlIdOpt = beforeFocusedControlIdOpt,
+                                  repeatHierarchyOpt        = beforeRepeatHierarchyOpt,
+                                  requestDocument           = requestDocument,
+                                  testOutputAllActions      = false)(
+                                  xmlReceiver               = responseReceiver,
+                                  indentedLogger            = indentedLogger
+                                )
+                              } catch {
+                                case NonFatal(t) ⇒
+                                  // Release the spill storage of the incomplete response
+                                  responseStore.dispose()
+                                  throw t
+                              }
 
                               // Store response in to document
                               containingDocument.rememberLastAjaxResponse(responseStore)
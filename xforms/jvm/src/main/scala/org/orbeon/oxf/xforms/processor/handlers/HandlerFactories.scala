@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.processor.handlers
+
+import org.orbeon.oxf.xforms.processor.handlers.xhtml._
+import org.orbeon.oxf.xml.{ElementHandler, ElementHandlerFactory}
+import org.xml.sax.Attributes
+
+// Factories for the XHTML and XForms handlers, which call the handlers' constructors directly rather than through
+// reflection, as handlers are created for each element of each output
+object HandlerFactories {
+
+  def factory(newHandler: (String, String, String, Attributes, AnyRef, AnyRef) ⇒ ElementHandler): ElementHandlerFactory =
+    new ElementHandlerFactory {
+      def create(
+        uri            : String,
+        localname      : String,
+        qName          : String,
+        attributes     : Attributes,
+        matched        : AnyRef,
+        handlerContext : AnyRef
+      ): ElementHandler =
+        newHandler(uri, localname, qName, attributes, matched, handlerContext)
+    }
+
+  // Document structure
+  val XHTMLHead              = factory(new XHTMLHeadHandler            (_, _, _, _, _, _))
+  val XHTMLBody              = factory(new XHTMLBodyHandler            (_, _, _, _, _, _))
+  val XHTMLElement           = factory(new XHTMLElementHandler         (_, _, _, _, _, _))
+  val XXFormsAttribute       = factory(new XXFormsAttributeHandler     (_, _, _, _, _, _))
+  val XXFormsText            = factory(new XXFormsTextHandler          (_, _, _, _, _, _))
+  val Null                   = factory(new NullHandler                 (_, _, _, _, _, _))
+  val NullElement            = factory(new NullElementHandler          (_, _, _, _, _, _))
+
+  // Controls
+  val XXFormsComponent       = factory(new XXFormsComponentHandler     (_, _, _, _, _, _))
+  val XFormsInput            = factory(new XFormsInputHandler          (_, _, _, _, _, _))
+  val XFormsOutputText       = factory(new XFormsOutputTextHandler     (_, _, _, _, _, _))
+  val XFormsOutputDownload   = factory(new XFormsOutputDownloadHandler (_, _, _, _, _, _))
+  val XFormsOutputImage      = factory(new XFormsOutputImageHandler    (_, _, _, _, _, _))
+  val XFormsOutputHTML       = factory(new XFormsOutputHTMLHandler     (_, _, _, _, _, _))
+  val XFormsOutputDefault    = factory(new XFormsOutputDefaultHandler  (_, _, _, _, _, _))
+  val XFormsTriggerMinimal   = factory(new XFormsTriggerMinimalHandler (_, _, _, _, _, _))
+  val XFormsTriggerFull      = factory(new XFormsTriggerFullHandler    (_, _, _, _, _, _))
+  val XFormsGroupInternal    = factory(new XFormsGroupInternalHandler  (_, _, _, _, _, _))
+  val XFormsGroupSeparator   = factory(new XFormsGroupSeparatorHandler (_, _, _, _, _, _))
+  val XFormsGroupFieldset    = factory(new XFormsGroupFieldsetHandler  (_, _, _, _, _, _))
+  val XFormsGroupDefault     = factory(new XFormsGroupDefaultHandler   (_, _, _, _, _, _))
+  val XFormsCase             = factory(new XFormsCaseHandler           (_, _, _, _, _, _))
+  val XFormsRepeat           = factory(new XFormsRepeatHandler         (_, _, _, _, _, _))
+  val XFormsSecret           = factory(new XFormsSecretHandler         (_, _, _, _, _, _))
+  val XFormsUpload           = factory(new XFormsUploadHandler         (_, _, _, _, _, _))
+  val XFormsRange            = factory(new XFormsRangeHandler          (_, _, _, _, _, _))
+  val XFormsTextarea         = factory(new XFormsTextareaHandler       (_, _, _, _, _, _))
+  val XXFormsDialog          = factory(new XXFormsDialogHandler        (_, _, _, _, _, _))
+  val XFormsSelect1Internal  = factory(new XFormsSelect1InternalHandler(_, _, _, _, _, _))
+  val XFormsSelect           = factory(new XFormsSelectHandler         (_, _, _, _, _, _))
+  val XFormsSelect1          = factory(new XFormsSelect1Handler        (_, _, _, _, _, _))
+  val XFormsLHHA             = factory(new XFormsLHHAHandler           (_, _, _, _, _, _))
+  val XXFormsDynamic         = factory(new XXFormsDynamicHandler       (_, _, _, _, _, _))
+}
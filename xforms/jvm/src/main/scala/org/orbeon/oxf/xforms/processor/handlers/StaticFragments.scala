@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.processor.handlers
+
+import java.{util ⇒ ju}
+
+import org.orbeon.oxf.xforms.XFormsConstants.{XBL_NAMESPACE_URI, XFORMS_NAMESPACE_URI, XXFORMS_NAMESPACE_URI}
+import org.orbeon.oxf.xml.XMLConstants.XHTML_NAMESPACE_URI
+import org.orbeon.oxf.xml.{ElementHandlerController, ForwardingXMLReceiver, SAXStore, XMLReceiverAdapter}
+import org.xml.sax.Attributes
+
+import scala.collection.mutable
+
+//
+// Subtrees of the annotated template which produce the same output for every document, so that they can be sent
+// to the output as is instead of going through the handlers.
+//
+// A subtree is static if none of its elements:
+//
+// - is an XForms, XBL or extension element, which all have handlers
+// - is `xh:html`, `xh:head` or `xh:body`, which have handlers
+// - has an `id` or `for` attribute, which are rewritten during output, or which identify controls and AVTs
+//
+// Static subtrees are identified by the position of their root element in document order. Only the largest static
+// subtrees are recorded.
+//
+object StaticFragments {
+
+  def findRoots(template: SAXStore): ju.BitSet = {
+
+    val roots = new ju.BitSet
+
+    class Frame(val position: Int, var isStatic: Boolean)
+
+    template.replay(new XMLReceiverAdapter {
+
+      private val stack = mutable.Stack[Frame]()
+      private var elementCount = 0
+
+      override def startElement(uri: String, localname: String, qName: String, attributes: Attributes): Unit = {
+        stack.push(new Frame(elementCount, isStaticElement(uri, localname, attributes)))
+        elementCount += 1
+      }
+
+      override def endElement(uri: String, localname: String, qName: String): Unit = {
+        val frame = stack.pop()
+        if (frame.isStatic) {
+          // Descendants are part of this subtree
+          roots.clear(frame.position + 1, elementCount)
+          roots.set(frame.position)
+        } else if (stack.nonEmpty)
+          stack.top.isStatic = false
+      }
+    })
+
+    roots
+  }
+
+  private def isStaticElement(uri: String, localname: String, attributes: Attributes) =
+    ! HandledURIs(uri)                                                &&
+    ! (uri == XHTML_NAMESPACE_URI && HandledXHTMLElements(localname)) &&
+    (attributes.getValue("id") eq null)                               &&
+    (attributes.getValue("for") eq null)
+
+  private val HandledURIs          = Set(XFORMS_NAMESPACE_URI, XXFORMS_NAMESPACE_URI, XBL_NAMESPACE_URI)
+  private val HandledXHTMLElements = Set("html", "head", "body")
+
+  // Send static subtrees of the template directly to the controller's output when the controller would forward
+  // them anyway
+  class SplicingReceiver(controller: ElementHandlerController, roots: ju.BitSet)
+    extends ForwardingXMLReceiver(controller) {
+
+    private var elementCount = 0
+    private var splicedLevel = 0
+
+    override def startElement(uri: String, localname: String, qName: String, attributes: Attributes): Unit = {
+      if (splicedLevel > 0)
+        splicedLevel += 1
+      else if (roots.get(elementCount) && controller.isOutputtingContent) {
+        setXMLReceiver(controller.getOutput)
+        splicedLevel = 1
+      }
+      elementCount += 1
+      super.startElement(uri, localname, qName, attributes)
+    }
+
+    override def endElement(uri: String, localname: String, qName: String): Unit = {
+      super.endElement(uri, localname, qName)
+      if (splicedLevel > 0) {
+        splicedLevel -= 1
+        if (splicedLevel == 0)
+          setXMLReceiver(controller)
+      }
+    }
+  }
+}
@@ -14,10 +14,12 @@
 package org.orbeon.oxf.xforms.processor.handlers
 
 import org.orbeon.oxf.externalcontext.ExternalContext
-import org.orbeon.oxf.xforms.processor.handlers.xhtml.{XHTMLBodyHandler, XHTMLElementHandler, XHTMLHeadHandler, XXFormsAttributeHandler}
+import org.orbeon.oxf.xforms.analysis.ElementAnalysis
+import org.orbeon.oxf.xforms.processor.handlers.xhtml.XHTMLBodyHandler
 import org.orbeon.oxf.xforms.state.AnnotatedTemplate
-import org.orbeon.oxf.xforms.{XFormsContainingDocument, XFormsProperties}
+import org.orbeon.oxf.xforms.{PartAnalysis, XFormsContainingDocument, XFormsProperties}
 import org.orbeon.oxf.xml._
+import org.xml.sax.Attributes
 
 
 object XHTMLOutput {
@@ -30,6 +32,8 @@ object XHTMLOutput {
   ): Unit = {
     implicit val controller = new ElementHandlerController
 
+    val isHostLanguageAVTs = XFormsProperties.isHostLanguageAVTs
+
     // Register handlers on controller (the other handlers are registered by the body handler)
     locally {
       val isHTMLDocument = xfcd.getStaticState.isHTMLDocument
@@ -38,25 +42,25 @@ object XHTMLOutput {
       import org.orbeon.oxf.xml.XMLConstants.{XHTML_NAMESPACE_URI ⇒ XH}
 
       if (isHTMLDocument) {
-        register(classOf[XHTMLHeadHandler], XH, "head")
-        register(classOf[XHTMLBodyHandler], XH, "body")
+        register(HandlerFactories.XHTMLHead, XH, "head")
+        register(HandlerFactories.XHTMLBody, XH, "body")
       } else {
         throw new NotImplementedError("XML handlers are not implemented yet")
       }
 
       // Register a handler for AVTs on HTML elements
-      if (XFormsProperties.isHostLanguageAVTs) {
-        register(classOf[XXFormsAttributeHandler], XXF, "attribute")
+      if (isHostLanguageAVTs) {
+        register(HandlerFactories.XXFormsAttribute, XXF, "attribute")
 
         if (isHTMLDocument)
-          register(classOf[XHTMLElementHandler], XH)
+          register(HandlerFactories.XHTMLElement, XH)
       }
 
       // Swallow XForms elements that are unknown
       if (isHTMLDocument) {
-        register(classOf[NullHandler], XF)
-        register(classOf[NullHandler], XXF)
-        register(classOf[NullHandler], XBL_NAMESPACE_URI)
+        register(HandlerFactories.Null, XF)
+        register(HandlerFactories.Null, XXF)
+        register(HandlerFactories.Null, XBL_NAMESPACE_URI)
       }
     }
 
@@ -64,21 +68,53 @@ object XHTMLOutput {
     controller.setOutput(new DeferredXMLReceiverImpl(xmlReceiver))
     controller.setElementHandlerContext(new HandlerContext(controller, xfcd, externalContext, null))
 
-    // Process the entire input
-    template.saxStore.replay(new ExceptionWrapperXMLReceiver(controller, "converting XHTML+XForms document to XHTML"))
+    // Reuse the handlers resolved by previous outputs of the same template
+    controller.setHandlerPlan(
+      template.handlerPlan(if (isHostLanguageAVTs) "avts" else "no-avts")(
+        new TopLevelPartHandlerPlan(xfcd.getStaticState.topLevelPart)
+      )
+    )
+
+    // Process the entire input, sending static subtrees directly to the output
+    template.saxStore.replay(
+      new ExceptionWrapperXMLReceiver(
+        new StaticFragments.SplicingReceiver(controller, template.staticFragmentRoots),
+        "converting XHTML+XForms document to XHTML"
+      )
+    )
   }
 
-  def register[T](
-    clazz               : Class[T],
+  def register(
+    factory             : ElementHandlerFactory,
     ns                  : String,
     elementName         : String = null,
     any                 : Boolean = false)(
     implicit controller : ElementHandlerController
   ): Unit =
     controller.registerHandler(
-      clazz.getName,
+      factory,
       ns,
       elementName,
       if (any) XHTMLBodyHandler.ANY_MATCHER else null
     )
+
+  // The body handler's matchers only depend on the static state and on the element's attributes, so the handler
+  // resolved for a given element can be reused. Elements are identified by prefixed id, which is unique within the
+  // top-level part. Elements of nested parts, such as those of `xxf:dynamic`, are resolved every time.
+  private class TopLevelPartHandlerPlan(topLevelPart: PartAnalysis) extends ElementHandlerPlan {
+
+    def elementKey(uri: String, localname: String, attributes: Attributes, handlerContext: AnyRef): String = {
+      val hc = handlerContext.asInstanceOf[HandlerContext]
+      if (hc.getPartAnalysis eq topLevelPart) hc.getPrefixedId(attributes) else null
+    }
+
+    // Make sure the element's analysis hasn't been replaced since the element was first resolved
+    override def isMatchedValid(elementKey: String, matched: AnyRef, handlerContext: AnyRef): Boolean =
+      matched match {
+        case elementAnalysis: ElementAnalysis ⇒
+          handlerContext.asInstanceOf[HandlerContext].getPartAnalysis.getControlAnalysis(elementKey) eq elementAnalysis
+        case _ ⇒
+          true
+      }
+  }
 }
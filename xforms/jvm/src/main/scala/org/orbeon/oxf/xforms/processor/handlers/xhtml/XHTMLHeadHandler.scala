@@ -27,6 +27,7 @@ import org.orbeon.oxf.xforms.XFormsUtils.{escapeJavaScript, namespaceId}
 import org.orbeon.oxf.xforms._
 import org.orbeon.oxf.xforms.control.{Controls, XFormsComponentControl, XFormsControl, XFormsValueComponentControl}
 import org.orbeon.oxf.xforms.event.XFormsEvents
+import org.orbeon.oxf.xforms.processor.handlers.HandlerFactories
 import org.orbeon.oxf.xforms.state.XFormsStateManager
 import org.orbeon.oxf.xforms.xbl.XBLAssets
 import org.orbeon.oxf.xforms.xbl.XBLAssets.HeadElement
@@ -58,7 +59,7 @@ class XHTMLHeadHandler(
 
     // Register control handlers on controller
     xformsHandlerContext.getController.registerHandler(
-      classOf[XXFormsTextHandler].getName,
+      HandlerFactories.XXFormsText,
       XFormsConstants.XXFORMS_NAMESPACE_URI,
       "text",
       XHTMLBodyHandler.ANY_MATCHER
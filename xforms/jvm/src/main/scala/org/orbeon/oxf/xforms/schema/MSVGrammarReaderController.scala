@@ -32,6 +32,7 @@ import scala.util.control.NonFatal
 
 case class SchemaInfo(grammar: Grammar, dependencies: SchemaDependencies)
 case class SchemaKey(urlString: String) extends CacheKey
+case class InlineSchemaKey(digest: String, importsBaseURI: String) extends CacheKey
 
 class MSVGrammarReaderController(
     containingDocument: XFormsContainingDocument,
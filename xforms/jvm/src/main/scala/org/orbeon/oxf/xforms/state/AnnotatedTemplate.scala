@@ -13,7 +13,10 @@
  */
 package org.orbeon.oxf.xforms.state
 
-import org.orbeon.oxf.xml.SAXStore
+import java.util.concurrent.ConcurrentHashMap
+
+import org.orbeon.oxf.xforms.processor.handlers.StaticFragments
+import org.orbeon.oxf.xml.{ElementHandlerPlan, SAXStore}
 import sbinary.Operations._
 import XFormsOperations._
 import XFormsProtocols._
@@ -26,6 +29,18 @@ case class AnnotatedTemplate(saxStore: SAXStore) {
   def asByteSeq = asByteArray.toSeq // this produces a WrappedArray and must not copy
   // Used to serialize into static state document
   def asBase64 = Base64.encode(asByteArray, false)
+
+  // Positions of the subtrees which can be output without going through the handlers
+  lazy val staticFragmentRoots = StaticFragments.findRoots(saxStore)
+
+  // Handlers resolved for the elements of the template, by set of registered handlers
+  private val handlerPlans = new ConcurrentHashMap[String, ElementHandlerPlan]
+
+  def handlerPlan(handlersKey: String)(create: ⇒ ElementHandlerPlan): ElementHandlerPlan =
+    Option(handlerPlans.get(handlersKey)) getOrElse {
+      val newPlan = create
+      Option(handlerPlans.putIfAbsent(handlersKey, newPlan)) getOrElse newPlan
+    }
 }
 
 object AnnotatedTemplate {
@@ -25,6 +25,7 @@ import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.NetUtils
 import org.orbeon.oxf.util.StringUtils._
 import org.orbeon.oxf.xforms.action.XFormsAPI
+import org.orbeon.oxf.xforms.analytics.XFormsMetrics
 import org.orbeon.oxf.xforms.event.events.XXFormsStateRestoredEvent
 import org.orbeon.oxf.xforms.event.{Dispatch, XFormsEvent}
 import org.orbeon.oxf.xforms.{Loggers, XFormsConstants, XFormsContainingDocument, XFormsProperties}
@@ -155,7 +156,10 @@ object XFormsStateManager extends XFormsStateLifecycle {
 
     // Lock document for at most the max retry delay plus an increment
     try {
-      lock.tryLock(timeout, TimeUnit.MILLISECONDS) option lock
+      val acquired = XFormsMetrics.DocumentLockWait.time(lock.tryLock(timeout, TimeUnit.MILLISECONDS))
+      if (! acquired)
+        XFormsMetrics.DocumentLockTimeouts.inc()
+      acquired option lock
     } catch {
       case e: InterruptedException ⇒
         throw new OXFException(e)
@@ -220,14 +224,17 @@ object XFormsStateManager extends XFormsStateLifecycle {
         XFormsDocumentCache.take(parameters.uuid) match {
           case Some(cachedDocument) if newerSequenceNumberInStore(cachedDocument)  ⇒
             Logger.logDebug(LogType, "Document cache enabled. Document from cache has out of date sequence number. Retrieving state from store.")
+            XFormsMetrics.documentCacheRequest(hit = false)
             XFormsDocumentCache.remove(parameters.uuid)
             createDocumentFromStore(parameters, isInitialState, disableUpdates)
           case Some(cachedDocument) ⇒
             // Found in cache
             Logger.logDebug(LogType, "Document cache enabled. Returning document from cache.")
+            XFormsMetrics.documentCacheRequest(hit = true)
             cachedDocument
           case None ⇒
             Logger.logDebug(LogType, "Document cache enabled. Document not found in cache. Retrieving state from store.")
+            XFormsMetrics.documentCacheRequest(hit = false)
             createDocumentFromStore(parameters, isInitialState, disableUpdates)
         }
       } else {
@@ -341,6 +348,7 @@ object XFormsStateManager extends XFormsStateLifecycle {
       disableUpdates : Boolean
     ): XFormsContainingDocument = {
 
+      val startTime     = System.nanoTime
       val isServerState = parameters.encodedClientStaticStateOpt.isEmpty
 
       val xformsState =
@@ -393,6 +401,9 @@ object XFormsStateManager extends XFormsStateLifecycle {
         }
       }
 
+      // The form is only known once the document is restored
+      XFormsMetrics.stateRestoreTimer(XFormsMetrics.formLabel(documentFromStore.getRequestPath)).observeNanos(System.nanoTime - startTime)
+
       documentFromStore
     }
 
@@ -401,11 +412,13 @@ object XFormsStateManager extends XFormsStateLifecycle {
 
     def storeDocumentState(containingDocument: XFormsContainingDocument, isInitialState: Boolean): Unit = {
       require(containingDocument.getStaticState.isServerStateHandling)
-      EhcacheStateStore.storeDocumentState(
-        containingDocument,
-        NetUtils.getExternalContext.getRequest.getSession(ForceSessionCreation),
-        isInitialState
-      )
+      XFormsMetrics.stateStoreTimer(XFormsMetrics.formLabel(containingDocument.getRequestPath)).time {
+        EhcacheStateStore.storeDocumentState(
+          containingDocument,
+          NetUtils.getExternalContext.getRequest.getSession(ForceSessionCreation),
+          isInitialState
+        )
+      }
     }
   }
 }
\ No newline at end of file
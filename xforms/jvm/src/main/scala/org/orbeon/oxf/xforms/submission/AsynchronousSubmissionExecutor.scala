@@ -0,0 +1,225 @@
+/**
+  * Copyright (C) 2017 Orbeon, Inc.
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the
+  * GNU Lesser General Public License as published by the Free Software Foundation; either version
+  * 2.1 of the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  * See the GNU Lesser General Public License for more details.
+  *
+  * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+  */
+package org.orbeon.oxf.xforms.submission
+
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicInteger
+import java.{util ⇒ ju}
+
+import org.orbeon.oxf.properties.{Properties, PropertySet}
+import org.orbeon.oxf.util.{LoggerFactory, Metrics}
+
+import scala.util.control.NonFatal
+
+// Executors for asynchronous and concurrent submissions
+//
+// When the app server doesn't provide an `ExecutorService`, submissions run on a global pool with a bounded number
+// of threads and a bounded queue. When the queue is full, the submission either runs in the thread which starts it,
+// or fails, depending on the rejection policy. Threads are virtual threads if the runtime supports them.
+//
+// Independently of the underlying executor, each document runs a bounded number of submissions at the same time, so
+// that a single form can't take all the threads. Further submissions of the document wait in a queue of the document.
+private[submission] object AsynchronousSubmissionExecutor {
+
+  private val Logger = LoggerFactory.createLogger(AsynchronousSubmissionExecutor.getClass)
+
+  val MaxThreadsProperty        = "oxf.xforms.async-submission.max-threads"
+  val MaxQueueProperty          = "oxf.xforms.async-submission.max-queue"
+  val MaxPerDocumentProperty    = "oxf.xforms.async-submission.max-per-document"
+  val RejectionProperty         = "oxf.xforms.async-submission.rejection-policy"
+  val VirtualThreadsProperty    = "oxf.xforms.async-submission.virtual-threads"
+  val ConcurrentTimeoutProperty = "oxf.xforms.async-submission.concurrent-timeout"
+
+  val ThreadNamePrefix = "orbeon-async-submission-"
+
+  private val ActiveCount = new AtomicInteger
+  private val QueuedCount = new AtomicInteger
+
+  Metrics.gauge("orbeon_xforms_async_submissions_active", "Submissions currently running.")(ActiveCount.get)
+  Metrics.gauge("orbeon_xforms_async_submissions_queued", "Submissions waiting for a thread.")(QueuedCount.get)
+
+  private val CompletedCounter = Metrics.counter("orbeon_xforms_async_submissions_completed_total", "Submissions run to completion, successfully or not.")
+  private val RejectedCounter  = Metrics.counter("orbeon_xforms_async_submissions_rejected_total", "Submissions rejected because the queue was full.")
+  private val WaitTimer        = Metrics.timer("orbeon_xforms_async_submission_wait_seconds", "Time spent by submissions waiting for a thread.")
+  private val RunTimer         = Metrics.timer("orbeon_xforms_async_submission_run_seconds", "Time spent running submissions.")
+
+  def newThreadPool(propertySet: PropertySet): ExecutorService = {
+
+    val maxThreads =
+      propertySet.getInteger(MaxThreadsProperty, 0).intValue match {
+        case size if size > 0 ⇒ size
+        case _                ⇒ 8 * Runtime.getRuntime.availableProcessors
+      }
+
+    newThreadPool(
+      maxThreads     = maxThreads,
+      maxQueue       = propertySet.getInteger(MaxQueueProperty, 1000).intValue max 0,
+      callerRuns     = propertySet.getString(RejectionProperty, "caller-runs") != "abort",
+      virtualThreads = propertySet.getBoolean(VirtualThreadsProperty, default = true)
+    )
+  }
+
+  def newThreadPool(maxThreads: Int, maxQueue: Int, callerRuns: Boolean, virtualThreads: Boolean): ExecutorService = {
+
+    val virtualFactory = if (virtualThreads) virtualThreadFactory else None
+
+    Logger.info(
+      s"creating asynchronous submission thread pool: $maxThreads ${if (virtualFactory.isDefined) "virtual" else "platform"} " +
+      s"threads, queue of $maxQueue, ${if (callerRuns) "caller-runs" else "abort"} rejection policy"
+    )
+
+    val pool =
+      new ThreadPoolExecutor(
+        maxThreads,
+        maxThreads,
+        60L,
+        TimeUnit.SECONDS,
+        if (maxQueue == 0) new SynchronousQueue[Runnable] else new ArrayBlockingQueue[Runnable](maxQueue),
+        virtualFactory getOrElse platformThreadFactory,
+        new RejectedExecutionHandler {
+          def rejectedExecution(r: Runnable, executor: ThreadPoolExecutor): Unit = {
+            RejectedCounter.inc()
+            if (callerRuns && ! executor.isShutdown)
+              r.run()
+            else
+              throw new RejectedExecutionException("asynchronous submission queue is full")
+          }
+        }
+      )
+
+    // Don't keep idle threads around
+    pool.allowCoreThreadTimeOut(true)
+    pool
+  }
+
+  def maxPerDocument(propertySet: PropertySet): Int =
+    propertySet.getInteger(MaxPerDocumentProperty, 8).intValue max 1
+
+  // Maximum time an event handler waits for the concurrent submissions it started
+  def concurrentTimeoutMs(propertySet: PropertySet): Long =
+    propertySet.getInteger(ConcurrentTimeoutProperty, 60000).longValue max 0
+
+  def newDocumentExecutor(executor: Executor): Executor =
+    new DocumentExecutor(executor, maxPerDocument(Properties.instance.getPropertySet))
+
+  // Run at most `maxConcurrent` tasks at the same time on the underlying executor
+  //
+  // A thread which completes a task of the document runs the next waiting task of the document, if any, so tasks
+  // waiting in the queue of the document don't hold on to a thread of the underlying executor. Waiting tasks run in
+  // the order in which they were submitted.
+  //
+  // A single instance must be used for all the submissions of a document, asynchronous or concurrent, so that the
+  // limit applies to the document as a whole.
+  private[submission] class DocumentExecutor(executor: Executor, maxConcurrent: Int) extends Executor {
+
+    private val waitingTasks = new ju.ArrayDeque[InstrumentedTask]
+    private var runningCount = 0
+
+    def execute(command: Runnable): Unit = {
+
+      val task = new InstrumentedTask(command)
+
+      val canStart =
+        synchronized {
+          if (runningCount < maxConcurrent) {
+            runningCount += 1
+            true
+          } else {
+            waitingTasks.addLast(task)
+            false
+          }
+        }
+
+      if (canStart)
+        try
+          executor.execute(new Runnable {
+            def run(): Unit = runFrom(task)
+          })
+        catch {
+          case e: RejectedExecutionException ⇒
+            synchronized {
+              runningCount -= 1
+            }
+            task.cancel()
+            throw e
+        }
+    }
+
+    private def runFrom(first: InstrumentedTask): Unit = {
+      var next = first
+      while (next ne null) {
+        try
+          next.run()
+        catch {
+          case NonFatal(t) ⇒
+            // Keep running the waiting tasks, which would otherwise never run
+            Logger.error("asynchronous submission failed", t)
+        }
+        next =
+          synchronized {
+            val task = waitingTasks.pollFirst()
+            if (task eq null)
+              runningCount -= 1
+            task
+          }
+      }
+    }
+  }
+
+  private class InstrumentedTask(command: Runnable) extends Runnable {
+
+    private val submitTime = System.nanoTime
+
+    QueuedCount.incrementAndGet()
+
+    def run(): Unit = {
+
+      val startTime = System.nanoTime
+      QueuedCount.decrementAndGet()
+      WaitTimer.observeNanos(startTime - submitTime)
+      ActiveCount.incrementAndGet()
+      try
+        command.run()
+      finally {
+        ActiveCount.decrementAndGet()
+        RunTimer.observeNanos(System.nanoTime - startTime)
+        CompletedCounter.inc()
+      }
+    }
+
+    def cancel(): Unit =
+      QueuedCount.decrementAndGet()
+  }
+
+  private val platformThreadFactory: ThreadFactory =
+    new ThreadFactory {
+      private val threadCount = new AtomicInteger
+      def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, ThreadNamePrefix + threadCount.incrementAndGet())
+        thread.setDaemon(true)
+        thread
+      }
+    }
+
+  // `Thread.ofVirtual().name(ThreadNamePrefix, 0).factory()`, with reflection as this requires Java 21
+  private def virtualThreadFactory: Option[ThreadFactory] =
+    try {
+      val builderClass = Class.forName("java.lang.Thread$Builder")
+      val builder      = classOf[Thread].getMethod("ofVirtual").invoke(null)
+      val namedBuilder = builderClass.getMethod("name", classOf[String], java.lang.Long.TYPE).invoke(builder, ThreadNamePrefix, java.lang.Long.valueOf(0L))
+      Some(builderClass.getMethod("factory").invoke(namedBuilder).asInstanceOf[ThreadFactory])
+    } catch {
+      case NonFatal(_) ⇒ None
+    }
+}
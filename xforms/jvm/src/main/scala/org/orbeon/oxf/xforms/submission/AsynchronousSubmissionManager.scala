@@ -21,11 +21,15 @@ import javax.naming.{InitialContext, NamingException}
 import org.orbeon.oxf.externalcontext.{AsyncRequest, LocalExternalContext}
 import org.orbeon.oxf.pipeline.InitUtils._
 import org.orbeon.oxf.pipeline.api.PipelineContext
+import org.orbeon.oxf.properties.Properties
 import org.orbeon.oxf.util.Logging._
-import org.orbeon.oxf.util.{IndentedLogger, NetUtils}
+import org.orbeon.oxf.util.{DynamicVariable, IndentedLogger, NetUtils}
 import org.orbeon.oxf.xforms.XFormsContainingDocument
 import org.orbeon.oxf.xforms.event.XFormsEvents
 
+import scala.util.Try
+import scala.util.control.NonFatal
+
 /**
   * Handle asynchronous submissions.
   *
@@ -70,28 +74,72 @@ class AsynchronousSubmissionManager(val containingDocument: XFormsContainingDocu
     // - do a better detection: !(xf-submit-done/xf-submit-error listener) && replace="none"
     // - OR provide an explicit hint on xf:submission
     asynchronousSubmissionsOpt foreach {
-      _.submit(
-        {
-          // Make sure this is created at the time `submit` is called
-          // Should we use `AsyncExternalContext` here?
-          val newExternalContext = {
-
-              val currentExternalContext = NetUtils.getExternalContext
-
-              new LocalExternalContext(
-                currentExternalContext.getWebAppContext,
-                new AsyncRequest(currentExternalContext.getRequest),
-                currentExternalContext.getResponse
-              )
-            }
-
-          () ⇒ withPipelineContext { pipelineContext ⇒
-            pipelineContext.setAttribute(PipelineContext.EXTERNAL_CONTEXT, newExternalContext)
-            callable.call()
-          }
+      _.submit(withNewExternalContext(callable))
+    }
+  }
+
+  // Shared with the asynchronous submissions of the document, which count towards the same limit
+  private def concurrentExecutor =
+    findAsynchronousSubmissions(
+      create = true,
+      sessionKey(containingDocument)
+    ).get.executor
+
+  // Start the submission now, and let the event handler running in the current thread process its result before the
+  // handler completes
+  def addConcurrentSubmission(submissionEffectiveId: String, callable: Callable[SubmissionResult]): Unit = {
+    val task = withNewExternalContext(callable)
+    val future = new FutureTask[SubmissionResult](
+      new Callable[SubmissionResult] {
+        def call() = task()
+      }
+    )
+    concurrentExecutor.execute(future)
+    concurrentScopeDyn.value.get.submissions ::= ConcurrentSubmission(submissionEffectiveId, future)
+  }
+
+  // Wait for the submissions, in the order in which they were started, and process their results. All the submissions
+  // share the same timeout. If processing a result fails, the submissions not processed yet are cancelled.
+  private[submission] def processConcurrentSubmissions(submissions: List[ConcurrentSubmission], timeoutMs: Long): Unit =
+    withDebug("processing concurrent submissions", List("count" → submissions.size.toString)) {
+
+      val deadline = System.nanoTime + TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+
+      var remaining = submissions
+      try {
+        while (remaining.nonEmpty) {
+
+          val result = remaining.head.result(deadline)
+          remaining = remaining.tail
+
+          val submission =
+            containingDocument.getObjectByEffectiveId(result.getSubmissionEffectiveId).asInstanceOf[XFormsModelSubmission]
+
+          submission.doSubmitReplace(result)
         }
+      } finally
+        remaining foreach (_.cancel())
+    }
+
+  // Make sure the external context is created at the time the submission is started
+  // Should we use `AsyncExternalContext` here?
+  private def withNewExternalContext(callable: Callable[SubmissionResult]): () ⇒ SubmissionResult = {
+
+    val newExternalContext = {
+
+      val currentExternalContext = NetUtils.getExternalContext
+
+      new LocalExternalContext(
+        currentExternalContext.getWebAppContext,
+        new AsyncRequest(currentExternalContext.getRequest),
+        currentExternalContext.getResponse
       )
     }
+
+    () ⇒ withPipelineContext { pipelineContext ⇒
+      pipelineContext.setAttribute(PipelineContext.EXTERNAL_CONTEXT, newExternalContext)
+      callable.call()
+    }
   }
 
   def hasPendingAsynchronousSubmissions: Boolean = {
@@ -189,12 +237,73 @@ class AsynchronousSubmissionManager(val containingDocument: XFormsContainingDocu
   }
 }
 
-private object AsynchronousSubmissionManager {
+object AsynchronousSubmissionManager {
 
-  val AsyncSubmissionsSessionKeyPrefix = "oxf.xforms.state.async-submissions."
+  // Concurrent submissions started by the event handler running in the current thread, most recent first
+  //
+  // Nested event handlers have their own scope. The scope is not inherited by new threads, which includes the threads
+  // running the submissions.
+  private class ConcurrentScope {
+    var submissions: List[ConcurrentSubmission] = Nil
+  }
+
+  private val concurrentScopeDyn = new DynamicVariable[ConcurrentScope](isInheritable = false)
+
+  def isConcurrentScope: Boolean = concurrentScopeDyn.value.isDefined
+
+  /**
+    * Run actions which can start concurrent submissions. Before returning, wait for the submissions started by the
+    * actions and process their results in the order in which the submissions were started.
+    *
+    * If the actions fail, their submissions are cancelled and the failure is passed on as is.
+    */
+  def withConcurrentSubmissions[T](containingDocument: XFormsContainingDocument)(body: ⇒ T): T = {
+
+    val scope = new ConcurrentScope
+
+    val result =
+      try
+        concurrentScopeDyn.withValue(scope)(body)
+      catch {
+        case NonFatal(t) ⇒
+          scope.submissions foreach (_.cancel())
+          throw t
+      }
+
+    // The manager exists only if a submission was started
+    if (scope.submissions.nonEmpty)
+      containingDocument.getAsynchronousSubmissionManager(false).processConcurrentSubmissions(
+        scope.submissions.reverse,
+        AsynchronousSubmissionExecutor.concurrentTimeoutMs(Properties.instance.getPropertySet)
+      )
+
+    result
+  }
+
+  private[submission] case class ConcurrentSubmission(submissionEffectiveId: String, future: Future[SubmissionResult]) {
+
+    // Failures, including the timeout, are reported as the result of the submission
+    def result(deadline: Long): SubmissionResult =
+      try
+        future.get(deadline - System.nanoTime max 0, TimeUnit.NANOSECONDS)
+      catch {
+        case _: TimeoutException ⇒
+          cancel()
+          new SubmissionResult(submissionEffectiveId, new TimeoutException("concurrent submission timed out"), null)
+        case e: ExecutionException ⇒
+          new SubmissionResult(submissionEffectiveId, e.getCause, null)
+      }
+
+    // Close the result if the submission completed in the meantime
+    def cancel(): Unit =
+      if (! future.cancel(true) && future.isDone)
+        Try(future.get) foreach (_.close())
+  }
+
+  private[submission] val AsyncSubmissionsSessionKeyPrefix = "oxf.xforms.state.async-submissions."
 
   // Global thread pool if none provided by the app server
-  private lazy val threadPool = Executors.newCachedThreadPool
+  private lazy val threadPool = AsynchronousSubmissionExecutor.newThreadPool(Properties.instance.getPropertySet)
 
   private def getExecutorService: ExecutorService =
     try {
@@ -207,9 +316,9 @@ private object AsynchronousSubmissionManager {
         threadPool
     }
 
-  def sessionKey(doc: XFormsContainingDocument): String = AsyncSubmissionsSessionKeyPrefix + doc.getUUID
+  private[submission] def sessionKey(doc: XFormsContainingDocument): String = AsyncSubmissionsSessionKeyPrefix + doc.getUUID
 
-  def findAsynchronousSubmissions(create: Boolean, sessionKey: String): Option[AsynchronousSubmissions] = {
+  private[submission] def findAsynchronousSubmissions(create: Boolean, sessionKey: String): Option[AsynchronousSubmissions] = {
 
     val session = NetUtils.getExternalContext.getRequest.getSession(true)
 
@@ -223,9 +332,13 @@ private object AsynchronousSubmissionManager {
     }
   }
 
-  class AsynchronousSubmissions extends Externalizable {
+  private[submission] class AsynchronousSubmissions extends Externalizable {
+
+    // Submissions of the document, which is the scope of this object, are limited separately. The same executor runs
+    // the concurrent submissions of the document.
+    val executor = AsynchronousSubmissionExecutor.newDocumentExecutor(getExecutorService)
 
-    private val completionService = new ExecutorCompletionService[SubmissionResult](getExecutorService)
+    private val completionService = new ExecutorCompletionService[SubmissionResult](executor)
 
     private var _pendingCount = 0
     def pendingCount = _pendingCount
@@ -79,6 +79,10 @@ abstract class BaseSubmission(val submission: XFormsModelSubmission) extends Sub
       containingDocument.getAsynchronousSubmissionManager(true).addAsynchronousSubmission(callable)
       // Tell caller he doesn't need to do anything
       null
+    }  else if (p2.isConcurrent) {
+      // Start now, and let the current action process the result when it completes
+      containingDocument.getAsynchronousSubmissionManager(true).addConcurrentSubmission(submission.getEffectiveId, callable)
+      null
     }  else if (p.isDeferredSubmissionSecondPass) {
       // Tell XFCD that we have a submission replace="all" ready for a second pass
       // Tell caller he doesn't need to do anything
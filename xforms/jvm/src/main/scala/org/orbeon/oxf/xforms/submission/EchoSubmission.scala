@@ -14,6 +14,7 @@
 package org.orbeon.oxf.xforms.submission
 
 import java.io.ByteArrayInputStream
+import java.util.concurrent.Callable
 
 import org.orbeon.oxf.http.{Headers, HttpMethod, StreamedContent}
 import org.orbeon.oxf.util.{Connection, ConnectionResult}
@@ -63,23 +64,36 @@ class EchoSubmission(submission: XFormsModelSubmission) extends BaseSubmission(s
       logger           = getDetailsLogger(p, p2)
     )
 
-    // Do as if we are receiving a regular XML response
-    val connectionResult = ConnectionResult(
-      url                 = p2.actionOrResource,
-      statusCode          = 200,
-      headers             = headers,
-      content             = StreamedContent(
-        inputStream     = new ByteArrayInputStream(sp.messageBody),
-        contentType     = Headers.firstHeaderIgnoreCase(headers, Headers.ContentType),
-        contentLength   = Some(sp.messageBody.length),
-        title           = None
-      )
-    )
-    val replacer = submission.getReplacer(connectionResult, p)
+    val submissionEffectiveId = submission.getEffectiveId
+
+    val callable = new Callable[SubmissionResult] {
+      def call(): SubmissionResult = {
+
+        // Do as if we are receiving a regular XML response
+        val connectionResult = ConnectionResult(
+          url                 = p2.actionOrResource,
+          statusCode          = 200,
+          headers             = headers,
+          content             = StreamedContent(
+            inputStream     = new ByteArrayInputStream(sp.messageBody),
+            contentType     = Headers.firstHeaderIgnoreCase(headers, Headers.ContentType),
+            contentLength   = Some(sp.messageBody.length),
+            title           = None
+          )
+        )
+        val replacer = submission.getReplacer(connectionResult, p)
 
-    // Deserialize here so it can run in parallel
-    replacer.deserialize(connectionResult, p, p2)
+        // Deserialize here so it can run in parallel
+        replacer.deserialize(connectionResult, p, p2)
+
+        new SubmissionResult(submissionEffectiveId, replacer, connectionResult)
+      }
+    }
 
-    new SubmissionResult(submission.getEffectiveId, replacer, connectionResult)
+    // Concurrent submissions run like regular submissions, so they can be tested without a server
+    if (p2.isConcurrent)
+      submitCallable(p, p2, callable)
+    else
+      callable.call()
   }
-}
\ No newline at end of file
+}
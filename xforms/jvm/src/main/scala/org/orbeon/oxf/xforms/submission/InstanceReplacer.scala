@@ -13,9 +13,12 @@
  */
 package org.orbeon.oxf.xforms.submission
 
+import java.io.{InputStream, InputStreamReader}
 import java.util.Collections
 
 import org.orbeon.dom.{Document, Node}
+import org.orbeon.oxf.common.Defaults
+import org.orbeon.oxf.externalcontext.XMLContentInputStream
 import org.orbeon.oxf.json.Converter
 import org.orbeon.oxf.processor.ProcessorUtils
 import org.orbeon.oxf.util.{ConnectionResult, ContentTypes, IndentedLogger, XPath}
@@ -101,10 +104,13 @@ class InstanceReplacer(submission: XFormsModelSubmission, containingDocument: XF
           Left(
             if (isJSON) {
               val receiver = new LocationSAXContentHandler
-              Converter.jsonStringToXmlStream(connectionResult.readTextResponseBody.get, receiver)
+              Converter.jsonReaderToXmlStream(jsonReader(connectionResult, is), receiver)
               receiver.getDocument
             } else {
-              TransformerUtils.readDom4j(is, connectionResult.url, isHandleXInclude, true)
+              is match {
+                case xmlContent: XMLContentInputStream if ! isHandleXInclude ⇒ xmlContent.toDocument
+                case _ ⇒ TransformerUtils.readDom4j(is, connectionResult.url, isHandleXInclude, true)
+              }
             }
           )
         } else {
@@ -115,9 +121,12 @@ class InstanceReplacer(submission: XFormsModelSubmission, containingDocument: XF
 
           Right(
             if (isJSON) {
-              Converter.jsonStringToXmlDoc(connectionResult.readTextResponseBody.get)
+              Converter.jsonReaderToXmlDoc(jsonReader(connectionResult, is))
             } else {
-              TransformerUtils.readTinyTree(XPath.GlobalConfiguration, is, connectionResult.url, isHandleXInclude, true)
+              is match {
+                case xmlContent: XMLContentInputStream if ! isHandleXInclude ⇒ xmlContent.toTinyTree(XPath.GlobalConfiguration)
+                case _ ⇒ TransformerUtils.readTinyTree(XPath.GlobalConfiguration, is, connectionResult.url, isHandleXInclude, true)
+              }
             }
           )
         }
@@ -138,6 +147,10 @@ class InstanceReplacer(submission: XFormsModelSubmission, containingDocument: XF
     }
   }
 
+  // The JSON response is converted while it is read, without first reading it into a string
+  private def jsonReader(connectionResult: ConnectionResult, is: InputStream) =
+    new InputStreamReader(is, connectionResult.charset getOrElse Defaults.DefaultEncodingForModernUse)
+
   def replace(
     connectionResult : ConnectionResult,
     p                : SubmissionParameters,
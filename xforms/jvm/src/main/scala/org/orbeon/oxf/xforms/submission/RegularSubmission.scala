@@ -20,7 +20,7 @@ import java.util.concurrent.Callable
 
 import org.orbeon.oxf.http.Headers.{ContentType, firstHeaderIgnoreCase}
 import org.orbeon.oxf.http.StreamedContent
-import org.orbeon.oxf.util.{Connection, ConnectionResult}
+import org.orbeon.oxf.util.{Connection, ConnectionResult, WritingInputStream}
 
 /**
   * Regular remote submission going through a protocol handler.
@@ -56,11 +56,26 @@ class RegularSubmission(submission: XFormsModelSubmission) extends BaseSubmissio
 
     val submissionEffectiveId = submission.getEffectiveId
 
-    val messageBody: Option[Array[Byte]] =
-      if (Connection.requiresRequestBody(p.httpMethod)) Option(sp.messageBody) orElse Some(Array()) else None
-
-    val content = messageBody map
-      (StreamedContent.fromBytes(_, firstHeaderIgnoreCase(headers, ContentType)))
+    // Serialize the body as it is sent only when requests are chunked anyway, as otherwise we need the entire body
+    // to send a `Content-Length`. With credentials, the body might have to be sent again after an authentication
+    // challenge, so we keep it in memory as well.
+    val streamMessageBody =
+      sp.isMessageBodyStreamable && p2.credentialsOpt.isEmpty && Connection.isChunkRequests
+
+    val content =
+      if (! Connection.requiresRequestBody(p.httpMethod))
+        None
+      else if (streamMessageBody)
+        Some(
+          StreamedContent(
+            inputStream   = new WritingInputStream(sp.writeMessageBody.get),
+            contentType   = firstHeaderIgnoreCase(headers, ContentType),
+            contentLength = None,
+            title         = None
+          )
+        )
+      else
+        Some(StreamedContent.fromBytes(Option(sp.messageBody) getOrElse Array(), firstHeaderIgnoreCase(headers, ContentType)))
 
     // Prepare Connection in this thread as async submission can't access the request object
     val connection =
@@ -100,10 +115,12 @@ class RegularSubmission(submission: XFormsModelSubmission) extends BaseSubmissio
             // TODO: Consider how the state could be saved. Maybe do this before connect() in the initiating thread?
             // Or make sure it's ok to touch app/session (but not request) from other thread (ExternalContext
             // in scope + synchronization)
-            connectionResult = connection.connect(! p2.isAsynchronous)
+            connectionResult = connection.connect(! p2.isAsynchronous && ! p2.isConcurrent)
           } finally {
             // In case an exception is thrown in the body, still do adjust the logs
             detailsLogger.endHandleOperation()
+            // The body is sent at this point, and if the connection failed, this stops its serialization
+            content foreach (_.close())
           }
 
           connected = true
@@ -8,6 +8,7 @@ case class SecondPassParameters(
 
   actionOrResource   : String,
   isAsynchronous     : Boolean,
+  isConcurrent       : Boolean,
   credentialsOpt     : Option[Credentials],
 
   // Serialization
@@ -37,7 +38,7 @@ object SecondPassParameters {
   private val CacheableMethods = Set(HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT): Set[HttpMethod]
 
   def amendForJava(p: SecondPassParameters, isAsynchronous: Boolean, isReadonly: Boolean): SecondPassParameters =
-    p.copy(isAsynchronous = isAsynchronous, isReadonly = isReadonly)
+    p.copy(isAsynchronous = isAsynchronous, isConcurrent = false, isReadonly = isReadonly)
 
   def apply(dynamicSubmission: XFormsModelSubmission, p: SubmissionParameters): SecondPassParameters = {
 
@@ -122,10 +123,28 @@ object SecondPassParameters {
       p.replaceType != ReplaceType.All && isRequestedAsynchronousMode
     }
 
+    // Synchronous submissions can run concurrently with other submissions started by the same action, which waits for
+    // them before completing
+    val isConcurrent = {
+
+      val isRequestedConcurrent =
+        staticSubmission.avtXxfConcurrentOpt flatMap booleanAvtOpt getOrElse false
+
+      if (isRequestedConcurrent && p.replaceType != ReplaceType.Instance)
+        throw new XFormsSubmissionException(
+          dynamicSubmission,
+          """xf:submission: `xxf:concurrent="true"` can be set only with `replace="instance"`.""",
+          "checking concurrent mode"
+        )
+
+      isRequestedConcurrent && ! isAsynchronous && AsynchronousSubmissionManager.isConcurrentScope
+    }
+
     SecondPassParameters(
 
       actionOrResource   = actionOrResource,
       isAsynchronous     = isAsynchronous,
+      isConcurrent       = isConcurrent,
       credentialsOpt     = credentialsOpt,
 
       separator          = staticSubmission.avtSeparatorOpt          flatMap stringAvtTrimmedOpt getOrElse DefaultSeparator,
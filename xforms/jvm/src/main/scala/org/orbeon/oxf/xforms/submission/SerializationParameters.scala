@@ -13,8 +13,9 @@
  */
 package org.orbeon.oxf.xforms.submission
 
-import java.io.ByteArrayOutputStream
+import java.io.{ByteArrayOutputStream, OutputStream, OutputStreamWriter}
 import java.net.URLEncoder
+import javax.xml.transform.Transformer
 import javax.xml.transform.stream.StreamResult
 
 import org.orbeon.dom.Document
@@ -22,19 +23,68 @@ import org.orbeon.dom.io.DocumentSource
 import org.orbeon.dom.saxon.DocumentWrapper
 import org.orbeon.oxf.externalcontext.URLRewriter
 import org.orbeon.oxf.json.Converter
+import org.orbeon.oxf.util.IOUtils._
 import org.orbeon.oxf.util.{Connection, ContentTypes, XPath}
 import org.orbeon.oxf.xforms.XFormsUtils
 import org.orbeon.oxf.xforms.model.InstanceData
 import org.orbeon.oxf.xml.{TransformerUtils, XMLConstants}
 
 case class SerializationParameters(
-  messageBody            : Array[Byte],
+  writeMessageBody       : Option[OutputStream ⇒ Unit],
   queryString            : String,
   actualRequestMediatype : String
-)
+) {
+
+  import SerializationParameters._
+
+  // Set once `messageBody` is computed, after which the writer must not run again: writers can read content which
+  // can only be read once, such as the attachments of a multipart body
+  @volatile private var messageBodyMaterialized = false
+
+  // Entire message body, for uses which need it in memory, such as computing a digest or a `Content-Length`
+  lazy val messageBody: Array[Byte] = {
+    val bytes =
+      writeMessageBody map {
+        case bytesWriter: BytesWriter ⇒
+          bytesWriter.bytes
+        case write ⇒
+          val os = new ByteArrayOutputStream
+          write(os)
+          os.toByteArray
+      } orNull
+    messageBodyMaterialized = true
+    bytes
+  }
+
+  // Whether the message body is serialized upon writing, as opposed to being already in memory
+  def isMessageBodyStreamable: Boolean =
+    ! messageBodyMaterialized && (writeMessageBody exists (! _.isInstanceOf[BytesWriter]))
+}
 
 object SerializationParameters {
 
+  private class BytesWriter(val bytes: Array[Byte]) extends (OutputStream ⇒ Unit) {
+    def apply(os: OutputStream): Unit = os.write(bytes)
+  }
+
+  private def fromBytes(bytes: Array[Byte]): Option[OutputStream ⇒ Unit] =
+    Some(new BytesWriter(bytes))
+
+  // Serialization runs when the body is written, so report errors then
+  private def transformerWriter(
+    submission       : XFormsModelSubmission,
+    documentToSubmit : Document,
+    identity         : Transformer,
+    errorMessage     : String
+  ): OutputStream ⇒ Unit =
+    os ⇒
+      try {
+        identity.transform(new DocumentSource(documentToSubmit), new StreamResult(os))
+      } catch {
+        case e: Exception ⇒
+          throw new XFormsSubmissionException(submission, e, errorMessage, "serializing instance")
+      }
+
   def apply(
     submission               : XFormsModelSubmission,
     p                        : SubmissionParameters,
@@ -54,13 +104,13 @@ object SerializationParameters {
           // Form author set data to serialize
           if (Connection.requiresRequestBody(p.httpMethod)) {
             SerializationParameters(
-              messageBody            = overriddenSerializedData.getBytes("UTF-8"),
+              writeMessageBody       = fromBytes(overriddenSerializedData.getBytes("UTF-8")),
               queryString            = null,
               actualRequestMediatype = actualRequestMediatype("application/xml")
             )
           } else {
             SerializationParameters(
-              messageBody            = null,
+              writeMessageBody       = None,
               queryString            = URLEncoder.encode(overriddenSerializedData, "UTF-8"),
               actualRequestMediatype = actualRequestMediatype(null)
             )
@@ -68,13 +118,13 @@ object SerializationParameters {
         case serialization @ "application/x-www-form-urlencoded" ⇒
           if (Connection.requiresRequestBody(p.httpMethod)) {
             SerializationParameters(
-              messageBody            = XFormsSubmissionUtils.createWwwFormUrlEncoded(documentToSubmit, p2.separator).getBytes("UTF-8"),
+              writeMessageBody       = fromBytes(XFormsSubmissionUtils.createWwwFormUrlEncoded(documentToSubmit, p2.separator).getBytes("UTF-8")),
               queryString            = null,
               actualRequestMediatype = actualRequestMediatype(serialization)
             )
           } else {
             SerializationParameters(
-              messageBody            = null,
+              writeMessageBody       = None,
               queryString            = XFormsSubmissionUtils.createWwwFormUrlEncoded(documentToSubmit, p2.separator),
               actualRequestMediatype = actualRequestMediatype(null)
             )
@@ -97,14 +147,11 @@ object SerializationParameters {
 
             // TODO: use cdata-section-elements
 
-            val os = new ByteArrayOutputStream
-            identity.transform(new DocumentSource(documentToSubmit), new StreamResult(os))
-
             SerializationParameters(
-                messageBody            = os.toByteArray,
-                queryString            = null,
-                actualRequestMediatype = actualRequestMediatype(serialization)
-              )
+              writeMessageBody       = Some(transformerWriter(submission, documentToSubmit, identity, "xf:submission: exception while serializing instance to XML.")),
+              queryString            = null,
+              actualRequestMediatype = actualRequestMediatype(serialization)
+            )
           } catch {
             case e: Exception ⇒
               throw new XFormsSubmissionException(
@@ -116,16 +163,21 @@ object SerializationParameters {
           }
         case serialization @ "application/json" ⇒
 
-          val result = Converter.xmlToJsonString(
-            root   = new DocumentWrapper(documentToSubmit, null, XPath.GlobalConfiguration),
-            strict = true
-          )
+          // Write the JSON directly in the target encoding
+          def writeJson(os: OutputStream): Unit =
+            useAndClose(new OutputStreamWriter(os, p2.encoding)) { writer ⇒
+              Converter.xmlToJsonWriter(
+                root   = new DocumentWrapper(documentToSubmit, null, XPath.GlobalConfiguration),
+                strict = true,
+                writer = writer
+              )
+            }
 
           SerializationParameters(
-              messageBody            = result.getBytes(p2.encoding),
-              queryString            = null,
-              actualRequestMediatype = actualRequestMediatype(serialization)
-            )
+            writeMessageBody       = Some(writeJson _),
+            queryString            = null,
+            actualRequestMediatype = actualRequestMediatype(serialization)
+          )
 
         case serialization @ "multipart/related" ⇒
           // TODO
@@ -137,12 +189,10 @@ object SerializationParameters {
         case "multipart/form-data" ⇒
           // Build multipart/form-data body
           val multipartFormData = XFormsSubmissionUtils.createMultipartFormData(documentToSubmit)
-          val os = new ByteArrayOutputStream
-          multipartFormData.writeTo(os)
 
           // The mediatype also contains the boundary
           SerializationParameters(
-            messageBody            = os.toByteArray,
+            writeMessageBody       = Some(multipartFormData.writeTo _),
             queryString            = null,
             actualRequestMediatype = actualRequestMediatype(multipartFormData.getContentType.getValue)
           )
@@ -171,7 +221,7 @@ object SerializationParameters {
 
             try {
               SerializationParameters(
-                messageBody            = SubmissionUtils.readByteArray(submission.getModel, resolvedURI),
+                writeMessageBody       = fromBytes(SubmissionUtils.readByteArray(submission.getModel, resolvedURI)),
                 queryString            = null,
                 actualRequestMediatype = actualRequestMediatype(serialization)
               )
@@ -203,11 +253,8 @@ object SerializationParameters {
 
             // TODO: use cdata-section-elements
 
-            val os = new ByteArrayOutputStream
-            identity.transform(new DocumentSource(documentToSubmit), new StreamResult(os))
-
             SerializationParameters(
-              messageBody            = os.toByteArray,
+              writeMessageBody       = Some(transformerWriter(submission, documentToSubmit, identity, "xf:submission: exception while serializing instance to HTML or XHTML.")),
               queryString            = null,
               actualRequestMediatype = actualRequestMediatype(serialization)
             )
@@ -236,11 +283,8 @@ object SerializationParameters {
               false,
               0
             )
-            val os = new ByteArrayOutputStream
-            identity.transform(new DocumentSource(documentToSubmit), new StreamResult(os))
-
             SerializationParameters(
-              messageBody            = os.toByteArray,
+              writeMessageBody       = Some(transformerWriter(submission, documentToSubmit, identity, "xf:submission: exception while serializing instance to text.")),
               queryString            = null,
               actualRequestMediatype = actualRequestMediatype(serialization)
             )
@@ -263,7 +307,7 @@ object SerializationParameters {
     } else {
       SerializationParameters(
         queryString            = null,
-        messageBody            = null,
+        writeMessageBody       = None,
         actualRequestMediatype = null
       )
     }
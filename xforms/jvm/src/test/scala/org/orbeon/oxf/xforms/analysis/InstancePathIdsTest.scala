@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analysis
+
+import org.junit.Test
+import org.orbeon.saxon.om.NodeInfo
+import org.orbeon.scaxon.NodeConversions._
+import org.orbeon.scaxon.SimplePath._
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.mutable.ListBuffer
+
+class InstancePathIdsTest extends AssertionsForJUnit {
+
+  private def ancestorOrSelfIds(node: NodeInfo) = {
+    val ids = ListBuffer[Int]()
+    InstancePathIds.foreachAncestorOrSelfId(node)(ids += _)
+    ids.toList
+  }
+
+  @Test def idsMatchPaths(): Unit = {
+
+    for (readonly ← List(true, false)) {
+
+      val doc  = elemToDocumentInfo(<form><row a="1"><b/></row><row a="2"><b/></row></form>, readonly)
+      val form = (doc / "form").head
+
+      val rows       = (form / "row").toList
+      val attributes = rows map (row ⇒ (row /@ "a").head)
+      val bs         = rows map (row ⇒ (row / "b").head)
+
+      val rowPath = rows.head.getFingerprint.toString
+      val attPath = rowPath + "/@" + attributes.head.getFingerprint
+      val bPath   = rowPath + "/"  + bs.head.getFingerprint
+
+      val rootId = InstancePathIds.RootElementId
+      val rowId  = InstancePathIds.idForPath(rowPath)
+      val attId  = InstancePathIds.idForPath(attPath)
+      val bId    = InstancePathIds.idForPath(bPath)
+
+      assert(rootId === InstancePathIds.idForPath(""))
+      assert(4 === Set(rootId, rowId, attId, bId).size)
+
+      assert(List(rootId) === ancestorOrSelfIds(form))
+
+      // Repeated structures share the same ids
+      for (row ← rows)
+        assert(List(rootId, rowId) === ancestorOrSelfIds(row))
+
+      for (attribute ← attributes)
+        assert(List(rootId, rowId, attId) === ancestorOrSelfIds(attribute))
+
+      for (b ← bs)
+        assert(List(rootId, rowId, bId) === ancestorOrSelfIds(b))
+    }
+  }
+
+  @Test def stopAtUnknownPath(): Unit = {
+
+    // Names not used by other tests, so that their paths are not interned yet
+    val doc  = elemToDocumentInfo(<stop-form><stop-section><stop-field stop-att="1"/></stop-section></stop-form>, readonly = true)
+    val form = (doc / "stop-form").head
+
+    val section   = (form / "stop-section").head
+    val field     = (section / "stop-field").head
+    val attribute = (field /@ "stop-att").head
+
+    val rootId = InstancePathIds.RootElementId
+
+    // Looking up the ids doesn't intern the paths
+    assert(List(rootId) === ancestorOrSelfIds(attribute))
+    assert(List(rootId) === ancestorOrSelfIds(field))
+
+    val sectionPath = section.getFingerprint.toString
+    val sectionId   = InstancePathIds.idForPath(sectionPath)
+
+    assert(List(rootId, sectionId) === ancestorOrSelfIds(attribute))
+    assert(List(rootId, sectionId) === ancestorOrSelfIds(field))
+
+    val attributeId = InstancePathIds.idForPath(sectionPath + "/" + field.getFingerprint + "/@" + attribute.getFingerprint)
+
+    // The field itself is interned as the parent of the attribute
+    val fieldId = InstancePathIds.idForPath(sectionPath + "/" + field.getFingerprint)
+
+    assert(List(rootId, sectionId, fieldId, attributeId) === ancestorOrSelfIds(attribute))
+    assert(List(rootId, sectionId, fieldId)              === ancestorOrSelfIds(field))
+  }
+}
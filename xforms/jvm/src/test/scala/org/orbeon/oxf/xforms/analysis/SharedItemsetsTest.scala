@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analysis
+
+import org.junit.{Assume, Test}
+import org.orbeon.oxf.common.Version
+import org.orbeon.oxf.test.DocumentTestBase
+import org.orbeon.oxf.xforms.XFormsConstants.REPEAT_SEPARATOR
+import org.orbeon.oxf.xforms.analysis.controls.SelectionControlUtil
+import org.orbeon.oxf.xforms.control.controls.XFormsSelect1Control
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.scalatest.junit.AssertionsForJUnit
+
+class SharedItemsetsTest extends DocumentTestBase with AssertionsForJUnit {
+
+  private def setupSharedItemsetsDocument() =
+    this setupDocument
+      <xh:html
+        xmlns:xh="http://www.w3.org/1999/xhtml"
+        xmlns:xf="http://www.w3.org/2002/xforms"
+        xmlns:xxf="http://orbeon.org/oxf/xml/xforms">
+        <xh:head>
+          <xf:model id="model" xxf:xpath-analysis="true" xxf:encrypt-item-values="false">
+            <xf:instance id="instance">
+              <instance xmlns="">
+                <row>fr</row>
+                <row>it</row>
+              </instance>
+            </xf:instance>
+            <xf:instance id="countries">
+              <countries xmlns="">
+                <country><label>France</label><code>fr</code></country>
+                <country><label>Italy</label><code>it</code></country>
+              </countries>
+            </xf:instance>
+            <xf:bind id="country-bind" ref="instance('countries')/country"/>
+          </xf:model>
+        </xh:head>
+        <xh:body>
+          <xf:input id="first-label" ref="instance('countries')/country[1]/label"/>
+          <xf:select1 id="outside" ref="row[1]">
+            <xf:itemset ref="instance('countries')/country">
+              <xf:label ref="label"/>
+              <xf:value ref="code"/>
+            </xf:itemset>
+          </xf:select1>
+          <xf:repeat id="rows" ref="row">
+            <xf:select1 id="shared" ref=".">
+              <xf:itemset ref="instance('countries')/country">
+                <xf:label ref="label"/>
+                <xf:value ref="code"/>
+              </xf:itemset>
+            </xf:select1>
+            <xf:select1 id="by-bind" ref=".">
+              <xf:itemset ref="bind('country-bind')">
+                <xf:label ref="label"/>
+                <xf:value ref="code"/>
+              </xf:itemset>
+            </xf:select1>
+            <xf:select1 id="by-default-instance" ref=".">
+              <xf:itemset ref="instance()/row">
+                <xf:label ref="."/>
+                <xf:value ref="."/>
+              </xf:itemset>
+            </xf:select1>
+          </xf:repeat>
+        </xh:body>
+      </xh:html>
+
+  private def select1(effectiveId: String) = getObject(effectiveId).asInstanceOf[XFormsSelect1Control]
+  private def iteration(staticId: String, index: Int) = staticId + REPEAT_SEPARATOR + index
+
+  @Test def contextDependentExpressions(): Unit = {
+
+    def isContextDependent(expression: String) =
+      SelectionControlUtil.ContextDependentExpression.findFirstIn(expression).isDefined
+
+    for (expression ← List("$countries", "bind('b')", "xxf:bind ('b')", "xxf:evaluate-bind-property('b', 'required')", "instance()/row", "instance( )", "xxf:evaluate('.')"))
+      assert(isContextDependent(expression), expression)
+
+    for (expression ← List("instance('countries')/country", "xxf:instance('countries')", "label", "../code"))
+      assert(! isContextDependent(expression), expression)
+  }
+
+  @Test def shareItemsetWithinRepeat(): Unit = {
+    Assume.assumeTrue(Version.isPE) // dependencies are only known with the XPath analysis
+
+    setupSharedItemsetsDocument()
+
+    assert(select1(iteration("shared", 1)).staticControl.hasSharedItemset)
+    assert(! select1("outside").staticControl.hasSharedItemset)
+    assert(! select1(iteration("by-bind", 1)).staticControl.hasSharedItemset)
+    assert(! select1(iteration("by-default-instance", 1)).staticControl.hasSharedItemset)
+
+    val itemset = select1(iteration("shared", 1)).getItemset
+
+    // All the iterations use the same itemset, while the control outside the repeat has its own
+    assert(itemset eq select1(iteration("shared", 2)).getItemset)
+    assert(itemset ne select1("outside").getItemset)
+    assert(itemset === select1("outside").getItemset)
+    assert(select1(iteration("by-bind", 1)).getItemset ne select1(iteration("by-bind", 2)).getItemset)
+
+    val expected = """[{"label":"France","value":"fr"},{"label":"Italy","value":"it"}]"""
+
+    assert(expected === getItemset(iteration("shared", 1)))
+    assert(expected === getItemset(iteration("shared", 2)))
+  }
+
+  @Test def evaluateAgainAfterInstanceChange(): Unit = {
+    Assume.assumeTrue(Version.isPE)
+
+    setupSharedItemsetsDocument()
+
+    val before = select1(iteration("shared", 1)).getItemset
+
+    // A change unrelated to the itemset keeps the shared itemset
+    setControlValue(iteration("shared", 1), "it")
+    assert(before eq select1(iteration("shared", 1)).getItemset)
+
+    // A change to the itemset data evaluates the shared itemset again, once for all iterations
+    setControlValue("first-label", "Francia")
+
+    val after = select1(iteration("shared", 1)).getItemset
+
+    assert(before ne after)
+    assert(after eq select1(iteration("shared", 2)).getItemset)
+
+    val expected = """[{"label":"Francia","value":"fr"},{"label":"Italy","value":"it"}]"""
+
+    assert(expected === getItemset(iteration("shared", 1)))
+    assert(expected === getItemset(iteration("shared", 2)))
+    assert(expected === getItemset("outside"))
+  }
+
+  @Test def keepJSONWithoutSelection(): Unit = {
+    Assume.assumeTrue(Version.isPE)
+
+    setupSharedItemsetsDocument()
+
+    val itemset = select1(iteration("shared", 1)).getItemset
+
+    val json = itemset.asJSON(null, false, null)
+
+    // Produced once for all the controls sharing the itemset
+    assert(json eq itemset.asJSON(null, false, null))
+
+    // The selection and the encoding are taken into account
+    assert("""[{"label":"France","value":"fr","selected":true},{"label":"Italy","value":"it"}]""" === itemset.asJSON("fr", false, null))
+    assert(json !== itemset.asJSON(null, true, null))
+    assert(json === itemset.asJSON(null, false, null))
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.control
+
+import org.orbeon.oxf.test.{DocumentTestBase, ResourceManagerSupport}
+import org.orbeon.oxf.util.CoreUtils._
+import org.orbeon.oxf.xforms.action.XFormsAPI._
+import org.orbeon.oxf.xforms.control.controls.XFormsRepeatControl
+import org.orbeon.oxf.xforms.processor.ControlsComparator
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.orbeon.oxf.xml.XMLReceiverAdapter
+import org.orbeon.scaxon.SimplePath._
+import org.scalatest.FunSpecLike
+import org.xml.sax.Attributes
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable.ListBuffer
+
+class IncrementalUpdateTest
+  extends DocumentTestBase
+     with ResourceManagerSupport
+     with FunSpecLike {
+
+  describe("Incremental updates") {
+
+    it("must only record the controls which changed") {
+      withTestExternalContext { _ ⇒
+
+        val doc = this setupDocument
+          <xh:html
+            xmlns:xf="http://www.w3.org/2002/xforms"
+            xmlns:xh="http://www.w3.org/1999/xhtml"
+            xmlns:xxf="http://orbeon.org/oxf/xml/xforms">
+            <xh:head>
+              <xf:model id="model" xxf:xpath-analysis="true" xxf:ajax.update.incremental="true">
+                <xf:instance id="instance">
+                  <form>
+                    <a>1</a>
+                    <b>2</b>
+                    <rows>
+                      <row>x</row>
+                      <row>y</row>
+                    </rows>
+                  </form>
+                </xf:instance>
+              </xf:model>
+            </xh:head>
+            <xh:body>
+              <xf:input id="my-a" ref="a"/>
+              <xf:input id="my-b" ref="b"/>
+              <xf:repeat id="my-repeat" ref="rows/row">
+                <xf:input id="my-row" ref="."/>
+              </xf:repeat>
+            </xh:body>
+          </xh:html>
+
+        withContainingDocument(doc) {
+
+          val controls = doc.getControls
+          def changedControls = controls.changedControlsSnapshots.asScala
+
+          assert(controls.isIncrementalUpdate)
+          assert(changedControls.isEmpty)
+
+          setControlValue("my-a", "10")
+
+          // The control tree is not cloned
+          assert(controls.getInitialControlTree eq controls.getCurrentControlTree)
+
+          // Only the changed control is recorded, with its previous value
+          assert(List("my-a") === (changedControls.keys map (_.getEffectiveId)).toList)
+          assert("1" === changedControls(getControl("my-a")).asInstanceOf[XFormsValueControl].getValue)
+          assert("10" === getControlValue("my-a"))
+
+          // Inserting an iteration records the repeat with its previous iterations
+          withAction {
+            val rows = instanceRoot("instance").get / "rows"
+            insert(into = rows, origin = rows / "row" take 1)
+          }
+
+          val repeat = getControl("my-repeat").asInstanceOf[XFormsRepeatControl]
+          assert(3 === repeat.children.size)
+          assert(2 === changedControls(repeat).asInstanceOf[XFormsRepeatControl].children.size)
+
+          doc.afterExternalEvents()
+          doc.afterUpdateResponse()
+          doc.beforeExternalEvents(null)
+
+          assert(changedControls.isEmpty)
+          assert(Map("my-repeat" → 3) === controls.initialRepeatIndexes.toMap)
+        }
+      }
+    }
+
+    // Record the events of the Ajax diff
+    class EventLog extends XMLReceiverAdapter {
+
+      val events = ListBuffer[String]()
+
+      override def startElement(uri: String, localName: String, qName: String, atts: Attributes): Unit =
+        events += s"<$qName ${(0 until atts.getLength) map (i ⇒ atts.getQName(i) + '=' + atts.getValue(i)) mkString " "}>"
+      override def endElement(uri: String, localName: String, qName: String): Unit =
+        events += s"</$qName>"
+      override def characters(ch: Array[Char], start: Int, length: Int): Unit =
+        events += new String(ch, start, length)
+    }
+
+    def diffAfterChanges(incremental: Boolean): List[String] = {
+
+      val doc = this setupDocument
+        <xh:html
+          xmlns:xf="http://www.w3.org/2002/xforms"
+          xmlns:xh="http://www.w3.org/1999/xhtml"
+          xmlns:xxf="http://orbeon.org/oxf/xml/xforms">
+          <xh:head>
+            <xf:model id="model" xxf:xpath-analysis="true" xxf:ajax.update.incremental={incremental.toString}>
+              <xf:instance id="instance">
+                <form>
+                  <a>1</a>
+                  <b>2</b>
+                  <c>3</c>
+                  <rows>
+                    <row>x</row>
+                    <row>y</row>
+                    <row>z</row>
+                  </rows>
+                </form>
+              </xf:instance>
+              <xf:bind ref="b" relevant="../a != '10'"/>
+              <xf:bind ref="c" readonly="../a = '10'"/>
+            </xf:model>
+          </xh:head>
+          <xh:body>
+            <xf:input id="my-a" ref="a"/>
+            <xf:input id="my-b" ref="b"/>
+            <xf:input id="my-c" ref="c"/>
+            <xf:output id="my-count" value="count(rows/row)"/>
+            <xf:repeat id="my-repeat" ref="rows/row">
+              <xf:input id="my-row" ref="."/>
+            </xf:repeat>
+          </xh:body>
+        </xh:html>
+
+      withContainingDocument(doc) {
+
+        val controls = doc.getControls
+
+        assert(incremental === controls.isIncrementalUpdate)
+
+        // Value, relevance, read-only, and repeat changes
+        setControlValue("my-a", "10")
+        withAction {
+          val rows = instanceRoot("instance").get / "rows"
+          delete(ref = rows / "row" drop 1 take 1)
+          insert(into = rows, after = rows / "row", origin = rows / "row" take 1)
+          setvalue(rows / "row" take 1, "w")
+        }
+
+        doc.afterExternalEvents()
+
+        val log = new EventLog
+
+        new ControlsComparator(
+          doc,
+          Map(),
+          isTestMode         = false,
+          changedControlsOpt = controls.isIncrementalUpdate option controls.changedControlsSnapshots
+        ).diffChildren(
+          left             = controls.getInitialControlTree.children,
+          right            = controls.getCurrentControlTree.children,
+          fullUpdateBuffer = None
+        )(log)
+
+        doc.afterUpdateResponse()
+        doc.beforeExternalEvents(null)
+
+        log.events.toList
+      }
+    }
+
+    it("must produce the same Ajax diff as the full clone of the control tree") {
+      withTestExternalContext { _ ⇒
+
+        val fullCloneDiff   = diffAfterChanges(incremental = false)
+        val incrementalDiff = diffAfterChanges(incremental = true)
+
+        assert(fullCloneDiff.nonEmpty)
+        assert(fullCloneDiff === incrementalDiff)
+      }
+    }
+  }
+}
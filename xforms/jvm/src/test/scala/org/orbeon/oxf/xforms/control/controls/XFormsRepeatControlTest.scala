@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.control.controls
+
+import org.junit.Test
+import org.orbeon.oxf.test.DocumentTestBase
+import org.orbeon.oxf.xforms.control.controls.XFormsRepeatControl.findItemIndexes
+import org.orbeon.oxf.xml.SaxonUtils
+import org.orbeon.saxon.om.Item
+import org.orbeon.saxon.value.{Int64Value, StringValue}
+import org.orbeon.scaxon.NodeConversions._
+import org.orbeon.scaxon.SimplePath._
+import org.scalatest.junit.AssertionsForJUnit
+
+class XFormsRepeatControlTest extends DocumentTestBase with AssertionsForJUnit {
+
+  // Reference implementation
+  def findItemIndexesLinearSearch(items1: Seq[Item], items2: Seq[Item]) =
+    items1.map(item ⇒ items2 indexWhere (SaxonUtils.compareItems(_, item))).toList
+
+  @Test def itemIndexes(): Unit = {
+
+    for (readonly ← List(true, false)) {
+
+      val doc  = elemToDocumentInfo(<rows>{ 1 to 6 map (i ⇒ <row>{i}</row>) }</rows>, readonly)
+      val rows = (doc / "rows" / "row").toList
+
+      val strings: List[Item] = List("a", "b", "a", "c") map (new StringValue(_))
+      val numbers: List[Item] = List(1L, 2L, 1L) map Int64Value.makeIntegerValue
+
+      val sequences = List[Seq[Item]](
+        Nil,
+        rows,
+        rows.patch(3, Nil, 1),          // delete
+        rows.patch(3, Nil, 1).reverse,  // delete and move
+        rows.take(2) ++ rows.drop(4),   // delete several
+        rows ++ rows.take(2),           // duplicates
+        strings,
+        strings.reverse,
+        numbers,
+        rows.take(2) ++ strings ++ numbers
+      )
+
+      for (items1 ← sequences; items2 ← sequences)
+        assert(findItemIndexesLinearSearch(items1, items2) === findItemIndexes(items1, items2).toList)
+    }
+  }
+}
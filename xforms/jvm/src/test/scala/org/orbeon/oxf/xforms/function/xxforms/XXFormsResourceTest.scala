@@ -54,6 +54,39 @@ class XXFormsResourceTest extends FunSpec {
       }
   }
 
+  describe("The `buildResourceTable()` function") {
+
+    val resource: NodeInfo =
+      <resource>
+        <components>
+          <grid>
+            <insert-above>42</insert-above>
+          </grid>
+        </components>
+        <first-name>
+          <label>First Name</label>
+          <alert>Default Alert</alert>
+          <alert>Invalid Length</alert>
+        </first-name>
+      </resource>
+
+    val table = XXFormsResource.buildResourceTable(resource.rootElement)
+
+    it("must contain leaf values by path") {
+      assert(Some("42")         === table.get("components.grid.insert-above"))
+      assert(Some("First Name") === table.get("first-name.label"))
+    }
+
+    it("must keep the first of repeated elements") {
+      assert(Some("Default Alert") === table.get("first-name.alert"))
+    }
+
+    it("must not contain non-leaf elements") {
+      assert(! table.contains("components.grid"))
+      assert(! table.contains("first-name"))
+    }
+  }
+
   describe("The `flattenResourceName()` function") {
 
      val Expected = List(
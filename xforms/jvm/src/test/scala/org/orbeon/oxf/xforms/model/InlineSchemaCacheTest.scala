@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.model
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+import org.junit.Test
+import org.orbeon.oxf.test.DocumentTestBase
+import org.orbeon.oxf.util.Metrics
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.scalatest.junit.AssertionsForJUnit
+
+class InlineSchemaCacheTest extends DocumentTestBase with AssertionsForJUnit {
+
+  private def writeTypes(file: File, pattern: String, lastModified: Long): Unit = {
+    val types =
+      <xs:schema xmlns:xs="http://www.w3.org/2001/XMLSchema" targetNamespace="urn:types">
+        <xs:simpleType name="code">
+          <xs:restriction base="xs:string">
+            <xs:pattern value={pattern}/>
+          </xs:restriction>
+        </xs:simpleType>
+      </xs:schema>
+    Files.write(file.toPath, types.toString.getBytes(StandardCharsets.UTF_8))
+    file.setLastModified(lastModified)
+  }
+
+  // The inline schema imports the type of the value from another file
+  private def setupSchemaDocument(typesFile: File) =
+    this setupDocument
+      <xh:html
+        xmlns:xh="http://www.w3.org/1999/xhtml"
+        xmlns:xf="http://www.w3.org/2002/xforms"
+        xmlns:xs="http://www.w3.org/2001/XMLSchema"
+        xmlns:t="urn:types">
+        <xh:head>
+          <xf:model id="model">
+            <xs:schema targetNamespace="urn:main">
+              <xs:import namespace="urn:types" schemaLocation={typesFile.toURI.toString}/>
+            </xs:schema>
+            <xf:instance id="instance">
+              <instance xmlns=""><code>abc</code></instance>
+            </xf:instance>
+            <xf:bind ref="code" type="t:code"/>
+          </xf:model>
+        </xh:head>
+        <xh:body>
+          <xf:input id="code" ref="code"/>
+        </xh:body>
+      </xh:html>
+
+  private def inlineSchemaCacheHits =
+    (Metrics.allMetrics collect {
+      case counter: Metrics.Counter
+        if counter.name == "orbeon_xforms_schema_cache_requests_total" &&
+           counter.labels.contains("schema" → "inline") &&
+           counter.labels.contains("result" → "hit") ⇒ counter.get
+    }).sum
+
+  @Test def reloadWhenImportChanges(): Unit = {
+
+    val typesFile    = new File(Files.createTempDirectory("orbeon-inline-schema-test").toFile, "types.xsd")
+    val lastModified = System.currentTimeMillis / 1000 * 1000 - 60000
+
+    writeTypes(typesFile, "[a-z]+", lastModified)
+
+    setupSchemaDocument(typesFile)
+    assert(isValid("code"))
+
+    // The grammar is reused by a new document
+    val hitsBefore = inlineSchemaCacheHits
+    setupSchemaDocument(typesFile)
+    assert(isValid("code"))
+    assert(hitsBefore + 1 === inlineSchemaCacheHits)
+
+    // The grammar is loaded again when the imported schema changes
+    writeTypes(typesFile, "[0-9]+", lastModified + 10000)
+    setupSchemaDocument(typesFile)
+    assert(! isValid("code"))
+    assert(hitsBefore + 1 === inlineSchemaCacheHits)
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.model
+
+import org.junit.Test
+import org.orbeon.oxf.test.DocumentTestBase
+import org.orbeon.oxf.xforms.{XFormsContainingDocument, XFormsStaticState, XFormsStaticStateImpl}
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.scalatest.junit.AssertionsForJUnit
+
+class ReadonlyInstanceSharingTest extends DocumentTestBase with AssertionsForJUnit {
+
+  private def newStaticState =
+    XFormsStaticStateImpl.createFromDocument(
+      <xh:html
+        xmlns:xh="http://www.w3.org/1999/xhtml"
+        xmlns:xf="http://www.w3.org/2002/xforms"
+        xmlns:xxf="http://orbeon.org/oxf/xml/xforms"
+        xml:lang="en">
+        <xh:head>
+          <xf:model id="model">
+            <xf:instance id="data">
+              <data><name/></data>
+            </xf:instance>
+            <xf:instance id="resources" xxf:readonly="true">
+              <resources>
+                <resource lang="en"><name><label>Name</label></name></resource>
+                <resource lang="fr"><name><label>Nom</label></name></resource>
+              </resources>
+            </xf:instance>
+          </xf:model>
+        </xh:head>
+        <xh:body>
+          <xf:output id="label" value="xxf:r('name.label', 'resources')"/>
+        </xh:body>
+      </xh:html>
+    )
+
+  // Create a document, and return the given instances and the value of the output
+  private def newDocument(staticState: XFormsStaticState) = {
+
+    setupDocument(new XFormsContainingDocument(staticState, null, null, true))
+
+    (instance("data").get, instance("resources").get, getControlValue("label"))
+  }
+
+  @Test def shareReadonlyInlineContent(): Unit = {
+
+    val staticState = newStaticState
+
+    val (data1, resources1, label1) = newDocument(staticState)
+    val (data2, resources2, label2) = newDocument(staticState)
+
+    // Readonly content is shared among the documents created from the same static state, but not mutable content
+    assert(resources1.documentInfo eq resources2.documentInfo)
+    assert(data1.documentInfo ne data2.documentInfo)
+
+    // So are the tables of resources used by `xxf:r()`
+    val tables = resources1.instance.sharedResourceTables(resources1.documentInfo)
+    assert(tables.isDefined)
+    assert(tables.get.containsKey("en"))
+    assert(tables.get.get("en").get("name.label") contains "Name")
+    assert(resources2.instance.sharedResourceTables(resources2.documentInfo) === tables)
+
+    assert("Name" === label1)
+    assert("Name" === label2)
+  }
+
+  @Test def dontShareAcrossStaticStates(): Unit = {
+
+    val (_, resources1, _) = newDocument(newStaticState)
+    val (_, resources2, _) = newDocument(newStaticState)
+
+    assert(resources1.documentInfo ne resources2.documentInfo)
+  }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.processor.handlers
+
+import org.junit.Test
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.orbeon.oxf.xml.TransformerUtils
+import org.scalatest.junit.AssertionsForJUnit
+
+class StaticFragmentsTest extends AssertionsForJUnit {
+
+  @Test def findRoots(): Unit = {
+
+    val template =
+      <xh:html xmlns:xf="http://www.w3.org/2002/xforms" xmlns:xh="http://www.w3.org/1999/xhtml">
+        <xh:head>
+          <xh:title>Static title</xh:title>
+        </xh:head>
+        <xh:body>
+          <xh:div class="static">
+            <xh:span>Static text</xh:span>
+          </xh:div>
+          <xh:div id="with-id">
+            <xh:p>Static paragraph</xh:p>
+          </xh:div>
+          <xh:div>
+            <xf:input id="input" ref="."/>
+          </xh:div>
+          <xh:label for="input">Label</xh:label>
+        </xh:body>
+      </xh:html>
+
+    val roots = StaticFragments.findRoots(TransformerUtils.dom4jToSAXStore(template, false))
+
+    // Elements in document order: html, head, title, body, div, span, div, p, div, input, label
+    assert(Set(2, 4, 7) === (Iterator.iterate(roots.nextSetBit(0))(i ⇒ roots.nextSetBit(i + 1)) takeWhile (_ >= 0)).toSet)
+  }
+}
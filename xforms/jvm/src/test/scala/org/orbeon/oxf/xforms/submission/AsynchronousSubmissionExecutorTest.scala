@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.submission
+
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.junit.{After, Test}
+import org.orbeon.oxf.util.Metrics
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.mutable.ListBuffer
+
+class AsynchronousSubmissionExecutorTest extends AssertionsForJUnit {
+
+  private var pools: List[ExecutorService] = Nil
+
+  @After def shutdownPools(): Unit = pools foreach (_.shutdownNow())
+
+  private def newPool(maxThreads: Int, maxQueue: Int, callerRuns: Boolean) = {
+    val pool = AsynchronousSubmissionExecutor.newThreadPool(maxThreads, maxQueue, callerRuns, virtualThreads = false)
+    pools ::= pool
+    pool
+  }
+
+  // Task which blocks until released
+  private class BlockingTask(release: CountDownLatch) extends Runnable {
+    val started = new CountDownLatch(1)
+    def run(): Unit = {
+      started.countDown()
+      release.await(10, TimeUnit.SECONDS)
+    }
+  }
+
+  private def await(latch: CountDownLatch): Unit =
+    assert(latch.await(10, TimeUnit.SECONDS))
+
+  private def waitFor(condition: ⇒ Boolean): Unit = {
+    val timeout = System.currentTimeMillis + 10000
+    while (! condition && System.currentTimeMillis < timeout)
+      Thread.sleep(5)
+    assert(condition)
+  }
+
+  private def rejectedCount =
+    (Metrics.allMetrics collect {
+      case counter: Metrics.Counter if counter.name == "orbeon_xforms_async_submissions_rejected_total" ⇒ counter.get
+    }).sum
+
+  @Test def runWaitingTasksInOrder(): Unit = {
+
+    val executor = new AsynchronousSubmissionExecutor.DocumentExecutor(newPool(4, 10, callerRuns = false), 1)
+    val release  = new CountDownLatch(1)
+    val done     = new CountDownLatch(5)
+    val order    = ListBuffer[Int]()
+
+    val first = new BlockingTask(release)
+    executor.execute(first)
+    await(first.started)
+
+    // The tasks wait for the first task, although the underlying pool has free threads
+    for (i ← 1 to 5)
+      executor.execute(new Runnable {
+        def run(): Unit = {
+          order.synchronized(order += i)
+          done.countDown()
+        }
+      })
+
+    Thread.sleep(50)
+    assert(order.synchronized(order.isEmpty))
+
+    release.countDown()
+    await(done)
+    assert(List(1, 2, 3, 4, 5) === order.synchronized(order.toList))
+  }
+
+  @Test def limitConcurrentTasks(): Unit = {
+
+    val executor      = new AsynchronousSubmissionExecutor.DocumentExecutor(newPool(8, 10, callerRuns = false), 2)
+    val release       = new CountDownLatch(1)
+    val done          = new CountDownLatch(6)
+    val running       = new AtomicInteger
+    val maxConcurrent = new AtomicInteger
+
+    for (_ ← 1 to 6)
+      executor.execute(new Runnable {
+        def run(): Unit = {
+          val concurrent = running.incrementAndGet()
+          maxConcurrent.synchronized(maxConcurrent.set(maxConcurrent.get max concurrent))
+          try
+            release.await(10, TimeUnit.SECONDS)
+          finally {
+            running.decrementAndGet()
+            done.countDown()
+          }
+        }
+      })
+
+    // No other task starts while two tasks run
+    waitFor(running.get == 2)
+    Thread.sleep(50)
+    assert(2 === running.get)
+
+    release.countDown()
+    await(done)
+    assert(2 === maxConcurrent.get)
+  }
+
+  @Test def releaseSlotWhenRejected(): Unit = {
+
+    var reject = true
+
+    val underlying =
+      new Executor {
+        def execute(command: Runnable): Unit =
+          if (reject)
+            throw new RejectedExecutionException("rejected")
+          else
+            command.run()
+      }
+
+    val executor = new AsynchronousSubmissionExecutor.DocumentExecutor(underlying, 1)
+    val ran      = new AtomicInteger
+
+    val task =
+      new Runnable {
+        def run(): Unit = ran.incrementAndGet()
+      }
+
+    intercept[RejectedExecutionException] {
+      executor.execute(task)
+    }
+    assert(0 === ran.get)
+
+    // The rejected task doesn't hold on to the only slot of the document
+    reject = false
+    executor.execute(task)
+    executor.execute(task)
+    assert(2 === ran.get)
+  }
+
+  @Test def keepRunningAfterFailure(): Unit = {
+
+    val executor = new AsynchronousSubmissionExecutor.DocumentExecutor(newPool(1, 10, callerRuns = false), 1)
+    val release  = new CountDownLatch(1)
+    val done     = new CountDownLatch(1)
+
+    val first = new BlockingTask(release)
+    executor.execute(first)
+    await(first.started)
+
+    executor.execute(new Runnable {
+      def run(): Unit = throw new IllegalStateException("submission failed")
+    })
+    executor.execute(new Runnable {
+      def run(): Unit = done.countDown()
+    })
+
+    release.countDown()
+    await(done)
+  }
+
+  @Test def abortWhenQueueFull(): Unit = {
+
+    val pool    = newPool(1, 0, callerRuns = false)
+    val release = new CountDownLatch(1)
+    val before  = rejectedCount
+
+    val first = new BlockingTask(release)
+    pool.execute(first)
+    await(first.started)
+
+    intercept[RejectedExecutionException] {
+      pool.execute(new Runnable { def run(): Unit = () })
+    }
+    assert(before + 1 === rejectedCount)
+
+    release.countDown()
+  }
+
+  @Test def runInCallerThreadWhenQueueFull(): Unit = {
+
+    val pool    = newPool(1, 0, callerRuns = true)
+    val release = new CountDownLatch(1)
+    val before  = rejectedCount
+
+    val first = new BlockingTask(release)
+    pool.execute(first)
+    await(first.started)
+
+    var thread: Thread = null
+    pool.execute(new Runnable {
+      def run(): Unit = thread = Thread.currentThread
+    })
+    assert(Thread.currentThread eq thread)
+    assert(before + 1 === rejectedCount)
+
+    release.countDown()
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.submission
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, File, OutputStream}
+import java.net.InetSocketAddress
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.sun.net.httpserver.{HttpExchange, HttpHandler, HttpServer}
+import org.junit.Test
+import org.orbeon.dom.DocumentFactory
+import org.orbeon.oxf.http.HttpClientSettings
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.test.DocumentTestBase
+import org.orbeon.oxf.util.IOUtils._
+import org.orbeon.oxf.xforms.XFormsContainingDocument
+import org.orbeon.oxf.xforms.action.XFormsAPI._
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.orbeon.oxf.xml.XMLConstants
+import org.orbeon.scaxon.SimplePath._
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.mutable.ListBuffer
+
+class CacheableMultipartSubmissionTest extends DocumentTestBase with AssertionsForJUnit {
+
+  val AttachmentContent = "attachment content"
+
+  private def newDocument(url: String, attachment: File): XFormsContainingDocument =
+    this setupDocument
+      <xh:html
+        xmlns:xh="http://www.w3.org/1999/xhtml"
+        xmlns:xf="http://www.w3.org/2002/xforms"
+        xmlns:xs="http://www.w3.org/2001/XMLSchema"
+        xmlns:xxf="http://orbeon.org/oxf/xml/xforms">
+        <xh:head>
+          <xf:model id="model">
+            <xf:instance id="form">
+              <form><name>Jane</name><file filename="attachment.txt" mediatype="text/plain">{attachment.toURI.toString}</file></form>
+            </xf:instance>
+            <xf:instance id="result">
+              <result/>
+            </xf:instance>
+            <xf:bind ref="instance('form')/file" type="xs:anyURI"/>
+            <xf:submission
+              id="submission"
+              ref="instance('form')"
+              method="post"
+              serialization="multipart/form-data"
+              action={url}
+              replace="instance"
+              instance="result"
+              xxf:cache="true"/>
+          </xf:model>
+        </xh:head>
+        <xh:body/>
+      </xh:html>
+
+  private def withServer[T](body: (String, ListBuffer[String]) ⇒ T): T = {
+
+    val requestBodies = ListBuffer[String]()
+
+    val server = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+    server.createContext("/", new HttpHandler {
+      def handle(exchange: HttpExchange): Unit = {
+        val os = new ByteArrayOutputStream
+        copyStream(exchange.getRequestBody, os)
+        requestBodies.synchronized(requestBodies += new String(os.toByteArray, StandardCharsets.UTF_8))
+
+        val response = "<result>done</result>".getBytes(StandardCharsets.UTF_8)
+        exchange.getResponseHeaders.add("Content-Type", "application/xml")
+        exchange.sendResponseHeaders(200, response.length)
+        useAndClose(exchange.getResponseBody)(_.write(response))
+      }
+    })
+    server.start()
+    try
+      body(s"http://localhost:${server.getAddress.getPort}/service", requestBodies)
+    finally
+      server.stop(0)
+  }
+
+  private def withChunkedRequests[T](body: ⇒ T): T = {
+
+    val propertySet = Properties.instance.getPropertySet
+    val element     = DocumentFactory.createElement("property")
+
+    def setChunkRequests(value: Boolean) =
+      propertySet.setProperty(element, HttpClientSettings.ChunkRequestsProperty, XMLConstants.XS_BOOLEAN_QNAME, value.toString)
+
+    setChunkRequests(true)
+    try
+      body
+    finally
+      setChunkRequests(HttpClientSettings.ChunkRequestsDefault)
+  }
+
+  // Computing the digest of the body for the cache serializes the body, so the request must send the same bytes rather
+  // than serialize the body again from attachments which have been read already
+  @Test def sendAttachmentsOfCacheableSubmission(): Unit =
+    withChunkedRequests {
+      withServer { (url, requestBodies) ⇒
+
+        val attachment = File.createTempFile("orbeon-submission-", ".txt")
+        Files.write(attachment.toPath, AttachmentContent.getBytes(StandardCharsets.UTF_8))
+
+        withTestExternalContext { _ ⇒
+          withActionAndDoc(newDocument(url, attachment)) {
+            withAction {
+              sendThrowOnError("submission")
+            }
+
+            assert("done" === instance("result").get.rootElement.stringValue)
+          }
+        }
+
+        val sent = requestBodies.synchronized(requestBodies.toList)
+
+        assert(1 === sent.size)
+        assert(sent.head.contains("Jane"))
+        assert(sent.head.contains(AttachmentContent))
+      }
+    }
+
+  @Test def writeMessageBodyOnce(): Unit = {
+
+    val writeCount = new AtomicInteger
+    val attachment = new ByteArrayInputStream(AttachmentContent.getBytes(StandardCharsets.UTF_8))
+
+    val sp =
+      SerializationParameters(
+        writeMessageBody       = Some((os: OutputStream) ⇒ { writeCount.incrementAndGet(); copyStream(attachment, os) }),
+        queryString            = null,
+        actualRequestMediatype = "text/plain"
+      )
+
+    assert(sp.isMessageBodyStreamable)
+    assert(AttachmentContent === new String(sp.messageBody, StandardCharsets.UTF_8))
+
+    // Once in memory, the body is sent from memory
+    assert(! sp.isMessageBodyStreamable)
+    assert(AttachmentContent === new String(sp.messageBody, StandardCharsets.UTF_8))
+    assert(1 === writeCount.get)
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.submission
+
+import java.util.concurrent.{Callable, CountDownLatch, FutureTask}
+
+import org.junit.Test
+import org.orbeon.oxf.test.DocumentTestBase
+import org.orbeon.oxf.xforms.XFormsContainingDocument
+import org.orbeon.oxf.xforms.action.XFormsAPI._
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.orbeon.scaxon.SimplePath._
+import org.scalatest.junit.AssertionsForJUnit
+
+class ConcurrentSubmissionsTest extends DocumentTestBase with AssertionsForJUnit {
+
+  private def newDocument: XFormsContainingDocument =
+    this setupDocument
+      <xh:html
+        xmlns:xh="http://www.w3.org/1999/xhtml"
+        xmlns:xf="http://www.w3.org/2002/xforms"
+        xmlns:xxf="http://orbeon.org/oxf/xml/xforms"
+        xmlns:ev="http://www.w3.org/2001/xml-events">
+        <xh:head>
+          <xf:model id="model">
+            <xf:instance id="source">
+              <source><value>new</value></source>
+            </xf:instance>
+            <xf:instance id="first">
+              <first><value>old</value></first>
+            </xf:instance>
+            <xf:instance id="second">
+              <second><value>old</value></second>
+            </xf:instance>
+            <xf:instance id="log">
+              <log during="" done="" error=""/>
+            </xf:instance>
+            <xf:submission
+              id="first-submission"
+              ref="instance('source')"
+              method="post"
+              action="echo:"
+              replace="instance"
+              instance="first"
+              xxf:concurrent="true">
+              <xf:setvalue ev:event="xforms-submit-done" ref="instance('log')/@done" value="concat(., 'first ')"/>
+              <xf:setvalue ev:event="xforms-submit-error" ref="instance('log')/@error" value="concat(., 'first ')"/>
+            </xf:submission>
+            <xf:submission
+              id="second-submission"
+              ref="instance('source')"
+              method="post"
+              action="echo:"
+              replace="instance"
+              instance="second"
+              xxf:concurrent="true">
+              <xf:setvalue ev:event="xforms-submit-done" ref="instance('log')/@done" value="concat(., 'second ')"/>
+            </xf:submission>
+            <xf:action ev:event="run-submissions">
+              <xf:send submission="first-submission"/>
+              <xf:send submission="second-submission"/>
+              <xf:setvalue ref="instance('log')/@during" value="instance('first')/value"/>
+            </xf:action>
+          </xf:model>
+        </xh:head>
+        <xh:body/>
+      </xh:html>
+
+  private def value(instanceId: String) = (instance(instanceId).get.rootElement / "value").stringValue
+  private def logged(attribute: String) = instance("log").get.rootElement.attValue(attribute)
+
+  @Test def replaceInOrderWhenHandlerCompletes(): Unit =
+    withTestExternalContext { _ ⇒
+      withActionAndDoc(newDocument) {
+
+        withAction {
+          dispatch("run-submissions", "model")
+        }
+
+        // The replacements happen after the last action of the handler
+        assert("old"           === logged("during"))
+        assert("first second " === logged("done"))
+        assert("new"           === value("first"))
+        assert("new"           === value("second"))
+      }
+    }
+
+  @Test def runSynchronouslyOutsideHandler(): Unit =
+    withTestExternalContext { _ ⇒
+      withActionAndDoc(newDocument) {
+        withAction {
+          sendThrowOnError("first-submission")
+          assert("new"    === value("first"))
+          assert("first " === logged("done"))
+        }
+      }
+    }
+
+  @Test def cancelWhenActionsFail(): Unit =
+    withTestExternalContext { _ ⇒
+      withActionAndDoc(newDocument) {
+        withAction {
+
+          val failure = intercept[IllegalStateException] {
+            AsynchronousSubmissionManager.withConcurrentSubmissions(document) {
+              sendThrowOnError("first-submission")
+              throw new IllegalStateException("action failed")
+            }
+          }
+
+          // The failure of the actions is not replaced by a failure to process the submission
+          assert("action failed" === failure.getMessage)
+          assert("old"           === value("first"))
+          assert(""              === logged("done"))
+        }
+      }
+    }
+
+  @Test def submitErrorAfterTimeout(): Unit =
+    withTestExternalContext { _ ⇒
+      withActionAndDoc(newDocument) {
+        withAction {
+
+          val release = new CountDownLatch(1)
+
+          // Never started, so it never completes
+          val future =
+            new FutureTask[SubmissionResult](
+              new Callable[SubmissionResult] {
+                def call() = { release.await(); null }
+              }
+            )
+
+          document.getAsynchronousSubmissionManager(true).processConcurrentSubmissions(
+            List(AsynchronousSubmissionManager.ConcurrentSubmission("first-submission", future)),
+            timeoutMs = 10
+          )
+
+          assert(future.isCancelled)
+          assert("first " === logged("error"))
+          assert("old"    === value("first"))
+        }
+      }
+    }
+}